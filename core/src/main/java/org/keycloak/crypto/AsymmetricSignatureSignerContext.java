@@ -45,10 +45,17 @@ public class AsymmetricSignatureSignerContext implements SignatureSignerContext
     @Override
     public byte[] sign(byte[] data) throws SignatureException {
         try {
-            Signature signature = Signature.getInstance(JavaAlgorithm.getJavaAlgorithm(key.getAlgorithmOrDefault(), key.getCurve()));
-            signature.initSign((PrivateKey) key.getPrivateKey());
+            String algorithm = JavaAlgorithm.getJavaAlgorithm(key.getAlgorithmOrDefault(), key.getCurve());
+            KeyEngines engines = key.getEngines();
+            Signature signature = engines.borrow(KeyEngines.SIGN + algorithm, () -> {
+                Signature created = Signature.getInstance(algorithm);
+                created.initSign((PrivateKey) key.getPrivateKey());
+                return created;
+            });
             signature.update(data);
-            return signature.sign();
+            byte[] signed = signature.sign();
+            engines.release(KeyEngines.SIGN + algorithm, signature);
+            return signed;
         } catch (Exception e) {
             throw new SignatureException("Signing failed", e);
         }
@@ -42,10 +42,17 @@ public class AsymmetricSignatureVerifierContext implements SignatureVerifierCont
     @Override
     public boolean verify(byte[] data, byte[] signature) throws VerificationException {
         try {
-            Signature verifier = Signature.getInstance(JavaAlgorithm.getJavaAlgorithm(key.getAlgorithmOrDefault(), key.getCurve()));
-            verifier.initVerify((PublicKey) key.getPublicKey());
+            String algorithm = JavaAlgorithm.getJavaAlgorithm(key.getAlgorithmOrDefault(), key.getCurve());
+            KeyEngines engines = key.getEngines();
+            Signature verifier = engines.borrow(KeyEngines.VERIFY + algorithm, () -> {
+                Signature created = Signature.getInstance(algorithm);
+                created.initVerify((PublicKey) key.getPublicKey());
+                return created;
+            });
             verifier.update(data);
-            return verifier.verify(signature);
+            boolean verified = verifier.verify(signature);
+            engines.release(KeyEngines.VERIFY + algorithm, verifier);
+            return verified;
         } catch (Exception e) {
             throw new VerificationException("Signing failed", e);
         }
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.crypto;
+
+import java.security.GeneralSecurityException;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Signature and MAC engines initialized with the key of a {@link KeyWrapper}, kept for reuse so that the provider
+ * lookup and the key setup are not repeated for every signed or verified token. An engine is used by a single thread:
+ * it is borrowed for an operation and released when the operation completes, as both {@code Signature} and
+ * {@code Mac} reset to the initialized state after signing or verifying. Engines of a failed operation are not
+ * released. The key wrapper replaces its engines when its key or algorithm changes.
+ */
+final class KeyEngines {
+
+    static final String SIGN = "sign:";
+    static final String VERIFY = "verify:";
+    static final String MAC = "mac:";
+
+    private static final int MAX_IDLE_ENGINES = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    interface EngineFactory<T> {
+        T create() throws GeneralSecurityException;
+    }
+
+    private final Map<String, Queue<Object>> idle = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    <T> T borrow(String name, EngineFactory<T> factory) throws GeneralSecurityException {
+        Queue<Object> engines = idle.get(name);
+        Object engine = engines == null ? null : engines.poll();
+        return engine != null ? (T) engine : factory.create();
+    }
+
+    void release(String name, Object engine) {
+        idle.computeIfAbsent(name, n -> new ArrayBlockingQueue<>(MAX_IDLE_ENGINES)).offer(engine);
+    }
+}
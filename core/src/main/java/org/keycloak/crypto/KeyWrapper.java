@@ -50,6 +50,7 @@ public class KeyWrapper {
     private List<X509Certificate> certificateChain;
     private boolean isDefaultClientCertificate;
     private String curve;
+    private volatile KeyEngines engines = new KeyEngines();
 
     public String getProviderId() {
         return providerId;
@@ -103,6 +104,7 @@ public class KeyWrapper {
 
     public void setAlgorithm(String algorithm) {
         this.algorithm = algorithm;
+        this.engines = new KeyEngines();
     }
 
     public String getType() {
@@ -111,6 +113,7 @@ public class KeyWrapper {
 
     public void setType(String type) {
         this.type = type;
+        this.engines = new KeyEngines();
     }
 
     public KeyUse getUse() {
@@ -135,6 +138,7 @@ public class KeyWrapper {
 
     public void setSecretKey(SecretKey secretKey) {
         this.secretKey = secretKey;
+        this.engines = new KeyEngines();
     }
 
     public Key getPrivateKey() {
@@ -143,6 +147,7 @@ public class KeyWrapper {
 
     public void setPrivateKey(Key privateKey) {
         this.privateKey = privateKey;
+        this.engines = new KeyEngines();
     }
 
     public Key getPublicKey() {
@@ -151,6 +156,7 @@ public class KeyWrapper {
 
     public void setPublicKey(Key publicKey) {
         this.publicKey = publicKey;
+        this.engines = new KeyEngines();
     }
 
     public X509Certificate getCertificate() {
@@ -179,12 +185,20 @@ public class KeyWrapper {
 
     public void setCurve(String curve) {
         this.curve = curve;
+        this.engines = new KeyEngines();
     }
 
     public String getCurve() {
         return curve;
     }
 
+    /**
+     * Engines initialized with the current key, replaced when the key or the algorithm changes
+     */
+    KeyEngines getEngines() {
+        return engines;
+    }
+
     public KeyWrapper cloneKey() {
         KeyWrapper key = new KeyWrapper();
         key.providerId = this.providerId;
@@ -44,10 +44,17 @@ public class MacSignatureSignerContext implements SignatureSignerContext {
     @Override
     public byte[] sign(byte[] data) throws SignatureException {
         try {
-            Mac mac = Mac.getInstance(JavaAlgorithm.getJavaAlgorithm(key.getAlgorithmOrDefault()));
-            mac.init(key.getSecretKey());
+            String algorithm = JavaAlgorithm.getJavaAlgorithm(key.getAlgorithmOrDefault());
+            KeyEngines engines = key.getEngines();
+            Mac mac = engines.borrow(KeyEngines.MAC + algorithm, () -> {
+                Mac created = Mac.getInstance(algorithm);
+                created.init(key.getSecretKey());
+                return created;
+            });
             mac.update(data);
-            return mac.doFinal();
+            byte[] signed = mac.doFinal();
+            engines.release(KeyEngines.MAC + algorithm, mac);
+            return signed;
         } catch (Exception e) {
             throw new SignatureException("Signing failed", e);
         }
@@ -42,10 +42,16 @@ public class MacSignatureVerifierContext implements SignatureVerifierContext {
     @Override
     public boolean verify(byte[] data, byte[] signature) throws VerificationException {
         try {
-            Mac mac = Mac.getInstance(JavaAlgorithm.getJavaAlgorithm(key.getAlgorithmOrDefault()));
-            mac.init(key.getSecretKey());
+            String algorithm = JavaAlgorithm.getJavaAlgorithm(key.getAlgorithmOrDefault());
+            KeyEngines engines = key.getEngines();
+            Mac mac = engines.borrow(KeyEngines.MAC + algorithm, () -> {
+                Mac created = Mac.getInstance(algorithm);
+                created.init(key.getSecretKey());
+                return created;
+            });
             mac.update(data);
             byte[] verificationSignature = mac.doFinal();
+            engines.release(KeyEngines.MAC + algorithm, mac);
             return MessageDigest.isEqual(verificationSignature, signature);
         } catch (Exception e) {
             throw new VerificationException("Signing failed", e);
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.crypto;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Assert;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.keycloak.common.crypto.CryptoIntegration;
+import org.keycloak.common.util.KeyUtils;
+import org.keycloak.common.util.SecretGenerator;
+import org.keycloak.rule.CryptoInitRule;
+
+/**
+ * Signing and verifying with the same contexts repeatedly and from several threads, as the contexts reuse the
+ * engines initialized with the key. The subclasses should be created in the crypto modules to make sure it is tested
+ * with corresponding modules (bouncycastle VS bouncycastle-fips)
+ */
+public abstract class SignatureContextTest {
+
+    private static final int THREADS = 4;
+    private static final int ITERATIONS = 20;
+
+    @ClassRule
+    public static CryptoInitRule cryptoInitRule = new CryptoInitRule();
+
+    @Test
+    public void testRS256() throws Exception {
+        testSignAndVerify(rsaKey(Algorithm.RS256, KeyUtils.generateRsaKeyPair(2048)));
+    }
+
+    @Test
+    public void testPS256() throws Exception {
+        testSignAndVerify(rsaKey(Algorithm.PS256, KeyUtils.generateRsaKeyPair(2048)));
+    }
+
+    @Test
+    public void testES256() throws Exception {
+        testSignAndVerify(ecKey(Algorithm.ES256, generateEcKeyPair("secp256r1")));
+    }
+
+    @Test
+    public void testHS256() throws Exception {
+        testSignAndVerify(secretKey(Algorithm.HS256));
+    }
+
+    @Test
+    public void testKeyChange() throws Exception {
+        KeyPair first = KeyUtils.generateRsaKeyPair(2048);
+        KeyPair second = KeyUtils.generateRsaKeyPair(2048);
+        KeyWrapper key = rsaKey(Algorithm.RS256, first);
+        byte[] data = "data".getBytes(StandardCharsets.UTF_8);
+
+        SignatureSignerContext signer = new AsymmetricSignatureSignerContext(key);
+        SignatureVerifierContext verifier = new AsymmetricSignatureVerifierContext(key);
+        Assert.assertTrue(verifier.verify(data, signer.sign(data)));
+
+        key.setPrivateKey(second.getPrivate());
+        byte[] signature = signer.sign(data);
+        Assert.assertFalse(verifier.verify(data, signature));
+
+        key.setPublicKey(second.getPublic());
+        Assert.assertTrue(verifier.verify(data, signature));
+        Assert.assertTrue(new AsymmetricSignatureVerifierContext(rsaKey(Algorithm.RS256, second)).verify(data, signature));
+    }
+
+    protected void testSignAndVerify(KeyWrapper key) throws Exception {
+        SignatureSignerContext signer = signer(key);
+        SignatureVerifierContext verifier = verifier(key);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                results.add(executor.submit(() -> {
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        byte[] data = ("data-" + thread + "-" + i).getBytes(StandardCharsets.UTF_8);
+                        byte[] signature = signer.sign(data);
+                        Assert.assertTrue(verifier.verify(data, signature));
+
+                        byte[] other = ("other-" + thread + "-" + i).getBytes(StandardCharsets.UTF_8);
+                        Assert.assertFalse(verifier.verify(other, signature));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private SignatureSignerContext signer(KeyWrapper key) {
+        if (KeyType.OCT.equals(key.getType())) {
+            return new MacSignatureSignerContext(key);
+        }
+        // ASN.1 DER signatures, so that the same verifier context can be used for all the asymmetric algorithms
+        return new AsymmetricSignatureSignerContext(key);
+    }
+
+    private SignatureVerifierContext verifier(KeyWrapper key) {
+        if (KeyType.OCT.equals(key.getType())) {
+            return new MacSignatureVerifierContext(key);
+        }
+        return new AsymmetricSignatureVerifierContext(key);
+    }
+
+    protected static KeyPair generateEcKeyPair(String curve) throws Exception {
+        KeyPairGenerator generator = CryptoIntegration.getProvider().getKeyPairGen("EC");
+        generator.initialize(new ECGenParameterSpec(curve));
+        return generator.generateKeyPair();
+    }
+
+    protected static KeyWrapper rsaKey(String algorithm, KeyPair keyPair) {
+        return key(KeyType.RSA, algorithm, keyPair);
+    }
+
+    protected static KeyWrapper ecKey(String algorithm, KeyPair keyPair) {
+        return key(KeyType.EC, algorithm, keyPair);
+    }
+
+    protected static KeyWrapper secretKey(String algorithm) {
+        KeyWrapper key = new KeyWrapper();
+        key.setKid("secret");
+        key.setType(KeyType.OCT);
+        key.setAlgorithm(algorithm);
+        key.setSecretKey(new SecretKeySpec(SecretGenerator.getInstance().randomBytes(32), JavaAlgorithm.getJavaAlgorithm(algorithm)));
+        return key;
+    }
+
+    private static KeyWrapper key(String type, String algorithm, KeyPair keyPair) {
+        KeyWrapper key = new KeyWrapper();
+        key.setKid(KeyUtils.createKeyId(keyPair.getPublic()));
+        key.setType(type);
+        key.setAlgorithm(algorithm);
+        key.setPrivateKey(keyPair.getPrivate());
+        key.setPublicKey(keyPair.getPublic());
+        return key;
+    }
+}
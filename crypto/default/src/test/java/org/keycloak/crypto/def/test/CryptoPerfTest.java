@@ -19,10 +19,15 @@
 
 package org.keycloak.crypto.def.test;
 
+import java.nio.charset.StandardCharsets;
 import java.security.KeyPair;
+import java.security.KeyPairGenerator;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.cert.Certificate;
+import java.security.spec.ECGenParameterSpec;
+
+import javax.crypto.spec.SecretKeySpec;
 
 import org.jboss.logging.Logger;
 import org.junit.Assert;
@@ -30,14 +35,25 @@ import org.junit.ClassRule;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.keycloak.RSATokenVerifier;
+import org.keycloak.common.crypto.CryptoIntegration;
 import org.keycloak.common.util.CertificateUtils;
 import org.keycloak.common.util.KeyUtils;
 import org.keycloak.common.util.PemUtils;
+import org.keycloak.common.util.SecretGenerator;
 import org.keycloak.common.util.Time;
 import org.keycloak.component.ComponentValidationException;
 import org.keycloak.credential.hash.Pbkdf2PasswordHashProvider;
 import org.keycloak.credential.hash.Pbkdf2Sha256PasswordHashProviderFactory;
 import org.keycloak.credential.hash.Pbkdf2Sha512PasswordHashProviderFactory;
+import org.keycloak.crypto.Algorithm;
+import org.keycloak.crypto.AsymmetricSignatureSignerContext;
+import org.keycloak.crypto.AsymmetricSignatureVerifierContext;
+import org.keycloak.crypto.KeyType;
+import org.keycloak.crypto.KeyWrapper;
+import org.keycloak.crypto.MacSignatureSignerContext;
+import org.keycloak.crypto.MacSignatureVerifierContext;
+import org.keycloak.crypto.SignatureSignerContext;
+import org.keycloak.crypto.SignatureVerifierContext;
 import org.keycloak.jose.jws.JWSBuilder;
 import org.keycloak.representations.AccessToken;
 import org.keycloak.rule.CryptoInitRule;
@@ -54,6 +70,7 @@ import org.keycloak.util.TokenUtil;
 public class CryptoPerfTest {
 
     private static final int COUNT_ITERATIONS = 100;
+    private static final int COUNT_SIGNATURES = 1000;
 
     @ClassRule
     public static CryptoInitRule cryptoInitRule = new CryptoInitRule();
@@ -109,6 +126,35 @@ public class CryptoPerfTest {
         perfTest(() -> testTokenSignAndVerify(keyPair), "testSignAndVerifyTokens2048");
     }
 
+    @Test
+    public void testSignAndVerifyContextsRS256() {
+        KeyWrapper key = asymmetricKey(KeyType.RSA, Algorithm.RS256, generateKeys(2048));
+        perfTest(() -> signAndVerify(new AsymmetricSignatureSignerContext(key), new AsymmetricSignatureVerifierContext(key)), "testSignAndVerifyContextsRS256", COUNT_SIGNATURES);
+    }
+
+    @Test
+    public void testSignAndVerifyContextsPS256() {
+        KeyWrapper key = asymmetricKey(KeyType.RSA, Algorithm.PS256, generateKeys(2048));
+        perfTest(() -> signAndVerify(new AsymmetricSignatureSignerContext(key), new AsymmetricSignatureVerifierContext(key)), "testSignAndVerifyContextsPS256", COUNT_SIGNATURES);
+    }
+
+    @Test
+    public void testSignAndVerifyContextsES256() throws Exception {
+        KeyPairGenerator generator = CryptoIntegration.getProvider().getKeyPairGen("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyWrapper key = asymmetricKey(KeyType.EC, Algorithm.ES256, generator.generateKeyPair());
+        perfTest(() -> signAndVerify(new AsymmetricSignatureSignerContext(key), new AsymmetricSignatureVerifierContext(key)), "testSignAndVerifyContextsES256", COUNT_SIGNATURES);
+    }
+
+    @Test
+    public void testSignAndVerifyContextsHS256() {
+        KeyWrapper key = new KeyWrapper();
+        key.setType(KeyType.OCT);
+        key.setAlgorithm(Algorithm.HS256);
+        key.setSecretKey(new SecretKeySpec(SecretGenerator.getInstance().randomBytes(32), "HmacSHA256"));
+        perfTest(() -> signAndVerify(new MacSignatureSignerContext(key), new MacSignatureVerifierContext(key)), "testSignAndVerifyContextsHS256", COUNT_SIGNATURES);
+    }
+
     @Test
     public void testPbkdf256() {
         int iterations = 600 * 1000;
@@ -166,6 +212,25 @@ public class CryptoPerfTest {
         }
     }
 
+    private KeyWrapper asymmetricKey(String type, String algorithm, KeyPair keyPair) {
+        KeyWrapper key = new KeyWrapper();
+        key.setType(type);
+        key.setAlgorithm(algorithm);
+        key.setPrivateKey(keyPair.getPrivate());
+        key.setPublicKey(keyPair.getPublic());
+        return key;
+    }
+
+    // New contexts for each signature like in the server, the engines initialized with the key are reused
+    private void signAndVerify(SignatureSignerContext signer, SignatureVerifierContext verifier) {
+        try {
+            byte[] data = "12345678901234567890".getBytes(StandardCharsets.UTF_8);
+            Assert.assertTrue(verifier.verify(data, signer.sign(data)));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public void testTokenSignAndVerify(KeyPair keyPair) {
         try {
             AccessToken token = new AccessToken();
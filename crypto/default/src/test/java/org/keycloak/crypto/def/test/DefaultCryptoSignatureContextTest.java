@@ -0,0 +1,19 @@
+package org.keycloak.crypto.def.test;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.keycloak.common.util.Environment;
+import org.keycloak.crypto.SignatureContextTest;
+
+/**
+ * Test with bouncycastle security provider
+ *
+ */
+public class DefaultCryptoSignatureContextTest extends SignatureContextTest {
+
+    @Before
+    public void before() {
+        // Run this test just if java is not in FIPS mode
+        Assume.assumeFalse("Java is in FIPS mode. Skipping the test.", Environment.isJavaInFipsMode());
+    }
+}
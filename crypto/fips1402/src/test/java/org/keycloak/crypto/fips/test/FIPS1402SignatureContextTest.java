@@ -0,0 +1,19 @@
+package org.keycloak.crypto.fips.test;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.keycloak.common.util.Environment;
+import org.keycloak.crypto.SignatureContextTest;
+
+/**
+ * Test with fips1402 security provider and bouncycastle-fips
+ *
+ */
+public class FIPS1402SignatureContextTest extends SignatureContextTest {
+
+    @Before
+    public void before() {
+        // Run this test just if java is in FIPS mode
+        Assume.assumeTrue("Java is not in FIPS mode. Skipping the test.", Environment.isJavaInFipsMode());
+    }
+}
@@ -40,6 +40,7 @@ import org.keycloak.storage.ReadOnlyException;
 import org.keycloak.storage.UserStoragePrivateUtil;
 import org.keycloak.storage.UserStorageProvider;
 import org.keycloak.storage.UserStorageProviderModel;
+import org.keycloak.storage.UserStorageUtil;
 import org.keycloak.storage.user.ImportedUserValidation;
 import org.keycloak.storage.user.UserLookupProvider;
 import org.keycloak.userprofile.AttributeContext;
@@ -293,6 +294,11 @@ public class KerberosFederationProvider implements UserStorageProvider,
             user.addRequiredAction(UserModel.RequiredAction.UPDATE_PROFILE);
         }
 
+        if (UserStorageUtil.userCache(session) != null) {
+            // The lookups by the username or the email, which did not find the user before, may be cached
+            UserStorageUtil.userCache(session).evict(realm, user);
+        }
+
         return validate(realm, user);
     }
 
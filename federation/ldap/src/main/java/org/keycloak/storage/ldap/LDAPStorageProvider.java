@@ -633,6 +633,7 @@ public class LDAPStorageProvider implements UserStorageProvider,
         LDAPUtils.checkUuid(ldapUser, ldapIdentityStore.getConfig());
 
         UserModel imported;
+        boolean added = false;
         if (model.isImportEnabled()) {
             // Search if there is already an existing user, which means the username might have changed in LDAP without Keycloak knowing about it
             UserModel existingLocalUser = UserStoragePrivateUtil.userLocalStorage(session)
@@ -649,6 +650,7 @@ public class LDAPStorageProvider implements UserStorageProvider,
                 }
             } else {
                 imported = UserStoragePrivateUtil.userLocalStorage(session).addUser(realm, ldapUsername);
+                added = true;
             }
 
         } else {
@@ -687,6 +689,10 @@ public class LDAPStorageProvider implements UserStorageProvider,
         }
         logger.debugf("Imported new user from LDAP to Keycloak DB. Username: [%s], Email: [%s], LDAP_ID: [%s], LDAP Entry DN: [%s]", imported.getUsername(), imported.getEmail(),
                 ldapUser.getUuid(), userDN);
+        if (added && UserStorageUtil.userCache(session) != null) {
+            // The lookups by the username or the email, which did not find the user before, may be cached
+            UserStorageUtil.userCache(session).evict(realm, imported);
+        }
         UserModel proxy = proxy(realm, imported, ldapUser, false);
         return proxy;
     }
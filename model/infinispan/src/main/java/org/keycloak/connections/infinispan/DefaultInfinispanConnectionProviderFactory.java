@@ -319,7 +319,7 @@ public class DefaultInfinispanConnectionProviderFactory implements InfinispanCon
             configureRemoteCacheStore(sessionConfigBuilder, async, InfinispanConnectionProvider.OFFLINE_USER_SESSION_CACHE_NAME);
         }
         sessionCacheConfiguration = sessionConfigBuilder.build();
-        cacheManager.defineConfiguration(InfinispanConnectionProvider.OFFLINE_USER_SESSION_CACHE_NAME, sessionCacheConfiguration);
+        cacheManager.defineConfiguration(InfinispanConnectionProvider.OFFLINE_USER_SESSION_CACHE_NAME, getOfflineSessionCacheConfig(sessionCacheConfiguration));
 
         if (jdgEnabled) {
             sessionConfigBuilder = createCacheConfigurationBuilder();
@@ -335,7 +335,7 @@ public class DefaultInfinispanConnectionProviderFactory implements InfinispanCon
             configureRemoteCacheStore(sessionConfigBuilder, async, InfinispanConnectionProvider.OFFLINE_CLIENT_SESSION_CACHE_NAME);
         }
         sessionCacheConfiguration = sessionConfigBuilder.build();
-        cacheManager.defineConfiguration(InfinispanConnectionProvider.OFFLINE_CLIENT_SESSION_CACHE_NAME, sessionCacheConfiguration);
+        cacheManager.defineConfiguration(InfinispanConnectionProvider.OFFLINE_CLIENT_SESSION_CACHE_NAME, getOfflineSessionCacheConfig(sessionCacheConfiguration));
 
         if (jdgEnabled) {
             sessionConfigBuilder = createCacheConfigurationBuilder();
@@ -345,7 +345,7 @@ public class DefaultInfinispanConnectionProviderFactory implements InfinispanCon
         sessionCacheConfiguration = sessionConfigBuilder.build();
         cacheManager.defineConfiguration(InfinispanConnectionProvider.LOGIN_FAILURE_CACHE_NAME, sessionCacheConfiguration);
 
-        cacheManager.defineConfiguration(InfinispanConnectionProvider.AUTHENTICATION_SESSIONS_CACHE_NAME, sessionCacheConfigurationBase);
+        cacheManager.defineConfiguration(InfinispanConnectionProvider.AUTHENTICATION_SESSIONS_CACHE_NAME, getAuthenticationSessionCacheConfig(sessionCacheConfigurationBase));
 
         // Retrieve caches to enforce rebalance
         cacheManager.getCache(InfinispanConnectionProvider.USER_SESSION_CACHE_NAME, true);
@@ -413,6 +413,35 @@ public class DefaultInfinispanConnectionProviderFactory implements InfinispanCon
         return cacheManager;
     }
 
+    // Offline sessions are persisted in the database, so the cache can be bounded. Evicted sessions are loaded lazily on the next access
+    private Configuration getOfflineSessionCacheConfig(Configuration sessionCacheConfiguration) {
+        long maxCount = config.getLong("offlineSessionsMaxCount", -1L);
+        if (maxCount <= 0) {
+            return sessionCacheConfiguration;
+        }
+
+        logger.debugf("Offline sessions max count: %d", maxCount);
+        ConfigurationBuilder cb = createCacheConfigurationBuilder();
+        cb.read(sessionCacheConfiguration);
+        cb.memory().maxCount(maxCount);
+        return cb.build();
+    }
+
+    // Abandoned authentication sessions stay until their lifespan expires, so the cache can be bounded to survive a storm of them.
+    // When evicted, the login is restarted from the restart cookie
+    private Configuration getAuthenticationSessionCacheConfig(Configuration sessionCacheConfiguration) {
+        long maxCount = config.getLong("authSessionsMaxCount", -1L);
+        if (maxCount <= 0) {
+            return sessionCacheConfiguration;
+        }
+
+        logger.debugf("Authentication sessions max count: %d", maxCount);
+        ConfigurationBuilder cb = createCacheConfigurationBuilder();
+        cb.read(sessionCacheConfiguration);
+        cb.memory().maxCount(maxCount);
+        return cb.build();
+    }
+
     private Configuration getRevisionCacheConfig(long maxEntries) {
         ConfigurationBuilder cb = createCacheConfigurationBuilder();
         cb.simpleCache(false);
@@ -24,6 +24,8 @@ import java.util.Optional;
 
 import org.infinispan.Cache;
 import org.infinispan.distribution.DistributionManager;
+import org.infinispan.distribution.LocalizedCacheTopology;
+import org.infinispan.distribution.ch.ConsistentHash;
 import org.infinispan.manager.EmbeddedCacheManager;
 import org.infinispan.remoting.transport.Address;
 import org.infinispan.remoting.transport.LocalModeAddress;
@@ -150,7 +152,7 @@ public class TopologyInfo {
         }
 
         // Impl based on Wildfly sticky session algorithm for generating routes ( org.wildfly.clustering.web.infinispan.session.InfinispanRouteLocator )
-        Address address = getOwnerAddress(cache, key);
+        Address address = getRouteOwnerAddress(cache, key);
 
         // Local mode
         if (address == null ||  (address == LocalModeAddress.INSTANCE)) {
@@ -188,6 +190,26 @@ public class TopologyInfo {
     }
 
 
+    /**
+     * Primary owner of the key, which the route should point to. During the rebalance, it is the owner according to the
+     * pending consistent hash, so that the route stays valid after the rebalance finished and is not re-encoded twice.
+     */
+    private Address getRouteOwnerAddress(Cache cache, Object key) {
+        DistributionManager dist = cache.getAdvancedCache().getDistributionManager();
+        if (dist == null || cache.getCacheConfiguration().clustering().cacheMode().isScattered()) {
+            return cache.getCacheManager().getAddress();
+        }
+
+        LocalizedCacheTopology topology = dist.getCacheTopology();
+        ConsistentHash pendingCH = topology.getTopology().getPendingCH();
+        if (pendingCH == null) {
+            return topology.getDistribution(key).primary();
+        }
+
+        return pendingCH.locatePrimaryOwnerForSegment(topology.getSegment(key));
+    }
+
+
     // See org.wildfly.clustering.server.group.CacheGroup
     private static org.jgroups.Address toJGroupsAddress(Address address) {
         if ((address == null) || (address == LocalModeAddress.INSTANCE)) return null;
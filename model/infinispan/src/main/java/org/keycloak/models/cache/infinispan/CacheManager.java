@@ -5,6 +5,7 @@ import org.jboss.logging.Logger;
 import org.keycloak.cluster.ClusterProvider;
 import org.keycloak.models.cache.infinispan.events.InvalidationEvent;
 import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.cache.infinispan.entities.IdListQuery;
 import org.keycloak.models.cache.infinispan.entities.Revisioned;
 
 import java.util.Collection;
@@ -58,10 +59,13 @@ public abstract class CacheManager {
     protected final Cache<String, Long> revisions;
     protected final Cache<String, Revisioned> cache;
     protected final UpdateCounter counter = new UpdateCounter();
+    protected final CacheStats stats;
 
     public CacheManager(Cache<String, Revisioned> cache, Cache<String, Long> revisions) {
         this.cache = cache;
         this.revisions = revisions;
+        this.stats = new CacheStats(cache.getName());
+        cache.addListener(stats.evictionListener());
     }
 
     protected abstract Logger getLogger();
@@ -70,6 +74,10 @@ public abstract class CacheManager {
         return cache;
     }
 
+    public CacheStats getStats() {
+        return stats;
+    }
+
     public long getCurrentCounter() {
         return counter.current();
     }
@@ -94,6 +102,7 @@ public abstract class CacheManager {
     public <T extends Revisioned> T get(String id, Class<T> type) {
         Revisioned o = (Revisioned)cache.get(id);
         if (o == null) {
+            stats.increment(CacheStats.Counter.MISS, type);
             return null;
         }
         Long rev = revisions.get(id);
@@ -107,6 +116,7 @@ public abstract class CacheManager {
              ** this allows caching the current version again
              */
             cache.remove(id);
+            stats.increment(CacheStats.Counter.MISS, type);
             return null;
         }
         long oRev = o.getRevision() == null ? -1L : o.getRevision().longValue();
@@ -116,9 +126,17 @@ public abstract class CacheManager {
             }
             // the object in this.cache is outdated => remove it
             cache.remove(id);
+            stats.increment(CacheStats.Counter.STALE, o.getClass());
+            stats.increment(CacheStats.Counter.MISS, type);
             return null;
         }
-        return o != null && type.isInstance(o) ? type.cast(o) : null;
+        if (!type.isInstance(o)) {
+            stats.increment(CacheStats.Counter.MISS, type);
+            return null;
+        }
+        // Tagged with the requested type like the misses, so that they can be compared
+        stats.increment(CacheStats.Counter.HIT, type);
+        return type.cast(o);
     }
 
     public Object invalidateObject(String id) {
@@ -127,6 +145,9 @@ public abstract class CacheManager {
         if (getLogger().isTraceEnabled()) {
             getLogger().tracef("Removed key='%s', value='%s' from cache", id, removed);
         }
+        if (removed != null) {
+            stats.increment(CacheStats.Counter.INVALIDATED, removed.getClass());
+        }
 
         bumpVersion(id);
         return removed;
@@ -156,34 +177,102 @@ public abstract class CacheManager {
                 if (getLogger().isTraceEnabled()) {
                     getLogger().tracev("Could not obtain version lock: {0}", id);
                 }
+                stats.increment(CacheStats.Counter.ADD_SKIPPED, object.getClass());
                 return;
             }
             rev = revisions.get(id);
             if (rev == null) {
+                stats.increment(CacheStats.Counter.ADD_SKIPPED, object.getClass());
                 return;
             }
             if (rev > startupRevision) { // revision is ahead transaction start. Other transaction updated in the meantime. Don't cache
                 if (getLogger().isTraceEnabled()) {
                     getLogger().tracev("Skipped cache. Current revision {0}, Transaction start revision {1}", object.getRevision(), startupRevision);
                 }
+                stats.increment(CacheStats.Counter.STALE, object.getClass());
+                stats.increment(CacheStats.Counter.ADD_SKIPPED, object.getClass());
                 return;
             }
             if (rev.equals(object.getRevision())) {
                 cache.putForExternalRead(id, object);
+                stats.increment(CacheStats.Counter.ADDED, object.getClass());
                 return;
             }
             if (rev > object.getRevision()) { // revision is ahead, don't cache
                 if (getLogger().isTraceEnabled()) getLogger().tracev("Skipped cache. Object revision {0}, Cache revision {1}", object.getRevision(), rev);
+                stats.increment(CacheStats.Counter.STALE, object.getClass());
+                stats.increment(CacheStats.Counter.ADD_SKIPPED, object.getClass());
                 return;
             }
             // revisions cache has a lower value than the object.revision, so update revision and add it to cache
             revisions.put(id, object.getRevision());
             if (lifespan < 0) cache.putForExternalRead(id, object);
             else cache.putForExternalRead(id, object, lifespan, TimeUnit.MILLISECONDS);
+            stats.increment(CacheStats.Counter.ADDED, object.getClass());
+        } finally {
+            endRevisionBatch();
+        }
+
+    }
+
+    /**
+     * Replaces the cached object with the reloaded one, which has the same revision. Unlike with
+     * {@link #addRevisioned(Revisioned, long, long)}, the object is replaced when it is already cached, so that the
+     * current object is never missing in the cache. Nothing is done when the object was invalidated since the
+     * transaction started.
+     *
+     * @return {@code true} if the object was replaced
+     */
+    public boolean refreshRevisioned(Revisioned object, long startupRevision, long lifespan) {
+        String id = object.getId();
+        try {
+            revisions.startBatch();
+            if (!revisions.getAdvancedCache().lock(id)) {
+                return false;
+            }
+            Long rev = revisions.get(id);
+            if (rev == null || rev > startupRevision || !rev.equals(object.getRevision())) {
+                if (getLogger().isTraceEnabled()) {
+                    getLogger().tracev("Skipped refresh. Object revision {0}, Cache revision {1}, Transaction start revision {2}", object.getRevision(), rev, startupRevision);
+                }
+                stats.increment(CacheStats.Counter.STALE, object.getClass());
+                return false;
+            }
+            if (lifespan < 0) cache.put(id, object);
+            else cache.put(id, object, lifespan, TimeUnit.MILLISECONDS);
+            stats.increment(CacheStats.Counter.ADDED, object.getClass());
+            return true;
         } finally {
             endRevisionBatch();
         }
+    }
 
+    /**
+     * Applies the changes to the cached list of IDs instead of removing it. The revision is bumped like with the
+     * invalidation, so that the lists loaded from the database concurrently with the change are not cached. When the
+     * list is not cached or is not current, it is just invalidated.
+     */
+    public void updateListQuery(String id, Map<String, Boolean> changes) {
+        Revisioned current = cache.get(id);
+        Long rev = revisions.get(id);
+
+        if (!(current instanceof IdListQuery) || rev == null || current.getRevision() == null || rev > current.getRevision()) {
+            invalidateObject(id);
+            return;
+        }
+
+        long next = counter.next();
+        IdListQuery updated = ((IdListQuery) current).withChanges(next, changes);
+
+        // Fails when the list was removed in the meantime, which means it was invalidated concurrently
+        if (cache.replace(id, current, updated)) {
+            revisions.put(id, next);
+            if (getLogger().isTraceEnabled()) {
+                getLogger().tracef("Updated list query '%s' with %d changes", id, changes.size());
+            }
+        } else {
+            invalidateObject(id);
+        }
     }
 
     public void clear() {
@@ -212,22 +301,32 @@ public abstract class CacheManager {
         // Maybe add InvalidationEvent, which will be collection of all invalidationEvents? That will reduce cluster traffic even more.
         for (InvalidationEvent event : invalidationEvents) {
             clusterProvider.notify(eventKey, event, true, ClusterProvider.DCNotify.ALL_DCS);
+            stats.increment(CacheStats.Counter.EVENT_SENT, event.getClass());
         }
     }
 
 
     public void invalidationEventReceived(InvalidationEvent event) {
+        stats.increment(CacheStats.Counter.EVENT_RECEIVED, event.getClass());
+
         Set<String> invalidations = new HashSet<>();
+        ListQueryChanges listChanges = new ListQueryChanges();
 
         addInvalidationsFromEvent(event, invalidations);
+        addListChangesFromEvent(event, listChanges);
 
         getLogger().debugf("[%s] Invalidating %d cache items after received event %s", cache.getCacheManager().getAddress(), invalidations.size(), event);
 
         for (String invalidation : invalidations) {
             invalidateObject(invalidation);
         }
+
+        listChanges.applyTo(this, invalidations);
     }
 
     protected abstract void addInvalidationsFromEvent(InvalidationEvent event, Set<String> invalidations);
 
+    protected void addListChangesFromEvent(InvalidationEvent event, ListQueryChanges listChanges) {
+    }
+
 }
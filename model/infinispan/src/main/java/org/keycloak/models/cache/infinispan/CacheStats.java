@@ -0,0 +1,154 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.cache.infinispan;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntriesEvicted;
+import org.infinispan.notifications.cachelistener.event.CacheEntriesEvictedEvent;
+import org.keycloak.models.cache.infinispan.entities.Revisioned;
+
+/**
+ * Counters of the operations of a {@link CacheManager}, kept per type of the cached entity or of the invalidation event.
+ * The counters are created on the first use, the {@link CounterListener} set by the runtime is notified about each of
+ * them so that it can be exposed, for example in a metrics registry.
+ */
+public class CacheStats {
+
+    public enum Counter {
+        HIT,
+        MISS,
+        STALE,
+        ADDED,
+        ADD_SKIPPED,
+        INVALIDATED,
+        EVICTED,
+        EVENT_SENT,
+        EVENT_RECEIVED,
+        STALE_SERVED,
+        REVALIDATED,
+        REVALIDATION_FAILED,
+        REVALIDATION_REJECTED;
+
+        public String getName() {
+            return name().toLowerCase(Locale.ROOT).replace('_', '.');
+        }
+    }
+
+    public interface CounterListener {
+        /**
+         * @param value the counter, which lives as long as the cache. Listeners holding it only weakly, like the
+         * metrics registries, must get the counter itself rather than a function reading it
+         */
+        void counterCreated(String cacheName, Counter counter, String type, LongAdder value);
+    }
+
+    private static volatile CounterListener listener;
+
+    private final String cacheName;
+    private final Map<Key, LongAdder> counters = new ConcurrentHashMap<>();
+
+    public CacheStats(String cacheName) {
+        this.cacheName = cacheName;
+    }
+
+    /**
+     * Sets the listener notified about the counters created from now on. Expected to be set during the startup,
+     * before the caches are used.
+     */
+    public static void setCounterListener(CounterListener counterListener) {
+        listener = counterListener;
+    }
+
+    public String getCacheName() {
+        return cacheName;
+    }
+
+    public void increment(Counter counter, Class<?> type) {
+        increment(counter, type == null ? "unknown" : type.getSimpleName());
+    }
+
+    public void increment(Counter counter, String type) {
+        counters.computeIfAbsent(new Key(counter, type), this::createCounter).increment();
+    }
+
+    public long get(Counter counter, Class<?> type) {
+        LongAdder adder = counters.get(new Key(counter, type.getSimpleName()));
+        return adder == null ? 0 : adder.sum();
+    }
+
+    public long get(Counter counter) {
+        return counters.entrySet().stream()
+                .filter(entry -> entry.getKey().counter == counter)
+                .mapToLong(entry -> entry.getValue().sum())
+                .sum();
+    }
+
+    private LongAdder createCounter(Key key) {
+        LongAdder adder = new LongAdder();
+        CounterListener current = listener;
+        if (current != null) {
+            current.counterCreated(cacheName, key.counter, key.type, adder);
+        }
+        return adder;
+    }
+
+    EvictionListener evictionListener() {
+        return new EvictionListener();
+    }
+
+    @Listener(observation = Listener.Observation.POST)
+    public class EvictionListener {
+
+        @CacheEntriesEvicted
+        public void evicted(CacheEntriesEvictedEvent<String, Revisioned> event) {
+            for (Revisioned evicted : event.getEntries().values()) {
+                increment(Counter.EVICTED, evicted == null ? null : evicted.getClass());
+            }
+        }
+    }
+
+    private static final class Key {
+
+        private final Counter counter;
+        private final String type;
+
+        private Key(Counter counter, String type) {
+            this.counter = counter;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return counter == key.counter && type.equals(key.type);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(counter, type);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.cache.infinispan;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import org.jboss.logging.Logger;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.cache.UserCache;
+import org.keycloak.models.cache.infinispan.entities.CachedUser;
+import org.keycloak.models.utils.KeycloakModelUtils;
+
+/**
+ * Reloads the expired federated users in the background, while the stale users are still returned from the cache.
+ * At most one reload per user and at most the configured count of reloads in total run at the same time. The users,
+ * which cannot be reloaded right now, stay stale until a later lookup or until they exceed the max staleness of their
+ * user storage provider.
+ */
+public class CachedUserRevalidator {
+
+    private static final Logger logger = Logger.getLogger(CachedUserRevalidator.class);
+
+    public static final int DEFAULT_MAX_CONCURRENT_REVALIDATIONS = 4;
+
+    private final KeycloakSessionFactory sessionFactory;
+    private final Executor executor;
+    private final CacheStats stats;
+    private final Semaphore permits;
+    private final Set<String> inProgress = ConcurrentHashMap.newKeySet();
+
+    public CachedUserRevalidator(KeycloakSessionFactory sessionFactory, Executor executor, CacheStats stats, int maxConcurrentRevalidations) {
+        this.sessionFactory = sessionFactory;
+        this.executor = executor;
+        this.stats = stats;
+        this.permits = new Semaphore(Math.max(maxConcurrentRevalidations, 1));
+    }
+
+    public void revalidate(RealmModel realm, CachedUser cached, long lifespan) {
+        String userId = cached.getId();
+        if (!inProgress.add(userId)) {
+            return;
+        }
+        if (!permits.tryAcquire()) {
+            inProgress.remove(userId);
+            stats.increment(CacheStats.Counter.REVALIDATION_REJECTED, CachedUser.class);
+            return;
+        }
+
+        String realmId = realm.getId();
+        try {
+            executor.execute(() -> {
+                try {
+                    KeycloakModelUtils.runJobInTransaction(sessionFactory, session -> {
+                        UserCache userCache = session.getProvider(UserCache.class);
+                        RealmModel currentRealm = session.realms().getRealm(realmId);
+                        if (userCache instanceof UserCacheSession && currentRealm != null) {
+                            ((UserCacheSession) userCache).reloadUser(currentRealm, userId, lifespan);
+                        }
+                    });
+                    stats.increment(CacheStats.Counter.REVALIDATED, CachedUser.class);
+                } catch (RuntimeException e) {
+                    logger.warnf(e, "Failed to revalidate cached user '%s' in realm '%s'", userId, realmId);
+                    stats.increment(CacheStats.Counter.REVALIDATION_FAILED, CachedUser.class);
+                } finally {
+                    permits.release();
+                    inProgress.remove(userId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            inProgress.remove(userId);
+            stats.increment(CacheStats.Counter.REVALIDATION_REJECTED, CachedUser.class);
+        }
+    }
+}
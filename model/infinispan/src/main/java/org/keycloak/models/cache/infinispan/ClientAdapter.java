@@ -22,6 +22,7 @@ import org.keycloak.models.ClientScopeModel;
 import org.keycloak.models.ProtocolMapperModel;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.RoleModel;
+import org.keycloak.models.cache.CachedClientScopeModel;
 import org.keycloak.models.cache.CachedObject;
 import org.keycloak.models.cache.infinispan.entities.CachedClient;
 import org.keycloak.models.utils.RoleUtils;
@@ -32,13 +33,14 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
-public class ClientAdapter implements ClientModel, CachedObject {
+public class ClientAdapter implements ClientModel, CachedObject, CachedClientScopeModel {
     protected RealmCacheSession cacheSession;
     protected RealmModel cachedRealm;
 
@@ -76,6 +78,12 @@ public class ClientAdapter implements ClientModel, CachedObject {
         return cached.getCacheTimestamp();
     }
 
+    @Override
+    public ConcurrentHashMap getCachedWith() {
+        if (isUpdated()) return null;
+        return cached.getCachedWith();
+    }
+
     @Override
     public void updateClient() {
         if (updated != null) updated.updateClient();
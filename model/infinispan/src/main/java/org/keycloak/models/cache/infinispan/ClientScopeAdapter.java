@@ -21,18 +21,20 @@ import org.keycloak.models.ClientScopeModel;
 import org.keycloak.models.ProtocolMapperModel;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.RoleModel;
+import org.keycloak.models.cache.CachedClientScopeModel;
 import org.keycloak.models.cache.infinispan.entities.CachedClientScope;
 import org.keycloak.models.utils.RoleUtils;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
-public class ClientScopeAdapter implements ClientScopeModel {
+public class ClientScopeAdapter implements CachedClientScopeModel {
     protected RealmCacheSession cacheSession;
     protected RealmModel cachedRealm;
 
@@ -66,6 +68,12 @@ public class ClientScopeAdapter implements ClientScopeModel {
         return true;
     }
 
+    @Override
+    public ConcurrentHashMap getCachedWith() {
+        if (isUpdated()) return null;
+        return cached.getCachedWith();
+    }
+
 
     @Override
     public String getId() {
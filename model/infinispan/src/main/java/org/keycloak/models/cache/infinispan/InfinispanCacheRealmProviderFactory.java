@@ -23,12 +23,23 @@ import org.keycloak.Config;
 import org.keycloak.cluster.ClusterEvent;
 import org.keycloak.cluster.ClusterProvider;
 import org.keycloak.connections.infinispan.InfinispanConnectionProvider;
+import org.keycloak.models.ClientModel;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
 import org.keycloak.models.cache.CacheRealmProvider;
 import org.keycloak.models.cache.CacheRealmProviderFactory;
 import org.keycloak.models.cache.infinispan.entities.Revisioned;
 import org.keycloak.models.cache.infinispan.events.InvalidationEvent;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.models.utils.PostMigrationEvent;
+import org.keycloak.provider.ProviderConfigProperty;
+import org.keycloak.provider.ProviderConfigurationBuilder;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
@@ -39,9 +50,13 @@ public class InfinispanCacheRealmProviderFactory implements CacheRealmProviderFa
     private static final Logger log = Logger.getLogger(InfinispanCacheRealmProviderFactory.class);
     public static final String REALM_CLEAR_CACHE_EVENTS = "REALM_CLEAR_CACHE_EVENTS";
     public static final String REALM_INVALIDATION_EVENTS = "REALM_INVALIDATION_EVENTS";
+    public static final String WARM_UP_REALMS = "warmUpRealms";
+    private static final String ALL_REALMS = "*";
 
     protected volatile RealmCacheManager realmCache;
 
+    private Set<String> warmUpRealms;
+
     @Override
     public CacheRealmProvider create(KeycloakSession session) {
         lazyInit(session);
@@ -78,11 +93,71 @@ public class InfinispanCacheRealmProviderFactory implements CacheRealmProviderFa
 
     @Override
     public void init(Config.Scope config) {
+        String[] realms = config.getArray(WARM_UP_REALMS);
+        warmUpRealms = realms == null ? Set.of() : Arrays.stream(realms).map(String::trim).filter(realm -> !realm.isEmpty()).collect(Collectors.toSet());
     }
 
     @Override
     public void postInit(KeycloakSessionFactory factory) {
+        if (warmUpRealms.isEmpty()) {
+            return;
+        }
+
+        // runs during the startup, so the server doesn't serve requests before the cache is filled
+        factory.register(event -> {
+            if (event instanceof PostMigrationEvent) {
+                warmUp(factory);
+            }
+        });
+    }
+
+    /**
+     * Loads the configured realms with their clients, client scopes, roles and authentication flows to the cache, so
+     * that the first requests after a restart don't fill the cache one miss at a time.
+     */
+    protected void warmUp(KeycloakSessionFactory factory) {
+        long start = System.currentTimeMillis();
+
+        List<String> realmIds = KeycloakModelUtils.runJobInTransactionWithResult(factory, session -> session.realms().getRealmsStream()
+                .filter(realm -> warmUpRealms.contains(ALL_REALMS) || warmUpRealms.contains(realm.getName()))
+                .map(RealmModel::getId)
+                .collect(Collectors.toList()));
+
+        for (String realmId : realmIds) {
+            try {
+                KeycloakModelUtils.runJobInTransaction(factory, session -> warmUpRealm(session, realmId));
+            } catch (RuntimeException e) {
+                log.warnf(e, "Failed to warm up the cache for realm '%s'", realmId);
+            }
+        }
 
+        log.infof("Warmed up the realm cache for %d realms in %d ms", realmIds.size(), System.currentTimeMillis() - start);
+    }
+
+    private void warmUpRealm(KeycloakSession session, String realmId) {
+        RealmModel realm = session.realms().getRealm(realmId);
+        if (realm == null) {
+            return;
+        }
+        session.getContext().setRealm(realm);
+
+        session.realms().getRealmByName(realm.getName());
+        realm.getAuthenticationFlowsStream().forEach(flow -> realm.getAuthenticationExecutionsStream(flow.getId()).count());
+        realm.getRolesStream().count();
+        realm.getClientScopesStream().forEach(clientScope -> clientScope.getScopeMappingsStream().count());
+
+        // the list of all clients is not cached, so each client is loaded through the cache
+        List<String> clientIds = session.clients().getClientsStream(realm).map(ClientModel::getId).collect(Collectors.toList());
+        for (String clientId : clientIds) {
+            ClientModel client = session.clients().getClientById(realm, clientId);
+            if (client == null) continue;
+            session.clients().getClientByClientId(realm, client.getClientId());
+            client.getRolesStream().count();
+            client.getClientScopes(true);
+            client.getClientScopes(false);
+        }
+
+        log.debugf("Warmed up the cache for realm '%s' with %d clients", realm.getName(), clientIds.size());
     }
 
     @Override
@@ -94,4 +169,16 @@ public class InfinispanCacheRealmProviderFactory implements CacheRealmProviderFa
         return "default";
     }
 
+    @Override
+    public List<ProviderConfigProperty> getConfigMetadata() {
+        return ProviderConfigurationBuilder.create()
+                .property()
+                .name(WARM_UP_REALMS)
+                .type("string")
+                .helpText("Comma-separated names of the realms, which are loaded to the cache during the startup, or '*' for all realms. " +
+                        "Realms are loaded on the first use if not set.")
+                .add()
+                .build();
+    }
+
 }
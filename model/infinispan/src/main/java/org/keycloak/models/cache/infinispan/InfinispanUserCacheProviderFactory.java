@@ -23,6 +23,7 @@ import org.keycloak.Config;
 import org.keycloak.cluster.ClusterEvent;
 import org.keycloak.cluster.ClusterProvider;
 import org.keycloak.connections.infinispan.InfinispanConnectionProvider;
+import org.keycloak.executors.ExecutorsProvider;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
 import org.keycloak.models.cache.UserCache;
@@ -30,6 +31,11 @@ import org.keycloak.models.cache.UserCacheProviderFactory;
 import org.keycloak.models.cache.infinispan.entities.Revisioned;
 import org.keycloak.models.cache.infinispan.events.InvalidationEvent;
 import org.keycloak.provider.InvalidationHandler;
+import org.keycloak.provider.ProviderConfigProperty;
+import org.keycloak.provider.ProviderConfigurationBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author <a href="mailto:sthorger@redhat.com">Stian Thorgersen</a>
@@ -39,9 +45,13 @@ public class InfinispanUserCacheProviderFactory implements UserCacheProviderFact
     private static final Logger log = Logger.getLogger(InfinispanUserCacheProviderFactory.class);
     public static final String USER_CLEAR_CACHE_EVENTS = "USER_CLEAR_CACHE_EVENTS";
     public static final String USER_INVALIDATION_EVENTS = "USER_INVALIDATION_EVENTS";
+    public static final String NEGATIVE_LOOKUP_LIFESPAN = "negativeLookupLifespan";
+    public static final String MAX_CONCURRENT_REVALIDATIONS = "maxConcurrentRevalidations";
 
     protected volatile UserCacheManager userCache;
 
+    private long negativeLookupLifespan;
+    private int maxConcurrentRevalidations;
 
 
     @Override
@@ -57,6 +67,10 @@ public class InfinispanUserCacheProviderFactory implements UserCacheProviderFact
                     Cache<String, Revisioned> cache = session.getProvider(InfinispanConnectionProvider.class).getCache(InfinispanConnectionProvider.USER_CACHE_NAME);
                     Cache<String, Long> revisions = session.getProvider(InfinispanConnectionProvider.class).getCache(InfinispanConnectionProvider.USER_REVISIONS_CACHE_NAME);
                     userCache = new UserCacheManager(cache, revisions);
+                    userCache.setNegativeLookupLifespan(negativeLookupLifespan);
+                    userCache.setRevalidator(new CachedUserRevalidator(session.getKeycloakSessionFactory(),
+                            session.getProvider(ExecutorsProvider.class).getExecutor("user-cache-revalidation"),
+                            userCache.getStats(), maxConcurrentRevalidations));
 
                     ClusterProvider cluster = session.getProvider(ClusterProvider.class);
 
@@ -90,6 +104,8 @@ public class InfinispanUserCacheProviderFactory implements UserCacheProviderFact
 
     @Override
     public void init(Config.Scope config) {
+        negativeLookupLifespan = TimeUnit.SECONDS.toMillis(config.getInt(NEGATIVE_LOOKUP_LIFESPAN, 0));
+        maxConcurrentRevalidations = config.getInt(MAX_CONCURRENT_REVALIDATIONS, CachedUserRevalidator.DEFAULT_MAX_CONCURRENT_REVALIDATIONS);
     }
 
     @Override
@@ -105,4 +121,24 @@ public class InfinispanUserCacheProviderFactory implements UserCacheProviderFact
     public String getId() {
         return "default";
     }
+
+    @Override
+    public List<ProviderConfigProperty> getConfigMetadata() {
+        return ProviderConfigurationBuilder.create()
+                .property()
+                .name(NEGATIVE_LOOKUP_LIFESPAN)
+                .type("int")
+                .helpText("Number of seconds for which it is cached that no user was found by the username or email, " +
+                        "so that the user storage and the federation providers are not queried again. Disabled if not set.")
+                .defaultValue(0)
+                .add()
+                .property()
+                .name(MAX_CONCURRENT_REVALIDATIONS)
+                .type("int")
+                .helpText("The maximum number of the expired federated users, which are reloaded in the background at the same time. " +
+                        "Used by the user storage providers with the max staleness set.")
+                .defaultValue(CachedUserRevalidator.DEFAULT_MAX_CONCURRENT_REVALIDATIONS)
+                .add()
+                .build();
+    }
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.cache.infinispan;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.keycloak.models.cache.infinispan.entities.IdListQuery;
+
+/**
+ * Additions and removals of entities collected by a transaction or received in an invalidation event, which are applied
+ * to the cached {@link IdListQuery}s in place instead of invalidating them.
+ */
+public class ListQueryChanges {
+
+    // query ID -> entity ID -> added
+    private final Map<String, Map<String, Boolean>> changes = new HashMap<>();
+
+    public void added(String queryId, String entityId) {
+        changes.computeIfAbsent(queryId, k -> new LinkedHashMap<>()).put(entityId, true);
+    }
+
+    public void removed(String queryId, String entityId) {
+        changes.computeIfAbsent(queryId, k -> new LinkedHashMap<>()).put(entityId, false);
+    }
+
+    public boolean contains(String queryId) {
+        return changes.containsKey(queryId);
+    }
+
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    /**
+     * Updates the cached queries, which are not invalidated anyway.
+     */
+    public void applyTo(CacheManager cache, Set<String> invalidations) {
+        changes.forEach((queryId, queryChanges) -> {
+            if (!invalidations.contains(queryId)) {
+                cache.updateListQuery(queryId, queryChanges);
+            }
+        });
+    }
+
+    /**
+     * Invalidates all the changed queries, for example when it is not sure the changes were committed.
+     */
+    public void invalidate(Set<String> invalidations) {
+        invalidations.addAll(changes.keySet());
+    }
+}
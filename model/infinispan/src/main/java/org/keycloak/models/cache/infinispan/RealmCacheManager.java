@@ -21,11 +21,13 @@ import org.infinispan.Cache;
 import org.jboss.logging.Logger;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.cache.infinispan.events.InvalidationEvent;
+import org.keycloak.models.cache.infinispan.entities.CachedRealm;
 import org.keycloak.models.cache.infinispan.entities.Revisioned;
 import org.keycloak.models.cache.infinispan.events.RealmCacheInvalidationEvent;
 import org.keycloak.models.cache.infinispan.stream.GroupListPredicate;
 import org.keycloak.models.cache.infinispan.stream.HasRolePredicate;
 import org.keycloak.models.cache.infinispan.stream.InClientPredicate;
+import org.keycloak.models.cache.infinispan.stream.InCompositeRoleClosurePredicate;
 import org.keycloak.models.cache.infinispan.stream.InGroupPredicate;
 import org.keycloak.models.cache.infinispan.stream.InRealmPredicate;
 
@@ -42,6 +44,9 @@ public class RealmCacheManager extends CacheManager {
 
     private final ConcurrentHashMap<String, String> cacheInteractions = new ConcurrentHashMap<>();
 
+    // Current revisions of the cached realms, which are read on every request without the overhead of the cache lookups
+    private final ConcurrentHashMap<String, CachedRealm> realmSnapshots = new ConcurrentHashMap<>();
+
     @Override
     protected Logger getLogger() {
         return logger;
@@ -51,6 +56,47 @@ public class RealmCacheManager extends CacheManager {
         super(cache, revisions);
     }
 
+    /**
+     * Returns the current revision of the cached realm. The realm is published as an immutable snapshot on the first
+     * successful lookup and it is read from a plain map until it is invalidated.
+     */
+    public CachedRealm getRealm(String id) {
+        CachedRealm snapshot = realmSnapshots.get(id);
+        if (snapshot != null) {
+            return snapshot;
+        }
+
+        CachedRealm cached = get(id, CachedRealm.class);
+        if (cached != null) {
+            publishSnapshot(cached);
+        }
+        return cached;
+    }
+
+    private void publishSnapshot(CachedRealm cached) {
+        realmSnapshots.put(cached.getId(), cached);
+
+        // The invalidation bumps the revision before removing the snapshot, so either the invalidation removes the snapshot
+        // put here, or the check here sees the new revision
+        Long rev = revisions.get(cached.getId());
+        if (rev == null || cached.getRevision() == null || rev > cached.getRevision()) {
+            realmSnapshots.remove(cached.getId(), cached);
+        }
+    }
+
+    @Override
+    public Object invalidateObject(String id) {
+        Object removed = super.invalidateObject(id);
+        realmSnapshots.remove(id);
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        realmSnapshots.clear();
+    }
+
 
     public void realmUpdated(String id, String name, Set<String> invalidations) {
         invalidations.add(id);
@@ -63,27 +109,37 @@ public class RealmCacheManager extends CacheManager {
         addInvalidations(InRealmPredicate.create().realm(id), invalidations);
     }
 
-    public void roleAdded(String roleContainerId, Set<String> invalidations) {
-        invalidations.add(RealmCacheSession.getRolesCacheKey(roleContainerId));
+    public void roleAdded(String roleContainerId, String roleId, ListQueryChanges listChanges) {
+        listChanges.added(RealmCacheSession.getRolesCacheKey(roleContainerId), roleId);
     }
 
-    public void roleUpdated(String roleContainerId, String roleName, Set<String> invalidations) {
+    public void roleUpdated(String id, String roleContainerId, String roleName, Set<String> invalidations) {
         invalidations.add(RealmCacheSession.getRoleByNameCacheKey(roleContainerId, roleName));
+        invalidations.add(RealmCacheSession.getCompositeRoleClosureCacheKey(id));
+    }
+
+    /**
+     * Composites of the updated roles may have changed, which changes the closures of all the roles containing them. The
+     * whole cache is scanned, so the roles updated together should be passed at once.
+     */
+    public void compositeRoleClosuresInvalidations(Set<String> updatedRoles, Set<String> invalidations) {
+        addInvalidations(InCompositeRoleClosurePredicate.create().roles(updatedRoles), invalidations);
     }
 
     public void roleRemoval(String id, String roleName, String roleContainerId, Set<String> invalidations) {
         invalidations.add(RealmCacheSession.getRolesCacheKey(roleContainerId));
         invalidations.add(RealmCacheSession.getRoleByNameCacheKey(roleContainerId, roleName));
+        invalidations.add(RealmCacheSession.getCompositeRoleClosureCacheKey(id));
 
         addInvalidations(HasRolePredicate.create().role(id), invalidations);
     }
 
-    public void clientScopeAdded(String realmId, Set<String> invalidations) {
-        invalidations.add(RealmCacheSession.getClientScopesCacheKey(realmId));
+    public void clientScopeAdded(String realmId, String clientScopeId, ListQueryChanges listChanges) {
+        listChanges.added(RealmCacheSession.getClientScopesCacheKey(realmId), clientScopeId);
     }
 
     public void clientScopeUpdated(String realmId, Set<String> invalidations) {
-        invalidations.add(RealmCacheSession.getClientScopesCacheKey(realmId));
+        // The list of client scopes of the realm contains just IDs, which don't change. Other nodes don't invalidate it either
     }
 
     public void clientScopeRemoval(String realmId, Set<String> invalidations) {
@@ -126,6 +182,11 @@ public class RealmCacheManager extends CacheManager {
         ((RealmCacheInvalidationEvent) event).addInvalidations(this, invalidations);
     }
 
+    @Override
+    protected void addListChangesFromEvent(InvalidationEvent event, ListQueryChanges listChanges) {
+        ((RealmCacheInvalidationEvent) event).addListChanges(this, listChanges);
+    }
+
     /**
      * Compute a cached realm and ensure that this happens only once with the current Keycloak instance.
      * Use this to avoid concurrent preparations of a realm in parallel threads. This helps to break the load on
@@ -26,6 +26,7 @@ import org.keycloak.models.cache.CachedRealmModel;
 import org.keycloak.models.cache.infinispan.entities.*;
 import org.keycloak.models.cache.infinispan.events.*;
 import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.models.utils.RoleUtils;
 import org.keycloak.storage.DatastoreProvider;
 import org.keycloak.storage.StoreManagers;
 import org.keycloak.storage.StorageId;
@@ -66,6 +67,10 @@ import java.util.stream.Stream;
  * - whenever a client is added/removed the realm of the client is added to a listInvalidations set
  * this set must be checked before sending back or caching a cached query.  This check is required to
  * avoid caching an uncommitted removal/add in a query cache.
+ * - listInvalidations are specific for each kind of list (clients, roles, groups, client scopes) of a container, so that
+ * e.g. a new client doesn't bypass the cached roles of the realm. The container ID alone bypasses all its lists.
+ * - lists of all roles of a container and of all client scopes of a realm are not invalidated when an entity is added.
+ * The new ID is added to the cached list in place after the commit, both locally and on the other nodes.
  * - when a client is removed, any queries that contain that client must also be removed.
  * - a client removal will also cause anything that is contained and cached within that client to be removed
  *
@@ -98,6 +103,11 @@ public class RealmCacheSession implements CacheRealmProvider {
     protected static final Logger logger = Logger.getLogger(RealmCacheSession.class);
     public static final String REALM_CLIENTS_QUERY_SUFFIX = ".realm.clients";
     public static final String ROLES_QUERY_SUFFIX = ".roles";
+    private static final String COMPOSITE_ROLE_CLOSURE_SUFFIX = ".composites.closure";
+    private static final String CLIENTS_LIST = ".list.clients";
+    private static final String ROLES_LIST = ".list.roles";
+    private static final String GROUPS_LIST = ".list.groups";
+    private static final String CLIENT_SCOPES_LIST = ".list.clientscopes";
     private static final String SCOPE_KEY_DEFAULT = "default";
     private static final String SCOPE_KEY_OPTIONAL = "optional";
     protected RealmCacheManager cache;
@@ -116,7 +126,9 @@ public class RealmCacheSession implements CacheRealmProvider {
     protected Map<String, RoleAdapter> managedRoles = new HashMap<>();
     protected Map<String, GroupAdapter> managedGroups = new HashMap<>();
     protected Set<String> listInvalidations = new HashSet<>();
+    protected ListQueryChanges listChanges = new ListQueryChanges();
     protected Set<String> invalidations = new HashSet<>();
+    protected Set<String> updatedRoles = new HashSet<>(); // The closures containing them are invalidated with one scan of the cache
     protected Set<InvalidationEvent> invalidationEvents = new HashSet<>(); // Events to be sent across cluster
 
     protected boolean clearAll;
@@ -140,6 +152,13 @@ public class RealmCacheSession implements CacheRealmProvider {
         return invalidations.contains(id);
     }
 
+    /**
+     * @return the current revision of the cached entity, or {@code null} if it was changed in this transaction
+     */
+    public Long getCurrentRevision(String id) {
+        return invalidations.contains(id) ? null : cache.getCurrentRevision(id);
+    }
+
     @Override
     public void clear() {
         ClusterProvider cluster = session.getProvider(ClusterProvider.class);
@@ -216,7 +235,8 @@ public class RealmCacheSession implements CacheRealmProvider {
     @Override
     public void registerRoleInvalidation(String id, String roleName, String roleContainerId) {
         invalidateRole(id);
-        cache.roleUpdated(roleContainerId, roleName, invalidations);
+        cache.roleUpdated(id, roleContainerId, roleName, invalidations);
+        updatedRoles.add(id);
         invalidationEvents.add(RoleUpdatedEvent.create(id, roleName, roleContainerId));
     }
 
@@ -254,6 +274,10 @@ public class RealmCacheSession implements CacheRealmProvider {
 
 
 
+    private boolean isListInvalidated(String containerId, String list) {
+        return listInvalidations.contains(containerId) || listInvalidations.contains(containerId + list);
+    }
+
     private void invalidateRole(String id) {
         invalidations.add(id);
         RoleAdapter adapter = managedRoles.get(id);
@@ -262,10 +286,10 @@ public class RealmCacheSession implements CacheRealmProvider {
 
     private void addedRole(String roleId, String roleContainerId) {
         // this is needed so that a new role that hasn't been committed isn't cached in a query
-        listInvalidations.add(roleContainerId);
+        listInvalidations.add(roleContainerId + ROLES_LIST);
 
         invalidateRole(roleId);
-        cache.roleAdded(roleContainerId, invalidations);
+        cache.roleAdded(roleContainerId, roleId, listChanges);
         invalidationEvents.add(RoleAddedEvent.create(roleId, roleContainerId));
     }
 
@@ -290,10 +314,23 @@ public class RealmCacheSession implements CacheRealmProvider {
     }
 
     protected void runInvalidations() {
+        if (!updatedRoles.isEmpty()) {
+            cache.compositeRoleClosuresInvalidations(updatedRoles, invalidations);
+        }
+
+        if (setRollbackOnly) {
+            // The entities were not added, so the lists can't be updated
+            listChanges.invalidate(invalidations);
+            // Other nodes would add the entities to their lists
+            invalidationEvents.removeIf(event -> event instanceof RoleAddedEvent || event instanceof ClientScopeAddedEvent);
+        }
+
         for (String id : invalidations) {
             cache.invalidateObject(id);
         }
 
+        listChanges.applyTo(cache, invalidations);
+
         cache.sendInvalidationEvents(session, invalidationEvents, InfinispanCacheRealmProviderFactory.REALM_INVALIDATION_EVENTS);
     }
 
@@ -411,7 +448,7 @@ public class RealmCacheSession implements CacheRealmProvider {
         } else if (managedRealms.containsKey(id)) {
             return managedRealms.get(id);
         }
-        CachedRealm cached = cache.get(id, CachedRealm.class);
+        CachedRealm cached = cache.getRealm(id);
         RealmAdapter adapter;
         if (cached != null) {
             logger.tracev("by id cache hit: {0}", cached.getName());
@@ -427,7 +464,7 @@ public class RealmCacheSession implements CacheRealmProvider {
     }
 
     private RealmAdapter prepareCachedRealm(String id, KeycloakSession session) {
-        CachedRealm cached = cache.get(id, CachedRealm.class);
+        CachedRealm cached = cache.getRealm(id);
         RealmAdapter adapter;
         if (cached == null) {
             Long loaded = cache.getCurrentRevision(id);
@@ -545,7 +582,8 @@ public class RealmCacheSession implements CacheRealmProvider {
 
         invalidateClient(client.getId());
         // this is needed so that a client that hasn't been committed isn't cached in a query
-        listInvalidations.add(realm.getId());
+        listInvalidations.add(realm.getId() + CLIENTS_LIST);
+        invalidations.add(getClientByClientIdCacheKey(client.getClientId(), realm.getId()));
 
         invalidationEvents.add(ClientAddedEvent.create(client.getId(), client.getClientId(), realm.getId()));
         cache.clientAdded(realm.getId(), client.getId(), client.getClientId(), invalidations);
@@ -586,6 +624,9 @@ public class RealmCacheSession implements CacheRealmProvider {
     static String getRoleByNameCacheKey(String container, String name) {
         return container + "." + name + ROLES_QUERY_SUFFIX;
     }
+    static String getCompositeRoleClosureCacheKey(String roleId) {
+        return roleId + COMPOSITE_ROLE_CLOSURE_SUFFIX;
+    }
 
     @Override
     public Stream<ClientModel> getClientsStream(RealmModel realm, Integer firstResult, Integer maxResults) {
@@ -619,7 +660,9 @@ public class RealmCacheSession implements CacheRealmProvider {
 
         invalidateClient(client.getId());
         // this is needed so that a client that hasn't been committed isn't cached in a query
-        listInvalidations.add(realm.getId());
+        listInvalidations.add(realm.getId() + CLIENTS_LIST);
+        // all the lists of the client, like its roles, are gone with it
+        listInvalidations.add(client.getId());
 
         invalidationEvents.add(ClientRemovedEvent.create(client));
         cache.clientRemoval(realm.getId(), id, client.getClientId(), invalidations);
@@ -663,7 +706,7 @@ public class RealmCacheSession implements CacheRealmProvider {
     @Override
     public Stream<RoleModel> getRealmRolesStream(RealmModel realm) {
         String cacheKey = getRolesCacheKey(realm.getId());
-        boolean queryDB = invalidations.contains(cacheKey) || listInvalidations.contains(realm.getId());
+        boolean queryDB = invalidations.contains(cacheKey) || isListInvalidated(realm.getId(), ROLES_LIST);
         if (queryDB) {
             return getRoleDelegate().getRealmRolesStream(realm);
         }
@@ -698,7 +741,7 @@ public class RealmCacheSession implements CacheRealmProvider {
     @Override
     public Stream<RoleModel> getClientRolesStream(ClientModel client) {
         String cacheKey = getRolesCacheKey(client.getId());
-        boolean queryDB = invalidations.contains(cacheKey) || listInvalidations.contains(client.getId()) || listInvalidations.contains(client.getRealm().getId());
+        boolean queryDB = invalidations.contains(cacheKey) || isListInvalidated(client.getId(), ROLES_LIST) || listInvalidations.contains(client.getRealm().getId());
         if (queryDB) {
             return getRoleDelegate().getClientRolesStream(client);
         }
@@ -780,7 +823,7 @@ public class RealmCacheSession implements CacheRealmProvider {
     @Override
     public RoleModel getRealmRole(RealmModel realm, String name) {
         String cacheKey = getRoleByNameCacheKey(realm.getId(), name);
-        boolean queryDB = invalidations.contains(cacheKey) || listInvalidations.contains(realm.getId());
+        boolean queryDB = invalidations.contains(cacheKey) || isListInvalidated(realm.getId(), ROLES_LIST);
         if (queryDB) {
             return getRoleDelegate().getRealmRole(realm, name);
         }
@@ -810,7 +853,7 @@ public class RealmCacheSession implements CacheRealmProvider {
     @Override
     public RoleModel getClientRole(ClientModel client, String name) {
         String cacheKey = getRoleByNameCacheKey(client.getId(), name);
-        boolean queryDB = invalidations.contains(cacheKey) || listInvalidations.contains(client.getId()) || listInvalidations.contains(client.getRealm().getId());
+        boolean queryDB = invalidations.contains(cacheKey) || isListInvalidated(client.getId(), ROLES_LIST) || listInvalidations.contains(client.getRealm().getId());
         if (queryDB) {
             return getRoleDelegate().getClientRole(client, name);
         }
@@ -839,7 +882,7 @@ public class RealmCacheSession implements CacheRealmProvider {
 
     @Override
     public boolean removeRole(RoleModel role) {
-        listInvalidations.add(role.getContainer().getId());
+        listInvalidations.add(role.getContainer().getId() + ROLES_LIST);
 
         invalidateRole(role.getId());
         invalidationEvents.add(RoleRemovedEvent.create(role.getId(), role.getName(), role.getContainer().getId()));
@@ -887,6 +930,39 @@ public class RealmCacheSession implements CacheRealmProvider {
         return adapter;
     }
 
+    Stream<RoleModel> getDeepCompositesStream(RealmModel realm, RoleModel role) {
+        String cacheKey = getCompositeRoleClosureCacheKey(role.getId());
+        if (invalidations.contains(cacheKey)) {
+            return RoleUtils.collectDeepComposites(role).stream();
+        }
+
+        CompositeRoleClosure closure = cache.get(cacheKey, CompositeRoleClosure.class);
+        if (closure == null) {
+            Long loaded = cache.getCurrentRevision(cacheKey);
+            Set<RoleModel> composites = RoleUtils.collectDeepComposites(role);
+            Set<String> ids = composites.stream().map(RoleModel::getId).collect(Collectors.toSet());
+            // a closure with roles updated in this transaction would not be invalidated by their update
+            if (ids.stream().noneMatch(invalidations::contains)) {
+                logger.tracev("adding composite role closure cache miss: role {0} key {1}", role.getName(), cacheKey);
+                closure = new CompositeRoleClosure(loaded, cacheKey, role.getId(), realm.getId(), ids);
+                cache.addRevisioned(closure, startupRevision);
+            }
+            return composites.stream();
+        }
+
+        Set<RoleModel> composites = new HashSet<>();
+        for (String id : closure.getRoles()) {
+            // a closure containing a role updated in this transaction is stale, it is invalidated at the end of the transaction
+            RoleModel composite = updatedRoles.contains(id) ? null : session.roles().getRoleById(realm, id);
+            if (composite == null) {
+                invalidations.add(cacheKey);
+                return RoleUtils.collectDeepComposites(role).stream();
+            }
+            composites.add(composite);
+        }
+        return composites.stream();
+    }
+
     @Override
     public GroupModel getGroupById(RealmModel realm, String id) {
         CachedGroup cached = cache.get(id, CachedGroup.class);
@@ -943,7 +1019,7 @@ public class RealmCacheSession implements CacheRealmProvider {
     public void moveGroup(RealmModel realm, GroupModel group, GroupModel toParent) {
         invalidateGroup(group.getId(), realm.getId(), true);
         if (toParent != null) invalidateGroup(toParent.getId(), realm.getId(), false); // Queries already invalidated
-        listInvalidations.add(realm.getId());
+        listInvalidations.add(realm.getId() + GROUPS_LIST);
 
         invalidationEvents.add(GroupMovedEvent.create(group, toParent, realm.getId()));
         getGroupDelegate().moveGroup(realm, group, toParent);
@@ -952,7 +1028,7 @@ public class RealmCacheSession implements CacheRealmProvider {
     @Override
     public Stream<GroupModel> getGroupsStream(RealmModel realm) {
         String cacheKey = getGroupsQueryCacheKey(realm.getId());
-        boolean queryDB = invalidations.contains(cacheKey) || listInvalidations.contains(realm.getId());
+        boolean queryDB = invalidations.contains(cacheKey) || isListInvalidated(realm.getId(), GROUPS_LIST);
         if (queryDB) {
             return getGroupDelegate().getGroupsStream(realm);
         }
@@ -1018,7 +1094,7 @@ public class RealmCacheSession implements CacheRealmProvider {
     public Stream<GroupModel> getTopLevelGroupsStream(RealmModel realm, String search, Boolean exact, Integer first, Integer max) {
         String cacheKey = getTopGroupsQueryCacheKey(realm.getId() + search + first + max);
         boolean queryDB = invalidations.contains(cacheKey) || listInvalidations.contains(cacheKey)
-            || listInvalidations.contains(realm.getId());
+            || isListInvalidated(realm.getId(), GROUPS_LIST);
         if (queryDB) {
             return getGroupDelegate().getTopLevelGroupsStream(realm, search, exact, first, max);
         }
@@ -1070,7 +1146,7 @@ public class RealmCacheSession implements CacheRealmProvider {
     @Override
     public boolean removeGroup(RealmModel realm, GroupModel group) {
         invalidateGroup(group.getId(), realm.getId(), true);
-        listInvalidations.add(realm.getId());
+        listInvalidations.add(realm.getId() + GROUPS_LIST);
         cache.groupQueriesInvalidations(realm.getId(), invalidations);
         if (group.getParentId() != null) {
             invalidateGroup(group.getParentId(), realm.getId(), false); // Queries already invalidated
@@ -1082,7 +1158,7 @@ public class RealmCacheSession implements CacheRealmProvider {
     }
 
     private GroupModel groupAdded(RealmModel realm, GroupModel group, GroupModel toParent) {
-        listInvalidations.add(realm.getId());
+        listInvalidations.add(realm.getId() + GROUPS_LIST);
         invalidateGroup(group.getId(), realm.getId(), true);
         if (toParent != null) invalidateGroup(toParent.getId(), realm.getId(), false); // Queries already invalidated
         String parentId = toParent == null ? null : toParent.getId();
@@ -1312,7 +1388,7 @@ public class RealmCacheSession implements CacheRealmProvider {
     @Override
     public Stream<ClientScopeModel> getClientScopesStream(RealmModel realm) {
         String cacheKey = getClientScopesCacheKey(realm.getId());
-        boolean queryDB = invalidations.contains(cacheKey) || listInvalidations.contains(realm.getId());
+        boolean queryDB = invalidations.contains(cacheKey) || isListInvalidated(realm.getId(), CLIENT_SCOPES_LIST);
         if (queryDB) {
             return getClientScopeDelegate().getClientScopesStream(realm);
         }
@@ -1361,10 +1437,10 @@ public class RealmCacheSession implements CacheRealmProvider {
 
         invalidateClientScope(clientScope.getId());
         // this is needed so that a client scope that hasn't been committed isn't cached in a query
-        listInvalidations.add(realm.getId());
+        listInvalidations.add(realm.getId() + CLIENT_SCOPES_LIST);
 
         invalidationEvents.add(ClientScopeAddedEvent.create(clientScope.getId(), realm.getId()));
-        cache.clientScopeAdded(realm.getId(), invalidations);
+        cache.clientScopeAdded(realm.getId(), clientScope.getId(), listChanges);
         return clientScope;
     }
 
@@ -1372,7 +1448,7 @@ public class RealmCacheSession implements CacheRealmProvider {
     public boolean removeClientScope(RealmModel realm, String id) {
         //removeClientScope can throw ModelException in case the client scope us used so invalidate only if the removal is succesful
         if (getClientScopeDelegate().removeClientScope(realm, id)) {
-            listInvalidations.add(realm.getId());
+            listInvalidations.add(realm.getId() + CLIENT_SCOPES_LIST);
 
             invalidateClientScope(id);
             invalidationEvents.add(ClientScopeRemovedEvent.create(id, realm.getId()));
@@ -1403,7 +1479,7 @@ public class RealmCacheSession implements CacheRealmProvider {
     @Override
     public Map<String, ClientScopeModel> getClientScopes(RealmModel realm, ClientModel client, boolean defaultScopes) {
         String cacheKey = getClientScopesCacheKey(client.getId(), defaultScopes);
-        boolean queryDB = invalidations.contains(cacheKey) || invalidations.contains(client.getId()) || listInvalidations.contains(realm.getId());
+        boolean queryDB = invalidations.contains(cacheKey) || invalidations.contains(client.getId()) || isListInvalidated(realm.getId(), CLIENT_SCOPES_LIST);
         if (queryDB) {
             return getClientDelegate().getClientScopes(realm, client, defaultScopes);
         }
@@ -23,7 +23,6 @@ import org.keycloak.models.RoleModel;
 import org.keycloak.models.cache.infinispan.entities.CachedClientRole;
 import org.keycloak.models.cache.infinispan.entities.CachedRealmRole;
 import org.keycloak.models.cache.infinispan.entities.CachedRole;
-import org.keycloak.models.utils.KeycloakModelUtils;
 
 import java.util.HashSet;
 import java.util.List;
@@ -151,6 +150,14 @@ public class RoleAdapter implements RoleModel {
         return cacheSession.getRoleDelegate().getRolesStream(realm, cached.getComposites().stream(), search, first, max);
     }
 
+    @Override
+    public Stream<RoleModel> getDeepCompositesStream() {
+        if (isUpdated()) return RoleModel.super.getDeepCompositesStream();
+        if (!cached.isComposite()) return Stream.empty();
+
+        return cacheSession.getDeepCompositesStream(realm, this);
+    }
+
     @Override
     public boolean isClientRole() {
         return cached instanceof CachedClientRole;
@@ -179,7 +186,7 @@ public class RoleAdapter implements RoleModel {
 
     @Override
     public boolean hasRole(RoleModel role) {
-        return this.equals(role) || KeycloakModelUtils.searchFor(role, this, new HashSet<>());
+        return this.equals(role) || getDeepCompositesStream().anyMatch(role::equals);
     }
 
     @Override
@@ -25,12 +25,15 @@ import org.keycloak.models.RealmModel;
 import org.keycloak.models.RoleModel;
 import org.keycloak.models.SubjectCredentialManager;
 import org.keycloak.models.UserModel;
+import org.keycloak.models.cache.CacheRealmProvider;
 import org.keycloak.models.cache.CachedUserModel;
 import org.keycloak.models.cache.infinispan.entities.CachedUser;
+import org.keycloak.models.cache.infinispan.entities.CachedUserMemberships;
 import org.keycloak.models.utils.KeycloakModelUtils;
 import org.keycloak.models.utils.RoleUtils;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -38,7 +41,9 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -47,6 +52,8 @@ import java.util.stream.Stream;
  */
 public class UserAdapter implements CachedUserModel {
 
+    private static final String MEMBERSHIPS = CachedUserMemberships.class.getName();
+
     private final Supplier<UserModel> modelSupplier;
     protected final CachedUser cached;
     protected final UserCacheSession userProviderCache;
@@ -102,6 +109,7 @@ public class UserAdapter implements CachedUserModel {
             userProviderCache.registerUserInvalidation(realm, cached);
             updated = modelSupplier.get();
             if (updated == null) throw new IllegalStateException("Not found in database");
+            userProviderCache.registerLookupInvalidation(realm, updated);
         }
         return updated;
     }
@@ -176,6 +184,9 @@ public class UserAdapter implements CachedUserModel {
         getDelegateForUpdate();
         if (UserModel.USERNAME.equals(name) || UserModel.EMAIL.equals(name)) {
             value = KeycloakModelUtils.toLowerCaseSafe(value);
+            updated.setSingleAttribute(name, value);
+            userProviderCache.registerLookupInvalidation(realm, updated);
+            return;
         }
         updated.setSingleAttribute(name, value);
     }
@@ -186,6 +197,9 @@ public class UserAdapter implements CachedUserModel {
         if (UserModel.USERNAME.equals(name) || UserModel.EMAIL.equals(name)) {
             String lowerCasedFirstValue = KeycloakModelUtils.toLowerCaseSafe((values != null && values.size() > 0) ? values.get(0) : null);
             if (lowerCasedFirstValue != null) values = Collections.singletonList(lowerCasedFirstValue);
+            updated.setAttribute(name, values);
+            userProviderCache.registerLookupInvalidation(realm, updated);
+            return;
         }
         updated.setAttribute(name, values);
     }
@@ -354,8 +368,7 @@ public class UserAdapter implements CachedUserModel {
     public boolean hasRole(RoleModel role) {
         if (updated != null) return updated.hasRole(role);
         return cached.getRoleMappings(modelSupplier).contains(role.getId()) ||
-                getRoleMappingsStream().anyMatch(r -> r.hasRole(role)) ||
-                RoleUtils.hasRoleFromGroup(getGroupsStream(), role, true);
+                getMemberships().getRoleIds().contains(role.getId());
     }
 
     @Override
@@ -429,6 +442,65 @@ public class UserAdapter implements CachedUserModel {
         return cached.getGroups(modelSupplier).contains(group.getId()) || RoleUtils.isMember(getGroupsStream(), group);
     }
 
+    @Override
+    public Stream<RoleModel> getDeepRoleMappingsStream() {
+        if (updated != null) return RoleUtils.getDeepUserRoleMappings(updated).stream();
+
+        Set<RoleModel> roles = new HashSet<>();
+        for (String id : getMemberships().getRoleIds()) {
+            RoleModel role = keycloakSession.roles().getRoleById(realm, id);
+            if (role == null) {
+                // role was removed in the meantime, so the memberships are not current anymore
+                cached.getCachedWith().remove(MEMBERSHIPS);
+                return RoleUtils.getDeepUserRoleMappings(this).stream();
+            }
+            roles.add(role);
+        }
+        return roles.stream();
+    }
+
+    @Override
+    public Stream<String> getGroupPathsStream() {
+        if (updated != null) return updated.getGroupsStream().map(KeycloakModelUtils::buildGroupPath);
+        return getMemberships().getGroupPaths().stream();
+    }
+
+    private CachedUserMemberships getMemberships() {
+        CacheRealmProvider realmCacheProvider = keycloakSession.getProvider(CacheRealmProvider.class);
+        if (!(realmCacheProvider instanceof RealmCacheSession)) {
+            return loadMemberships(id -> null);
+        }
+        RealmCacheSession realmCache = (RealmCacheSession) realmCacheProvider;
+
+        CachedUserMemberships memberships = (CachedUserMemberships) cached.getCachedWith().get(MEMBERSHIPS);
+        if (memberships != null && memberships.isCurrent(realmCache::getCurrentRevision)) {
+            return memberships;
+        }
+
+        memberships = loadMemberships(realmCache::getCurrentRevision);
+        if (memberships.isCacheable(realmCache.getStartupRevision())) {
+            cached.getCachedWith().put(MEMBERSHIPS, memberships);
+        } else {
+            cached.getCachedWith().remove(MEMBERSHIPS);
+        }
+        return memberships;
+    }
+
+    private CachedUserMemberships loadMemberships(Function<String, Long> currentRevision) {
+        Set<String> roleIds = RoleUtils.getDeepUserRoleMappings(this).stream().map(RoleModel::getId).collect(Collectors.toSet());
+        List<GroupModel> groups = getGroupsStream().collect(Collectors.toList());
+        List<String> groupPaths = groups.stream().map(KeycloakModelUtils::buildGroupPath).collect(Collectors.toList());
+
+        Map<String, Long> dependencies = new HashMap<>();
+        roleIds.forEach(id -> dependencies.put(id, currentRevision.apply(id)));
+        for (GroupModel group : groups) {
+            for (GroupModel g = group; g != null && !dependencies.containsKey(g.getId()); g = g.getParent()) {
+                dependencies.put(g.getId(), currentRevision.apply(g.getId()));
+            }
+        }
+        return new CachedUserMemberships(roleIds, groupPaths, dependencies);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
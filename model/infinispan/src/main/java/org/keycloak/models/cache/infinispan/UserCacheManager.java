@@ -36,6 +36,11 @@ public class UserCacheManager extends CacheManager {
 
     protected volatile boolean enabled = true;
 
+    // Lifespan in milliseconds of the cached lookups, which found no user. Disabled when not positive
+    protected volatile long negativeLookupLifespan;
+
+    protected volatile CachedUserRevalidator revalidator;
+
     public UserCacheManager(Cache<String, Revisioned> cache, Cache<String, Long> revisions) {
         super(cache, revisions);
     }
@@ -45,6 +50,22 @@ public class UserCacheManager extends CacheManager {
         return logger;
     }
 
+    public long getNegativeLookupLifespan() {
+        return negativeLookupLifespan;
+    }
+
+    public void setNegativeLookupLifespan(long negativeLookupLifespan) {
+        this.negativeLookupLifespan = negativeLookupLifespan;
+    }
+
+    public CachedUserRevalidator getRevalidator() {
+        return revalidator;
+    }
+
+    public void setRevalidator(CachedUserRevalidator revalidator) {
+        this.revalidator = revalidator;
+    }
+
     @Override
     public void clear() {
         cache.clear();
@@ -42,6 +42,8 @@ import org.keycloak.models.cache.OnUserCache;
 import org.keycloak.models.cache.UserCache;
 import org.keycloak.models.cache.infinispan.entities.CachedFederatedIdentityLinks;
 import org.keycloak.models.cache.infinispan.entities.CachedUser;
+import org.keycloak.models.cache.infinispan.entities.NonExistentItem;
+import org.keycloak.models.cache.infinispan.entities.Revisioned;
 import org.keycloak.models.cache.infinispan.entities.CachedUserConsent;
 import org.keycloak.models.cache.infinispan.entities.CachedUserConsents;
 import org.keycloak.models.cache.infinispan.entities.UserListQuery;
@@ -94,6 +96,8 @@ public class UserCacheSession implements UserCache, OnCreateComponent, OnUpdateC
     protected Set<String> realmInvalidations = new HashSet<>();
     protected Set<InvalidationEvent> invalidationEvents = new HashSet<>(); // Events to be sent across cluster
     protected Map<String, UserModel> managedUsers = new HashMap<>();
+    // Users added or updated in this transaction, whose username and email are known only at the commit
+    protected Map<String, Runnable> lookupInvalidations = new HashMap<>();
     private StoreManagers datastoreProvider;
 
     public UserCacheSession(UserCacheManager cache, KeycloakSession session) {
@@ -124,6 +128,25 @@ public class UserCacheSession implements UserCache, OnCreateComponent, OnUpdateC
         invalidationEvents.add(UserUpdatedEvent.create(user.getId(), user.getUsername(), user.getEmail(), user.getRealm()));
     }
 
+    /**
+     * Invalidates the lookups by the current username and email of the user, so that the cached lookups which found no
+     * user by them are skipped for the rest of the transaction. The lookups by the username and the email, which the
+     * user has at the end of the transaction, are invalidated again at the commit.
+     */
+    public void registerLookupInvalidation(RealmModel realm, UserModel user) {
+        if (cache.getNegativeLookupLifespan() <= 0) {
+            return;
+        }
+        String realmId = realm.getId();
+        cache.userUpdatedInvalidations(user.getId(), user.getUsername(), user.getEmail(), realmId, invalidations);
+        lookupInvalidations.putIfAbsent(user.getId(), () -> {
+            String username = user.getUsername();
+            String email = user.getEmail();
+            cache.userUpdatedInvalidations(user.getId(), username, email, realmId, invalidations);
+            invalidationEvents.add(UserUpdatedEvent.create(user.getId(), username, email, realmId));
+        });
+    }
+
     @Override
     public void evict(RealmModel realm, UserModel user) {
         if (!transactionActive) throw new IllegalStateException("Cannot call evict() without a transaction");
@@ -142,6 +165,13 @@ public class UserCacheSession implements UserCache, OnCreateComponent, OnUpdateC
     }
 
     protected void runInvalidations() {
+        for (Runnable lookupInvalidation : lookupInvalidations.values()) {
+            try {
+                lookupInvalidation.run();
+            } catch (RuntimeException e) {
+                logger.debugf(e, "Could not invalidate the user lookups");
+            }
+        }
         for (String realmId : realmInvalidations) {
             cache.invalidateRealmUsers(realmId, invalidations);
         }
@@ -261,7 +291,13 @@ public class UserCacheSession implements UserCache, OnCreateComponent, OnUpdateC
             logger.tracev("invalidations");
             return getDelegate().getUserByUsername(realm, username);
         }
-        UserListQuery query = cache.get(cacheKey, UserListQuery.class);
+        Revisioned cached = cache.get(cacheKey, Revisioned.class);
+        if (cached instanceof NonExistentItem) {
+            logger.tracev("non-existent user cached");
+            // users added in this transaction are not adapters, their username may have changed after they were added
+            return lookupInvalidations.isEmpty() ? null : getDelegate().getUserByUsername(realm, username);
+        }
+        UserListQuery query = cached instanceof UserListQuery ? (UserListQuery) cached : null;
 
         String userId = null;
         if (query == null) {
@@ -270,6 +306,7 @@ public class UserCacheSession implements UserCache, OnCreateComponent, OnUpdateC
             UserModel model = getDelegate().getUserByUsername(realm, username);
             if (model == null) {
                 logger.tracev("model from delegate null");
+                cacheNonExistentUser(cacheKey, loaded);
                 return null;
             }
             userId = model.getId();
@@ -325,6 +362,13 @@ public class UserCacheSession implements UserCache, OnCreateComponent, OnUpdateC
             // although we do set a timeout, Infinispan has no guarantees when the user will be evicted
             // its also hard to test stuff
             if (model.shouldInvalidate(cached)) {
+                CachedUserRevalidator revalidator = cache.getRevalidator();
+                if (revalidator != null && model.isWithinMaxStaleness(cached)) {
+                    // stale-while-revalidate, the user is reloaded from the provider in the background
+                    revalidator.revalidate(realm, cached, getCacheLifespan(model));
+                    cache.getStats().increment(CacheStats.Counter.STALE_SERVED, CachedUser.class);
+                    return new UserAdapter(cached, this, session, realm);
+                }
                 registerUserInvalidation(realm, cached);
                 return getDelegate().getUserById(realm, cached.getId());
             }
@@ -360,7 +404,7 @@ public class UserCacheSession implements UserCache, OnCreateComponent, OnUpdateC
             adapter = new UserAdapter(cached, this, session, realm);
             onCache(realm, adapter, delegate);
 
-            long lifespan = model.getLifespan();
+            long lifespan = getCacheLifespan(model);
             if (lifespan > 0) {
                 cache.addRevisioned(cached, startupRevision, lifespan);
             } else {
@@ -376,6 +420,42 @@ public class UserCacheSession implements UserCache, OnCreateComponent, OnUpdateC
         return adapter;
     }
 
+    /**
+     * Remembers that no user was found by the lookup for a short time, so that the lookups of the unknown usernames
+     * or emails do not query all the user storage providers again. The lookup keys are invalidated when a user with
+     * the username or the email is added, imported or updated.
+     */
+    private void cacheNonExistentUser(String cacheKey, Long loaded) {
+        long lifespan = cache.getNegativeLookupLifespan();
+        if (lifespan > 0) {
+            cache.addRevisioned(new NonExistentItem(cacheKey, loaded), startupRevision, lifespan);
+        }
+    }
+
+    // The expired users are kept in the cache for the max staleness, so that they can be used while they are reloaded
+    private static long getCacheLifespan(CacheableStorageProviderModel model) {
+        long lifespan = model.getLifespan();
+        long maxStaleness = model.getMaxStaleness();
+        return lifespan > 0 && maxStaleness > 0 ? lifespan + maxStaleness : lifespan;
+    }
+
+    /**
+     * Reloads the user from the user storage and replaces the expired user in the cache, unless the user was
+     * invalidated in the meantime.
+     */
+    protected void reloadUser(RealmModel realm, String userId, long lifespan) {
+        Long loaded = cache.getCurrentRevision(userId);
+        UserModel delegate = getDelegate().getUserById(realm, userId);
+        if (delegate == null || invalidations.contains(userId)) {
+            // the user removed from the user storage is invalidated once the imported user is deleted
+            return;
+        }
+        int notBefore = getDelegate().getNotBeforeOfUser(realm, delegate);
+        CachedUser cached = new CachedUser(loaded, realm, delegate, notBefore);
+        onCache(realm, new UserAdapter(cached, this, session, realm), delegate);
+        cache.refreshRevisioned(cached, startupRevision, lifespan);
+    }
+
     private void onCache(RealmModel realm, UserAdapter adapter, UserModel delegate) {
         ((OnUserCache)getDelegate()).onCache(realm, adapter, delegate);
     }
@@ -391,13 +471,20 @@ public class UserCacheSession implements UserCache, OnCreateComponent, OnUpdateC
         if (invalidations.contains(cacheKey)) {
             return getDelegate().getUserByEmail(realm, email);
         }
-        UserListQuery query = cache.get(cacheKey, UserListQuery.class);
+        Revisioned cached = cache.get(cacheKey, Revisioned.class);
+        if (cached instanceof NonExistentItem) {
+            return lookupInvalidations.isEmpty() ? null : getDelegate().getUserByEmail(realm, email);
+        }
+        UserListQuery query = cached instanceof UserListQuery ? (UserListQuery) cached : null;
 
         String userId = null;
         if (query == null) {
             Long loaded = cache.getCurrentRevision(cacheKey);
             UserModel model = getDelegate().getUserByEmail(realm, email);
-            if (model == null) return null;
+            if (model == null) {
+                cacheNonExistentUser(cacheKey, loaded);
+                return null;
+            }
             userId = model.getId();
             if (invalidations.contains(userId)) return model;
             if (managedUsers.containsKey(userId)) return managedUsers.get(userId);
@@ -801,6 +888,7 @@ public class UserCacheSession implements UserCache, OnCreateComponent, OnUpdateC
         UserModel user = getDelegate().addUser(realm, id, username, addDefaultRoles, addDefaultRoles);
         // just in case the transaction is rolled back you need to invalidate the user and all cache queries for that user
         fullyInvalidateUser(realm, user);
+        registerLookupInvalidation(realm, user);
         managedUsers.put(user.getId(), user);
         return user;
     }
@@ -810,6 +898,7 @@ public class UserCacheSession implements UserCache, OnCreateComponent, OnUpdateC
         UserModel user = getDelegate().addUser(realm, username);
         // just in case the transaction is rolled back you need to invalidate the user and all cache queries for that user
         fullyInvalidateUser(realm, user);
+        registerLookupInvalidation(realm, user);
         managedUsers.put(user.getId(), user);
         return user;
     }
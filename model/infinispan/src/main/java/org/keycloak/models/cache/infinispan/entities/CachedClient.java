@@ -36,7 +36,7 @@ import java.util.stream.Collectors;
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
-public class CachedClient extends AbstractRevisioned implements InRealm {
+public class CachedClient extends AbstractExtendableRevisioned implements InRealm {
     protected String clientId;
     protected String name;
     protected String description;
@@ -32,7 +32,7 @@ import java.util.stream.Collectors;
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
-public class CachedClientScope extends AbstractRevisioned implements InRealm {
+public class CachedClientScope extends AbstractExtendableRevisioned implements InRealm {
 
     private String name;
     private String description;
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.cache.infinispan.entities;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Effective roles and group paths of a user, cached along with the {@link CachedUser}. Changes of the memberships of
+ * the user invalidate the user itself. Changes of the roles and groups are detected by the revisions of all the roles
+ * and groups (including the parent groups), which the memberships were computed from.
+ */
+public class CachedUserMemberships {
+
+    private final Set<String> roleIds;
+    private final List<String> groupPaths;
+    private final Map<String, Long> dependencies;
+
+    public CachedUserMemberships(Set<String> roleIds, List<String> groupPaths, Map<String, Long> dependencies) {
+        this.roleIds = roleIds;
+        this.groupPaths = groupPaths;
+        this.dependencies = dependencies;
+    }
+
+    public Set<String> getRoleIds() {
+        return roleIds;
+    }
+
+    public List<String> getGroupPaths() {
+        return groupPaths;
+    }
+
+    /**
+     * @param currentRevision current revision of a role or group, {@code null} if it was changed in the current transaction
+     * @return true if none of the roles and groups changed since the memberships were computed
+     */
+    public boolean isCurrent(Function<String, Long> currentRevision) {
+        return dependencies.entrySet().stream().allMatch(e -> Objects.equals(e.getValue(), currentRevision.apply(e.getKey())));
+    }
+
+    /**
+     * @param startupRevision revision of the start of the transaction, which computed the memberships
+     * @return true if none of the roles and groups were changed after the start of the transaction
+     */
+    public boolean isCacheable(long startupRevision) {
+        return dependencies.values().stream().allMatch(revision -> revision != null && revision <= startupRevision);
+    }
+}
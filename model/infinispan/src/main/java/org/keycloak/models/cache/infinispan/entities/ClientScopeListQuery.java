@@ -19,9 +19,10 @@ package org.keycloak.models.cache.infinispan.entities;
 
 import org.keycloak.models.RealmModel;
 
+import java.util.Map;
 import java.util.Set;
 
-public class ClientScopeListQuery extends AbstractRevisioned implements ClientScopeQuery {
+public class ClientScopeListQuery extends AbstractRevisioned implements ClientScopeQuery, IdListQuery {
     private final Set<String> clientScopes;
     private final String realm;
     private final String realmName;
@@ -39,6 +40,19 @@ public class ClientScopeListQuery extends AbstractRevisioned implements ClientSc
         this.clientUuid = clientUuid;
     }
 
+    private ClientScopeListQuery(ClientScopeListQuery query, Long revision, Set<String> clientScopes) {
+        super(revision, query.getId());
+        this.realm = query.realm;
+        this.realmName = query.realmName;
+        this.clientUuid = query.clientUuid;
+        this.clientScopes = clientScopes;
+    }
+
+    @Override
+    public ClientScopeListQuery withChanges(Long revision, Map<String, Boolean> changes) {
+        return new ClientScopeListQuery(this, revision, IdListQuery.applyChanges(clientScopes, changes));
+    }
+
     @Override
     public Set<String> getClientScopes() {
         return clientScopes;
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.cache.infinispan.entities;
+
+import java.util.Set;
+
+/**
+ * IDs of all the roles which are composites of a role, either directly or through other composite roles. The entry must
+ * be invalidated whenever the role or any of the roles in the closure is updated or removed.
+ */
+public class CompositeRoleClosure extends AbstractRevisioned implements RoleQuery {
+
+    private final String roleId;
+    private final String realm;
+    private final Set<String> roles;
+
+    public CompositeRoleClosure(Long revision, String id, String roleId, String realm, Set<String> roles) {
+        super(revision, id);
+        this.roleId = roleId;
+        this.realm = realm;
+        this.roles = roles;
+    }
+
+    public String getRoleId() {
+        return roleId;
+    }
+
+    @Override
+    public Set<String> getRoles() {
+        return roles;
+    }
+
+    @Override
+    public String getRealm() {
+        return realm;
+    }
+
+    @Override
+    public String toString() {
+        return "CompositeRoleClosure{" +
+                "id='" + getId() + "'" +
+                ", roleId='" + roleId + '\'' +
+                ", size=" + roles.size() +
+                '}';
+    }
+}
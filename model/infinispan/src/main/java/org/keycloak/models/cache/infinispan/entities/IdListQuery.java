@@ -0,0 +1,48 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.cache.infinispan.entities;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cached list of the IDs of all the entities of one kind in a container, like all the roles of a realm. When an entity
+ * is added to the container, the list is updated in place instead of being invalidated.
+ */
+public interface IdListQuery extends Revisioned {
+
+    /**
+     * @param revision revision of the updated list
+     * @param changes entity IDs mapped to {@code true} when added to the list and to {@code false} when removed from it
+     * @return copy of this query with the changes applied
+     */
+    IdListQuery withChanges(Long revision, Map<String, Boolean> changes);
+
+    static Set<String> applyChanges(Set<String> ids, Map<String, Boolean> changes) {
+        Set<String> result = new HashSet<>(ids);
+        changes.forEach((id, added) -> {
+            if (added) {
+                result.add(id);
+            } else {
+                result.remove(id);
+            }
+        });
+        return result;
+    }
+}
@@ -3,13 +3,14 @@ package org.keycloak.models.cache.infinispan.entities;
 import org.keycloak.models.RealmModel;
 
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
-public class RoleListQuery extends AbstractRevisioned implements RoleQuery, InClient {
+public class RoleListQuery extends AbstractRevisioned implements RoleQuery, InClient, IdListQuery {
     private final Set<String> roles;
     private final String realm;
     private final String realmName;
@@ -40,6 +41,19 @@ public class RoleListQuery extends AbstractRevisioned implements RoleQuery, InCl
         this.client = client;
     }
 
+    private RoleListQuery(RoleListQuery query, Long revision, Set<String> roles) {
+        super(revision, query.getId());
+        this.realm = query.realm;
+        this.realmName = query.realmName;
+        this.client = query.client;
+        this.roles = roles;
+    }
+
+    @Override
+    public RoleListQuery withChanges(Long revision, Map<String, Boolean> changes) {
+        return new RoleListQuery(this, revision, IdListQuery.applyChanges(roles, changes));
+    }
+
     @Override
     public Set<String> getRoles() {
         return roles;
@@ -20,6 +20,7 @@ package org.keycloak.models.cache.infinispan.events;
 import java.util.Objects;
 import java.util.Set;
 
+import org.keycloak.models.cache.infinispan.ListQueryChanges;
 import org.keycloak.models.cache.infinispan.RealmCacheManager;
 import java.io.IOException;
 import java.io.ObjectInput;
@@ -67,7 +68,12 @@ public class ClientScopeAddedEvent extends InvalidationEvent implements RealmCac
 
     @Override
     public void addInvalidations(RealmCacheManager realmCache, Set<String> invalidations) {
-        realmCache.clientScopeAdded(realmId, invalidations);
+        // The list of client scopes of the realm is updated by addListChanges
+    }
+
+    @Override
+    public void addListChanges(RealmCacheManager realmCache, ListQueryChanges listChanges) {
+        realmCache.clientScopeAdded(realmId, clientScopeId, listChanges);
     }
 
     public static class ExternalizerImpl implements Externalizer<ClientScopeAddedEvent> {
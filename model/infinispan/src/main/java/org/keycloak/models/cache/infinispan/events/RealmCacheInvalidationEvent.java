@@ -19,6 +19,7 @@ package org.keycloak.models.cache.infinispan.events;
 
 import java.util.Set;
 
+import org.keycloak.models.cache.infinispan.ListQueryChanges;
 import org.keycloak.models.cache.infinispan.RealmCacheManager;
 
 /**
@@ -28,4 +29,10 @@ public interface RealmCacheInvalidationEvent {
 
     void addInvalidations(RealmCacheManager realmCache, Set<String> invalidations);
 
+    /**
+     * Adds the changes of the cached lists, which are updated in place instead of being invalidated.
+     */
+    default void addListChanges(RealmCacheManager realmCache, ListQueryChanges listChanges) {
+    }
+
 }
@@ -20,6 +20,7 @@ package org.keycloak.models.cache.infinispan.events;
 import java.util.Objects;
 import java.util.Set;
 
+import org.keycloak.models.cache.infinispan.ListQueryChanges;
 import org.keycloak.models.cache.infinispan.RealmCacheManager;
 import java.io.IOException;
 import java.io.ObjectInput;
@@ -56,7 +57,12 @@ public class RoleAddedEvent extends InvalidationEvent implements RealmCacheInval
 
     @Override
     public void addInvalidations(RealmCacheManager realmCache, Set<String> invalidations) {
-        realmCache.roleAdded(containerId, invalidations);
+        // The list of roles of the container is updated by addListChanges
+    }
+
+    @Override
+    public void addListChanges(RealmCacheManager realmCache, ListQueryChanges listChanges) {
+        realmCache.roleAdded(containerId, roleId, listChanges);
     }
 
     @Override
@@ -17,6 +17,7 @@
 
 package org.keycloak.models.cache.infinispan.events;
 
+import java.util.Collections;
 import java.util.Objects;
 import java.util.Set;
 
@@ -58,7 +59,8 @@ public class RoleUpdatedEvent extends InvalidationEvent implements RealmCacheInv
 
     @Override
     public void addInvalidations(RealmCacheManager realmCache, Set<String> invalidations) {
-        realmCache.roleUpdated(containerId, roleName, invalidations);
+        realmCache.roleUpdated(roleId, containerId, roleName, invalidations);
+        realmCache.compositeRoleClosuresInvalidations(Collections.singleton(roleId), invalidations);
     }
 
     @Override
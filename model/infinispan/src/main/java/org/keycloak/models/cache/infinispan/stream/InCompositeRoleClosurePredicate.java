@@ -0,0 +1,76 @@
+package org.keycloak.models.cache.infinispan.stream;
+
+import org.keycloak.models.cache.infinispan.entities.CompositeRoleClosure;
+import org.keycloak.models.cache.infinispan.entities.Revisioned;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import org.infinispan.commons.marshall.Externalizer;
+import org.infinispan.commons.marshall.SerializeWith;
+import org.keycloak.models.sessions.infinispan.util.KeycloakMarshallUtil;
+
+/**
+ * Matches the composite role closures of the roles and of all the roles, which contain any of the roles in their closure.
+ */
+@SerializeWith(InCompositeRoleClosurePredicate.ExternalizerImpl.class)
+public class InCompositeRoleClosurePredicate implements Predicate<Map.Entry<String, Revisioned>>, Serializable {
+    private Set<String> roles;
+
+    public static InCompositeRoleClosurePredicate create() {
+        return new InCompositeRoleClosurePredicate();
+    }
+
+    public InCompositeRoleClosurePredicate roles(Set<String> roles) {
+        this.roles = roles;
+        return this;
+    }
+
+    @Override
+    public boolean test(Map.Entry<String, Revisioned> entry) {
+        Object value = entry.getValue();
+        if (!(value instanceof CompositeRoleClosure)) return false;
+
+        CompositeRoleClosure closure = (CompositeRoleClosure) value;
+        for (String role : roles) {
+            if (role.equals(closure.getRoleId()) || closure.getRoles().contains(role)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static class ExternalizerImpl implements Externalizer<InCompositeRoleClosurePredicate> {
+
+        private static final int VERSION_1 = 1;
+
+        @Override
+        public void writeObject(ObjectOutput output, InCompositeRoleClosurePredicate obj) throws IOException {
+            output.writeByte(VERSION_1);
+
+            KeycloakMarshallUtil.writeCollection(obj.roles, KeycloakMarshallUtil.STRING_EXT, output);
+        }
+
+        @Override
+        public InCompositeRoleClosurePredicate readObject(ObjectInput input) throws IOException, ClassNotFoundException {
+            switch (input.readByte()) {
+                case VERSION_1:
+                    return readObjectVersion1(input);
+                default:
+                    throw new IOException("Unknown version");
+            }
+        }
+
+        public InCompositeRoleClosurePredicate readObjectVersion1(ObjectInput input) throws IOException, ClassNotFoundException {
+            InCompositeRoleClosurePredicate res = new InCompositeRoleClosurePredicate();
+            res.roles = KeycloakMarshallUtil.readCollection(input, KeycloakMarshallUtil.STRING_EXT, HashSet::new);
+
+            return res;
+        }
+    }
+}
@@ -27,6 +27,7 @@ import java.util.Set;
 
 import org.keycloak.models.ClientModel;
 import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.ModelException;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.UserModel;
 import org.keycloak.models.sessions.infinispan.entities.AuthenticationSessionEntity;
@@ -59,6 +60,20 @@ public class AuthenticationSessionAdapter implements AuthenticationSessionModel
         parent.update();
     }
 
+    // Notes are often filled from request parameters, so their size is limited to keep the cache entries small
+    private void checkNotesSize(Map<String, String> notes, String name, String value) {
+        int maxSize = parent.getNotesMaxSize();
+        if (maxSize <= 0) {
+            return;
+        }
+
+        String previous = notes.get(name);
+        int size = entity.getNotesSize() + name.length() + value.length() - (previous == null ? 0 : name.length() + previous.length());
+        if (size > maxSize) {
+            throw new ModelException(String.format("Notes of authentication session '%s' would exceed the limit of %d characters", parent.getId(), maxSize));
+        }
+    }
+
     @Override
     public String getTabId() {
         return tabId;
@@ -140,6 +155,7 @@ public class AuthenticationSessionAdapter implements AuthenticationSessionModel
             if (value == null) {
                 entity.getClientNotes().remove(name);
             } else {
+                checkNotesSize(entity.getClientNotes(), name, value);
                 entity.getClientNotes().put(name, value);
             }
         }
@@ -182,6 +198,7 @@ public class AuthenticationSessionAdapter implements AuthenticationSessionModel
             if (value == null) {
                 entity.getAuthNotes().remove(name);
             } else {
+                checkNotesSize(entity.getAuthNotes(), name, value);
                 entity.getAuthNotes().put(name, value);
             }
         }
@@ -211,6 +228,7 @@ public class AuthenticationSessionAdapter implements AuthenticationSessionModel
             if (value == null) {
                 entity.getUserSessionNotes().remove(name);
             } else {
+                checkNotesSize(entity.getUserSessionNotes(), name, value);
                 entity.getUserSessionNotes().put(name, value);
             }
         }
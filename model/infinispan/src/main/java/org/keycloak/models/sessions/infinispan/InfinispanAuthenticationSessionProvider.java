@@ -18,6 +18,7 @@
 package org.keycloak.models.sessions.infinispan;
 
 import org.keycloak.cluster.ClusterProvider;
+import org.keycloak.connections.infinispan.InfinispanUtil;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -36,6 +37,7 @@ import org.keycloak.models.sessions.infinispan.events.RealmRemovedSessionEvent;
 import org.keycloak.models.sessions.infinispan.events.SessionEventsSenderTransaction;
 import org.keycloak.models.sessions.infinispan.stream.RootAuthenticationSessionPredicate;
 import org.keycloak.models.sessions.infinispan.util.InfinispanKeyGenerator;
+import org.keycloak.models.sessions.infinispan.util.SessionAffinityStats;
 import org.keycloak.models.utils.SessionExpiration;
 import org.keycloak.sessions.AuthenticationSessionCompoundId;
 import org.keycloak.sessions.AuthenticationSessionProvider;
@@ -52,15 +54,25 @@ public class InfinispanAuthenticationSessionProvider implements AuthenticationSe
     private final Cache<String, RootAuthenticationSessionEntity> cache;
     private final InfinispanKeyGenerator keyGenerator;
     private final int authSessionsLimit;
+    private final int authSessionNotesMaxSize;
+    private final SessionAffinityStats affinityStats;
     protected final InfinispanKeycloakTransaction tx;
     protected final SessionEventsSenderTransaction clusterEventsSenderTx;
 
     public InfinispanAuthenticationSessionProvider(KeycloakSession session, InfinispanKeyGenerator keyGenerator,
                                                    Cache<String, RootAuthenticationSessionEntity> cache, int authSessionsLimit) {
+        this(session, keyGenerator, cache, authSessionsLimit, -1, null);
+    }
+
+    public InfinispanAuthenticationSessionProvider(KeycloakSession session, InfinispanKeyGenerator keyGenerator,
+                                                   Cache<String, RootAuthenticationSessionEntity> cache, int authSessionsLimit,
+                                                   int authSessionNotesMaxSize, SessionAffinityStats affinityStats) {
         this.session = session;
         this.cache = cache;
         this.keyGenerator = keyGenerator;
         this.authSessionsLimit = authSessionsLimit;
+        this.authSessionNotesMaxSize = authSessionNotesMaxSize;
+        this.affinityStats = affinityStats;
 
         this.tx = new InfinispanKeycloakTransaction();
         this.clusterEventsSenderTx = new SessionEventsSenderTransaction(session);
@@ -91,13 +103,18 @@ public class InfinispanAuthenticationSessionProvider implements AuthenticationSe
 
 
     private RootAuthenticationSessionAdapter wrap(RealmModel realm, RootAuthenticationSessionEntity entity) {
-        return entity==null ? null : new RootAuthenticationSessionAdapter(session, this, cache, realm, entity, authSessionsLimit);
+        return entity==null ? null : new RootAuthenticationSessionAdapter(session, this, cache, realm, entity, authSessionsLimit, authSessionNotesMaxSize);
     }
 
 
     private RootAuthenticationSessionEntity getRootAuthenticationSessionEntity(String authSessionId) {
         // Chance created in this transaction
         RootAuthenticationSessionEntity entity = tx.get(cache, authSessionId);
+
+        if (entity != null && affinityStats != null) {
+            affinityStats.recordAccess(InfinispanUtil.getTopologyInfo(session).amIOwner(cache, authSessionId));
+        }
+
         return entity;
     }
 
@@ -30,7 +30,9 @@ import org.keycloak.models.sessions.infinispan.entities.RootAuthenticationSessio
 import org.keycloak.models.sessions.infinispan.events.AbstractAuthSessionClusterListener;
 import org.keycloak.models.sessions.infinispan.events.ClientRemovedSessionEvent;
 import org.keycloak.models.sessions.infinispan.events.RealmRemovedSessionEvent;
+import org.keycloak.models.sessions.infinispan.util.CacheSizeStats;
 import org.keycloak.models.sessions.infinispan.util.InfinispanKeyGenerator;
+import org.keycloak.models.sessions.infinispan.util.SessionAffinityStats;
 import org.keycloak.models.utils.KeycloakModelUtils;
 import org.keycloak.models.utils.PostMigrationEvent;
 import org.keycloak.provider.ProviderConfigProperty;
@@ -43,6 +45,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import org.jboss.logging.Logger;
 
 /**
@@ -59,12 +62,27 @@ public class InfinispanAuthenticationSessionProviderFactory implements Authentic
 
     private int authSessionsLimit;
 
+    private int authSessionNotesMaxSize;
+
+    private final SessionAffinityStats affinityStats = new SessionAffinityStats();
+
+    // Lookups in a local cache are always served by this node, so the affinity is recorded only for a clustered cache
+    private boolean recordAffinity;
+
+    // Sampled and refreshed at most every 30 seconds, so that scraping the metrics does not iterate all the sessions
+    private final CacheSizeStats<RootAuthenticationSessionEntity> sizeStats = new CacheSizeStats<>(RootAuthenticationSessionEntity.class,
+            RootAuthenticationSessionEntity::estimateSize, 100, TimeUnit.SECONDS.toMillis(30));
+
     public static final String PROVIDER_ID = "infinispan";
 
     public static final String AUTH_SESSIONS_LIMIT = "authSessionsLimit";
 
     public static final int DEFAULT_AUTH_SESSIONS_LIMIT = 300;
 
+    public static final String AUTH_SESSION_NOTES_MAX_SIZE = "authSessionNotesMaxSize";
+
+    public static final int DEFAULT_AUTH_SESSION_NOTES_MAX_SIZE = -1;
+
     public static final String AUTHENTICATION_SESSION_EVENTS = "AUTHENTICATION_SESSION_EVENTS";
 
     public static final String REALM_REMOVED_AUTHSESSION_EVENT = "REALM_REMOVED_EVENT_AUTHSESSIONS";
@@ -77,6 +95,8 @@ public class InfinispanAuthenticationSessionProviderFactory implements Authentic
         int configInt = config.getInt(AUTH_SESSIONS_LIMIT, DEFAULT_AUTH_SESSIONS_LIMIT);
         // use default if provided value is not a positive number
         authSessionsLimit = (configInt <= 0) ? DEFAULT_AUTH_SESSIONS_LIMIT : configInt;
+        // zero or negative value disables the limit
+        authSessionNotesMaxSize = config.getInt(AUTH_SESSION_NOTES_MAX_SIZE, DEFAULT_AUTH_SESSION_NOTES_MAX_SIZE);
     }
 
 
@@ -107,6 +127,12 @@ public class InfinispanAuthenticationSessionProviderFactory implements Authentic
                 .helpText("The maximum number of concurrent authentication sessions per RootAuthenticationSession.")
                 .defaultValue(DEFAULT_AUTH_SESSIONS_LIMIT)
                 .add()
+                .property()
+                .name(AUTH_SESSION_NOTES_MAX_SIZE)
+                .type("int")
+                .helpText("The maximum size of the client, auth and user session notes of an authentication session in characters. Zero or negative value disables the limit.")
+                .defaultValue(DEFAULT_AUTH_SESSION_NOTES_MAX_SIZE)
+                .add()
                 .build();
     }
 
@@ -138,7 +164,39 @@ public class InfinispanAuthenticationSessionProviderFactory implements Authentic
     @Override
     public AuthenticationSessionProvider create(KeycloakSession session) {
         lazyInit(session);
-        return new InfinispanAuthenticationSessionProvider(session, keyGenerator, authSessionsCache, authSessionsLimit);
+        return new InfinispanAuthenticationSessionProvider(session, keyGenerator, authSessionsCache, authSessionsLimit, authSessionNotesMaxSize,
+                recordAffinity ? affinityStats : null);
+    }
+
+    /**
+     * @return count of the root authentication sessions stored on this node, including backup copies. The count is
+     * refreshed at most every 30 seconds
+     */
+    public long getLocalEntryCount() {
+        return sizeStats.getEntryCount();
+    }
+
+    /**
+     * @return estimated heap occupied by the root authentication sessions stored on this node, extrapolated from a
+     * sample of the sessions. The estimate is refreshed at most every 30 seconds
+     */
+    public long getLocalEstimatedSize() {
+        return sizeStats.getEstimatedSize();
+    }
+
+    /**
+     * @return the count and the estimated size of the root authentication sessions stored on this node
+     */
+    public CacheSizeStats<RootAuthenticationSessionEntity> getSizeStats() {
+        return sizeStats;
+    }
+
+    /**
+     * @return counts of the authentication session lookups served by the owner node and by the other nodes. Nothing is
+     * counted when the cache is not clustered
+     */
+    public SessionAffinityStats getAffinityStats() {
+        return affinityStats;
     }
 
     private void updateAuthNotes(ClusterEvent clEvent) {
@@ -180,7 +238,10 @@ public class InfinispanAuthenticationSessionProviderFactory implements Authentic
             synchronized (this) {
                 if (authSessionsCache == null) {
                     InfinispanConnectionProvider connections = session.getProvider(InfinispanConnectionProvider.class);
-                    authSessionsCache = connections.getCache(InfinispanConnectionProvider.AUTHENTICATION_SESSIONS_CACHE_NAME);
+                    Cache<String, RootAuthenticationSessionEntity> cache = connections.getCache(InfinispanConnectionProvider.AUTHENTICATION_SESSIONS_CACHE_NAME);
+                    recordAffinity = cache.getCacheConfiguration().clustering().cacheMode().isClustered();
+                    authSessionsCache = cache;
+                    sizeStats.setCache(cache);
 
                     keyGenerator = new InfinispanKeyGenerator();
 
@@ -195,6 +256,7 @@ public class InfinispanAuthenticationSessionProviderFactory implements Authentic
 
     @Override
     public void close() {
+        log.debugf("Authentication session affinity: %s", affinityStats);
     }
 
     @Override
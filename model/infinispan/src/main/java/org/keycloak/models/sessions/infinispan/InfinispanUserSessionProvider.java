@@ -47,7 +47,9 @@ import org.keycloak.models.sessions.infinispan.changes.sessions.PersisterLastSes
 import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
 import org.keycloak.models.sessions.infinispan.remotestore.RemoteCacheInvoker;
 import org.keycloak.models.sessions.infinispan.changes.SessionEntityWrapper;
+import org.keycloak.models.sessions.infinispan.changes.AsyncCommitTransaction;
 import org.keycloak.models.sessions.infinispan.changes.InfinispanChangelogBasedTransaction;
+import org.keycloak.models.sessions.infinispan.changes.SessionCommitMetrics;
 import org.keycloak.models.sessions.infinispan.changes.SessionUpdateTask;
 import org.keycloak.models.sessions.infinispan.entities.AuthenticatedClientSessionEntity;
 import org.keycloak.models.sessions.infinispan.entities.AuthenticatedClientSessionStore;
@@ -55,6 +57,7 @@ import org.keycloak.models.sessions.infinispan.entities.UserSessionEntity;
 import org.keycloak.models.sessions.infinispan.events.RealmRemovedSessionEvent;
 import org.keycloak.models.sessions.infinispan.events.RemoveUserSessionsEvent;
 import org.keycloak.models.sessions.infinispan.events.SessionEventsSenderTransaction;
+import org.keycloak.models.sessions.infinispan.index.UserSessionIndex;
 import org.keycloak.models.sessions.infinispan.stream.Mappers;
 import org.keycloak.models.sessions.infinispan.stream.SessionPredicate;
 import org.keycloak.models.sessions.infinispan.stream.UserSessionPredicate;
@@ -63,8 +66,11 @@ import org.keycloak.models.sessions.infinispan.util.InfinispanKeyGenerator;
 import org.keycloak.connections.infinispan.InfinispanUtil;
 import org.keycloak.models.light.LightweightUserAdapter;
 import org.keycloak.models.sessions.infinispan.util.SessionTimeouts;
+import org.keycloak.models.utils.SessionExpirationUtils;
+import org.keycloak.models.utils.SessionTimeoutHelper;
 
 import java.io.Serializable;
+import java.util.AbstractMap;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -107,6 +113,8 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
     protected final InfinispanChangelogBasedTransaction<UUID, AuthenticatedClientSessionEntity> clientSessionTx;
     protected final InfinispanChangelogBasedTransaction<UUID, AuthenticatedClientSessionEntity> offlineClientSessionTx;
 
+    protected final AsyncCommitTransaction asyncCommitTx;
+
     protected final SessionEventsSenderTransaction clusterEventsSenderTx;
 
     protected final CrossDCLastSessionRefreshStore lastSessionRefreshStore;
@@ -118,6 +126,27 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
 
     protected final boolean loadOfflineSessionsFromDatabase;
 
+    protected final UserSessionIndex sessionIndex;
+    protected final UserSessionIndex offlineSessionIndex;
+
+    public InfinispanUserSessionProvider(KeycloakSession session,
+                                         RemoteCacheInvoker remoteCacheInvoker,
+                                         CrossDCLastSessionRefreshStore lastSessionRefreshStore,
+                                         CrossDCLastSessionRefreshStore offlineLastSessionRefreshStore,
+                                         PersisterLastSessionRefreshStore persisterLastSessionRefreshStore,
+                                         InfinispanKeyGenerator keyGenerator,
+                                         Cache<String, SessionEntityWrapper<UserSessionEntity>> sessionCache,
+                                         Cache<String, SessionEntityWrapper<UserSessionEntity>> offlineSessionCache,
+                                         Cache<UUID, SessionEntityWrapper<AuthenticatedClientSessionEntity>> clientSessionCache,
+                                         Cache<UUID, SessionEntityWrapper<AuthenticatedClientSessionEntity>> offlineClientSessionCache,
+                                         boolean loadOfflineSessionsFromDatabase,
+                                         UserSessionIndex sessionIndex,
+                                         UserSessionIndex offlineSessionIndex) {
+        this(session, remoteCacheInvoker, lastSessionRefreshStore, offlineLastSessionRefreshStore, persisterLastSessionRefreshStore, keyGenerator,
+                sessionCache, offlineSessionCache, clientSessionCache, offlineClientSessionCache, loadOfflineSessionsFromDatabase,
+                sessionIndex, offlineSessionIndex, false, null);
+    }
+
     public InfinispanUserSessionProvider(KeycloakSession session,
                                          RemoteCacheInvoker remoteCacheInvoker,
                                          CrossDCLastSessionRefreshStore lastSessionRefreshStore,
@@ -128,7 +157,11 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
                                          Cache<String, SessionEntityWrapper<UserSessionEntity>> offlineSessionCache,
                                          Cache<UUID, SessionEntityWrapper<AuthenticatedClientSessionEntity>> clientSessionCache,
                                          Cache<UUID, SessionEntityWrapper<AuthenticatedClientSessionEntity>> offlineClientSessionCache,
-                                         boolean loadOfflineSessionsFromDatabase) {
+                                         boolean loadOfflineSessionsFromDatabase,
+                                         UserSessionIndex sessionIndex,
+                                         UserSessionIndex offlineSessionIndex,
+                                         boolean asyncCommit,
+                                         SessionCommitMetrics commitMetrics) {
         this.session = session;
 
         this.sessionCache = sessionCache;
@@ -136,10 +169,16 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
         this.offlineSessionCache = offlineSessionCache;
         this.offlineClientSessionCache = offlineClientSessionCache;
 
-        this.sessionTx = new InfinispanChangelogBasedTransaction<>(session, sessionCache, remoteCacheInvoker, SessionTimeouts::getUserSessionLifespanMs, SessionTimeouts::getUserSessionMaxIdleMs);
-        this.offlineSessionTx = new InfinispanChangelogBasedTransaction<>(session, offlineSessionCache, remoteCacheInvoker, SessionTimeouts::getOfflineSessionLifespanMs, SessionTimeouts::getOfflineSessionMaxIdleMs);
-        this.clientSessionTx = new InfinispanChangelogBasedTransaction<>(session, clientSessionCache, remoteCacheInvoker, SessionTimeouts::getClientSessionLifespanMs, SessionTimeouts::getClientSessionMaxIdleMs);
-        this.offlineClientSessionTx = new InfinispanChangelogBasedTransaction<>(session, offlineClientSessionCache, remoteCacheInvoker, SessionTimeouts::getOfflineClientSessionLifespanMs, SessionTimeouts::getOfflineClientSessionMaxIdleMs);
+        this.sessionIndex = sessionIndex;
+        this.offlineSessionIndex = offlineSessionIndex;
+
+        // Operations of all the four transactions are sent at the same time and awaited together
+        this.asyncCommitTx = asyncCommit ? new AsyncCommitTransaction(commitMetrics) : null;
+
+        this.sessionTx = new InfinispanChangelogBasedTransaction<>(session, sessionCache, remoteCacheInvoker, SessionTimeouts::getUserSessionLifespanMs, SessionTimeouts::getUserSessionMaxIdleMs, sessionIndex, asyncCommitTx, commitMetrics);
+        this.offlineSessionTx = new InfinispanChangelogBasedTransaction<>(session, offlineSessionCache, remoteCacheInvoker, SessionTimeouts::getOfflineSessionLifespanMs, SessionTimeouts::getOfflineSessionMaxIdleMs, offlineSessionIndex, asyncCommitTx, commitMetrics);
+        this.clientSessionTx = new InfinispanChangelogBasedTransaction<>(session, clientSessionCache, remoteCacheInvoker, SessionTimeouts::getClientSessionLifespanMs, SessionTimeouts::getClientSessionMaxIdleMs, null, asyncCommitTx, commitMetrics);
+        this.offlineClientSessionTx = new InfinispanChangelogBasedTransaction<>(session, offlineClientSessionCache, remoteCacheInvoker, SessionTimeouts::getOfflineClientSessionLifespanMs, SessionTimeouts::getOfflineClientSessionMaxIdleMs, null, asyncCommitTx, commitMetrics);
 
         this.clusterEventsSenderTx = new SessionEventsSenderTransaction(session);
 
@@ -155,6 +194,9 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
         session.getTransactionManager().enlistAfterCompletion(offlineSessionTx);
         session.getTransactionManager().enlistAfterCompletion(clientSessionTx);
         session.getTransactionManager().enlistAfterCompletion(offlineClientSessionTx);
+        if (asyncCommitTx != null) {
+            session.getTransactionManager().enlistAfterCompletion(asyncCommitTx);
+        }
     }
 
     protected Cache<String, SessionEntityWrapper<UserSessionEntity>> getCache(boolean offline) {
@@ -173,6 +215,10 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
         return offline ? offlineClientSessionTx : clientSessionTx;
     }
 
+    protected UserSessionIndex getSessionIndex(boolean offline) {
+        return offline ? offlineSessionIndex : sessionIndex;
+    }
+
     protected CrossDCLastSessionRefreshStore getLastSessionRefreshStore() {
         return lastSessionRefreshStore;
     }
@@ -399,6 +445,13 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
         Cache<String, SessionEntityWrapper<UserSessionEntity>> cache = getCache(offline);
         cache = CacheDecorators.skipCacheLoadersIfRemoteStoreIsEnabled(cache);
 
+        Stream<UserSessionEntity> indexed = getUserSessionEntitiesFromIndex(cache, predicate, offline);
+        if (indexed != null) {
+            return indexed
+                    .map(entity -> this.wrap(realm, entity, offline))
+                    .filter(Objects::nonNull).map(Function.identity());
+        }
+
         // return a stream that 'wraps' the infinispan cache stream so that the cache stream's elements are read one by one
         // and then mapped locally to avoid serialization issues when trying to manipulate the cache stream directly.
         return StreamSupport.stream(cache.entrySet().stream().filter(predicate).spliterator(), false)
@@ -407,6 +460,39 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
                 .filter(Objects::nonNull).map(Function.identity());
     }
 
+    /**
+     * Looks up the user sessions matching the predicate through the secondary index, so that just the matching
+     * sessions are loaded from the cache instead of iterating over all of them.
+     *
+     * @return stream of matching entities or {@code null} if the index is not available for the given predicate
+     */
+    private Stream<UserSessionEntity> getUserSessionEntitiesFromIndex(Cache<String, SessionEntityWrapper<UserSessionEntity>> cache,
+                                                                      UserSessionPredicate predicate, boolean offline) {
+        UserSessionIndex index = getSessionIndex(offline);
+        if (index == null || !index.isReady()) {
+            return null;
+        }
+
+        Set<String> candidates = index.findSessionIds(predicate);
+        if (candidates == null) {
+            return null;
+        }
+
+        return candidates.stream()
+                .map(id -> {
+                    SessionEntityWrapper<UserSessionEntity> wrapper = cache.get(id);
+                    if (wrapper == null) {
+                        // Stale index entry. Entity was removed without the index being notified
+                        index.entityRemoved(id);
+                        return null;
+                    }
+                    return new AbstractMap.SimpleImmutableEntry<>(id, wrapper);
+                })
+                .filter(Objects::nonNull)
+                .filter(predicate)
+                .map(Mappers.userSessionEntity());
+    }
+
     @Override
     public AuthenticatedClientSessionAdapter getClientSession(UserSessionModel userSession, ClientModel client, String clientSessionId, boolean offline) {
         if (clientSessionId == null) {
@@ -566,6 +652,11 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
             return persister.getUserSessionsCountsByClients(realm, true);
         }
 
+        UserSessionIndex index = getSessionIndex(offline);
+        if (index != null && index.isReady()) {
+            return index.getClientSessionStats(realm.getId());
+        }
+
         Cache<String, SessionEntityWrapper<UserSessionEntity>> cache = getCache(offline);
         cache = CacheDecorators.skipCacheLoadersIfRemoteStoreIsEnabled(cache);
         return cache.entrySet().stream()
@@ -587,6 +678,11 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
             return persister.getUserSessionsCount(realm, client, true);
         }
 
+        UserSessionIndex index = getSessionIndex(offline);
+        if (index != null && index.isReady()) {
+            return index.getSessionsCount(realm.getId(), client.getId());
+        }
+
         return getUserSessionsStream(realm, UserSessionPredicate.create(realm.getId()).client(client.getId()), offline).count();
     }
 
@@ -608,7 +704,11 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
 
         cache = CacheDecorators.skipCacheLoadersIfRemoteStoreIsEnabled(cache);
 
-        Iterator<UserSessionEntity> itr = cache.entrySet().stream().filter(UserSessionPredicate.create(realm.getId()).user(user.getId())).map(Mappers.userSessionEntity()).iterator();
+        UserSessionPredicate predicate = UserSessionPredicate.create(realm.getId()).user(user.getId());
+        Stream<UserSessionEntity> indexed = getUserSessionEntitiesFromIndex(cache, predicate, offline);
+        Iterator<UserSessionEntity> itr = indexed != null
+                ? indexed.iterator()
+                : cache.entrySet().stream().filter(predicate).map(Mappers.userSessionEntity()).iterator();
 
         while (itr.hasNext()) {
             UserSessionEntity userSessionEntity = itr.next();
@@ -617,7 +717,7 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
     }
 
     public void removeAllExpired() {
-        // Rely on expiration of cache entries provided by infinispan. Just expire entries from persister is needed
+        // Expired sessions are found through the expiration index, if available. Infinispan expires the rest of the entries
         // TODO: Avoid iteration over all realms here (Details in the KEYCLOAK-16802)
         session.realms().getRealmsStream().forEach(this::removeExpired);
 
@@ -625,10 +725,60 @@ public class InfinispanUserSessionProvider implements UserSessionProvider {
 
     @Override
     public void removeExpired(RealmModel realm) {
-        // Rely on expiration of cache entries provided by infinispan. Nothing needed here besides calling persister
+        // Infinispan expires the cache entries on its own. Sessions in the due buckets of the expiration index are removed
+        // eagerly, which costs just as much as there are expired sessions
+        removeExpiredFromIndex(realm, false);
+        removeExpiredFromIndex(realm, true);
         session.getProvider(UserSessionPersisterProvider.class).removeExpired(realm);
     }
 
+    private void removeExpiredFromIndex(RealmModel realm, boolean offline) {
+        UserSessionIndex index = getSessionIndex(offline);
+        if (index == null || !index.isReady()) {
+            return;
+        }
+
+        Cache<String, SessionEntityWrapper<UserSessionEntity>> cache = CacheDecorators.skipCacheLoadersIfRemoteStoreIsEnabled(getCache(offline));
+        int currentTime = Time.currentTime();
+        int removed = 0;
+
+        for (boolean rememberMe : new boolean[] { false, true }) {
+            // Timeouts are the same for all the sessions of the realm with the same remember-me flag
+            long idleTimeout = SessionExpirationUtils.calculateUserSessionIdleTimestamp(offline, rememberMe, 0, realm);
+            long maxLifespan = SessionExpirationUtils.calculateUserSessionMaxLifespanTimestamp(offline, rememberMe, 0, realm);
+
+            int refreshedBefore = currentTime - (int) TimeUnit.MILLISECONDS.toSeconds(idleTimeout) - SessionTimeoutHelper.PERIODIC_CLEANER_IDLE_TIMEOUT_WINDOW_SECONDS;
+            int startedBefore = maxLifespan < 0 ? Integer.MIN_VALUE : currentTime - (int) TimeUnit.MILLISECONDS.toSeconds(maxLifespan);
+
+            for (String sessionId : index.findExpirationCandidates(realm.getId(), rememberMe, refreshedBefore, startedBefore)) {
+                SessionEntityWrapper<UserSessionEntity> wrapper = cache.get(sessionId);
+                if (wrapper == null) {
+                    // Stale index entry. Entity was removed without the index being notified
+                    index.entityRemoved(sessionId);
+                } else if (isExpired(realm, wrapper.getEntity(), offline)) {
+                    removeUserSession(wrapper.getEntity(), offline);
+                    removed++;
+                }
+            }
+        }
+
+        log.debugf("Removed %d expired %s user sessions in realm '%s'", removed, offline ? "offline" : "regular", realm.getName());
+    }
+
+    private boolean isExpired(RealmModel realm, UserSessionEntity entity, boolean offline) {
+        long lifespan = offline
+                ? SessionTimeouts.getOfflineSessionLifespanMs(realm, null, entity)
+                : SessionTimeouts.getUserSessionLifespanMs(realm, null, entity);
+        if (lifespan == SessionTimeouts.ENTRY_EXPIRED_FLAG) {
+            return true;
+        }
+
+        // Tolerate the delayed propagation of the last refresh across the cluster, same as the persister does
+        long idleTimestamp = SessionExpirationUtils.calculateUserSessionIdleTimestamp(offline, entity.isRememberMe(),
+                TimeUnit.SECONDS.toMillis(entity.getLastSessionRefresh()), realm);
+        return idleTimestamp + TimeUnit.SECONDS.toMillis(SessionTimeoutHelper.PERIODIC_CLEANER_IDLE_TIMEOUT_WINDOW_SECONDS) <= Time.currentTimeMillis();
+    }
+
     @Override
     public void removeUserSessions(RealmModel realm) {
         // Don't send message to all DCs, just to all cluster nodes in current DC. The remoteCache will notify client listeners for removed userSessions.
@@ -42,6 +42,7 @@ import org.keycloak.models.sessions.infinispan.initializer.CacheInitializer;
 import org.keycloak.models.sessions.infinispan.initializer.DBLockBasedCacheInitializer;
 import org.keycloak.models.sessions.infinispan.remotestore.RemoteCacheInvoker;
 import org.keycloak.models.sessions.infinispan.changes.SessionEntityWrapper;
+import org.keycloak.models.sessions.infinispan.changes.SessionCommitMetrics;
 import org.keycloak.models.sessions.infinispan.entities.AuthenticatedClientSessionEntity;
 import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
 import org.keycloak.models.sessions.infinispan.entities.UserSessionEntity;
@@ -49,10 +50,13 @@ import org.keycloak.models.sessions.infinispan.events.AbstractUserSessionCluster
 import org.keycloak.models.sessions.infinispan.events.ClientRemovedSessionEvent;
 import org.keycloak.models.sessions.infinispan.events.RealmRemovedSessionEvent;
 import org.keycloak.models.sessions.infinispan.events.RemoveUserSessionsEvent;
+import org.keycloak.models.sessions.infinispan.index.UserSessionIndex;
+import org.keycloak.models.sessions.infinispan.index.UserSessionIndexListener;
 import org.keycloak.models.sessions.infinispan.initializer.InfinispanCacheInitializer;
 import org.keycloak.models.sessions.infinispan.initializer.OfflinePersistentUserSessionLoader;
 import org.keycloak.models.sessions.infinispan.remotestore.RemoteCacheSessionListener;
 import org.keycloak.models.sessions.infinispan.remotestore.RemoteCacheSessionsLoader;
+import org.keycloak.models.sessions.infinispan.stream.Mappers;
 import org.keycloak.models.sessions.infinispan.util.InfinispanKeyGenerator;
 import org.keycloak.connections.infinispan.InfinispanUtil;
 import org.keycloak.models.sessions.infinispan.util.SessionTimeouts;
@@ -61,10 +65,13 @@ import org.keycloak.models.utils.PostMigrationEvent;
 import org.keycloak.models.utils.ResetTimeOffsetEvent;
 import org.keycloak.provider.ProviderEvent;
 import org.keycloak.provider.ProviderEventListener;
+import org.keycloak.timer.TimerProvider;
 
 import java.io.Serializable;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.StreamSupport;
 import static org.keycloak.models.sessions.infinispan.InfinispanAuthenticationSessionProviderFactory.PROVIDER_PRIORITY;
 
 public class InfinispanUserSessionProviderFactory implements UserSessionProviderFactory {
@@ -88,6 +95,9 @@ public class InfinispanUserSessionProviderFactory implements UserSessionProvider
     private CrossDCLastSessionRefreshStore offlineLastSessionRefreshStore;
     private PersisterLastSessionRefreshStore persisterLastSessionRefreshStore;
     private InfinispanKeyGenerator keyGenerator;
+    private UserSessionIndex sessionIndex;
+    private UserSessionIndex offlineSessionIndex;
+    private final SessionCommitMetrics commitMetrics = new SessionCommitMetrics();
 
     @Override
     public InfinispanUserSessionProvider create(KeycloakSession session) {
@@ -98,7 +108,8 @@ public class InfinispanUserSessionProviderFactory implements UserSessionProvider
         Cache<UUID, SessionEntityWrapper<AuthenticatedClientSessionEntity>> offlineClientSessionsCache = connections.getCache(InfinispanConnectionProvider.OFFLINE_CLIENT_SESSION_CACHE_NAME);
 
         return new InfinispanUserSessionProvider(session, remoteCacheInvoker, lastSessionRefreshStore, offlineLastSessionRefreshStore,
-                persisterLastSessionRefreshStore, keyGenerator, cache, offlineSessionsCache, clientSessionCache, offlineClientSessionsCache, !preloadOfflineSessionsFromDatabase);
+                persisterLastSessionRefreshStore, keyGenerator, cache, offlineSessionsCache, clientSessionCache, offlineClientSessionsCache, !preloadOfflineSessionsFromDatabase,
+                sessionIndex, offlineSessionIndex, isAsyncCommit(), commitMetrics);
     }
 
     @Override
@@ -128,6 +139,7 @@ public class InfinispanUserSessionProviderFactory implements UserSessionProvider
                         loadPersistentSessions(factory, getMaxErrors(), getSessionsPerSegment());
                         registerClusterListeners(session);
                         loadSessionsFromRemoteCaches(session);
+                        registerSessionIndexes(session);
 
                     }, preloadTransactionTimeout);
 
@@ -151,6 +163,25 @@ public class InfinispanUserSessionProviderFactory implements UserSessionProvider
         });
     }
 
+    // Whether to maintain secondary indexes of user sessions by user, broker session, broker user and client
+    private boolean isIndexUserSessions() {
+        return config.getBoolean("indexUserSessions", true);
+    }
+
+    // Interval of the job, which corrects the drift of the user session indexes and counters. Disabled when zero or negative
+    private long getSessionIndexReconcileIntervalSeconds() {
+        return config.getLong("sessionIndexReconcileIntervalSeconds", 3600L);
+    }
+
+    // Whether the session changes are sent to the caches asynchronously and awaited together at the end of the transaction
+    private boolean isAsyncCommit() {
+        return config.getBoolean("asyncCommit", false);
+    }
+
+    public SessionCommitMetrics getCommitMetrics() {
+        return commitMetrics;
+    }
+
     // Max count of worker errors. Initialization will end with exception when this number is reached
     private int getMaxErrors() {
         return config.getInt("maxErrors", 20);
@@ -161,6 +192,11 @@ public class InfinispanUserSessionProviderFactory implements UserSessionProvider
         return config.getInt("sessionsPerSegment", 64);
     }
 
+    // Count of segments of offline sessions to be loaded from the database concurrently, each with its own connection
+    private int getSessionsPreloadWorkers() {
+        return config.getInt("sessionsPreloadWorkers", 1);
+    }
+
     private int getTimeoutForPreloadingSessionsSeconds() {
         Integer timeout = config.getInt("sessionsPreloadTimeoutInSeconds", null);
         return timeout != null ? timeout : Environment.getServerStartupTimeout();
@@ -187,9 +223,17 @@ public class InfinispanUserSessionProviderFactory implements UserSessionProvider
                     int defaultStateTransferTimeout = (int) (connections.getCache(InfinispanConnectionProvider.OFFLINE_USER_SESSION_CACHE_NAME)
                       .getCacheConfiguration().clustering().stateTransfer().timeout() / 1000);
 
+                    long offlineSessionsMaxCount = connections.getCache(InfinispanConnectionProvider.OFFLINE_USER_SESSION_CACHE_NAME)
+                            .getCacheConfiguration().memory().maxCount();
+                    if (offlineSessionsMaxCount > 0) {
+                        log.warnf("Cache '%s' is bounded to %d entries, but offline sessions are preloaded from the database. Evicted offline sessions " +
+                                "won't be returned by the searches over the cache. Remove the memory limit of the cache or disable the preloading.",
+                                InfinispanConnectionProvider.OFFLINE_USER_SESSION_CACHE_NAME, offlineSessionsMaxCount);
+                    }
+
                     InfinispanCacheInitializer ispnInitializer = new InfinispanCacheInitializer(sessionFactory, workCache,
                             new OfflinePersistentUserSessionLoader(sessionsPerSegment), "offlineUserSessions", sessionsPerSegment, maxErrors,
-                            getStalledTimeoutInSeconds(defaultStateTransferTimeout));
+                            getStalledTimeoutInSeconds(defaultStateTransferTimeout), getSessionsPreloadWorkers());
 
                     // DB-lock to ensure that persistent sessions are loaded from DB just on one DC. The other DCs will load them from remote cache.
                     CacheInitializer initializer = new DBLockBasedCacheInitializer(session, ispnInitializer);
@@ -256,6 +300,48 @@ public class InfinispanUserSessionProviderFactory implements UserSessionProvider
     }
 
 
+    protected void registerSessionIndexes(KeycloakSession session) {
+        if (!isIndexUserSessions()) {
+            log.debug("Indexing of user sessions is disabled");
+            return;
+        }
+
+        InfinispanConnectionProvider ispn = session.getProvider(InfinispanConnectionProvider.class);
+
+        Cache<String, SessionEntityWrapper<UserSessionEntity>> sessionsCache = ispn.getCache(InfinispanConnectionProvider.USER_SESSION_CACHE_NAME);
+        UserSessionIndex sessionIndex = new UserSessionIndex(sessionsCache.getName());
+        UserSessionIndexListener.register(sessionsCache, sessionIndex);
+        this.sessionIndex = sessionIndex;
+
+        Cache<String, SessionEntityWrapper<UserSessionEntity>> offlineSessionsCache = ispn.getCache(InfinispanConnectionProvider.OFFLINE_USER_SESSION_CACHE_NAME);
+        UserSessionIndex offlineSessionIndex = new UserSessionIndex(offlineSessionsCache.getName());
+        UserSessionIndexListener.register(offlineSessionsCache, offlineSessionIndex);
+        this.offlineSessionIndex = offlineSessionIndex;
+
+        long reconcileInterval = getSessionIndexReconcileIntervalSeconds();
+        if (reconcileInterval > 0) {
+            TimerProvider timer = session.getProvider(TimerProvider.class);
+            timer.scheduleTask((KeycloakSession keycloakSession) -> {
+
+                reconcileSessionIndex(sessionsCache, sessionIndex);
+                reconcileSessionIndex(offlineSessionsCache, offlineSessionIndex);
+
+            }, TimeUnit.SECONDS.toMillis(reconcileInterval), "reconcileUserSessionIndexes");
+        }
+
+        log.debug("Registered user session indexes");
+    }
+
+    private void reconcileSessionIndex(Cache<String, SessionEntityWrapper<UserSessionEntity>> cache, UserSessionIndex index) {
+        cache = CacheDecorators.skipCacheLoadersIfRemoteStoreIsEnabled(cache);
+
+        int fixed = index.reconcile(StreamSupport.stream(cache.entrySet().stream().map(Mappers.userSessionIndexEntry()).spliterator(), false));
+        if (fixed > 0) {
+            log.debugf("Corrected %d sessions in the index of cache '%s'", fixed, cache.getName());
+        }
+    }
+
+
     protected void checkRemoteCaches(KeycloakSession session) {
         this.remoteCacheInvoker = new RemoteCacheInvoker();
 
@@ -351,6 +437,9 @@ public class InfinispanUserSessionProviderFactory implements UserSessionProvider
 
     @Override
     public void close() {
+        if (commitMetrics.getCommits() > 0) {
+            log.debugf("Session commit metrics: %s", commitMetrics);
+        }
     }
 
     @Override
@@ -48,18 +48,31 @@ public class RootAuthenticationSessionAdapter implements RootAuthenticationSessi
     private RealmModel realm;
     private RootAuthenticationSessionEntity entity;
     private final int authSessionsLimit;
+    private final int notesMaxSize;
     private static Comparator<Map.Entry<String, AuthenticationSessionEntity>> TIMESTAMP_COMPARATOR =
             Comparator.comparingInt(e -> e.getValue().getTimestamp());
 
     public RootAuthenticationSessionAdapter(KeycloakSession session, InfinispanAuthenticationSessionProvider provider,
                                             Cache<String, RootAuthenticationSessionEntity> cache, RealmModel realm,
                                             RootAuthenticationSessionEntity entity, int authSessionsLimt) {
+        this(session, provider, cache, realm, entity, authSessionsLimt, -1);
+    }
+
+    public RootAuthenticationSessionAdapter(KeycloakSession session, InfinispanAuthenticationSessionProvider provider,
+                                            Cache<String, RootAuthenticationSessionEntity> cache, RealmModel realm,
+                                            RootAuthenticationSessionEntity entity, int authSessionsLimt, int notesMaxSize) {
         this.session = session;
         this.provider = provider;
         this.cache = cache;
         this.realm = realm;
         this.entity = entity;
         this.authSessionsLimit = authSessionsLimt;
+        this.notesMaxSize = notesMaxSize;
+    }
+
+    // Maximum size of the notes of one authentication session in characters. Not limited when zero or negative
+    int getNotesMaxSize() {
+        return notesMaxSize;
     }
 
     void update() {
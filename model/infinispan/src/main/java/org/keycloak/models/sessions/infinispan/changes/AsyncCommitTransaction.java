@@ -0,0 +1,77 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.changes;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import org.jboss.logging.Logger;
+import org.keycloak.models.AbstractKeycloakTransaction;
+import org.keycloak.models.sessions.infinispan.util.FuturesHelper;
+
+/**
+ * Collects the asynchronous cache operations issued by the {@link InfinispanChangelogBasedTransaction}s of one Keycloak
+ * session. The operations of all the transactions are sent to the cluster at the same time, and this transaction,
+ * enlisted after them, waits until all of them finished. Then it runs their completion tasks in the calling thread,
+ * like the retries of the conflicting conditional operations or the updates of the remote cache.
+ */
+public class AsyncCommitTransaction extends AbstractKeycloakTransaction {
+
+    private static final Logger logger = Logger.getLogger(AsyncCommitTransaction.class);
+
+    private final SessionCommitMetrics metrics;
+
+    private final FuturesHelper futures = new FuturesHelper();
+
+    private long startNanos;
+
+    public AsyncCommitTransaction(SessionCommitMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public <T> void addOperation(CompletableFuture<T> operation, Consumer<T> onSuccess) {
+        if (futures.size() == 0) {
+            startNanos = System.nanoTime();
+        }
+        futures.addTask(operation, onSuccess);
+    }
+
+    @Override
+    protected void commitImpl() {
+        if (futures.size() == 0) {
+            return;
+        }
+
+        int failed = futures.waitForAllToFinish();
+
+        if (metrics != null) {
+            metrics.commitFinished(futures.size(), System.nanoTime() - startNanos);
+        }
+
+        if (failed > 0) {
+            throw new IllegalStateException(String.format("%d of %d operations with sessions failed", failed, futures.size()));
+        }
+
+        logger.tracef("Finished %d operations with sessions", futures.size());
+    }
+
+    @Override
+    protected void rollbackImpl() {
+        // Operations are issued only when the session transactions commit, so nothing was sent
+    }
+}
@@ -21,6 +21,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
+import org.infinispan.AdvancedCache;
 import org.infinispan.Cache;
 import org.infinispan.context.Flag;
 import org.jboss.logging.Logger;
@@ -31,6 +32,7 @@ import org.keycloak.models.UserSessionModel;
 import org.keycloak.models.sessions.infinispan.CacheDecorators;
 import org.keycloak.models.sessions.infinispan.SessionFunction;
 import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
+import org.keycloak.models.sessions.infinispan.index.SessionIndex;
 import org.keycloak.models.sessions.infinispan.remotestore.RemoteCacheInvoker;
 import org.keycloak.connections.infinispan.InfinispanUtil;
 
@@ -51,14 +53,38 @@ public class InfinispanChangelogBasedTransaction<K, V extends SessionEntity> ext
     private final SessionFunction<V> lifespanMsLoader;
     private final SessionFunction<V> maxIdleTimeMsLoader;
 
+    private final SessionIndex<K, V> index;
+
+    private final AsyncCommitTransaction asyncCommit;
+    private final SessionCommitMetrics metrics;
+
     public InfinispanChangelogBasedTransaction(KeycloakSession kcSession, Cache<K, SessionEntityWrapper<V>> cache, RemoteCacheInvoker remoteCacheInvoker,
                                                SessionFunction<V> lifespanMsLoader, SessionFunction<V> maxIdleTimeMsLoader) {
+        this(kcSession, cache, remoteCacheInvoker, lifespanMsLoader, maxIdleTimeMsLoader, null);
+    }
+
+    public InfinispanChangelogBasedTransaction(KeycloakSession kcSession, Cache<K, SessionEntityWrapper<V>> cache, RemoteCacheInvoker remoteCacheInvoker,
+                                               SessionFunction<V> lifespanMsLoader, SessionFunction<V> maxIdleTimeMsLoader, SessionIndex<K, V> index) {
+        this(kcSession, cache, remoteCacheInvoker, lifespanMsLoader, maxIdleTimeMsLoader, index, null, null);
+    }
+
+    /**
+     * @param asyncCommit When not null, the cache operations are sent asynchronously and collected by this transaction,
+     *                    which must be enlisted after this one
+     * @param metrics Counters of commit latency and conflicts. May be null
+     */
+    public InfinispanChangelogBasedTransaction(KeycloakSession kcSession, Cache<K, SessionEntityWrapper<V>> cache, RemoteCacheInvoker remoteCacheInvoker,
+                                               SessionFunction<V> lifespanMsLoader, SessionFunction<V> maxIdleTimeMsLoader, SessionIndex<K, V> index,
+                                               AsyncCommitTransaction asyncCommit, SessionCommitMetrics metrics) {
         this.kcSession = kcSession;
         this.cacheName = cache.getName();
         this.cache = cache;
         this.remoteCacheInvoker = remoteCacheInvoker;
         this.lifespanMsLoader = lifespanMsLoader;
         this.maxIdleTimeMsLoader = maxIdleTimeMsLoader;
+        this.index = index;
+        this.asyncCommit = asyncCommit;
+        this.metrics = metrics;
     }
 
 
@@ -153,6 +179,9 @@ public class InfinispanChangelogBasedTransaction<K, V extends SessionEntity> ext
 
     @Override
     protected void commitImpl() {
+        long startNanos = System.nanoTime();
+        int operations = 0;
+
         for (Map.Entry<K, SessionUpdatesList<V>> entry : updates.entrySet()) {
             SessionUpdatesList<V> sessionUpdates = entry.getValue();
             SessionEntityWrapper<V> sessionWrapper = sessionUpdates.getEntityWrapper();
@@ -168,13 +197,88 @@ public class InfinispanChangelogBasedTransaction<K, V extends SessionEntity> ext
             MergedUpdate<V> merged = MergedUpdate.computeUpdate(sessionUpdates.getUpdateTasks(), sessionWrapper, lifespanMs, maxIdleTimeMs);
 
             if (merged != null) {
+                operations++;
+
+                if (asyncCommit != null) {
+                    // Send the operation without waiting. The index is updated and the message to second DC is sent once it finished
+                    runOperationInClusterAsync(entry.getKey(), merged, sessionWrapper, realm);
+                    continue;
+                }
+
                 // Now run the operation in our cluster
                 runOperationInCluster(entry.getKey(), merged, sessionWrapper);
 
+                // Make the change visible to the index lookups on this node right away
+                updateIndex(entry.getKey(), merged, sessionWrapper);
+
                 // Check if we need to send message to second DC
                 remoteCacheInvoker.runTask(kcSession, realm, cacheName, entry.getKey(), merged, sessionWrapper);
             }
         }
+
+        // Latency of the asynchronous commit is counted by the AsyncCommitTransaction
+        if (metrics != null && asyncCommit == null && operations > 0) {
+            metrics.commitFinished(operations, System.nanoTime() - startNanos);
+        }
+    }
+
+
+    private void runOperationInClusterAsync(K key, MergedUpdate<V> task, SessionEntityWrapper<V> sessionWrapper, RealmModel realm) {
+        V session = sessionWrapper.getEntity();
+        SessionUpdateTask.CacheOperation operation = task.getOperation(session);
+        AdvancedCache<K, SessionEntityWrapper<V>> writeCache = CacheDecorators.skipCacheStoreIfRemoteCacheIsEnabled(cache);
+        // Until the operation finished, the entity may not be in the cache yet, so the index lookups must not see it
+        Runnable completionTask = () -> {
+            updateIndex(key, task, sessionWrapper);
+            remoteCacheInvoker.runTask(kcSession, realm, cacheName, key, task, sessionWrapper);
+        };
+
+        switch (operation) {
+            case REMOVE:
+                asyncCommit.addOperation(writeCache.withFlags(Flag.IGNORE_RETURN_VALUES).removeAsync(key),
+                        removed -> completionTask.run());
+                break;
+            case ADD:
+                asyncCommit.addOperation(writeCache.withFlags(Flag.IGNORE_RETURN_VALUES)
+                                .putAsync(key, sessionWrapper, task.getLifespanMs(), TimeUnit.MILLISECONDS, task.getMaxIdleTimeMs(), TimeUnit.MILLISECONDS),
+                        previous -> completionTask.run());
+                break;
+            case ADD_IF_ABSENT:
+                asyncCommit.addOperation(writeCache.putIfAbsentAsync(key, sessionWrapper, task.getLifespanMs(), TimeUnit.MILLISECONDS, task.getMaxIdleTimeMs(), TimeUnit.MILLISECONDS),
+                        existing -> {
+                            if (existing != null) {
+                                logger.debugf("Existing entity in cache for key: %s . Will update it", key);
+                                conflict();
+
+                                task.runUpdate(existing.getEntity());
+                                replace(key, task, existing, task.getLifespanMs(), task.getMaxIdleTimeMs());
+                            }
+                            completionTask.run();
+                        });
+                break;
+            case REPLACE:
+                SessionEntityWrapper<V> newVersionEntity = generateNewVersionAndWrapEntity(session, sessionWrapper.getLocalMetadata());
+                asyncCommit.addOperation(writeCache.replaceAsync(key, sessionWrapper, newVersionEntity, task.getLifespanMs(), TimeUnit.MILLISECONDS, task.getMaxIdleTimeMs(), TimeUnit.MILLISECONDS),
+                        replaced -> {
+                            if (!replaced) {
+                                logger.debugf("Asynchronous replace failed for entity: %s . Will try again", key);
+                                conflict();
+
+                                // Fall back to the conditional retries with the latest entity only for the conflicting key
+                                SessionEntityWrapper<V> latest = cache.get(key);
+                                if (latest == null) {
+                                    logger.debugf("Entity %s not found. Maybe removed in the meantime. Replace task will be ignored", key);
+                                    return;
+                                }
+                                task.runUpdate(latest.getEntity());
+                                replace(key, task, latest, task.getLifespanMs(), task.getMaxIdleTimeMs());
+                            }
+                            completionTask.run();
+                        });
+                break;
+            default:
+                throw new IllegalStateException("Unsupported state " +  operation);
+        }
     }
 
 
@@ -203,6 +307,7 @@ public class InfinispanChangelogBasedTransaction<K, V extends SessionEntity> ext
                 SessionEntityWrapper<V> existing = CacheDecorators.skipCacheStoreIfRemoteCacheIsEnabled(cache).putIfAbsent(key, sessionWrapper, task.getLifespanMs(), TimeUnit.MILLISECONDS, task.getMaxIdleTimeMs(), TimeUnit.MILLISECONDS);
                 if (existing != null) {
                     logger.debugf("Existing entity in cache for key: %s . Will update it", key);
+                    conflict();
 
                     // Apply updates on the existing entity and replace it
                     task.runUpdate(existing.getEntity());
@@ -222,6 +327,20 @@ public class InfinispanChangelogBasedTransaction<K, V extends SessionEntity> ext
     }
 
 
+    private void updateIndex(K key, MergedUpdate<V> task, SessionEntityWrapper<V> sessionWrapper) {
+        if (index == null) {
+            return;
+        }
+
+        V session = sessionWrapper.getEntity();
+        if (task.getOperation(session) == SessionUpdateTask.CacheOperation.REMOVE) {
+            index.entityRemoved(key);
+        } else {
+            index.entityUpdated(key, session);
+        }
+    }
+
+
     private void replace(K key, MergedUpdate<V> task, SessionEntityWrapper<V> oldVersionEntity, long lifespanMs, long maxIdleTimeMs) {
         boolean replaced = false;
         int iteration = 0;
@@ -237,6 +356,8 @@ public class InfinispanChangelogBasedTransaction<K, V extends SessionEntity> ext
 
             // Replace fail. Need to load latest entity from cache, apply updates again and try to replace in cache again
             if (!replaced) {
+                conflict();
+
                 if (logger.isDebugEnabled()) {
                     logger.debugf("Replace failed for entity: %s, old version %s, new version %s. Will try again", key, oldVersionEntity.getVersion(), newVersionEntity.getVersion());
                 }
@@ -265,6 +386,13 @@ public class InfinispanChangelogBasedTransaction<K, V extends SessionEntity> ext
     }
 
 
+    private void conflict() {
+        if (metrics != null) {
+            metrics.conflict();
+        }
+    }
+
+
     @Override
     protected void rollbackImpl() {
     }
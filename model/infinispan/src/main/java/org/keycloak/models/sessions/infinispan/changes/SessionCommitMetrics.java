@@ -0,0 +1,82 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.changes;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the commits of the session changes to the Infinispan caches. Shared by all the transactions created by
+ * one provider factory.
+ */
+public class SessionCommitMetrics {
+
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder commitTimeNanos = new LongAdder();
+    private final LongAccumulator maxCommitTimeNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder operations = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+
+    public void commitFinished(int operationsCount, long durationNanos) {
+        commits.increment();
+        commitTimeNanos.add(durationNanos);
+        maxCommitTimeNanos.accumulate(durationNanos);
+        operations.add(operationsCount);
+    }
+
+    // Conditional replace or put-if-absent, which failed because the entity was changed concurrently
+    public void conflict() {
+        conflicts.increment();
+    }
+
+    public long getCommits() {
+        return commits.sum();
+    }
+
+    public long getOperations() {
+        return operations.sum();
+    }
+
+    public long getConflicts() {
+        return conflicts.sum();
+    }
+
+    /**
+     * @return ratio of the conflicting operations to all the operations
+     */
+    public double getConflictRate() {
+        long count = operations.sum();
+        return count == 0 ? 0 : (double) conflicts.sum() / count;
+    }
+
+    public double getAverageCommitTimeMillis() {
+        long count = commits.sum();
+        return count == 0 ? 0 : (double) TimeUnit.NANOSECONDS.toMicros(commitTimeNanos.sum()) / count / 1000;
+    }
+
+    public double getMaxCommitTimeMillis() {
+        return (double) TimeUnit.NANOSECONDS.toMicros(maxCommitTimeNanos.get()) / 1000;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("commits: %d, operations: %d, conflicts: %d (%.4f), average commit time: %.3f ms, max commit time: %.3f ms",
+                getCommits(), getOperations(), getConflicts(), getConflictRate(), getAverageCommitTimeMillis(), getMaxCommitTimeMillis());
+    }
+}
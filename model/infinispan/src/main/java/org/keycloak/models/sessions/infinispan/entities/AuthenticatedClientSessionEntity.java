@@ -36,7 +36,7 @@ import java.util.UUID;
  *
  * @author <a href="mailto:mposolda@redhat.com">Marek Posolda</a>
  */
-@SerializeWith(AuthenticatedClientSessionEntity.ExternalizerImpl.class)
+@SerializeWith(AuthenticatedClientSessionEntity.CompactExternalizerImpl.class)
 public class AuthenticatedClientSessionEntity extends SessionEntity {
 
     public static final Logger logger = Logger.getLogger(AuthenticatedClientSessionEntity.class);
@@ -190,6 +190,11 @@ public class AuthenticatedClientSessionEntity extends SessionEntity {
         return entityWrapper;
     }
 
+    /**
+     * Externalizer of the original format, which has no version byte. It is kept so that the client sessions marshalled
+     * by the previous versions can still be read, as the marshalled objects refer to their externalizer. New objects are
+     * written by the {@link CompactExternalizerImpl}.
+     */
     public static class ExternalizerImpl implements Externalizer<AuthenticatedClientSessionEntity> {
 
         @Override
@@ -232,4 +237,57 @@ public class AuthenticatedClientSessionEntity extends SessionEntity {
 
     }
 
+    public static class CompactExternalizerImpl implements Externalizer<AuthenticatedClientSessionEntity> {
+
+        private static final int VERSION_1 = 1;
+
+        @Override
+        public void writeObject(ObjectOutput output, AuthenticatedClientSessionEntity session) throws IOException {
+            output.writeByte(VERSION_1);
+
+            MarshallUtil.marshallUUID(session.id, output, false);
+            KeycloakMarshallUtil.marshallCompactString(session.getRealmId(), output);
+            KeycloakMarshallUtil.marshallCompactString(session.getAuthMethod(), output);
+            KeycloakMarshallUtil.marshallCompactString(session.getRedirectUri(), output);
+            KeycloakMarshallUtil.marshall(session.getTimestamp(), output);
+            KeycloakMarshallUtil.marshallCompactString(session.getAction(), output);
+
+            KeycloakMarshallUtil.writeNotes(session.getNotes(), output);
+
+            KeycloakMarshallUtil.marshallCompactString(session.getCurrentRefreshToken(), output);
+            KeycloakMarshallUtil.marshall(session.getCurrentRefreshTokenUseCount(), output);
+        }
+
+
+        @Override
+        public AuthenticatedClientSessionEntity readObject(ObjectInput input) throws IOException, ClassNotFoundException {
+            switch (input.readByte()) {
+                case VERSION_1:
+                    return readObjectVersion1(input);
+                default:
+                    throw new IOException("Unknown version");
+            }
+        }
+
+        public AuthenticatedClientSessionEntity readObjectVersion1(ObjectInput input) throws IOException, ClassNotFoundException {
+            AuthenticatedClientSessionEntity sessionEntity = new AuthenticatedClientSessionEntity(MarshallUtil.unmarshallUUID(input, false));
+
+            sessionEntity.setRealmId(KeycloakMarshallUtil.unmarshallInternedString(input));
+
+            sessionEntity.setAuthMethod(KeycloakMarshallUtil.unmarshallCompactString(input));
+            sessionEntity.setRedirectUri(KeycloakMarshallUtil.unmarshallCompactString(input));
+            sessionEntity.setTimestamp(KeycloakMarshallUtil.unmarshallInteger(input));
+            sessionEntity.setAction(KeycloakMarshallUtil.unmarshallCompactString(input));
+
+            Map<String, String> notes = KeycloakMarshallUtil.readNotes(input, new KeycloakMarshallUtil.ConcurrentHashMapBuilder<>());
+            sessionEntity.setNotes(notes);
+
+            sessionEntity.setCurrentRefreshToken(KeycloakMarshallUtil.unmarshallCompactString(input));
+            sessionEntity.setCurrentRefreshTokenUseCount(KeycloakMarshallUtil.unmarshallInteger(input));
+
+            return sessionEntity;
+        }
+
+    }
+
 }
@@ -87,12 +87,13 @@ public class AuthenticatedClientSessionStore {
     public static class ExternalizerImpl implements Externalizer<AuthenticatedClientSessionStore> {
 
         private static final int VERSION_1 = 1;
+        private static final int VERSION_2 = 2;
 
         @Override
         public void writeObject(ObjectOutput output, AuthenticatedClientSessionStore obj) throws IOException {
-            output.writeByte(VERSION_1);
+            output.writeByte(VERSION_2);
 
-            KeycloakMarshallUtil.writeMap(obj.authenticatedClientSessionIds, KeycloakMarshallUtil.STRING_EXT, KeycloakMarshallUtil.UUID_EXT, output);
+            KeycloakMarshallUtil.writeMap(obj.authenticatedClientSessionIds, KeycloakMarshallUtil.COMPACT_STRING_EXT, KeycloakMarshallUtil.UUID_EXT, output);
         }
 
         @Override
@@ -100,6 +101,8 @@ public class AuthenticatedClientSessionStore {
             switch (input.readByte()) {
                 case VERSION_1:
                     return readObjectVersion1(input);
+                case VERSION_2:
+                    return readObjectVersion2(input);
                 default:
                     throw new IOException("Unknown version");
             }
@@ -111,5 +114,12 @@ public class AuthenticatedClientSessionStore {
             );
             return res;
         }
+
+        public AuthenticatedClientSessionStore readObjectVersion2(ObjectInput input) throws IOException, ClassNotFoundException {
+            AuthenticatedClientSessionStore res = new AuthenticatedClientSessionStore(
+              KeycloakMarshallUtil.readMap(input, KeycloakMarshallUtil.INTERNED_STRING_EXT, KeycloakMarshallUtil.UUID_EXT, ConcurrentHashMap::new)
+            );
+            return res;
+        }
     }
 }
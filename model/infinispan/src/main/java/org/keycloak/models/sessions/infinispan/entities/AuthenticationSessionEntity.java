@@ -189,10 +189,46 @@ public class AuthenticationSessionEntity implements Serializable {
         this.authNotes = authNotes;
     }
 
+    /**
+     * @return estimated size of the client, auth and user session notes, counted as the characters of their names and values
+     */
+    public int getNotesSize() {
+        return sizeOf(clientNotes) + sizeOf(authNotes) + sizeOf(userSessionNotes);
+    }
+
+    /**
+     * @return rough estimate of the heap occupied by this entity in bytes
+     */
+    public long estimateSize() {
+        long size = 128 + 2L * getNotesSize();
+        size += 2L * (length(clientUUID) + length(authUserId) + length(redirectUri) + length(action) + length(protocol));
+        size += 64L * executionStatus.size();
+        size += clientScopes == null ? 0 : 48L * clientScopes.size();
+        size += requiredActions == null ? 0 : 48L * requiredActions.size();
+        return size;
+    }
+
+    private static int sizeOf(Map<String, String> notes) {
+        if (notes == null) {
+            return 0;
+        }
+
+        int size = 0;
+        for (Map.Entry<String, String> note : notes.entrySet()) {
+            size += length(note.getKey()) + length(note.getValue());
+        }
+        return size;
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
     public static class ExternalizerImpl implements Externalizer<AuthenticationSessionEntity> {
 
         private static final int VERSION_1 = 1;
         private static final int VERSION_2 = 2;
+        private static final int VERSION_3 = 3;
 
         public static final ExternalizerImpl INSTANCE = new ExternalizerImpl();
 
@@ -218,25 +254,25 @@ public class AuthenticationSessionEntity implements Serializable {
 
         @Override
         public void writeObject(ObjectOutput output, AuthenticationSessionEntity value) throws IOException {
-            output.writeByte(VERSION_2);
+            output.writeByte(VERSION_3);
 
-            MarshallUtil.marshallString(value.clientUUID, output);
+            KeycloakMarshallUtil.marshallCompactString(value.clientUUID, output);
 
-            MarshallUtil.marshallString(value.authUserId, output);
+            KeycloakMarshallUtil.marshallCompactString(value.authUserId, output);
 
             output.writeInt(value.timestamp);
 
-            MarshallUtil.marshallString(value.redirectUri, output);
-            MarshallUtil.marshallString(value.action, output);
-            KeycloakMarshallUtil.writeCollection(value.clientScopes, KeycloakMarshallUtil.STRING_EXT, output);
+            KeycloakMarshallUtil.marshallCompactString(value.redirectUri, output);
+            KeycloakMarshallUtil.marshallCompactString(value.action, output);
+            KeycloakMarshallUtil.writeCollection(value.clientScopes, KeycloakMarshallUtil.COMPACT_STRING_EXT, output);
 
-            KeycloakMarshallUtil.writeMap(value.executionStatus, KeycloakMarshallUtil.STRING_EXT, EXECUTION_STATUS_EXT, output);
-            MarshallUtil.marshallString(value.protocol, output);
+            KeycloakMarshallUtil.writeMap(value.executionStatus, KeycloakMarshallUtil.COMPACT_STRING_EXT, EXECUTION_STATUS_EXT, output);
+            KeycloakMarshallUtil.marshallCompactString(value.protocol, output);
 
-            KeycloakMarshallUtil.writeMap(value.clientNotes, KeycloakMarshallUtil.STRING_EXT, KeycloakMarshallUtil.STRING_EXT, output);
-            KeycloakMarshallUtil.writeMap(value.authNotes, KeycloakMarshallUtil.STRING_EXT, KeycloakMarshallUtil.STRING_EXT, output);
-            KeycloakMarshallUtil.writeCollection(value.requiredActions, KeycloakMarshallUtil.STRING_EXT, output);
-            KeycloakMarshallUtil.writeMap(value.userSessionNotes, KeycloakMarshallUtil.STRING_EXT, KeycloakMarshallUtil.STRING_EXT, output);
+            KeycloakMarshallUtil.writeNotes(value.clientNotes, output);
+            KeycloakMarshallUtil.writeNotes(value.authNotes, output);
+            KeycloakMarshallUtil.writeCollection(value.requiredActions, KeycloakMarshallUtil.COMPACT_STRING_EXT, output);
+            KeycloakMarshallUtil.writeNotes(value.userSessionNotes, output);
         }
 
         @Override
@@ -246,6 +282,8 @@ public class AuthenticationSessionEntity implements Serializable {
                     return readObjectVersion1(input);
                 case VERSION_2:
                     return readObjectVersion2(input);
+                case VERSION_3:
+                    return readObjectVersion3(input);
                 default:
                     throw new IOException("Unknown version");
             }
@@ -292,5 +330,27 @@ public class AuthenticationSessionEntity implements Serializable {
                     KeycloakMarshallUtil.readMap(input, KeycloakMarshallUtil.STRING_EXT, KeycloakMarshallUtil.STRING_EXT, size -> new ConcurrentHashMap<>(size)) // userSessionNotes
             );
         }
+
+        public AuthenticationSessionEntity readObjectVersion3(ObjectInput input) throws IOException, ClassNotFoundException {
+            return new AuthenticationSessionEntity(
+                    KeycloakMarshallUtil.unmarshallInternedString(input),     // clientUUID
+
+                    KeycloakMarshallUtil.unmarshallCompactString(input),      // authUserId
+
+                    input.readInt(),                                          // timestamp
+
+                    KeycloakMarshallUtil.unmarshallCompactString(input),      // redirectUri
+                    KeycloakMarshallUtil.unmarshallCompactString(input),      // action
+                    KeycloakMarshallUtil.readCollection(input, KeycloakMarshallUtil.INTERNED_STRING_EXT, ConcurrentHashMap::newKeySet),  // clientScopes
+
+                    KeycloakMarshallUtil.readMap(input, KeycloakMarshallUtil.INTERNED_STRING_EXT, EXECUTION_STATUS_EXT, size -> new ConcurrentHashMap<>(size)), // executionStatus
+                    KeycloakMarshallUtil.unmarshallCompactString(input),      // protocol
+
+                    KeycloakMarshallUtil.readNotes(input, size -> new ConcurrentHashMap<>(size)), // clientNotes
+                    KeycloakMarshallUtil.readNotes(input, size -> new ConcurrentHashMap<>(size)), // authNotes
+                    KeycloakMarshallUtil.readCollection(input, KeycloakMarshallUtil.COMPACT_STRING_EXT, ConcurrentHashMap::newKeySet),  // requiredActions
+                    KeycloakMarshallUtil.readNotes(input, size -> new ConcurrentHashMap<>(size)) // userSessionNotes
+            );
+        }
     }
 }
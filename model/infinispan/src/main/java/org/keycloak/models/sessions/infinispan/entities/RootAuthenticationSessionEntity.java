@@ -71,6 +71,17 @@ public class RootAuthenticationSessionEntity extends SessionEntity {
         this.authenticationSessions = authenticationSessions;
     }
 
+    /**
+     * @return rough estimate of the heap occupied by this entity and all its authentication sessions in bytes
+     */
+    public long estimateSize() {
+        long size = 128;
+        for (Map.Entry<String, AuthenticationSessionEntity> tab : authenticationSessions.entrySet()) {
+            size += 64 + 2L * tab.getKey().length() + tab.getValue().estimateSize();
+        }
+        return size;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -96,17 +107,18 @@ public class RootAuthenticationSessionEntity extends SessionEntity {
     public static class ExternalizerImpl implements Externalizer<RootAuthenticationSessionEntity> {
 
         private static final int VERSION_1 = 1;
+        private static final int VERSION_2 = 2;
 
         @Override
         public void writeObject(ObjectOutput output, RootAuthenticationSessionEntity value) throws IOException {
-            output.writeByte(VERSION_1);
+            output.writeByte(VERSION_2);
 
-            MarshallUtil.marshallString(value.getRealmId(), output);
+            KeycloakMarshallUtil.marshallCompactString(value.getRealmId(), output);
 
-            MarshallUtil.marshallString(value.id, output);
+            KeycloakMarshallUtil.marshallCompactString(value.id, output);
             output.writeInt(value.timestamp);
 
-            KeycloakMarshallUtil.writeMap(value.authenticationSessions, KeycloakMarshallUtil.STRING_EXT, AuthenticationSessionEntity.ExternalizerImpl.INSTANCE, output);
+            KeycloakMarshallUtil.writeMap(value.authenticationSessions, KeycloakMarshallUtil.COMPACT_STRING_EXT, AuthenticationSessionEntity.ExternalizerImpl.INSTANCE, output);
         }
 
         @Override
@@ -114,6 +126,8 @@ public class RootAuthenticationSessionEntity extends SessionEntity {
             switch (input.readByte()) {
                 case VERSION_1:
                     return readObjectVersion1(input);
+                case VERSION_2:
+                    return readObjectVersion2(input);
                 default:
                     throw new IOException("Unknown version");
             }
@@ -129,5 +143,16 @@ public class RootAuthenticationSessionEntity extends SessionEntity {
               KeycloakMarshallUtil.readMap(input, KeycloakMarshallUtil.STRING_EXT, AuthenticationSessionEntity.ExternalizerImpl.INSTANCE, size -> new ConcurrentHashMap<>(size)) // authenticationSessions
             );
         }
+
+        public RootAuthenticationSessionEntity readObjectVersion2(ObjectInput input) throws IOException, ClassNotFoundException {
+            return new RootAuthenticationSessionEntity(
+              KeycloakMarshallUtil.unmarshallInternedString(input),     // realmId
+
+              KeycloakMarshallUtil.unmarshallCompactString(input),      // id
+              input.readInt(),                                          // timestamp
+
+              KeycloakMarshallUtil.readMap(input, KeycloakMarshallUtil.COMPACT_STRING_EXT, AuthenticationSessionEntity.ExternalizerImpl.INSTANCE, size -> new ConcurrentHashMap<>(size)) // authenticationSessions
+            );
+        }
     }
 }
@@ -228,6 +228,7 @@ public class UserSessionEntity extends SessionEntity {
     public static class ExternalizerImpl implements Externalizer<UserSessionEntity> {
 
         private static final int VERSION_1 = 1;
+        private static final int VERSION_2 = 2;
 
         private static final EnumMap<UserSessionModel.State, Integer> STATE_TO_ID = new EnumMap<>(UserSessionModel.State.class);
         private static final Map<Integer, UserSessionModel.State> ID_TO_STATE = new HashMap<>();
@@ -243,26 +244,25 @@ public class UserSessionEntity extends SessionEntity {
 
         @Override
         public void writeObject(ObjectOutput output, UserSessionEntity session) throws IOException {
-            output.writeByte(VERSION_1);
-
-            MarshallUtil.marshallString(session.getAuthMethod(), output);
-            MarshallUtil.marshallString(session.getBrokerSessionId(), output);
-            MarshallUtil.marshallString(session.getBrokerUserId(), output);
-            MarshallUtil.marshallString(session.getId(), output);
-            MarshallUtil.marshallString(session.getIpAddress(), output);
-            MarshallUtil.marshallString(session.getLoginUsername(), output);
-            MarshallUtil.marshallString(session.getRealmId(), output);
-            MarshallUtil.marshallString(session.getUser(), output);
-
-            KeycloakMarshallUtil.marshall(session.getLastSessionRefresh(), output);
-            KeycloakMarshallUtil.marshall(session.getStarted(), output);
+            output.writeByte(VERSION_2);
+
+            KeycloakMarshallUtil.marshallCompactString(session.getAuthMethod(), output);
+            KeycloakMarshallUtil.marshallCompactString(session.getBrokerSessionId(), output);
+            KeycloakMarshallUtil.marshallCompactString(session.getBrokerUserId(), output);
+            KeycloakMarshallUtil.marshallCompactString(session.getId(), output);
+            KeycloakMarshallUtil.marshallCompactString(session.getIpAddress(), output);
+            KeycloakMarshallUtil.marshallCompactString(session.getLoginUsername(), output);
+            KeycloakMarshallUtil.marshallCompactString(session.getRealmId(), output);
+            KeycloakMarshallUtil.marshallCompactString(session.getUser(), output);
+
+            output.writeInt(session.getLastSessionRefresh());
+            output.writeInt(session.getStarted());
             output.writeBoolean(session.isRememberMe());
 
             int state = session.getState() == null ? 0 : STATE_TO_ID.get(session.getState());
-            output.writeInt(state);
+            output.writeByte(state);
 
-            Map<String, String> notes = session.getNotes();
-            KeycloakMarshallUtil.writeMap(notes, KeycloakMarshallUtil.STRING_EXT, KeycloakMarshallUtil.STRING_EXT, output);
+            KeycloakMarshallUtil.writeNotes(session.getNotes(), output);
 
             output.writeObject(session.getAuthenticatedClientSessions());
         }
@@ -273,6 +273,8 @@ public class UserSessionEntity extends SessionEntity {
             switch (input.readByte()) {
                 case VERSION_1:
                     return readObjectVersion1(input);
+                case VERSION_2:
+                    return readObjectVersion2(input);
                 default:
                     throw new IOException("Unknown version");
             }
@@ -307,5 +309,32 @@ public class UserSessionEntity extends SessionEntity {
             return sessionEntity;
         }
 
+        public UserSessionEntity readObjectVersion2(ObjectInput input) throws IOException, ClassNotFoundException {
+            UserSessionEntity sessionEntity = new UserSessionEntity();
+
+            sessionEntity.setAuthMethod(KeycloakMarshallUtil.unmarshallCompactString(input));
+            sessionEntity.setBrokerSessionId(KeycloakMarshallUtil.unmarshallCompactString(input));
+            sessionEntity.setBrokerUserId(KeycloakMarshallUtil.unmarshallCompactString(input));
+            sessionEntity.setId(KeycloakMarshallUtil.unmarshallCompactString(input));
+            sessionEntity.setIpAddress(KeycloakMarshallUtil.unmarshallCompactString(input));
+            sessionEntity.setLoginUsername(KeycloakMarshallUtil.unmarshallCompactString(input));
+            sessionEntity.setRealmId(KeycloakMarshallUtil.unmarshallInternedString(input));
+            sessionEntity.setUser(KeycloakMarshallUtil.unmarshallCompactString(input));
+
+            sessionEntity.setLastSessionRefresh(input.readInt());
+            sessionEntity.setStarted(input.readInt());
+            sessionEntity.setRememberMe(input.readBoolean());
+
+            sessionEntity.setState(ID_TO_STATE.get((int) input.readByte()));
+
+            Map<String, String> notes = KeycloakMarshallUtil.readNotes(input, new KeycloakMarshallUtil.ConcurrentHashMapBuilder<>());
+            sessionEntity.setNotes(notes);
+
+            AuthenticatedClientSessionStore authSessions = (AuthenticatedClientSessionStore) input.readObject();
+            sessionEntity.setAuthenticatedClientSessions(authSessions);
+
+            return sessionEntity;
+        }
+
     }
 }
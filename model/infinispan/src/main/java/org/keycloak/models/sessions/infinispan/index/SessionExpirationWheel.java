@@ -0,0 +1,87 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.index;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+
+/**
+ * Time-bucketed index of session IDs. Sessions are put to the buckets by a timestamp, from which their expiration is
+ * computed, like the time of the last refresh or the time when the session started. The timeouts are the same for all
+ * sessions with the same key (usually realm and the remember-me flag), so all the sessions which may be expired are in
+ * the buckets up to the timestamp computed from the current time and the timeouts. The cost of finding them depends on
+ * the count of the sessions in the due buckets, not on the count of all the sessions.
+ */
+public class SessionExpirationWheel {
+
+    public static final int DEFAULT_BUCKET_SECONDS = 60;
+
+    private final int bucketSeconds;
+
+    // key -> bucket -> session IDs
+    private final Map<String, ConcurrentNavigableMap<Integer, Set<String>>> wheels = new ConcurrentHashMap<>();
+
+    public SessionExpirationWheel() {
+        this(DEFAULT_BUCKET_SECONDS);
+    }
+
+    public SessionExpirationWheel(int bucketSeconds) {
+        this.bucketSeconds = Math.max(bucketSeconds, 1);
+    }
+
+    public void add(String key, int timestamp, String sessionId) {
+        wheels.computeIfAbsent(key, k -> new ConcurrentSkipListMap<>())
+                .computeIfAbsent(bucket(timestamp), b -> ConcurrentHashMap.newKeySet())
+                .add(sessionId);
+    }
+
+    public void remove(String key, int timestamp, String sessionId) {
+        ConcurrentNavigableMap<Integer, Set<String>> wheel = wheels.get(key);
+        if (wheel == null) {
+            return;
+        }
+        wheel.computeIfPresent(bucket(timestamp), (b, ids) -> {
+            ids.remove(sessionId);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    /**
+     * Visits the sessions in all the buckets, which contain sessions with the timestamp lower than or equal to the given
+     * one. As the buckets are coarse-grained, some of the visited sessions may have a slightly higher timestamp.
+     */
+    public void forEachDue(String key, int timestamp, Consumer<String> consumer) {
+        ConcurrentNavigableMap<Integer, Set<String>> wheel = wheels.get(key);
+        if (wheel == null) {
+            return;
+        }
+        wheel.headMap(bucket(timestamp), true).values().forEach(ids -> ids.forEach(consumer));
+    }
+
+    public void clear() {
+        wheels.clear();
+    }
+
+    private int bucket(int timestamp) {
+        return Math.floorDiv(timestamp, bucketSeconds);
+    }
+}
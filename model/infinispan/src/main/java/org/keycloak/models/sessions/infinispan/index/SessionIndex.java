@@ -0,0 +1,46 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.index;
+
+import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
+
+/**
+ * Node-local secondary index over a sessions cache. Implementations are notified about every change, which is
+ * committed to the underlying cache, so that lookups by indexed attributes don't need to iterate over the whole cache.
+ *
+ * @param <K> type of the cache key
+ * @param <V> type of the session entity
+ */
+public interface SessionIndex<K, V extends SessionEntity> {
+
+    /**
+     * Called when an entity was added to the cache or an existing entity was replaced.
+     */
+    void entityUpdated(K key, V entity);
+
+    /**
+     * Called when an entity was removed from the cache or expired.
+     */
+    void entityRemoved(K key);
+
+    /**
+     * @return {@code true} if the index reflects the full content of the cache and can be used for lookups
+     */
+    boolean isReady();
+
+}
@@ -0,0 +1,370 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.index;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.jboss.logging.Logger;
+import org.keycloak.models.sessions.infinispan.entities.UserSessionEntity;
+import org.keycloak.models.sessions.infinispan.stream.UserSessionPredicate;
+
+/**
+ * Secondary index of user sessions by user ID, broker session ID, broker user ID and client UUID. The index is kept
+ * up-to-date by the {@link UserSessionIndexListener} and by the committing transactions on this node.
+ * <p>
+ * The index only returns candidate session IDs. Callers are expected to load the entities from the cache and
+ * re-check them against the predicate, as the index may contain entries, which were removed in the meantime.
+ * <p>
+ * Besides that, the index maintains the counts of sessions of each client per realm, so that the session statistics
+ * don't need to iterate over the cache. Drift of the counts caused by the lost notifications is corrected by
+ * {@link #reconcile(Stream)}.
+ * <p>
+ * Sessions are also put to the {@link SessionExpirationWheel}s by the time of their last refresh and by the time
+ * they started, so that the expired sessions can be found without iterating over the cache.
+ */
+public class UserSessionIndex implements SessionIndex<String, UserSessionEntity> {
+
+    private static final Logger log = Logger.getLogger(UserSessionIndex.class);
+
+    private final String cacheName;
+
+    private final Map<String, IndexedSession> entries = new ConcurrentHashMap<>();
+
+    private final Map<String, Set<String>> byUser = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> byBrokerSessionId = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> byBrokerUserId = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> byClient = new ConcurrentHashMap<>();
+
+    // realmId -> clientId -> count of sessions in the realm with a client session of the client
+    private final Map<String, Map<String, AtomicLong>> clientCounts = new ConcurrentHashMap<>();
+
+    private final SessionExpirationWheel byLastSessionRefresh = new SessionExpirationWheel();
+    private final SessionExpirationWheel byStarted = new SessionExpirationWheel();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    // IDs of sessions removed while a reconciliation is running, so that it doesn't re-index them from its snapshot
+    private volatile Set<String> removedDuringReconcile;
+
+    private volatile boolean ready;
+
+    public UserSessionIndex(String cacheName) {
+        this.cacheName = cacheName;
+    }
+
+    public String getCacheName() {
+        return cacheName;
+    }
+
+    @Override
+    public void entityUpdated(String sessionId, UserSessionEntity entity) {
+        update(sessionId, UserSessionIndexEntry.create(entity));
+    }
+
+    @Override
+    public void entityRemoved(String sessionId) {
+        // Recorded before the removal, so that a reconciliation either sees it or re-indexes before the removal
+        Set<String> removed = removedDuringReconcile;
+        if (removed != null) {
+            removed.add(sessionId);
+        }
+        entries.computeIfPresent(sessionId, (id, previous) -> {
+            unindex(id, previous.entry);
+            return null;
+        });
+    }
+
+    public void update(String sessionId, UserSessionIndexEntry entry) {
+        entries.compute(sessionId, (id, previous) -> {
+            if (previous != null) {
+                unindex(id, previous.entry);
+            }
+            index(id, entry);
+            return new IndexedSession(entry, sequence.incrementAndGet());
+        });
+    }
+
+    @Override
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void setReady(boolean ready) {
+        log.debugf("Index of cache '%s' ready: %b, indexed sessions: %d", cacheName, ready, entries.size());
+        this.ready = ready;
+    }
+
+    public void clear() {
+        entries.clear();
+        byUser.clear();
+        byBrokerSessionId.clear();
+        byBrokerUserId.clear();
+        byClient.clear();
+        clientCounts.clear();
+        byLastSessionRefresh.clear();
+        byStarted.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return number of clients with sessions counted in the realm
+     */
+    int getCountedClients(String realmId) {
+        Map<String, AtomicLong> counts = clientCounts.get(realmId);
+        return counts == null ? 0 : counts.size();
+    }
+
+    public long getSessionsCount(String realmId, String clientId) {
+        Map<String, AtomicLong> counts = clientCounts.get(realmId);
+        AtomicLong count = counts == null ? null : counts.get(clientId);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * @return map where the key is client UUID and value is the count of sessions of the client. Only clients with
+     * at least one session are included.
+     */
+    public Map<String, Long> getClientSessionStats(String realmId) {
+        Map<String, AtomicLong> counts = clientCounts.getOrDefault(realmId, Collections.emptyMap());
+        Map<String, Long> result = new HashMap<>();
+        counts.forEach((clientId, count) -> {
+            long value = count.get();
+            if (value > 0) {
+                result.put(clientId, value);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Corrects the index according to the current content of the cache. Sessions present in the cache are re-indexed,
+     * which also fixes their counts, and sessions not present anymore are removed from the index. Sessions indexed
+     * while the reconciliation is running are left untouched, as they are more recent than the passed content, and
+     * sessions removed while it is running are not re-indexed from the passed content.
+     *
+     * @param cacheContent stream of all the session IDs and their index entries from the cache
+     * @return number of sessions, which were indexed incorrectly
+     */
+    public synchronized int reconcile(Stream<Map.Entry<String, UserSessionIndexEntry>> cacheContent) {
+        Set<String> removed = ConcurrentHashMap.newKeySet();
+        removedDuringReconcile = removed;
+        try {
+            return reconcile(cacheContent, removed);
+        } finally {
+            removedDuringReconcile = null;
+        }
+    }
+
+    private int reconcile(Stream<Map.Entry<String, UserSessionIndexEntry>> cacheContent, Set<String> removed) {
+        long startSequence = sequence.get();
+        Set<String> present = new HashSet<>();
+        int[] fixed = new int[1];
+
+        cacheContent.forEach(cacheEntry -> {
+            String sessionId = cacheEntry.getKey();
+            UserSessionIndexEntry entry = cacheEntry.getValue();
+            present.add(sessionId);
+            entries.compute(sessionId, (id, indexed) -> {
+                // Sessions removed since the reconciliation started are not in the cache anymore
+                if (removed.contains(id)) {
+                    return indexed;
+                }
+                if (indexed != null && (indexed.sequence > startSequence || indexed.entry.equals(entry))) {
+                    return indexed;
+                }
+                fixed[0]++;
+                if (indexed != null) {
+                    unindex(id, indexed.entry);
+                }
+                index(id, entry);
+                return new IndexedSession(entry, sequence.incrementAndGet());
+            });
+        });
+
+        for (String sessionId : entries.keySet()) {
+            if (present.contains(sessionId)) continue;
+            IndexedSession removedSession = entries.computeIfPresent(sessionId, (id, indexed) -> {
+                if (indexed.sequence > startSequence) {
+                    return indexed;
+                }
+                unindex(id, indexed.entry);
+                return null;
+            });
+            if (removedSession == null) {
+                fixed[0]++;
+            }
+        }
+
+        log.debugf("Reconciled index of cache '%s'. Fixed sessions: %d, indexed sessions: %d", cacheName, fixed[0], entries.size());
+        return fixed[0];
+    }
+
+    /**
+     * Returns IDs of user sessions, which may match the given predicate.
+     *
+     * @return candidate session IDs or {@code null} if the predicate doesn't contain any indexed attribute and the index
+     * can't be used
+     */
+    public Set<String> findSessionIds(UserSessionPredicate predicate) {
+        String realmId = predicate.getRealm();
+        Set<String> result = null;
+
+        result = intersect(result, byUser, realmId, predicate.getUserId());
+        result = intersect(result, byBrokerSessionId, realmId, predicate.getBrokerSessionId());
+        result = intersect(result, byBrokerUserId, realmId, predicate.getBrokerUserId());
+        result = intersect(result, byClient, realmId, predicate.getClient());
+
+        return result;
+    }
+
+    /**
+     * Returns IDs of user sessions of the realm, which may be expired as they were last refreshed or started at or
+     * before the given times. Just the sessions with the given remember-me flag are returned, as they share the timeouts.
+     * Callers are expected to re-check the expiration of the returned sessions.
+     *
+     * @param refreshedBefore the time of the last refresh, sessions refreshed at or before it are returned
+     * @param startedBefore the time of the start, sessions started at or before it are returned. Use
+     * {@link Integer#MIN_VALUE} if the lifespan of the sessions is not limited.
+     */
+    public Set<String> findExpirationCandidates(String realmId, boolean rememberMe, int refreshedBefore, int startedBefore) {
+        String key = expirationKey(realmId, rememberMe);
+        Set<String> result = new HashSet<>();
+        byLastSessionRefresh.forEachDue(key, refreshedBefore, result::add);
+        if (startedBefore != Integer.MIN_VALUE) {
+            byStarted.forEachDue(key, startedBefore, result::add);
+        }
+        return result;
+    }
+
+    private Set<String> intersect(Set<String> current, Map<String, Set<String>> index, String realmId, String value) {
+        if (value == null) {
+            return current;
+        }
+
+        Set<String> ids = index.getOrDefault(key(realmId, value), Collections.emptySet());
+        if (current == null) {
+            return new HashSet<>(ids);
+        }
+
+        current.retainAll(ids);
+        return current;
+    }
+
+    private void index(String sessionId, UserSessionIndexEntry entry) {
+        // Counts are updated within compute, so that a count is never incremented after it was pruned
+        clientCounts.compute(entry.getRealmId(), (realmId, realmClientCounts) -> {
+            if (realmClientCounts == null) {
+                realmClientCounts = new ConcurrentHashMap<>();
+            }
+            for (String clientId : entry.getClientIds()) {
+                realmClientCounts.compute(clientId, (c, count) -> {
+                    if (count == null) {
+                        count = new AtomicLong();
+                    }
+                    count.incrementAndGet();
+                    return count;
+                });
+            }
+            return realmClientCounts;
+        });
+
+        add(byUser, entry.getRealmId(), entry.getUserId(), sessionId);
+        add(byBrokerSessionId, entry.getRealmId(), entry.getBrokerSessionId(), sessionId);
+        add(byBrokerUserId, entry.getRealmId(), entry.getBrokerUserId(), sessionId);
+        for (String clientId : entry.getClientIds()) {
+            add(byClient, entry.getRealmId(), clientId, sessionId);
+        }
+
+        String expirationKey = expirationKey(entry.getRealmId(), entry.isRememberMe());
+        byLastSessionRefresh.add(expirationKey, entry.getLastSessionRefresh(), sessionId);
+        byStarted.add(expirationKey, entry.getStarted(), sessionId);
+    }
+
+    private void unindex(String sessionId, UserSessionIndexEntry entry) {
+        // Counts dropping to zero are pruned, so that the maps don't grow with every client and realm ever seen
+        clientCounts.computeIfPresent(entry.getRealmId(), (realmId, realmClientCounts) -> {
+            for (String clientId : entry.getClientIds()) {
+                realmClientCounts.computeIfPresent(clientId, (c, count) -> count.decrementAndGet() > 0 ? count : null);
+            }
+            return realmClientCounts.isEmpty() ? null : realmClientCounts;
+        });
+
+        remove(byUser, entry.getRealmId(), entry.getUserId(), sessionId);
+        remove(byBrokerSessionId, entry.getRealmId(), entry.getBrokerSessionId(), sessionId);
+        remove(byBrokerUserId, entry.getRealmId(), entry.getBrokerUserId(), sessionId);
+        for (String clientId : entry.getClientIds()) {
+            remove(byClient, entry.getRealmId(), clientId, sessionId);
+        }
+
+        String expirationKey = expirationKey(entry.getRealmId(), entry.isRememberMe());
+        byLastSessionRefresh.remove(expirationKey, entry.getLastSessionRefresh(), sessionId);
+        byStarted.remove(expirationKey, entry.getStarted(), sessionId);
+    }
+
+    private static void add(Map<String, Set<String>> index, String realmId, String value, String sessionId) {
+        if (value == null) {
+            return;
+        }
+        index.compute(key(realmId, value), (k, ids) -> {
+            if (ids == null) {
+                ids = ConcurrentHashMap.newKeySet();
+            }
+            ids.add(sessionId);
+            return ids;
+        });
+    }
+
+    private static void remove(Map<String, Set<String>> index, String realmId, String value, String sessionId) {
+        if (value == null) {
+            return;
+        }
+        index.computeIfPresent(key(realmId, value), (k, ids) -> {
+            ids.remove(sessionId);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    private static String key(String realmId, String value) {
+        return realmId + "/" + value;
+    }
+
+    private static String expirationKey(String realmId, boolean rememberMe) {
+        return realmId + "/" + rememberMe;
+    }
+
+    private static class IndexedSession {
+
+        private final UserSessionIndexEntry entry;
+        private final long sequence;
+
+        private IndexedSession(UserSessionIndexEntry entry, long sequence) {
+            this.entry = entry;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.index;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+import org.infinispan.commons.marshall.Externalizer;
+import org.infinispan.commons.marshall.MarshallUtil;
+import org.infinispan.commons.marshall.SerializeWith;
+import org.keycloak.models.sessions.infinispan.entities.UserSessionEntity;
+import org.keycloak.models.sessions.infinispan.util.KeycloakMarshallUtil;
+
+/**
+ * Immutable snapshot of the indexed attributes of a {@link UserSessionEntity}. This is what is sent to the cluster
+ * listeners instead of the full session entity.
+ */
+@SerializeWith(UserSessionIndexEntry.ExternalizerImpl.class)
+public class UserSessionIndexEntry {
+
+    private final String realmId;
+    private final String userId;
+    private final String brokerSessionId;
+    private final String brokerUserId;
+    private final Set<String> clientIds;
+    private final int started;
+    private final int lastSessionRefresh;
+    private final boolean rememberMe;
+
+    private UserSessionIndexEntry(String realmId, String userId, String brokerSessionId, String brokerUserId, Set<String> clientIds,
+                                  int started, int lastSessionRefresh, boolean rememberMe) {
+        this.realmId = realmId;
+        this.userId = userId;
+        this.brokerSessionId = brokerSessionId;
+        this.brokerUserId = brokerUserId;
+        this.clientIds = clientIds;
+        this.started = started;
+        this.lastSessionRefresh = lastSessionRefresh;
+        this.rememberMe = rememberMe;
+    }
+
+    public static UserSessionIndexEntry create(UserSessionEntity entity) {
+        Set<String> clientIds = entity.getAuthenticatedClientSessions() == null
+                ? Collections.emptySet()
+                : Collections.unmodifiableSet(new HashSet<>(entity.getAuthenticatedClientSessions().keySet()));
+        return new UserSessionIndexEntry(entity.getRealmId(), entity.getUser(), entity.getBrokerSessionId(), entity.getBrokerUserId(), clientIds,
+                entity.getStarted(), entity.getLastSessionRefresh(), entity.isRememberMe());
+    }
+
+    public String getRealmId() {
+        return realmId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getBrokerSessionId() {
+        return brokerSessionId;
+    }
+
+    public String getBrokerUserId() {
+        return brokerUserId;
+    }
+
+    public Set<String> getClientIds() {
+        return clientIds;
+    }
+
+    public int getStarted() {
+        return started;
+    }
+
+    public int getLastSessionRefresh() {
+        return lastSessionRefresh;
+    }
+
+    public boolean isRememberMe() {
+        return rememberMe;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof UserSessionIndexEntry)) return false;
+
+        UserSessionIndexEntry that = (UserSessionIndexEntry) o;
+        return Objects.equals(realmId, that.realmId)
+                && Objects.equals(userId, that.userId)
+                && Objects.equals(brokerSessionId, that.brokerSessionId)
+                && Objects.equals(brokerUserId, that.brokerUserId)
+                && Objects.equals(clientIds, that.clientIds)
+                && started == that.started
+                && lastSessionRefresh == that.lastSessionRefresh
+                && rememberMe == that.rememberMe;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(realmId, userId, brokerSessionId, brokerUserId, clientIds, started, lastSessionRefresh, rememberMe);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("UserSessionIndexEntry [realm=%s, user=%s, clients=%s]", realmId, userId, clientIds);
+    }
+
+    public static class ExternalizerImpl implements Externalizer<UserSessionIndexEntry> {
+
+        private static final int VERSION_1 = 1;
+        private static final int VERSION_2 = 2;
+
+        @Override
+        public void writeObject(ObjectOutput output, UserSessionIndexEntry obj) throws IOException {
+            output.writeByte(VERSION_2);
+
+            MarshallUtil.marshallString(obj.realmId, output);
+            MarshallUtil.marshallString(obj.userId, output);
+            MarshallUtil.marshallString(obj.brokerSessionId, output);
+            MarshallUtil.marshallString(obj.brokerUserId, output);
+            KeycloakMarshallUtil.writeCollection(obj.clientIds, KeycloakMarshallUtil.STRING_EXT, output);
+            output.writeInt(obj.started);
+            output.writeInt(obj.lastSessionRefresh);
+            output.writeBoolean(obj.rememberMe);
+        }
+
+        @Override
+        public UserSessionIndexEntry readObject(ObjectInput input) throws IOException, ClassNotFoundException {
+            switch (input.readByte()) {
+                case VERSION_1:
+                    return readObjectVersion1(input);
+                case VERSION_2:
+                    return readObjectVersion2(input);
+                default:
+                    throw new IOException("Unknown version");
+            }
+        }
+
+        public UserSessionIndexEntry readObjectVersion1(ObjectInput input) throws IOException, ClassNotFoundException {
+            String realmId = MarshallUtil.unmarshallString(input);
+            String userId = MarshallUtil.unmarshallString(input);
+            String brokerSessionId = MarshallUtil.unmarshallString(input);
+            String brokerUserId = MarshallUtil.unmarshallString(input);
+            Set<String> clientIds = KeycloakMarshallUtil.readCollection(input, KeycloakMarshallUtil.STRING_EXT, new KeycloakMarshallUtil.HashSetBuilder<>());
+
+            return new UserSessionIndexEntry(realmId, userId, brokerSessionId, brokerUserId,
+                    clientIds == null ? Collections.emptySet() : Collections.unmodifiableSet(clientIds), 0, 0, false);
+        }
+
+        public UserSessionIndexEntry readObjectVersion2(ObjectInput input) throws IOException, ClassNotFoundException {
+            String realmId = MarshallUtil.unmarshallString(input);
+            String userId = MarshallUtil.unmarshallString(input);
+            String brokerSessionId = MarshallUtil.unmarshallString(input);
+            String brokerUserId = MarshallUtil.unmarshallString(input);
+            Set<String> clientIds = KeycloakMarshallUtil.readCollection(input, KeycloakMarshallUtil.STRING_EXT, new KeycloakMarshallUtil.HashSetBuilder<>());
+            int started = input.readInt();
+            int lastSessionRefresh = input.readInt();
+            boolean rememberMe = input.readBoolean();
+
+            return new UserSessionIndexEntry(realmId, userId, brokerSessionId, brokerUserId,
+                    clientIds == null ? Collections.emptySet() : Collections.unmodifiableSet(clientIds), started, lastSessionRefresh, rememberMe);
+        }
+    }
+}
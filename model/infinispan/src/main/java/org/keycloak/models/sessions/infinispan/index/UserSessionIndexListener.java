@@ -0,0 +1,151 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.index;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import org.infinispan.Cache;
+import org.infinispan.commons.marshall.Externalizer;
+import org.infinispan.commons.marshall.SerializeWith;
+import org.infinispan.metadata.Metadata;
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntriesEvicted;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryCreated;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryExpired;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryModified;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryRemoved;
+import org.infinispan.notifications.cachelistener.event.CacheEntriesEvictedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryCreatedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryExpiredEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryModifiedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryRemovedEvent;
+import org.infinispan.notifications.cachelistener.filter.CacheEventConverter;
+import org.infinispan.notifications.cachelistener.filter.EventType;
+import org.jboss.logging.Logger;
+import org.keycloak.models.sessions.infinispan.changes.SessionEntityWrapper;
+import org.keycloak.models.sessions.infinispan.entities.UserSessionEntity;
+
+/**
+ * Clustered listener, which keeps the node-local {@link UserSessionIndex} in sync with the changes done on the other
+ * cluster nodes and with the expiration of the entries. Only the indexed attributes are sent to the listener thanks to
+ * the {@link IndexEntryConverter}.
+ * <p>
+ * Clustered listeners are not notified about evictions, so an {@link EvictionListener} is registered as well when the
+ * number of entries of the cache is bounded. It removes the sessions evicted from the memory of this node from the
+ * index. The sessions evicted on the other cluster nodes stay in the index of this node, so the session counts of
+ * a bounded clustered cache are approximate until the next reconciliation of the index. The index lookups re-check
+ * the cache and drop the evicted sessions they encounter.
+ */
+@Listener(clustered = true, includeCurrentState = true)
+public class UserSessionIndexListener {
+
+    private static final Logger log = Logger.getLogger(UserSessionIndexListener.class);
+
+    private final UserSessionIndex index;
+
+    private UserSessionIndexListener(UserSessionIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Registers the listener on the given cache. Method blocks until the current state of the cache is indexed.
+     */
+    public static UserSessionIndexListener register(Cache<String, SessionEntityWrapper<UserSessionEntity>> cache, UserSessionIndex index) {
+        UserSessionIndexListener listener = new UserSessionIndexListener(index);
+
+        index.setReady(false);
+        index.clear();
+        cache.addListener(listener, null, new IndexEntryConverter());
+        if (cache.getCacheConfiguration().memory().maxCount() > 0) {
+            cache.addListener(new EvictionListener(index));
+        }
+        index.setReady(true);
+
+        log.debugf("Registered index listener on cache '%s'. Indexed sessions: %d", cache.getName(), index.size());
+        return listener;
+    }
+
+    @CacheEntryCreated
+    public void created(CacheEntryCreatedEvent<String, UserSessionIndexEntry> event) {
+        if (event.getValue() != null) {
+            index.update(event.getKey(), event.getValue());
+        }
+    }
+
+    @CacheEntryModified
+    public void modified(CacheEntryModifiedEvent<String, UserSessionIndexEntry> event) {
+        if (event.getNewValue() != null) {
+            index.update(event.getKey(), event.getNewValue());
+        }
+    }
+
+    @CacheEntryRemoved
+    public void removed(CacheEntryRemovedEvent<String, UserSessionIndexEntry> event) {
+        index.entityRemoved(event.getKey());
+    }
+
+    @CacheEntryExpired
+    public void expired(CacheEntryExpiredEvent<String, UserSessionIndexEntry> event) {
+        index.entityRemoved(event.getKey());
+    }
+
+    /**
+     * Local listener removing the sessions evicted from the memory of this node from the index.
+     */
+    @Listener(observation = Listener.Observation.POST)
+    public static class EvictionListener {
+
+        private final UserSessionIndex index;
+
+        EvictionListener(UserSessionIndex index) {
+            this.index = index;
+        }
+
+        @CacheEntriesEvicted
+        public void evicted(CacheEntriesEvictedEvent<String, SessionEntityWrapper<UserSessionEntity>> event) {
+            event.getEntries().keySet().forEach(index::entityRemoved);
+        }
+    }
+
+    @SerializeWith(IndexEntryConverter.ExternalizerImpl.class)
+    public static class IndexEntryConverter implements CacheEventConverter<String, SessionEntityWrapper<UserSessionEntity>, UserSessionIndexEntry> {
+
+        @Override
+        public UserSessionIndexEntry convert(String key, SessionEntityWrapper<UserSessionEntity> oldValue, Metadata oldMetadata,
+                                             SessionEntityWrapper<UserSessionEntity> newValue, Metadata newMetadata, EventType eventType) {
+            if (newValue == null || newValue.getEntity() == null) {
+                return null;
+            }
+            return UserSessionIndexEntry.create(newValue.getEntity());
+        }
+
+        public static class ExternalizerImpl implements Externalizer<IndexEntryConverter> {
+
+            @Override
+            public void writeObject(ObjectOutput output, IndexEntryConverter obj) throws IOException {
+            }
+
+            @Override
+            public IndexEntryConverter readObject(ObjectInput input) throws IOException, ClassNotFoundException {
+                return new IndexEntryConverter();
+            }
+        }
+    }
+}
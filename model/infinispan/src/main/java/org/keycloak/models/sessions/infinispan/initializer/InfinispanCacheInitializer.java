@@ -20,6 +20,7 @@ package org.keycloak.models.sessions.infinispan.initializer;
 import org.infinispan.Cache;
 import org.infinispan.factories.ComponentRegistry;
 import org.jboss.logging.Logger;
+import org.keycloak.executors.ExecutorsProvider;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
 import org.keycloak.models.KeycloakSessionTask;
@@ -27,6 +28,10 @@ import org.keycloak.models.utils.KeycloakModelUtils;
 
 import java.io.Serializable;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
 
@@ -46,10 +51,18 @@ public class InfinispanCacheInitializer extends BaseCacheInitializer {
     // Effectively no timeout
     private final int stalledTimeoutInSeconds;
 
+    // Count of segments loaded concurrently
+    private final int workersCount;
+
     public InfinispanCacheInitializer(KeycloakSessionFactory sessionFactory, Cache<String, Serializable> workCache, SessionLoader sessionLoader, String stateKeySuffix, int sessionsPerSegment, int maxErrors, int stalledTimeoutInSeconds) {
+        this(sessionFactory, workCache, sessionLoader, stateKeySuffix, sessionsPerSegment, maxErrors, stalledTimeoutInSeconds, 1);
+    }
+
+    public InfinispanCacheInitializer(KeycloakSessionFactory sessionFactory, Cache<String, Serializable> workCache, SessionLoader sessionLoader, String stateKeySuffix, int sessionsPerSegment, int maxErrors, int stalledTimeoutInSeconds, int workersCount) {
         super(sessionFactory, workCache, sessionLoader, stateKeySuffix, sessionsPerSegment);
         this.maxErrors = maxErrors;
         this.stalledTimeoutInSeconds = stalledTimeoutInSeconds;
+        this.workersCount = Math.max(workersCount, 1);
     }
 
 
@@ -117,7 +130,10 @@ public class InfinispanCacheInitializer extends BaseCacheInitializer {
 
         SessionLoader.WorkerResult previousResult = null;
         SessionLoader.WorkerResult nextResult = null;
-        int distributedWorkersCount = 1;
+        int distributedWorkersCount = workersCount;
+
+        long start = System.currentTimeMillis();
+        ExecutorService executor = distributedWorkersCount > 1 ? getExecutor() : null;
 
         while (segmentToLoad < state.getSegmentsCount()) {
 
@@ -130,6 +146,7 @@ public class InfinispanCacheInitializer extends BaseCacheInitializer {
             }
 
             final Queue<SessionLoader.WorkerResult> results = new ConcurrentLinkedQueue<>();
+            final List<Future<?>> futures = new LinkedList<>();
 
             for (Integer segment : segments) {
                 SessionLoader.WorkerContext workerCtx = sessionLoader.computeWorkerContext(loaderCtx, segment, segment - segmentToLoad, previousResult);
@@ -137,7 +154,22 @@ public class InfinispanCacheInitializer extends BaseCacheInitializer {
                 SessionInitializerWorker worker = new SessionInitializerWorker();
                 worker.setWorkerEnvironment(loaderCtx, workerCtx, sessionLoader);
 
-                results.add(worker.apply(sessionFactory));
+                if (executor == null) {
+                    results.add(worker.apply(sessionFactory));
+                } else {
+                    futures.add(executor.submit(() -> results.add(worker.apply(sessionFactory))));
+                }
+            }
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted when loading segments", ie);
+                } catch (ExecutionException ee) {
+                    throw new RuntimeException("Failed to load segment", ee.getCause());
+                }
             }
 
             boolean anyFailure = false;
@@ -173,6 +205,12 @@ public class InfinispanCacheInitializer extends BaseCacheInitializer {
             }
         }
 
+        if (log.isDebugEnabled()) {
+            long took = Math.max(System.currentTimeMillis() - start, 1);
+            log.debugf("Loaded %d segments with %d workers in %d ms (%d segments/sec), ctx: '%s'",
+                    state.getSegmentsCount(), distributedWorkersCount, took, state.getSegmentsCount() * 1000L / took, loaderCtx);
+        }
+
         // Push the state after computation is finished
         saveStateToCache(state);
 
@@ -180,4 +218,9 @@ public class InfinispanCacheInitializer extends BaseCacheInitializer {
         this.sessionLoader.afterAllSessionsLoaded(this);
 
     }
+
+    private ExecutorService getExecutor() {
+        return KeycloakModelUtils.runJobInTransactionWithResult(sessionFactory,
+                session -> session.getProvider(ExecutorsProvider.class).getExecutor("session-preload"));
+    }
 }
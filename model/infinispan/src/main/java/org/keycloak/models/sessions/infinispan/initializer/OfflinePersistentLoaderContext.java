@@ -32,6 +32,36 @@ public class OfflinePersistentLoaderContext extends SessionLoader.LoaderContext
     }
 
 
+    /**
+     * Returns the exclusive lower bound of the user session ids of the given segment. The ids space is split into
+     * {@link #getSegmentsCount()} disjoint ranges by the leading 32 bits of the (UUID-like) session id, so each segment
+     * contains about {@link #getSessionsPerSegment()} sessions and can be loaded independently of the other segments.
+     *
+     * @param segment the segment
+     * @param firstSessionId the lower bound of the very first segment
+     * @return the id after which sessions of the segment start
+     */
+    public String getSegmentLowerBound(int segment, String firstSessionId) {
+        return segment == 0 ? firstSessionId : computeBoundary(segment, getSegmentsCount());
+    }
+
+    /**
+     * Returns the inclusive upper bound of the user session ids of the given segment or {@code null} for the last segment,
+     * which is unbounded.
+     *
+     * @param segment the segment
+     * @return the id where sessions of the segment end
+     */
+    public String getSegmentUpperBound(int segment) {
+        return segment >= getSegmentsCount() - 1 ? null : computeBoundary(segment + 1, getSegmentsCount());
+    }
+
+    private static String computeBoundary(int segment, int segmentsCount) {
+        long prefix = (segment * 0x100000000L) / segmentsCount;
+        return String.format("%08x", prefix);
+    }
+
+
     private static int computeSegmentsCount(int sessionsTotal, int sessionsPerSegment) {
         int segmentsCount = sessionsTotal / sessionsPerSegment;
         if (sessionsTotal % sessionsPerSegment >= 1) {
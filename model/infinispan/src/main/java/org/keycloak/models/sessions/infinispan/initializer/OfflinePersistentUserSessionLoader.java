@@ -22,7 +22,6 @@ import org.infinispan.client.hotrod.exceptions.HotRodClientException;
 import org.infinispan.context.Flag;
 import org.jboss.logging.Logger;
 import org.keycloak.common.util.Retry;
-import org.keycloak.common.util.Time;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.UserSessionModel;
 import org.keycloak.models.session.UserSessionPersisterProvider;
@@ -72,15 +71,9 @@ public class OfflinePersistentUserSessionLoader implements SessionLoader<Offline
 
     @Override
     public OfflinePersistentWorkerContext computeWorkerContext(OfflinePersistentLoaderContext loaderCtx, int segment, int workerId, OfflinePersistentWorkerResult previousResult) {
-        String lastSessionId;
-        if (previousResult == null) {
-            lastSessionId = FIRST_SESSION_ID;
-        } else {
-            lastSessionId = previousResult.getLastSessionId();
-        }
-
-        // We know the last loaded session. New workers iteration will start from this place
-        return new OfflinePersistentWorkerContext(segment, workerId, lastSessionId);
+        // Each segment is a disjoint range of session ids, so segments don't depend on the previous results and can be loaded concurrently
+        return new OfflinePersistentWorkerContext(segment, workerId, loaderCtx.getSegmentLowerBound(segment, FIRST_SESSION_ID),
+                loaderCtx.getSegmentUpperBound(segment));
     }
 
 
@@ -92,30 +85,38 @@ public class OfflinePersistentUserSessionLoader implements SessionLoader<Offline
 
     @Override
     public OfflinePersistentWorkerResult loadSessions(KeycloakSession session, OfflinePersistentLoaderContext loaderContext, OfflinePersistentWorkerContext ctx) {
-        int first = ctx.getWorkerId() * sessionsPerSegment;
+        long start = System.currentTimeMillis();
 
-        log.tracef("Loading sessions for segment=%d lastSessionId=%s first=%d", ctx.getSegment(), ctx.getLastSessionId(), (Object) first);
+        log.tracef("Loading sessions for segment=%d lastSessionId=%s toSessionId=%s", ctx.getSegment(), ctx.getLastSessionId(), ctx.getToSessionId());
 
         UserSessionPersisterProvider persister = session.getProvider(UserSessionPersisterProvider.class);
-        List<UserSessionModel> sessions = persister
-                .loadUserSessionsStream(first, sessionsPerSegment, true, ctx.getLastSessionId())
-                .collect(Collectors.toList());
-
-        log.tracef("Sessions loaded from DB - segment=%d lastSessionId=%s", ctx.getSegment(), ctx.getLastSessionId());
 
-        UserSessionModel lastSession = null;
-        if (!sessions.isEmpty()) {
-            lastSession = sessions.get(sessions.size() - 1);
+        // Keyset pagination within the range of the segment. The range usually fits to a single page, but the ids don't need to be
+        // evenly distributed
+        String lastSessionId = ctx.getLastSessionId();
+        int loaded = 0;
+        List<UserSessionModel> sessions;
+        do {
+            sessions = persister
+                    .loadUserSessionsStream(sessionsPerSegment, true, lastSessionId, ctx.getToSessionId())
+                    .collect(Collectors.toList());
+
+            if (!sessions.isEmpty()) {
+                lastSessionId = sessions.get(sessions.size() - 1).getId();
+                loaded += sessions.size();
+
+                // Save to memory/infinispan
+                session.sessions().importUserSessions(sessions, true);
+            }
+        } while (sessions.size() >= sessionsPerSegment);
 
-            // Save to memory/infinispan
-            session.sessions().importUserSessions(sessions, true);
+        if (log.isDebugEnabled()) {
+            long took = Math.max(System.currentTimeMillis() - start, 1);
+            log.debugf("Sessions imported to infinispan - segment: %d, sessions: %d, lastSessionId: %s, took: %d ms (%d sessions/sec)",
+                    ctx.getSegment(), loaded, lastSessionId, took, loaded * 1000L / took);
         }
 
-        String lastSessionId = lastSession==null ? FIRST_SESSION_ID : lastSession.getId();
-
-        log.tracef("Sessions imported to infinispan - segment: %d, lastSessionId: %s", ctx.getSegment(), lastSessionId);
-
-        return new OfflinePersistentWorkerResult(true, ctx.getSegment(), ctx.getWorkerId(), lastSessionId);
+        return new OfflinePersistentWorkerResult(true, ctx.getSegment(), ctx.getWorkerId(), lastSessionId, loaded);
     }
 
 
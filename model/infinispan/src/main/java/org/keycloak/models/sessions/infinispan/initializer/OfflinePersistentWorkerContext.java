@@ -23,13 +23,26 @@ package org.keycloak.models.sessions.infinispan.initializer;
 public class OfflinePersistentWorkerContext extends SessionLoader.WorkerContext {
 
     private final String lastSessionId;
+    private final String toSessionId;
 
     public OfflinePersistentWorkerContext(int segment, int workerId, String lastSessionId) {
+        this(segment, workerId, lastSessionId, null);
+    }
+
+    public OfflinePersistentWorkerContext(int segment, int workerId, String lastSessionId, String toSessionId) {
         super(segment, workerId);
         this.lastSessionId = lastSessionId;
+        this.toSessionId = toSessionId;
     }
 
     public String getLastSessionId() {
         return lastSessionId;
     }
+
+    /**
+     * @return inclusive upper bound of the ids of the sessions to load or {@code null} if the segment is unbounded
+     */
+    public String getToSessionId() {
+        return toSessionId;
+    }
 }
@@ -23,14 +23,24 @@ package org.keycloak.models.sessions.infinispan.initializer;
 public class OfflinePersistentWorkerResult extends SessionLoader.WorkerResult {
 
     private final String lastSessionId;
+    private final int loadedSessionsCount;
 
 
     public OfflinePersistentWorkerResult(boolean success, int segment, int workerId, String lastSessionId) {
+        this(success, segment, workerId, lastSessionId, 0);
+    }
+
+    public OfflinePersistentWorkerResult(boolean success, int segment, int workerId, String lastSessionId, int loadedSessionsCount) {
         super(success, segment, workerId);
         this.lastSessionId = lastSessionId;
+        this.loadedSessionsCount = loadedSessionsCount;
     }
 
     public String getLastSessionId() {
         return lastSessionId;
     }
+
+    public int getLoadedSessionsCount() {
+        return loadedSessionsCount;
+    }
 }
@@ -23,8 +23,10 @@ import org.keycloak.models.sessions.infinispan.entities.LoginFailureEntity;
 import org.keycloak.models.sessions.infinispan.entities.LoginFailureKey;
 import org.keycloak.models.sessions.infinispan.entities.SessionEntity;
 import org.keycloak.models.sessions.infinispan.entities.UserSessionEntity;
+import org.keycloak.models.sessions.infinispan.index.UserSessionIndexEntry;
 
 import java.io.Serializable;
+import java.util.AbstractMap;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
@@ -57,6 +59,10 @@ public class Mappers {
         return new AuthenticatedClientSessionEntityMapper();
     }
 
+    public static Function<Map.Entry<String, SessionEntityWrapper<UserSessionEntity>>, Map.Entry<String, UserSessionIndexEntry>> userSessionIndexEntry() {
+        return new UserSessionIndexEntryMapper();
+    }
+
     public static Function<Map.Entry<LoginFailureKey, SessionEntityWrapper<LoginFailureEntity>>, LoginFailureKey> loginFailureId() {
         return new LoginFailureIdMapper();
     }
@@ -112,6 +118,15 @@ public class Mappers {
 
     }
 
+    private static class UserSessionIndexEntryMapper implements Function<Map.Entry<String, SessionEntityWrapper<UserSessionEntity>>, Map.Entry<String, UserSessionIndexEntry>>, Serializable {
+
+        @Override
+        public Map.Entry<String, UserSessionIndexEntry> apply(Map.Entry<String, SessionEntityWrapper<UserSessionEntity>> entry) {
+            return new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), UserSessionIndexEntry.create(entry.getValue().getEntity()));
+        }
+
+    }
+
     private static class AuthenticatedClientSessionEntityMapper implements Function<Map.Entry<UUID, SessionEntityWrapper<AuthenticatedClientSessionEntity>>, AuthenticatedClientSessionEntity>, Serializable {
 
         @Override
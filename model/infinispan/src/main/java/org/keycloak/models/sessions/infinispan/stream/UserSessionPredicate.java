@@ -108,6 +108,10 @@ public class UserSessionPredicate implements Predicate<Map.Entry<String, Session
         return this;
     }
 
+    public String getRealm() {
+        return realm;
+    }
+
     /**
      * Returns the user id.
      * @return
@@ -116,6 +120,10 @@ public class UserSessionPredicate implements Predicate<Map.Entry<String, Session
         return user;
     }
 
+    public String getClient() {
+        return client;
+    }
+
     public String getBrokerSessionId() {
         return brokerSessionId;
     }
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.util;
+
+import java.util.function.ToLongFunction;
+
+import org.infinispan.AdvancedCache;
+import org.infinispan.Cache;
+import org.infinispan.commons.util.CloseableIterator;
+import org.keycloak.common.util.Time;
+import org.keycloak.models.sessions.infinispan.CacheDecorators;
+
+/**
+ * Count and estimated heap size of the entries of a cache stored on this node, including backup copies. The size is
+ * extrapolated from a sample of the local entries, and both values are computed at most once per refresh interval, so
+ * that frequent scrapes of the metrics do not iterate all the entries.
+ */
+public class CacheSizeStats<V> {
+
+    private final Class<V> type;
+    private final ToLongFunction<V> estimator;
+    private final int sampleSize;
+    private final long refreshIntervalMillis;
+
+    private volatile Cache<?, ?> cache;
+    private volatile Snapshot snapshot;
+
+    public CacheSizeStats(Class<V> type, ToLongFunction<V> estimator, int sampleSize, long refreshIntervalMillis) {
+        this.type = type;
+        this.estimator = estimator;
+        this.sampleSize = sampleSize;
+        this.refreshIntervalMillis = refreshIntervalMillis;
+    }
+
+    public void setCache(Cache<?, V> cache) {
+        this.cache = cache;
+        this.snapshot = null;
+    }
+
+    public long getEntryCount() {
+        Snapshot current = getSnapshot();
+        return current == null ? 0 : current.entryCount;
+    }
+
+    public long getEstimatedSize() {
+        Snapshot current = getSnapshot();
+        return current == null ? 0 : current.estimatedSize;
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        long currentTime = Time.currentTimeMillis();
+        if (current != null && currentTime - current.time < refreshIntervalMillis) {
+            return current;
+        }
+
+        Cache<?, ?> cache = this.cache;
+        if (cache == null) {
+            return null;
+        }
+
+        // Concurrent refreshes may both compute the snapshot, the last one wins
+        current = computeSnapshot(CacheDecorators.localCache(cache), currentTime);
+        snapshot = current;
+        return current;
+    }
+
+    private Snapshot computeSnapshot(AdvancedCache<?, ?> localCache, long currentTime) {
+        int entryCount = localCache.size();
+
+        long sampledSize = 0;
+        int samples = 0;
+        try (CloseableIterator<?> values = localCache.values().iterator()) {
+            while (samples < sampleSize && values.hasNext()) {
+                Object value = values.next();
+                if (type.isInstance(value)) {
+                    sampledSize += estimator.applyAsLong(type.cast(value));
+                    samples++;
+                }
+            }
+        }
+
+        long estimatedSize = samples == 0 ? 0 : Math.round((double) sampledSize / samples * entryCount);
+        return new Snapshot(entryCount, estimatedSize, currentTime);
+    }
+
+    private static class Snapshot {
+
+        private final long entryCount;
+        private final long estimatedSize;
+        private final long time;
+
+        private Snapshot(long entryCount, long estimatedSize, long time) {
+            this.entryCount = entryCount;
+            this.estimatedSize = estimatedSize;
+            this.time = time;
+        }
+    }
+}
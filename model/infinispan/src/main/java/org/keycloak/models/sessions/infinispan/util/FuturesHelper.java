@@ -21,6 +21,7 @@ import java.util.LinkedList;
 import java.util.Queue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 import org.jboss.logging.Logger;
 
@@ -35,20 +36,52 @@ public class FuturesHelper {
 
     private final Queue<Future> futures = new LinkedList<>();
 
+    private final Queue<Runnable> completionTasks = new LinkedList<>();
+
 
     public void addTask(Future future) {
         this.futures.add(future);
     }
 
 
-    public void waitForAllToFinish() {
+    /**
+     * Adds the future together with the task, which is run with its result by {@link #waitForAllToFinish()}. The task
+     * is run in the waiting thread after all the futures finished, and only if the future finished successfully.
+     */
+    public <T> void addTask(Future<T> future, Consumer<T> onSuccess) {
+        this.futures.add(future);
+        this.completionTasks.add(() -> {
+            T result;
+            try {
+                result = future.get();
+            } catch (ExecutionException | InterruptedException ee) {
+                // Already logged when waiting for the future
+                return;
+            }
+            onSuccess.accept(result);
+        });
+    }
+
+
+    /**
+     * @return count of the futures, which finished with an exception
+     */
+    public int waitForAllToFinish() {
+        int failed = 0;
         for (Future future : futures) {
             try {
                 future.get();
             } catch (ExecutionException | InterruptedException ee) {
+                failed++;
                 log.error("Exception when waiting for future", ee); // TODO Possibly some good mechanism to avoid swamp log with many same exceptions?
             }
         }
+
+        for (Runnable task : completionTasks) {
+            task.run();
+        }
+
+        return failed;
     }
 
 
@@ -20,12 +20,15 @@ package org.keycloak.models.sessions.infinispan.util;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.UUID;
+import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.infinispan.commons.marshall.Externalizer;
@@ -44,6 +47,31 @@ public class KeycloakMarshallUtil {
 
     public static final Externalizer<String> STRING_EXT = new StringExternalizer();
 
+    public static final Externalizer<String> COMPACT_STRING_EXT = new Externalizer<String>() {
+        @Override
+        public void writeObject(ObjectOutput output, String str) throws IOException {
+            marshallCompactString(str, output);
+        }
+
+        @Override
+        public String readObject(ObjectInput input) throws IOException, ClassNotFoundException {
+            return unmarshallCompactString(input);
+        }
+    };
+
+    // Realm and client IDs are shared by many sessions, so the deserialized sessions share the same instances of them
+    public static final Externalizer<String> INTERNED_STRING_EXT = new Externalizer<String>() {
+        @Override
+        public void writeObject(ObjectOutput output, String str) throws IOException {
+            marshallCompactString(str, output);
+        }
+
+        @Override
+        public String readObject(ObjectInput input) throws IOException, ClassNotFoundException {
+            return unmarshallInternedString(input);
+        }
+    };
+
     public static final Externalizer<UUID> UUID_EXT = new Externalizer<UUID>() {
         @Override
         public void writeObject(ObjectOutput output, UUID uuid) throws IOException {
@@ -165,6 +193,219 @@ public class KeycloakMarshallUtil {
         return isSet ? input.readInt() : null;
     }
 
+    // COMPACT STRINGS
+
+    private static final int COMPACT_NULL = 0;
+    private static final int COMPACT_UUID = 1;
+    private static final int COMPACT_DICTIONARY = 2;
+    private static final int COMPACT_NUMBER = 3;
+    private static final int COMPACT_UTF8 = 4;
+
+    // Strings frequently used in the sessions, like protocols and names of the notes. They are marshalled as their index, so the
+    // entries can be only appended to the end
+    private static final String[] DICTIONARY = {
+            "openid-connect", "saml", "docker-v2",
+            "AUTH_TIME", "SSO_AUTH", "KC_DEVICE_NOTE", "KEYCLOAK_LOGOUT_PROTOCOL",
+            "iss", "scope", "response_type", "redirect_uri", "state", "nonce", "response_mode", "code_challenge", "code_challenge_method",
+            "level-of-authentication", "authenticators-completed", "loa-map", "identity_provider", "identity_provider_identity",
+            "userSessionStartedAt", "userSessionRememberMe", "clientId", "clientHost", "clientAddress",
+            "openid", "code", "true", "false"
+    };
+
+    private static final Map<String, Integer> DICTIONARY_INDEX = new HashMap<>();
+    static {
+        for (int i = 0; i < DICTIONARY.length; i++) {
+            DICTIONARY_INDEX.put(DICTIONARY[i], i);
+        }
+    }
+
+    // Both the keys and the values are weak, so the strings are released once no session references them anymore
+    private static final Map<String, WeakReference<String>> INTERNED_STRINGS = new WeakHashMap<>();
+
+    /**
+     * Marshalls the string in a compact form. Strings in the canonical UUID form are written as 16 bytes, well-known strings
+     * as their index in the dictionary, non-negative decimal numbers as variable-length integers and all the other strings as
+     * UTF-8 prefixed by the variable-length size.
+     *
+     * @param str String to marshall (can be {@code null})
+     * @param output Output stream
+     * @throws IOException
+     */
+    public static void marshallCompactString(String str, ObjectOutput output) throws IOException {
+        if (str == null) {
+            output.writeByte(COMPACT_NULL);
+            return;
+        }
+
+        Integer index = DICTIONARY_INDEX.get(str);
+        if (index != null) {
+            output.writeByte(COMPACT_DICTIONARY);
+            writeVarInt(index, output);
+            return;
+        }
+
+        UUID uuid = toCanonicalUUID(str);
+        if (uuid != null) {
+            output.writeByte(COMPACT_UUID);
+            output.writeLong(uuid.getMostSignificantBits());
+            output.writeLong(uuid.getLeastSignificantBits());
+            return;
+        }
+
+        if (isCanonicalNumber(str)) {
+            output.writeByte(COMPACT_NUMBER);
+            writeVarLong(Long.parseLong(str), output);
+            return;
+        }
+
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        output.writeByte(COMPACT_UTF8);
+        writeVarInt(bytes.length, output);
+        output.write(bytes);
+    }
+
+    /**
+     * Unmarshalls the string written by {@link #marshallCompactString(String, ObjectOutput)}.
+     * @param input Input stream
+     * @return Unmarshalled string (can be {@code null})
+     * @throws IOException
+     */
+    public static String unmarshallCompactString(ObjectInput input) throws IOException {
+        int type = input.readByte();
+        switch (type) {
+            case COMPACT_NULL:
+                return null;
+            case COMPACT_UUID:
+                return new UUID(input.readLong(), input.readLong()).toString();
+            case COMPACT_DICTIONARY:
+                int index = readVarInt(input);
+                if (index < 0 || index >= DICTIONARY.length) {
+                    throw new IOException("Unknown dictionary index " + index);
+                }
+                return DICTIONARY[index];
+            case COMPACT_NUMBER:
+                return Long.toString(readVarLong(input));
+            case COMPACT_UTF8:
+                byte[] bytes = new byte[readVarInt(input)];
+                input.readFully(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            default:
+                throw new IOException("Unknown type of compact string " + type);
+        }
+    }
+
+    /**
+     * Same as {@link #unmarshallCompactString(ObjectInput)}, but returns the same instance for the same value, so that the values
+     * shared by many sessions, like realm and client IDs, are kept in memory just once. The strings are held weakly, so the
+     * values of removed realms or clients do not stay in memory.
+     */
+    public static String unmarshallInternedString(ObjectInput input) throws IOException {
+        String str = unmarshallCompactString(input);
+        if (str == null) {
+            return null;
+        }
+
+        synchronized (INTERNED_STRINGS) {
+            WeakReference<String> ref = INTERNED_STRINGS.get(str);
+            String interned = ref == null ? null : ref.get();
+            if (interned != null) {
+                return interned;
+            }
+            INTERNED_STRINGS.put(str, new WeakReference<>(str));
+            return str;
+        }
+    }
+
+    /**
+     * Writes the map of notes with the variable-length size and the keys and values as compact strings.
+     * See {@link #marshallCompactString(String, ObjectOutput)}.
+     */
+    public static void writeNotes(Map<String, String> notes, ObjectOutput output) throws IOException {
+        if (notes == null) {
+            writeVarInt(0, output);
+            return;
+        }
+
+        // Copy the map as it can be updated concurrently
+        Map<String, String> copy = new HashMap<>(notes);
+        writeVarInt(copy.size() + 1, output);
+        for (Map.Entry<String, String> entry : copy.entrySet()) {
+            marshallCompactString(entry.getKey(), output);
+            marshallCompactString(entry.getValue(), output);
+        }
+    }
+
+    public static <TYPED_MAP extends Map<String, String>> TYPED_MAP readNotes(ObjectInput input,
+                                                                          MarshallUtil.MapBuilder<String, String, TYPED_MAP> mapBuilder) throws IOException {
+        int size = readVarInt(input) - 1;
+        if (size < 0) {
+            return null;
+        }
+
+        TYPED_MAP map = mapBuilder.build(size);
+        for (int i = 0; i < size; i++) {
+            String key = unmarshallCompactString(input);
+            String value = unmarshallCompactString(input);
+            map.put(key, value);
+        }
+        return map;
+    }
+
+    public static void writeVarInt(int value, ObjectOutput output) throws IOException {
+        writeVarLong(value & 0xFFFFFFFFL, output);
+    }
+
+    public static int readVarInt(ObjectInput input) throws IOException {
+        return (int) readVarLong(input);
+    }
+
+    public static void writeVarLong(long value, ObjectOutput output) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            output.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        output.writeByte((int) value);
+    }
+
+    public static long readVarLong(ObjectInput input) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = input.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable-length number");
+    }
+
+    private static UUID toCanonicalUUID(String str) {
+        if (str.length() != 36 || str.charAt(8) != '-' || str.charAt(13) != '-' || str.charAt(18) != '-' || str.charAt(23) != '-') {
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(str);
+            // Only strings which are restored exactly, e.g. not the upper-case ones
+            return uuid.toString().equals(str) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static boolean isCanonicalNumber(String str) {
+        int length = str.length();
+        if (length == 0 || length > 18 || (length > 1 && str.charAt(0) == '0')) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = str.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public static class ConcurrentHashMapBuilder<K, V> implements MarshallUtil.MapBuilder<K, V, ConcurrentHashMap<K, V>> {
 
         @Override
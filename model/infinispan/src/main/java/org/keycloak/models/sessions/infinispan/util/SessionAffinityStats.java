@@ -0,0 +1,61 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the accesses to sessions in a clustered cache, which were served by the primary owner of the session (local)
+ * and by other nodes (remote). A low ratio of local accesses means that the loadbalancer does not follow the route
+ * attached to the sticky session cookie.
+ */
+public class SessionAffinityStats {
+
+    private final LongAdder localAccesses = new LongAdder();
+    private final LongAdder remoteAccesses = new LongAdder();
+
+    public void recordAccess(boolean local) {
+        if (local) {
+            localAccesses.increment();
+        } else {
+            remoteAccesses.increment();
+        }
+    }
+
+    public long getLocalAccesses() {
+        return localAccesses.sum();
+    }
+
+    public long getRemoteAccesses() {
+        return remoteAccesses.sum();
+    }
+
+    /**
+     * @return ratio of the local accesses to all the accesses, or 1 when there was no access yet
+     */
+    public double getHitRate() {
+        long local = localAccesses.sum();
+        long total = local + remoteAccesses.sum();
+        return total == 0 ? 1 : (double) local / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("local: %d, remote: %d, hit rate: %.4f", getLocalAccesses(), getRemoteAccesses(), getHitRate());
+    }
+}
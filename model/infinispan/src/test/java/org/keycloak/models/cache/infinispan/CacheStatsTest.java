@@ -0,0 +1,108 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.cache.infinispan;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.transaction.LockingMode;
+import org.infinispan.transaction.TransactionMode;
+import org.infinispan.transaction.lookup.EmbeddedTransactionManagerLookup;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.models.cache.infinispan.entities.CachedUser;
+import org.keycloak.models.cache.infinispan.entities.NonExistentItem;
+import org.keycloak.models.cache.infinispan.entities.Revisioned;
+
+public class CacheStatsTest {
+
+    private DefaultCacheManager cacheManager;
+    private UserCacheManager userCache;
+
+    @Before
+    public void before() {
+        cacheManager = new DefaultCacheManager();
+        cacheManager.defineConfiguration("users", new ConfigurationBuilder().build());
+
+        ConfigurationBuilder revisions = new ConfigurationBuilder();
+        revisions.invocationBatching().enable().transaction().transactionMode(TransactionMode.TRANSACTIONAL);
+        revisions.transaction().transactionManagerLookup(new EmbeddedTransactionManagerLookup());
+        revisions.transaction().lockingMode(LockingMode.PESSIMISTIC);
+        cacheManager.defineConfiguration("userRevisions", revisions.build());
+
+        userCache = new UserCacheManager(cacheManager.getCache("users"), cacheManager.getCache("userRevisions"));
+    }
+
+    @After
+    public void after() {
+        CacheStats.setCounterListener(null);
+        cacheManager.stop();
+    }
+
+    @Test
+    public void testCountersPerType() {
+        CacheStats stats = userCache.getStats();
+
+        Assert.assertNull(userCache.get("item", NonExistentItem.class));
+        Assert.assertEquals(1, stats.get(CacheStats.Counter.MISS, NonExistentItem.class));
+
+        long revision = userCache.getCurrentRevision("item");
+        userCache.addRevisioned(new NonExistentItem("item", revision), userCache.getCurrentCounter());
+        Assert.assertEquals(1, stats.get(CacheStats.Counter.ADDED, NonExistentItem.class));
+
+        Assert.assertNotNull(userCache.get("item", NonExistentItem.class));
+        Assert.assertNotNull(userCache.get("item", NonExistentItem.class));
+        Assert.assertEquals(2, stats.get(CacheStats.Counter.HIT, NonExistentItem.class));
+
+        // Hits and misses are counted for the requested type
+        Assert.assertNotNull(userCache.get("item", Revisioned.class));
+        Assert.assertNull(userCache.get("item", CachedUser.class));
+        Assert.assertEquals(1, stats.get(CacheStats.Counter.HIT, Revisioned.class));
+        Assert.assertEquals(1, stats.get(CacheStats.Counter.MISS, CachedUser.class));
+        Assert.assertEquals(2, stats.get(CacheStats.Counter.HIT, NonExistentItem.class));
+
+        userCache.invalidateObject("item");
+        Assert.assertEquals(1, stats.get(CacheStats.Counter.INVALIDATED, NonExistentItem.class));
+
+        // The revision was bumped by the invalidation, so the item loaded before is not cached
+        userCache.addRevisioned(new NonExistentItem("item", revision), userCache.getCurrentCounter());
+        Assert.assertEquals(1, stats.get(CacheStats.Counter.STALE, NonExistentItem.class));
+        Assert.assertEquals(1, stats.get(CacheStats.Counter.ADD_SKIPPED, NonExistentItem.class));
+        Assert.assertEquals(1, stats.get(CacheStats.Counter.ADDED));
+    }
+
+    @Test
+    public void testListenerNotifiedAboutNewCounters() {
+        Map<String, LongAdder> counters = new HashMap<>();
+        CacheStats.setCounterListener((cacheName, counter, type, value) -> counters.put(cacheName + "/" + counter.getName() + "/" + type, value));
+
+        CacheStats stats = new CacheStats("realms");
+        stats.increment(CacheStats.Counter.ADD_SKIPPED, NonExistentItem.class);
+        stats.increment(CacheStats.Counter.ADD_SKIPPED, NonExistentItem.class);
+        stats.increment(CacheStats.Counter.EVENT_RECEIVED, "RealmUpdatedEvent");
+
+        Assert.assertEquals(2, counters.size());
+        Assert.assertEquals(2, counters.get("realms/add.skipped/NonExistentItem").sum());
+        Assert.assertEquals(1, counters.get("realms/event.received/RealmUpdatedEvent").sum());
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+
+import org.infinispan.Cache;
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakTransactionManager;
+import org.keycloak.models.ModelException;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.sessions.infinispan.entities.AuthenticationSessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.RootAuthenticationSessionEntity;
+import org.keycloak.sessions.AuthenticationSessionModel;
+
+public class AuthenticationSessionAdapterTest {
+
+    private static final String TAB_ID = "tab1";
+
+    @Test
+    public void testNotesSize() {
+        AuthenticationSessionEntity entity = new AuthenticationSessionEntity();
+        Assert.assertEquals(0, entity.getNotesSize());
+
+        AuthenticationSessionModel authSession = authSession(entity, -1);
+        authSession.setClientNote("ab", "cde");
+        Assert.assertEquals(5, entity.getNotesSize());
+        authSession.setAuthNote("f", "gh");
+        Assert.assertEquals(8, entity.getNotesSize());
+        authSession.setUserSessionNote("ij", "k");
+        Assert.assertEquals(11, entity.getNotesSize());
+
+        // Replacing a note counts only the new value
+        authSession.setClientNote("ab", "c");
+        Assert.assertEquals(9, entity.getNotesSize());
+
+        authSession.setAuthNote("f", null);
+        Assert.assertEquals(6, entity.getNotesSize());
+        authSession.removeClientNote("ab");
+        Assert.assertEquals(3, entity.getNotesSize());
+        authSession.clearUserSessionNotes();
+        Assert.assertEquals(0, entity.getNotesSize());
+    }
+
+    @Test
+    public void testNotesMaxSize() {
+        AuthenticationSessionEntity entity = new AuthenticationSessionEntity();
+        AuthenticationSessionModel authSession = authSession(entity, 10);
+
+        authSession.setClientNote("note1", "12345");
+        Assert.assertEquals(10, entity.getNotesSize());
+        assertRejected(() -> authSession.setAuthNote("a", "b"));
+        assertRejected(() -> authSession.setClientNote("note1", "123456"));
+        Assert.assertEquals("12345", authSession.getClientNote("note1"));
+        Assert.assertNull(authSession.getAuthNote("a"));
+
+        // Replacing the note with a value of the same or smaller size fits within the limit
+        authSession.setClientNote("note1", "abcde");
+        Assert.assertEquals(10, entity.getNotesSize());
+        authSession.setClientNote("note1", "abc");
+        Assert.assertEquals(8, entity.getNotesSize());
+        authSession.setUserSessionNote("u", "v");
+        Assert.assertEquals(10, entity.getNotesSize());
+        assertRejected(() -> authSession.setUserSessionNote("u", "vw"));
+
+        // Removed notes free the space
+        authSession.removeClientNote("note1");
+        Assert.assertEquals(2, entity.getNotesSize());
+        authSession.setAuthNote("auth", "1234");
+        Assert.assertEquals(10, entity.getNotesSize());
+    }
+
+    @Test
+    public void testNotesMaxSizeDisabled() {
+        AuthenticationSessionEntity entity = new AuthenticationSessionEntity();
+        AuthenticationSessionModel authSession = authSession(entity, InfinispanAuthenticationSessionProviderFactory.DEFAULT_AUTH_SESSION_NOTES_MAX_SIZE);
+
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            value.append('x');
+        }
+        authSession.setAuthNote("note", value.toString());
+        Assert.assertEquals(100004, entity.getNotesSize());
+    }
+
+    private static void assertRejected(Runnable setNote) {
+        try {
+            setNote.run();
+            Assert.fail("Expected the note to exceed the limit");
+        } catch (ModelException expected) {
+        }
+    }
+
+    private static AuthenticationSessionModel authSession(AuthenticationSessionEntity entity, int notesMaxSize) {
+        KeycloakTransactionManager transactionManager = proxy(KeycloakTransactionManager.class, (proxy, method, args) -> null);
+        KeycloakSession session = proxy(KeycloakSession.class, (proxy, method, args) ->
+                method.getName().equals("getTransactionManager") ? transactionManager : null);
+        Cache<String, RootAuthenticationSessionEntity> cache = proxy(Cache.class, (proxy, method, args) ->
+                method.getName().equals("getName") ? "authenticationSessions" : null);
+        RealmModel realm = proxy(RealmModel.class, (proxy, method, args) -> method.getReturnType() == int.class ? 1800 : null);
+
+        RootAuthenticationSessionEntity rootEntity = new RootAuthenticationSessionEntity();
+        rootEntity.setId("root1");
+        rootEntity.getAuthenticationSessions().put(TAB_ID, entity);
+
+        InfinispanAuthenticationSessionProvider provider = new InfinispanAuthenticationSessionProvider(session, null, cache, 300, notesMaxSize, null);
+        RootAuthenticationSessionAdapter parent = new RootAuthenticationSessionAdapter(session, provider, cache, realm, rootEntity, 300, notesMaxSize);
+        return new AuthenticationSessionAdapter(session, parent, TAB_ID, entity);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(AuthenticationSessionAdapterTest.class.getClassLoader(), new Class[] { type }, handler);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.index;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.configuration.global.GlobalConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.models.sessions.infinispan.changes.SessionEntityWrapper;
+import org.keycloak.models.sessions.infinispan.entities.UserSessionEntity;
+import org.keycloak.models.sessions.infinispan.stream.UserSessionPredicate;
+
+public class UserSessionIndexListenerTest {
+
+    private static final int MAX_COUNT = 5;
+
+    private EmbeddedCacheManager cacheManager;
+
+    @Before
+    public void before() {
+        cacheManager = new DefaultCacheManager(new GlobalConfigurationBuilder().nonClusteredDefault().build());
+
+        ConfigurationBuilder bounded = new ConfigurationBuilder();
+        bounded.memory().maxCount(MAX_COUNT);
+        cacheManager.defineConfiguration("bounded", bounded.build());
+        cacheManager.defineConfiguration("unbounded", new ConfigurationBuilder().build());
+    }
+
+    @After
+    public void after() {
+        cacheManager.stop();
+    }
+
+    @Test
+    public void testEvictedSessionsRemovedFromIndex() {
+        Cache<String, SessionEntityWrapper<UserSessionEntity>> cache = cacheManager.getCache("bounded");
+        UserSessionIndex index = new UserSessionIndex("bounded");
+        UserSessionIndexListener.register(cache, index);
+
+        for (int i = 0; i < 4 * MAX_COUNT; i++) {
+            String id = "s" + i;
+            cache.put(id, new SessionEntityWrapper<>(createSession(id)));
+        }
+
+        Assert.assertTrue(cache.size() <= MAX_COUNT);
+        Assert.assertEquals(cache.size(), index.size());
+        Assert.assertEquals(cache.size(), index.getSessionsCount("realm1", "client1"));
+        Assert.assertEquals(new HashSet<>(cache.keySet()), index.findSessionIds(UserSessionPredicate.create("realm1").client("client1")));
+    }
+
+    @Test
+    public void testUnboundedCacheIndexesAllSessions() {
+        Cache<String, SessionEntityWrapper<UserSessionEntity>> cache = cacheManager.getCache("unbounded");
+        UserSessionIndex index = new UserSessionIndex("unbounded");
+        UserSessionIndexListener.register(cache, index);
+
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < 4 * MAX_COUNT; i++) {
+            String id = "s" + i;
+            cache.put(id, new SessionEntityWrapper<>(createSession(id)));
+            ids.add(id);
+        }
+
+        Assert.assertEquals(ids.size(), index.size());
+        Assert.assertEquals(ids.size(), index.getSessionsCount("realm1", "client1"));
+        Assert.assertEquals(ids, index.findSessionIds(UserSessionPredicate.create("realm1").client("client1")));
+    }
+
+    private static UserSessionEntity createSession(String id) {
+        UserSessionEntity entity = new UserSessionEntity();
+        entity.setId(id);
+        entity.setRealmId("realm1");
+        entity.setUser("user-" + id);
+        entity.getAuthenticatedClientSessions().put("client1", UUID.randomUUID());
+        return entity;
+    }
+}
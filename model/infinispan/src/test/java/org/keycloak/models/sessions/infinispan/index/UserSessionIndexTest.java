@@ -0,0 +1,216 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.index;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.models.sessions.infinispan.entities.UserSessionEntity;
+import org.keycloak.models.sessions.infinispan.stream.UserSessionPredicate;
+
+public class UserSessionIndexTest {
+
+    @Test
+    public void testLookupByIndexedAttributes() {
+        UserSessionIndex index = new UserSessionIndex("sessions");
+
+        index.entityUpdated("s1", createSession("s1", "realm1", "user1", "broker-s1", "idp.user1", "client1"));
+        index.entityUpdated("s2", createSession("s2", "realm1", "user1", null, null, "client2"));
+        index.entityUpdated("s3", createSession("s3", "realm2", "user1", "broker-s1", null, "client1"));
+
+        assertIds(index.findSessionIds(UserSessionPredicate.create("realm1").user("user1")), "s1", "s2");
+        assertIds(index.findSessionIds(UserSessionPredicate.create("realm2").user("user1")), "s3");
+        assertIds(index.findSessionIds(UserSessionPredicate.create("realm1").brokerSessionId("broker-s1")), "s1");
+        assertIds(index.findSessionIds(UserSessionPredicate.create("realm1").brokerUserId("idp.user1")), "s1");
+        assertIds(index.findSessionIds(UserSessionPredicate.create("realm1").client("client2")), "s2");
+        assertIds(index.findSessionIds(UserSessionPredicate.create("realm1").user("user1").client("client1")), "s1");
+        assertIds(index.findSessionIds(UserSessionPredicate.create("realm1").user("user2")));
+
+        // Predicate without any indexed attribute can't be served by the index
+        Assert.assertNull(index.findSessionIds(UserSessionPredicate.create("realm1")));
+    }
+
+    @Test
+    public void testUpdateAndRemove() {
+        UserSessionIndex index = new UserSessionIndex("sessions");
+
+        UserSessionEntity session = createSession("s1", "realm1", "user1", null, null, "client1");
+        index.entityUpdated("s1", session);
+
+        session.getAuthenticatedClientSessions().remove("client1");
+        session.getAuthenticatedClientSessions().put("client2", UUID.randomUUID());
+        index.entityUpdated("s1", session);
+
+        assertIds(index.findSessionIds(UserSessionPredicate.create("realm1").client("client1")));
+        assertIds(index.findSessionIds(UserSessionPredicate.create("realm1").client("client2")), "s1");
+        Assert.assertEquals(1, index.size());
+
+        index.entityRemoved("s1");
+        assertIds(index.findSessionIds(UserSessionPredicate.create("realm1").user("user1")));
+        Assert.assertEquals(0, index.size());
+
+        // Removing unknown session is no-op
+        index.entityRemoved("s1");
+    }
+
+    @Test
+    public void testClientSessionCounts() {
+        UserSessionIndex index = new UserSessionIndex("sessions");
+
+        index.entityUpdated("s1", createSession("s1", "realm1", "user1", null, null, "client1"));
+        index.entityUpdated("s2", createSession("s2", "realm1", "user2", null, null, "client1"));
+        index.entityUpdated("s3", createSession("s3", "realm1", "user3", null, null, "client2"));
+        index.entityUpdated("s4", createSession("s4", "realm2", "user4", null, null, "client3"));
+
+        Assert.assertEquals(2, index.getSessionsCount("realm1", "client1"));
+        Assert.assertEquals(0, index.getSessionsCount("realm2", "client1"));
+
+        Map<String, Long> expected = new HashMap<>();
+        expected.put("client1", 2L);
+        expected.put("client2", 1L);
+        Assert.assertEquals(expected, index.getClientSessionStats("realm1"));
+
+        index.entityRemoved("s1");
+        index.entityRemoved("s3");
+        Assert.assertEquals(1, index.getSessionsCount("realm1", "client1"));
+        Assert.assertEquals(Collections.singletonMap("client1", 1L), index.getClientSessionStats("realm1"));
+    }
+
+    @Test
+    public void testReconcile() {
+        UserSessionIndex index = new UserSessionIndex("sessions");
+
+        index.entityUpdated("s1", createSession("s1", "realm1", "user1", null, null, "client1"));
+        index.entityUpdated("stale", createSession("stale", "realm1", "user2", null, null, "client1"));
+        Assert.assertEquals(2, index.getSessionsCount("realm1", "client1"));
+
+        // Cache contains "s1" and "missed", which was never indexed. The "stale" session is not in the cache anymore
+        UserSessionEntity s1 = createSession("s1", "realm1", "user1", null, null, "client1");
+        UserSessionEntity missed = createSession("missed", "realm1", "user3", null, null, "client2");
+
+        int fixed = index.reconcile(Stream.of(s1, missed)
+                .map(entity -> new AbstractMap.SimpleImmutableEntry<>(entity.getId(), UserSessionIndexEntry.create(entity))));
+
+        Assert.assertEquals(2, fixed);
+        Assert.assertEquals(2, index.size());
+        Assert.assertEquals(1, index.getSessionsCount("realm1", "client1"));
+        Assert.assertEquals(1, index.getSessionsCount("realm1", "client2"));
+        assertIds(index.findSessionIds(UserSessionPredicate.create("realm1").user("user3")), "missed");
+        assertIds(index.findSessionIds(UserSessionPredicate.create("realm1").user("user2")));
+    }
+
+    @Test
+    public void testReconcileSkipsSessionsRemovedConcurrently() {
+        UserSessionIndex index = new UserSessionIndex("sessions");
+
+        UserSessionEntity s1 = createSession("s1", "realm1", "user1", null, null, "client1");
+        UserSessionEntity s2 = createSession("s2", "realm1", "user2", null, null, "client1");
+
+        // "s2" is removed from the cache while the snapshot of the cache is streamed, after it was read
+        index.reconcile(Stream.of(s1, s2)
+                .map(entity -> new AbstractMap.SimpleImmutableEntry<>(entity.getId(), UserSessionIndexEntry.create(entity)))
+                .peek(entry -> {
+                    if (entry.getKey().equals("s1")) {
+                        index.entityRemoved("s2");
+                    }
+                }));
+
+        Assert.assertEquals(1, index.size());
+        Assert.assertEquals(1, index.getSessionsCount("realm1", "client1"));
+        assertIds(index.findSessionIds(UserSessionPredicate.create("realm1").user("user2")));
+
+        // Removals after the reconciliation are not remembered
+        index.entityUpdated("s2", s2);
+        Assert.assertEquals(2, index.getSessionsCount("realm1", "client1"));
+    }
+
+    @Test
+    public void testCountsPruned() {
+        UserSessionIndex index = new UserSessionIndex("sessions");
+
+        index.entityUpdated("s1", createSession("s1", "realm1", "user1", null, null, "client1"));
+        index.entityUpdated("s2", createSession("s2", "realm1", "user2", null, null, "client2"));
+        Assert.assertEquals(2, index.getCountedClients("realm1"));
+
+        index.entityRemoved("s1");
+        Assert.assertEquals(1, index.getCountedClients("realm1"));
+
+        index.entityRemoved("s2");
+        Assert.assertEquals(0, index.getCountedClients("realm1"));
+        Assert.assertEquals(Collections.emptyMap(), index.getClientSessionStats("realm1"));
+
+        index.entityUpdated("s1", createSession("s1", "realm1", "user1", null, null, "client1"));
+        Assert.assertEquals(1, index.getSessionsCount("realm1", "client1"));
+    }
+
+    @Test
+    public void testExpirationCandidates() {
+        UserSessionIndex index = new UserSessionIndex("sessions");
+
+        index.entityUpdated("idle", createSession("idle", "realm1", 1000, 1000, false));
+        index.entityUpdated("old", createSession("old", "realm1", 100, 5000, false));
+        index.entityUpdated("active", createSession("active", "realm1", 4000, 5000, false));
+        index.entityUpdated("rememberMe", createSession("rememberMe", "realm1", 1000, 1000, true));
+        index.entityUpdated("otherRealm", createSession("otherRealm", "realm2", 1000, 1000, false));
+
+        assertIds(index.findExpirationCandidates("realm1", false, 2000, 200), "idle", "old");
+        assertIds(index.findExpirationCandidates("realm1", false, 2000, Integer.MIN_VALUE), "idle");
+        assertIds(index.findExpirationCandidates("realm1", true, 2000, 200), "rememberMe");
+        assertIds(index.findExpirationCandidates("realm1", false, 500, 0));
+
+        // Refreshed session moves to a later bucket
+        index.entityUpdated("idle", createSession("idle", "realm1", 1000, 4000, false));
+        assertIds(index.findExpirationCandidates("realm1", false, 2000, Integer.MIN_VALUE));
+
+        index.entityRemoved("old");
+        assertIds(index.findExpirationCandidates("realm1", false, 2000, 200));
+    }
+
+    private static UserSessionEntity createSession(String id, String realmId, int started, int lastSessionRefresh, boolean rememberMe) {
+        UserSessionEntity entity = createSession(id, realmId, "user-" + id, null, null, "client1");
+        entity.setStarted(started);
+        entity.setLastSessionRefresh(lastSessionRefresh);
+        entity.setRememberMe(rememberMe);
+        return entity;
+    }
+
+    private static UserSessionEntity createSession(String id, String realmId, String userId, String brokerSessionId, String brokerUserId, String clientId) {
+        UserSessionEntity entity = new UserSessionEntity();
+        entity.setId(id);
+        entity.setRealmId(realmId);
+        entity.setUser(userId);
+        entity.setBrokerSessionId(brokerSessionId);
+        entity.setBrokerUserId(brokerUserId);
+        entity.getAuthenticatedClientSessions().put(clientId, UUID.randomUUID());
+        return entity;
+    }
+
+    private static void assertIds(Set<String> actual, String... expected) {
+        Set<String> expectedSet = new HashSet<>();
+        Collections.addAll(expectedSet, expected);
+        Assert.assertEquals(expectedSet, actual);
+    }
+}
@@ -23,9 +23,11 @@ import org.keycloak.models.sessions.infinispan.remotestore.RemoteCacheSessionsLo
 import org.keycloak.storage.CacheableStorageProviderModel;
 
 import java.text.DateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
+import java.util.UUID;
 
 /**
  * @author <a href="mailto:mposolda@redhat.com">Marek Posolda</a>
@@ -48,6 +50,52 @@ public class InitializerStateTest {
     }
 
 
+    @Test
+    public void testOfflineLoaderContextSegmentBounds() {
+        String firstSessionId = "00000000-0000-0000-0000-000000000000";
+        int[][] totalsAndSegmentSizes = { { 1, 5 }, { 5, 5 }, { 28, 5 }, { 1000, 7 }, { 3000, 3 } };
+
+        for (int[] totalAndSegmentSize : totalsAndSegmentSizes) {
+            OfflinePersistentLoaderContext ctx = new OfflinePersistentLoaderContext(totalAndSegmentSize[0], totalAndSegmentSize[1]);
+            int segmentsCount = ctx.getSegmentsCount();
+
+            Assert.assertEquals(firstSessionId, ctx.getSegmentLowerBound(0, firstSessionId));
+            Assert.assertNull("Last segment must be unbounded", ctx.getSegmentUpperBound(segmentsCount - 1));
+
+            // Consecutive segments share the boundary, which is exclusive for the lower bound and inclusive for the upper one
+            for (int segment = 1; segment < segmentsCount; segment++) {
+                String boundary = ctx.getSegmentUpperBound(segment - 1);
+                Assert.assertEquals(boundary, ctx.getSegmentLowerBound(segment, firstSessionId));
+                Assert.assertTrue(boundary.compareTo(ctx.getSegmentLowerBound(segment - 1, firstSessionId)) > 0);
+            }
+
+            List<String> ids = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                ids.add(UUID.randomUUID().toString());
+            }
+            ids.add("00000000-0000-0000-0000-000000000001");
+            ids.add("ffffffff-ffff-ffff-ffff-ffffffffffff");
+            for (int segment = 1; segment < segmentsCount; segment++) {
+                // Ids starting with a boundary and right before it
+                String boundary = ctx.getSegmentLowerBound(segment, firstSessionId);
+                ids.add(boundary + "-0000-0000-0000-000000000000");
+                ids.add(String.format("%08x", Long.parseLong(boundary, 16) - 1) + "-ffff-ffff-ffff-ffffffffffff");
+            }
+
+            for (String id : ids) {
+                int matchingSegments = 0;
+                for (int segment = 0; segment < segmentsCount; segment++) {
+                    String lower = ctx.getSegmentLowerBound(segment, firstSessionId);
+                    String upper = ctx.getSegmentUpperBound(segment);
+                    if (id.compareTo(lower) > 0 && (upper == null || id.compareTo(upper) <= 0)) {
+                        matchingSegments++;
+                    }
+                }
+                Assert.assertEquals("Session " + id + " must be in exactly one segment of " + ctx, 1, matchingSegments);
+            }
+        }
+    }
+
     @Test
     public void testRemoteLoaderContext() {
         assertSegmentsForRemoteLoader(64, 1);
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.configuration.global.GlobalConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.common.util.Time;
+
+public class CacheSizeStatsTest {
+
+    private EmbeddedCacheManager cacheManager;
+    private Cache<String, String> cache;
+
+    @Before
+    public void before() {
+        cacheManager = new DefaultCacheManager(new GlobalConfigurationBuilder().nonClusteredDefault().build());
+        cacheManager.defineConfiguration("cache", new ConfigurationBuilder().build());
+        cache = cacheManager.getCache("cache");
+    }
+
+    @After
+    public void after() {
+        Time.setOffset(0);
+        cacheManager.stop();
+    }
+
+    @Test
+    public void testSizeExtrapolatedFromSample() {
+        CacheSizeStats<String> stats = new CacheSizeStats<>(String.class, String::length, 5, 0);
+        Assert.assertEquals(0, stats.getEntryCount());
+        Assert.assertEquals(0, stats.getEstimatedSize());
+
+        stats.setCache(cache);
+        for (int i = 0; i < 50; i++) {
+            cache.put("key" + i, "1234567890");
+        }
+
+        Assert.assertEquals(50, stats.getEntryCount());
+        Assert.assertEquals(500, stats.getEstimatedSize());
+    }
+
+    @Test
+    public void testRefreshedOncePerInterval() {
+        CacheSizeStats<String> stats = new CacheSizeStats<>(String.class, String::length, 100, TimeUnit.SECONDS.toMillis(30));
+        stats.setCache(cache);
+        cache.put("key1", "123");
+        Assert.assertEquals(1, stats.getEntryCount());
+        Assert.assertEquals(3, stats.getEstimatedSize());
+
+        cache.put("key2", "123");
+        Assert.assertEquals(1, stats.getEntryCount());
+        Assert.assertEquals(3, stats.getEstimatedSize());
+
+        Time.setOffset(31);
+        Assert.assertEquals(2, stats.getEntryCount());
+        Assert.assertEquals(6, stats.getEstimatedSize());
+    }
+}
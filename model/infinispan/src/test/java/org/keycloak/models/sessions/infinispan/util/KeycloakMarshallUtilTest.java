@@ -0,0 +1,244 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.sessions.infinispan.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.infinispan.commons.marshall.MarshallUtil;
+import org.infinispan.commons.marshall.SerializeWith;
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.models.sessions.infinispan.entities.AuthenticatedClientSessionEntity;
+
+public class KeycloakMarshallUtilTest {
+
+    @Test
+    public void testCompactStringRoundTrip() throws Exception {
+        String[] values = {
+                null, "", "openid-connect", "AUTH_TIME", UUID.randomUUID().toString(), "0", "1697380000", "007", "-1",
+                "12345678901234567890", "4B1E8B4A-0E06-4D4B-9E3C-1C8B7C2A6B5D", "master", "žluťoučký kůň", "not-a-uuid-but-36-characters-long!!"
+        };
+
+        for (String value : values) {
+            byte[] bytes = write(output -> KeycloakMarshallUtil.marshallCompactString(value, output));
+            String read = read(bytes, KeycloakMarshallUtil::unmarshallCompactString);
+            Assert.assertEquals(value, read);
+        }
+    }
+
+    @Test
+    public void testCompactStringSize() throws Exception {
+        String uuid = UUID.randomUUID().toString();
+        Assert.assertEquals(17, write(output -> KeycloakMarshallUtil.marshallCompactString(uuid, output)).length);
+        Assert.assertEquals(2, write(output -> KeycloakMarshallUtil.marshallCompactString("openid-connect", output)).length);
+        Assert.assertEquals(6, write(output -> KeycloakMarshallUtil.marshallCompactString("1697380000", output)).length);
+    }
+
+    @Test
+    public void testInternedString() throws Exception {
+        String realmId = UUID.randomUUID().toString();
+        byte[] bytes = write(output -> KeycloakMarshallUtil.marshallCompactString(realmId, output));
+
+        Assert.assertSame(read(bytes, KeycloakMarshallUtil::unmarshallInternedString), read(bytes, KeycloakMarshallUtil::unmarshallInternedString));
+    }
+
+    @Test
+    public void testInternedStringAfterManyValues() throws Exception {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            String value = "value-" + i;
+            values.add(read(write(output -> KeycloakMarshallUtil.marshallCompactString(value, output)), KeycloakMarshallUtil::unmarshallInternedString));
+        }
+
+        byte[] bytes = write(output -> KeycloakMarshallUtil.marshallCompactString(UUID.randomUUID().toString(), output));
+        Assert.assertSame(read(bytes, KeycloakMarshallUtil::unmarshallInternedString), read(bytes, KeycloakMarshallUtil::unmarshallInternedString));
+        Assert.assertSame(values.get(0), read(write(output -> KeycloakMarshallUtil.marshallCompactString("value-0", output)), KeycloakMarshallUtil::unmarshallInternedString));
+    }
+
+    @Test
+    public void testInternedStringReleased() throws Exception {
+        byte[] bytes = write(output -> KeycloakMarshallUtil.marshallCompactString(UUID.randomUUID().toString(), output));
+        WeakReference<String> interned = new WeakReference<>(read(bytes, KeycloakMarshallUtil::unmarshallInternedString));
+
+        for (int i = 0; i < 10 && interned.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertNull("The interned string should not be held once it is not used", interned.get());
+    }
+
+    @Test
+    public void testNotes() throws Exception {
+        Map<String, String> notes = new HashMap<>();
+        notes.put("AUTH_TIME", "1697380000");
+        notes.put("scope", "openid profile email");
+        notes.put("custom", null);
+
+        byte[] bytes = write(output -> KeycloakMarshallUtil.writeNotes(notes, output));
+        Assert.assertEquals(notes, read(bytes, input -> KeycloakMarshallUtil.readNotes(input, HashMap::new)));
+
+        bytes = write(output -> KeycloakMarshallUtil.writeNotes(null, output));
+        Assert.assertNull(read(bytes, input -> KeycloakMarshallUtil.readNotes(input, HashMap::new)));
+    }
+
+    @Test
+    public void testVarLong() throws Exception {
+        long[] values = { 0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, 0xFFFFFFFFL, Long.MAX_VALUE, -1 };
+
+        for (long value : values) {
+            byte[] bytes = write(output -> KeycloakMarshallUtil.writeVarLong(value, output));
+            Assert.assertEquals(value, (long) read(bytes, KeycloakMarshallUtil::readVarLong));
+        }
+    }
+
+    @Test
+    public void testClientSessionIsSmallerThanWithFullStrings() throws Exception {
+        AuthenticatedClientSessionEntity entity = new AuthenticatedClientSessionEntity(UUID.randomUUID());
+        entity.setRealmId(UUID.randomUUID().toString());
+        entity.setAuthMethod("openid-connect");
+        entity.setRedirectUri("https://app.example.org/callback");
+        entity.setTimestamp(1697380000);
+        entity.getNotes().put("iss", "https://sso.example.org/realms/example");
+        entity.getNotes().put("scope", "openid profile email");
+        entity.getNotes().put("response_type", "code");
+        entity.getNotes().put("AUTH_TIME", "1697380000");
+        entity.getNotes().put("userSessionStartedAt", "1697380000");
+
+        AuthenticatedClientSessionEntity.CompactExternalizerImpl externalizer = new AuthenticatedClientSessionEntity.CompactExternalizerImpl();
+        byte[] compact = write(output -> externalizer.writeObject(output, entity));
+
+        // Same fields with the strings marshalled in full
+        byte[] full = writeOriginalFormat(entity);
+
+        Assert.assertTrue("Compact form has " + compact.length + " bytes, full form " + full.length, compact.length < full.length * 3 / 4);
+
+        AuthenticatedClientSessionEntity read = read(compact, externalizer::readObject);
+        Assert.assertEquals(entity.getId(), read.getId());
+        Assert.assertEquals(entity.getRealmId(), read.getRealmId());
+        Assert.assertEquals(entity.getRedirectUri(), read.getRedirectUri());
+        Assert.assertEquals(entity.getTimestamp(), read.getTimestamp());
+        Assert.assertEquals(entity.getNotes(), read.getNotes());
+    }
+
+    @Test
+    public void testClientSessionOfPreviousVersionCanBeRead() throws Exception {
+        Assert.assertEquals("New client sessions must be written by the compact externalizer", AuthenticatedClientSessionEntity.CompactExternalizerImpl.class,
+                AuthenticatedClientSessionEntity.class.getAnnotation(SerializeWith.class).value());
+
+        // The first byte of the id is the same as the version byte of the compact format
+        AuthenticatedClientSessionEntity entity = new AuthenticatedClientSessionEntity(new UUID(0x0211223344554677L, 0x8899aabbccddeeffL));
+        entity.setRealmId(UUID.randomUUID().toString());
+        entity.setAuthMethod("openid-connect");
+        entity.setRedirectUri("https://app.example.org/callback");
+        entity.setTimestamp(1697380000);
+        entity.setAction("AUTHENTICATE");
+        entity.getNotes().put("scope", "openid profile email");
+        entity.getNotes().put("AUTH_TIME", "1697380000");
+        entity.setCurrentRefreshToken("refresh-token-id");
+        entity.setCurrentRefreshTokenUseCount(3);
+
+        AuthenticatedClientSessionEntity read = read(writeOriginalFormat(entity), new AuthenticatedClientSessionEntity.ExternalizerImpl()::readObject);
+        Assert.assertEquals(entity.getId(), read.getId());
+        Assert.assertEquals(entity.getRealmId(), read.getRealmId());
+        Assert.assertEquals(entity.getAuthMethod(), read.getAuthMethod());
+        Assert.assertEquals(entity.getRedirectUri(), read.getRedirectUri());
+        Assert.assertEquals(entity.getTimestamp(), read.getTimestamp());
+        Assert.assertEquals(entity.getAction(), read.getAction());
+        Assert.assertEquals(entity.getNotes(), read.getNotes());
+        Assert.assertEquals(entity.getCurrentRefreshToken(), read.getCurrentRefreshToken());
+        Assert.assertEquals(entity.getCurrentRefreshTokenUseCount(), read.getCurrentRefreshTokenUseCount());
+    }
+
+    // The format of the client sessions marshalled by the previous versions, which had no version byte
+    private static byte[] writeOriginalFormat(AuthenticatedClientSessionEntity entity) throws IOException {
+        return write(output -> {
+            MarshallUtil.marshallUUID(entity.getId(), output, false);
+            MarshallUtil.marshallString(entity.getRealmId(), output);
+            MarshallUtil.marshallString(entity.getAuthMethod(), output);
+            MarshallUtil.marshallString(entity.getRedirectUri(), output);
+            KeycloakMarshallUtil.marshall(entity.getTimestamp(), output);
+            MarshallUtil.marshallString(entity.getAction(), output);
+            KeycloakMarshallUtil.writeMap(entity.getNotes(), KeycloakMarshallUtil.STRING_EXT, KeycloakMarshallUtil.STRING_EXT, output);
+            MarshallUtil.marshallString(entity.getCurrentRefreshToken(), output);
+            KeycloakMarshallUtil.marshall(entity.getCurrentRefreshTokenUseCount(), output);
+        });
+    }
+
+    private interface Writer {
+        void write(ObjectOutput output) throws IOException;
+    }
+
+    private interface Reader<T> {
+        T read(ObjectInput input) throws IOException, ClassNotFoundException;
+    }
+
+    private static byte[] write(Writer writer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataObjectOutput output = new DataObjectOutput(bytes)) {
+            writer.write(output);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static <T> T read(byte[] bytes, Reader<T> reader) throws IOException, ClassNotFoundException {
+        try (DataObjectInput input = new DataObjectInput(new ByteArrayInputStream(bytes))) {
+            T result = reader.read(input);
+            Assert.assertEquals("All the bytes should be read", 0, input.available());
+            return result;
+        }
+    }
+
+    // Plain binary streams, so that just the marshalled bytes are counted
+    private static class DataObjectOutput extends DataOutputStream implements ObjectOutput {
+
+        private DataObjectOutput(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void writeObject(Object obj) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static class DataObjectInput extends DataInputStream implements ObjectInput {
+
+        private DataObjectInput(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public Object readObject() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
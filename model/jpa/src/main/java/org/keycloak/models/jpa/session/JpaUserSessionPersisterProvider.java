@@ -382,6 +382,23 @@ public class JpaUserSessionPersisterProvider implements UserSessionPersisterProv
         return loadUserSessionsWithClientSessions(query, offlineStr, false);
     }
 
+    @Override
+    public Stream<UserSessionModel> loadUserSessionsStream(Integer maxResults, boolean offline, String lastUserSessionId,
+                                                           String toUserSessionId) {
+        if (toUserSessionId == null) {
+            return loadUserSessionsStream(null, maxResults, offline, lastUserSessionId);
+        }
+
+        String offlineStr = offlineToString(offline);
+
+        TypedQuery<PersistentUserSessionEntity> query = paginateQuery(em.createNamedQuery("findUserSessionsOrderedByIdInRange", PersistentUserSessionEntity.class)
+            .setParameter("offline", offlineStr)
+            .setParameter("lastSessionId", lastUserSessionId)
+            .setParameter("toSessionId", toUserSessionId), null, maxResults);
+
+        return loadUserSessionsWithClientSessions(query, offlineStr, false);
+    }
+
     @Override
     public AuthenticatedClientSessionModel loadClientSession(RealmModel realm, ClientModel client, UserSessionModel userSession, boolean offline) {
         TypedQuery<PersistentClientSessionEntity> query;
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.models.cache;
+
+import org.keycloak.models.ClientScopeModel;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cached client scopes and cached clients will implement this interface
+ */
+public interface CachedClientScopeModel extends ClientScopeModel {
+
+    /**
+     * Returns a map that contains custom things that are cached along with this model.  You can write to this map.
+     * The map is replaced when the model is reloaded, so its identity can be used to check that things computed from
+     * the model are still current.
+     *
+     * @return the map or {@code null} when the model was updated in the current transaction
+     */
+    ConcurrentHashMap getCachedWith();
+}
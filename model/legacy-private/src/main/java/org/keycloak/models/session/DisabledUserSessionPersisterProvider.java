@@ -131,6 +131,12 @@ public class DisabledUserSessionPersisterProvider implements UserSessionPersiste
         return Stream.empty();
     }
 
+    @Override
+    public Stream<UserSessionModel> loadUserSessionsStream(Integer maxResults, boolean offline, String lastUserSessionId,
+                                                           String toUserSessionId) {
+        return Stream.empty();
+    }
+
     @Override
     public AuthenticatedClientSessionModel loadClientSession(RealmModel realm, ClientModel client, UserSessionModel userSession, boolean offline) {
         return null;
@@ -98,6 +98,21 @@ public interface UserSessionPersisterProvider extends Provider {
     Stream<UserSessionModel> loadUserSessionsStream(Integer firstResult, Integer maxResults, boolean offline,
                                                     String lastUserSessionId);
 
+    /**
+     * Called during startup. For each userSession, it loads also clientSessions. Unlike
+     * {@link #loadUserSessionsStream(Integer, Integer, boolean, String)} there is no offset, so the method is meant to be
+     * used for keyset pagination, where the id of the last returned session is passed as {@code lastUserSessionId} of the
+     * next call. Disjoint ranges of ids can be loaded concurrently.
+     * @param maxResults {@code Integer} Maximum number of returned user sessions. Ignored if negative or {@code null}.
+     * @param offline {@code boolean} Flag to include offline sessions.
+     * @param lastUserSessionId {@code String} It will return only user sessions with id's lexicographically greater than this.
+     * @param toUserSessionId {@code String} It will return only user sessions with id's lexicographically lower than or equal to this.
+     * Ignored if {@code null}.
+     * @return Stream of {@link UserSessionModel} ordered by id. Never returns {@code null}.
+     */
+    Stream<UserSessionModel> loadUserSessionsStream(Integer maxResults, boolean offline, String lastUserSessionId,
+                                                    String toUserSessionId);
+
     /**
      * Loads client session from the db by provided user session and client.
      * @param realm RealmModel Realm for the associated client session.
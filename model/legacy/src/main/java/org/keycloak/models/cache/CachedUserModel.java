@@ -16,9 +16,11 @@
  */
 package org.keycloak.models.cache;
 
+import org.keycloak.models.RoleModel;
 import org.keycloak.models.UserModel;
 
 import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Stream;
 
 /**
  * Cached users will implement this interface
@@ -56,4 +58,21 @@ public interface CachedUserModel extends UserModel {
      * @return
      */
     ConcurrentMap getCachedWith();
+
+    /**
+     * Returns the role mappings of the user and of all the groups of the user including their parent groups, with the
+     * composite roles expanded. The result is cached along with the user until the user, or any of the roles and groups
+     * it was computed from, is updated.
+     *
+     * @return Stream of {@link RoleModel}. Never returns {@code null}.
+     */
+    Stream<RoleModel> getDeepRoleMappingsStream();
+
+    /**
+     * Returns the full paths of the groups of the user. The result is cached the same way as
+     * {@link #getDeepRoleMappingsStream()}.
+     *
+     * @return Stream of group paths. Never returns {@code null}.
+     */
+    Stream<String> getGroupPathsStream();
 }
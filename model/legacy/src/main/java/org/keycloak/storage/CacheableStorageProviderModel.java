@@ -34,6 +34,7 @@ public class CacheableStorageProviderModel extends PrioritizedComponentModel {
     public static final String EVICTION_MINUTE = "evictionMinute";
     public static final String EVICTION_DAY = "evictionDay";
     public static final String CACHE_INVALID_BEFORE = "cacheInvalidBefore";
+    public static final String MAX_STALENESS = "maxStaleness";
     public static final String ENABLED = "enabled";
 
     private transient CachePolicy cachePolicy;
@@ -42,6 +43,7 @@ public class CacheableStorageProviderModel extends PrioritizedComponentModel {
     private transient int evictionMinute = -1;
     private transient int evictionDay = -1;
     private transient long cacheInvalidBefore = -1;
+    private transient long maxStaleness = -1;
     private transient Boolean enabled;
 
     public CacheableStorageProviderModel() {
@@ -143,6 +145,24 @@ public class CacheableStorageProviderModel extends PrioritizedComponentModel {
         getConfig().putSingle(CACHE_INVALID_BEFORE, Long.toString(cacheInvalidBefore));
     }
 
+    /**
+     * Returns the time in milliseconds for which the expired cached objects may still be used, while they are
+     * reloaded in the background, or -1 when the expired objects are reloaded immediately.
+     */
+    public long getMaxStaleness() {
+        if (maxStaleness < 0) {
+            String str = getConfig().getFirst(MAX_STALENESS);
+            if (str == null) return -1;
+            maxStaleness = Long.valueOf(str);
+        }
+        return maxStaleness;
+    }
+
+    public void setMaxStaleness(long maxStaleness) {
+        this.maxStaleness = maxStaleness;
+        getConfig().putSingle(MAX_STALENESS, Long.toString(maxStaleness));
+    }
+
     public void setEnabled(boolean flag) {
         enabled = flag;
         getConfig().putSingle(ENABLED, Boolean.toString(flag));
@@ -217,6 +237,33 @@ public class CacheableStorageProviderModel extends PrioritizedComponentModel {
     }
 
 
+    /**
+     * Returns {@code true} if the cached object expired according to the cache policy less than
+     * {@link #getMaxStaleness() max staleness} ago, so it may still be used while it is reloaded. Objects invalidated
+     * for other reasons, like a disabled provider or the {@link #getCacheInvalidBefore() invalidation time}, are never
+     * used.
+     */
+    public boolean isWithinMaxStaleness(CachedObject cached) {
+        long maxStaleness = getMaxStaleness();
+        CacheableStorageProviderModel.CachePolicy policy = getCachePolicy();
+        if (maxStaleness <= 0 || policy == null || !isEnabled() || cached.getCacheTimestamp() < getCacheInvalidBefore()) {
+            return false;
+        }
+
+        long expiredAt;
+        if (policy == CacheableStorageProviderModel.CachePolicy.MAX_LIFESPAN) {
+            expiredAt = cached.getCacheTimestamp() + getMaxLifespan();
+        } else if (policy == CacheableStorageProviderModel.CachePolicy.EVICT_DAILY) {
+            expiredAt = dailyEvictionBoundary(getEvictionHour(), getEvictionMinute());
+        } else if (policy == CacheableStorageProviderModel.CachePolicy.EVICT_WEEKLY) {
+            int oneWeek = 7 * 24 * 60 * 60 * 1000;
+            expiredAt = weeklyTimeout(getEvictionDay(), getEvictionHour(), getEvictionMinute()) - oneWeek;
+        } else {
+            return false;
+        }
+        return Time.currentTimeMillis() <= expiredAt + maxStaleness;
+    }
+
     public static long dailyTimeout(int hour, int minute) {
         Calendar cal = Calendar.getInstance();
         Calendar cal2 = Calendar.getInstance();
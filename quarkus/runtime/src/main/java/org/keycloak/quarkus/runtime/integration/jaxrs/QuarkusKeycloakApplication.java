@@ -24,10 +24,13 @@ import jakarta.enterprise.event.Observes;
 import jakarta.ws.rs.ApplicationPath;
 
 import org.keycloak.config.HostnameOptions;
+import org.keycloak.config.MetricsOptions;
 import org.keycloak.models.KeycloakSessionFactory;
 import org.keycloak.platform.Platform;
+import org.keycloak.quarkus.runtime.configuration.Configuration;
 import org.keycloak.quarkus.runtime.integration.QuarkusKeycloakSessionFactory;
 import org.keycloak.quarkus.runtime.integration.QuarkusPlatform;
+import org.keycloak.quarkus.runtime.services.metrics.ProviderMetrics;
 import org.keycloak.quarkus.runtime.services.resources.DebugHostnameSettingsResource;
 import org.keycloak.services.resources.KeycloakApplication;
 
@@ -35,6 +38,8 @@ import io.quarkus.runtime.ShutdownEvent;
 import io.quarkus.runtime.StartupEvent;
 import io.smallrye.common.annotation.Blocking;
 
+import static org.keycloak.quarkus.runtime.configuration.MicroProfileConfigProvider.NS_KEYCLOAK_PREFIX;
+
 @ApplicationPath("/")
 @Blocking
 public class QuarkusKeycloakApplication extends KeycloakApplication {
@@ -44,6 +49,9 @@ public class QuarkusKeycloakApplication extends KeycloakApplication {
         platform.started();
         QuarkusPlatform.exitOnError();
         startup();
+        if (Configuration.getOptionalBooleanValue(NS_KEYCLOAK_PREFIX + MetricsOptions.METRICS_ENABLED.getKey()).orElse(false)) {
+            ProviderMetrics.bind(getSessionFactory());
+        }
     }
 
     void onShutdownEvent(@Observes ShutdownEvent event) {
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.quarkus.runtime.services.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.UserSessionProvider;
+import org.keycloak.models.sessions.infinispan.InfinispanAuthenticationSessionProviderFactory;
+import org.keycloak.models.sessions.infinispan.InfinispanUserSessionProviderFactory;
+import org.keycloak.models.sessions.infinispan.changes.SessionCommitMetrics;
+import org.keycloak.models.sessions.infinispan.util.CacheSizeStats;
+import org.keycloak.models.sessions.infinispan.util.SessionAffinityStats;
+import org.keycloak.provider.ProviderFactory;
+import org.keycloak.services.managers.BruteForceProtector;
+import org.keycloak.services.managers.DefaultBruteForceProtector;
+import org.keycloak.services.managers.DefaultBruteForceProtectorFactory;
+import org.keycloak.sessions.AuthenticationSessionProvider;
+
+/**
+ * Exposes the statistics kept by the providers as meters once the session factory is initialized. The meters hold the
+ * objects with the statistics, which live as long as their provider factories.
+ */
+public class ProviderMetrics {
+
+    private static final String BRUTE_FORCE_PREFIX = "keycloak.brute_force.";
+    private static final String SESSIONS_PREFIX = "keycloak.sessions.";
+    private static final String AUTHENTICATION_SESSIONS_PREFIX = "keycloak.authentication_sessions.";
+
+    public static void bind(KeycloakSessionFactory factory) {
+        bind(Metrics.globalRegistry, factory);
+    }
+
+    static void bind(MeterRegistry registry, KeycloakSessionFactory factory) {
+        ProviderFactory<BruteForceProtector> bruteForceProtectorFactory = factory.getProviderFactory(BruteForceProtector.class);
+        if (bruteForceProtectorFactory instanceof DefaultBruteForceProtectorFactory) {
+            bindBruteForceProtector(registry, ((DefaultBruteForceProtectorFactory) bruteForceProtectorFactory).getProtector());
+        }
+        ProviderFactory<UserSessionProvider> userSessionProviderFactory = factory.getProviderFactory(UserSessionProvider.class);
+        if (userSessionProviderFactory instanceof InfinispanUserSessionProviderFactory) {
+            bindSessionCommits(registry, ((InfinispanUserSessionProviderFactory) userSessionProviderFactory).getCommitMetrics());
+        }
+        ProviderFactory<AuthenticationSessionProvider> authenticationSessionProviderFactory = factory.getProviderFactory(AuthenticationSessionProvider.class);
+        if (authenticationSessionProviderFactory instanceof InfinispanAuthenticationSessionProviderFactory) {
+            InfinispanAuthenticationSessionProviderFactory authenticationSessions = (InfinispanAuthenticationSessionProviderFactory) authenticationSessionProviderFactory;
+            bindAffinity(registry, authenticationSessions.getAffinityStats());
+            bindAuthenticationSessionsSize(registry, authenticationSessions.getSizeStats());
+        }
+    }
+
+    private static void bindBruteForceProtector(MeterRegistry registry, DefaultBruteForceProtector protector) {
+        if (protector == null) {
+            return;
+        }
+        Gauge.builder(BRUTE_FORCE_PREFIX + "queue.depth", protector, DefaultBruteForceProtector::getQueueDepth)
+                .description("Login events waiting to be processed")
+                .register(registry);
+        FunctionCounter.builder(BRUTE_FORCE_PREFIX + "events.processed", protector, DefaultBruteForceProtector::getProcessedEvents)
+                .description("Login events processed in committed transactions")
+                .register(registry);
+        FunctionCounter.builder(BRUTE_FORCE_PREFIX + "events.rejected", protector, DefaultBruteForceProtector::getRejectedEvents)
+                .description("Login events dropped because the queue was full")
+                .register(registry);
+        Gauge.builder(BRUTE_FORCE_PREFIX + "latency.average", protector, DefaultBruteForceProtector::getAverageLatencyMillis)
+                .description("Average time between queuing and commit of a login event")
+                .baseUnit("milliseconds")
+                .register(registry);
+        Gauge.builder(BRUTE_FORCE_PREFIX + "latency.max", protector, DefaultBruteForceProtector::getMaxLatencyMillis)
+                .description("Max time between queuing and commit of a login event")
+                .baseUnit("milliseconds")
+                .register(registry);
+    }
+
+    private static void bindSessionCommits(MeterRegistry registry, SessionCommitMetrics metrics) {
+        FunctionCounter.builder(SESSIONS_PREFIX + "commits", metrics, SessionCommitMetrics::getCommits)
+                .description("Transactions which committed session changes to the caches")
+                .register(registry);
+        FunctionCounter.builder(SESSIONS_PREFIX + "commit.operations", metrics, SessionCommitMetrics::getOperations)
+                .description("Cache operations sent by the commits of the session changes")
+                .register(registry);
+        FunctionCounter.builder(SESSIONS_PREFIX + "commit.conflicts", metrics, SessionCommitMetrics::getConflicts)
+                .description("Cache operations which failed because the session was changed concurrently")
+                .register(registry);
+        Gauge.builder(SESSIONS_PREFIX + "commit.time.average", metrics, SessionCommitMetrics::getAverageCommitTimeMillis)
+                .description("Average time of a commit of the session changes")
+                .baseUnit("milliseconds")
+                .register(registry);
+        Gauge.builder(SESSIONS_PREFIX + "commit.time.max", metrics, SessionCommitMetrics::getMaxCommitTimeMillis)
+                .description("Max time of a commit of the session changes")
+                .baseUnit("milliseconds")
+                .register(registry);
+    }
+
+    private static void bindAffinity(MeterRegistry registry, SessionAffinityStats stats) {
+        FunctionCounter.builder(AUTHENTICATION_SESSIONS_PREFIX + "affinity.local", stats, SessionAffinityStats::getLocalAccesses)
+                .description("Authentication session lookups served by the owner of the session")
+                .register(registry);
+        FunctionCounter.builder(AUTHENTICATION_SESSIONS_PREFIX + "affinity.remote", stats, SessionAffinityStats::getRemoteAccesses)
+                .description("Authentication session lookups served by a node which does not own the session")
+                .register(registry);
+        Gauge.builder(AUTHENTICATION_SESSIONS_PREFIX + "affinity.hit_rate", stats, SessionAffinityStats::getHitRate)
+                .description("Ratio of the authentication session lookups served by the owner of the session")
+                .register(registry);
+    }
+
+    private static void bindAuthenticationSessionsSize(MeterRegistry registry, CacheSizeStats<?> stats) {
+        Gauge.builder(AUTHENTICATION_SESSIONS_PREFIX + "entries", stats, CacheSizeStats::getEntryCount)
+                .description("Root authentication sessions stored on this node, including backup copies")
+                .register(registry);
+        Gauge.builder(AUTHENTICATION_SESSIONS_PREFIX + "estimated_bytes", stats, CacheSizeStats::getEstimatedSize)
+                .description("Estimated heap occupied by the authentication sessions stored on this node")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+}
@@ -35,6 +35,7 @@ import org.jgroups.protocols.TCP_NIO2;
 import org.jgroups.protocols.UDP;
 import org.jgroups.util.TLS;
 import org.jgroups.util.TLSClientAuth;
+import org.keycloak.models.cache.infinispan.CacheStats;
 import org.keycloak.quarkus.runtime.configuration.Configuration;
 
 import static org.keycloak.config.CachingOptions.CACHE_EMBEDDED_MTLS_ENABLED_PROPERTY;
@@ -57,6 +58,9 @@ public class CacheManagerFactory {
     public CacheManagerFactory(String config, boolean metricsEnabled) {
         this.config = config;
         this.metricsEnabled = metricsEnabled;
+        if (metricsEnabled) {
+            CacheStats.setCounterListener(new CacheStatsMetrics(Metrics.globalRegistry));
+        }
         this.executor = createThreadPool();
         this.cacheManagerFuture = executor.submit(this::startCacheManager);
     }
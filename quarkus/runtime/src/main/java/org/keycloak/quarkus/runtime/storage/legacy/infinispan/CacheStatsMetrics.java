@@ -0,0 +1,47 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.quarkus.runtime.storage.legacy.infinispan;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.keycloak.models.cache.infinispan.CacheStats;
+
+/**
+ * Exposes the counters of the realm, user and authorization caches as {@code keycloak.cache.<counter>} meters tagged
+ * with the name of the cache and the type of the cached entity or the invalidation event.
+ */
+public class CacheStatsMetrics implements CacheStats.CounterListener {
+
+    private static final String PREFIX = "keycloak.cache.";
+
+    private final MeterRegistry registry;
+
+    public CacheStatsMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void counterCreated(String cacheName, CacheStats.Counter counter, String type, LongAdder value) {
+        FunctionCounter.builder(PREFIX + counter.getName(), value, LongAdder::sum)
+                .tag("cache", cacheName)
+                .tag("type", type)
+                .register(registry);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.quarkus.runtime.services.metrics;
+
+import java.lang.reflect.Proxy;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.configuration.global.GlobalConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.sessions.infinispan.InfinispanAuthenticationSessionProviderFactory;
+import org.keycloak.models.sessions.infinispan.entities.AuthenticationSessionEntity;
+import org.keycloak.models.sessions.infinispan.entities.RootAuthenticationSessionEntity;
+import org.keycloak.sessions.AuthenticationSessionProvider;
+
+public class ProviderMetricsTest {
+
+    private EmbeddedCacheManager cacheManager;
+
+    @Before
+    public void before() {
+        cacheManager = new DefaultCacheManager(new GlobalConfigurationBuilder().nonClusteredDefault().build());
+        cacheManager.defineConfiguration("authenticationSessions", new ConfigurationBuilder().build());
+    }
+
+    @After
+    public void after() {
+        cacheManager.stop();
+    }
+
+    @Test
+    public void testAuthenticationSessionsSize() {
+        InfinispanAuthenticationSessionProviderFactory authenticationSessions = new InfinispanAuthenticationSessionProviderFactory();
+        MeterRegistry registry = new SimpleMeterRegistry();
+        ProviderMetrics.bind(registry, sessionFactory(authenticationSessions));
+
+        // The cache is not initialized before the first authentication session provider is created
+        Assert.assertEquals(0, registry.get("keycloak.authentication_sessions.entries").gauge().value(), 0);
+        Assert.assertEquals(0, registry.get("keycloak.authentication_sessions.estimated_bytes").gauge().value(), 0);
+
+        Cache<String, RootAuthenticationSessionEntity> cache = cacheManager.getCache("authenticationSessions");
+        long size = 0;
+        for (int i = 0; i < 3; i++) {
+            RootAuthenticationSessionEntity entity = createSession("root" + i);
+            cache.put(entity.getId(), entity);
+            size += entity.estimateSize();
+        }
+        authenticationSessions.getSizeStats().setCache(cache);
+
+        Assert.assertEquals(3, registry.get("keycloak.authentication_sessions.entries").gauge().value(), 0);
+        Assert.assertEquals(size, registry.get("keycloak.authentication_sessions.estimated_bytes").gauge().value(), 0);
+        Assert.assertEquals(3, authenticationSessions.getLocalEntryCount());
+        Assert.assertEquals(size, authenticationSessions.getLocalEstimatedSize());
+    }
+
+    private static RootAuthenticationSessionEntity createSession(String id) {
+        AuthenticationSessionEntity tab = new AuthenticationSessionEntity();
+        tab.setClientUUID("client1");
+        tab.setRedirectUri("https://localhost/app");
+
+        RootAuthenticationSessionEntity entity = new RootAuthenticationSessionEntity();
+        entity.setId(id);
+        entity.setRealmId("realm1");
+        entity.getAuthenticationSessions().put("tab1", tab);
+        return entity;
+    }
+
+    private static KeycloakSessionFactory sessionFactory(InfinispanAuthenticationSessionProviderFactory authenticationSessions) {
+        return (KeycloakSessionFactory) Proxy.newProxyInstance(ProviderMetricsTest.class.getClassLoader(), new Class[] { KeycloakSessionFactory.class },
+                (proxy, method, args) -> method.getName().equals("getProviderFactory") && args.length == 1
+                        && args[0] == AuthenticationSessionProvider.class ? authenticationSessions : null);
+    }
+}
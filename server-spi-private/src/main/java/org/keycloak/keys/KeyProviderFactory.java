@@ -35,6 +35,16 @@ public interface KeyProviderFactory<T extends KeyProvider> extends ComponentFact
         return false;
     }
 
+    /**
+     * Returns {@code true} when the keys of the created providers depend only on the component model, so that they
+     * can be cached until the component or its realm changes.
+     *
+     * @return {@code true} if the keys can be cached
+     */
+    default boolean isCacheable() {
+        return false;
+    }
+
     @Override
     default void init(Config.Scope config) {
     }
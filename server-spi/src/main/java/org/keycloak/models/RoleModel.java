@@ -17,6 +17,7 @@
 
 package org.keycloak.models;
 
+import org.keycloak.models.utils.RoleUtils;
 import org.keycloak.provider.ProviderEvent;
 import java.util.List;
 import java.util.Map;
@@ -74,6 +75,15 @@ public interface RoleModel {
      */
     Stream<RoleModel> getCompositesStream(String search, Integer first, Integer max);
 
+    /**
+     * Returns all roles which are composites of {@code this} role, either directly or through other composite roles.
+     * The role itself is contained only if it is a part of a cycle. Providers may return a precomputed result.
+     * @return Stream of {@link RoleModel}. Never returns {@code null}.
+     */
+    default Stream<RoleModel> getDeepCompositesStream() {
+        return RoleUtils.collectDeepComposites(this).stream();
+    }
+
     boolean isClientRole();
 
     String getContainerId();
@@ -139,27 +139,42 @@ public class RoleUtils {
         Stream.Builder<RoleModel> sb = Stream.builder();
 
         if (!visited.contains(role)) {
-            Deque<RoleModel> stack = new ArrayDeque<>();
-            stack.add(role);
-
-            while (!stack.isEmpty()) {
-                RoleModel current = stack.pop();
-                sb.add(current);
-
-                if (current.isComposite()) {
-                    current.getCompositesStream()
-                            .filter(r -> !visited.contains(r))
-                            .forEach(r -> {
-                                visited.add(r);
-                                stack.add(r);
-                            });
-                }
+            sb.add(role);
+
+            if (role.isComposite()) {
+                role.getDeepCompositesStream()
+                        .filter(visited::add)
+                        .forEach(sb);
             }
         }
 
         return sb.build();
     }
 
+    /**
+     * Walks the composite graph of the given role.
+     * @param role
+     * @return new set with all the composites of the role, including the nested ones. The role itself is contained only if
+     *         it is a part of a cycle.
+     */
+    public static Set<RoleModel> collectDeepComposites(RoleModel role) {
+        Set<RoleModel> visited = new HashSet<>();
+        Deque<RoleModel> stack = new ArrayDeque<>();
+        stack.add(role);
+
+        while (!stack.isEmpty()) {
+            RoleModel current = stack.pop();
+
+            if (current.isComposite()) {
+                current.getCompositesStream()
+                        .filter(visited::add)
+                        .forEach(stack::add);
+            }
+        }
+
+        return visited;
+    }
+
 
     /**
      * @param roles
@@ -189,9 +204,17 @@ public class RoleUtils {
      * @return all user role mappings including all groups of user. Composite roles will be expanded
      */
     public static Set<RoleModel> getDeepUserRoleMappings(UserModel user) {
+        return expandCompositeRoles(getUserRoleMappings(user));
+    }
+
+    /**
+     * @param user
+     * @return all user role mappings including all groups of user. Composite roles are not expanded
+     */
+    public static Set<RoleModel> getUserRoleMappings(UserModel user) {
         Set<RoleModel> roleMappings = user.getRoleMappingsStream().collect(Collectors.toSet());
         user.getGroupsStream().forEach(group -> addGroupRoles(group, roleMappings));
-        return expandCompositeRoles(roleMappings);
+        return roleMappings;
     }
 
 
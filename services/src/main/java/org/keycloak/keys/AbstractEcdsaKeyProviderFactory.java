@@ -50,6 +50,11 @@ public abstract class AbstractEcdsaKeyProviderFactory implements KeyProviderFact
                 .property(Attributes.ACTIVE_PROPERTY);
     }
 
+    @Override
+    public boolean isCacheable() {
+        return true;
+    }
+
     @Override
     public void validateConfiguration(KeycloakSession session, RealmModel realm, ComponentModel model) throws ComponentValidationException {
         ConfigurationValidationHelper.check(model)
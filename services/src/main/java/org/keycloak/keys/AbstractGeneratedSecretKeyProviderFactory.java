@@ -32,6 +32,11 @@ import org.keycloak.provider.ConfigurationValidationHelper;
  */
 public abstract class AbstractGeneratedSecretKeyProviderFactory<T extends KeyProvider> implements KeyProviderFactory<T> {
 
+    @Override
+    public boolean isCacheable() {
+        return true;
+    }
+
     @Override
     public void validateConfiguration(KeycloakSession session, RealmModel realm, ComponentModel model) throws ComponentValidationException {
         ConfigurationValidationHelper validation = SecretKeyProviderUtils.validateConfiguration(model);
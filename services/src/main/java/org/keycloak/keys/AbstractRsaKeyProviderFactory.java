@@ -37,6 +37,11 @@ public abstract class AbstractRsaKeyProviderFactory implements KeyProviderFactor
                 .property(Attributes.RS_ALGORITHM_PROPERTY);
     }
 
+    @Override
+    public boolean isCacheable() {
+        return true;
+    }
+
     @Override
     public void validateConfiguration(KeycloakSession session, RealmModel realm, ComponentModel model) throws ComponentValidationException {
         ConfigurationValidationHelper.check(model)
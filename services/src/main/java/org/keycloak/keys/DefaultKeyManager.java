@@ -25,19 +25,20 @@ import org.keycloak.crypto.KeyWrapper;
 import org.keycloak.models.KeyManager;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.RealmModel;
+import org.keycloak.models.cache.CachedRealmModel;
 import org.keycloak.provider.ProviderFactory;
 
 import javax.crypto.SecretKey;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.cert.Certificate;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
-import java.util.function.Consumer;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -49,7 +50,7 @@ public class DefaultKeyManager implements KeyManager {
     private static final Logger logger = Logger.getLogger(DefaultKeyManager.class);
 
     private final KeycloakSession session;
-    private final Map<String, List<KeyProvider>> providersMap = new HashMap<>();
+    private final Map<String, RealmKeys> keysMap = new HashMap<>();
 
     public DefaultKeyManager(KeycloakSession session) {
         this.session = session;
@@ -57,7 +58,7 @@ public class DefaultKeyManager implements KeyManager {
 
     @Override
     public KeyWrapper getActiveKey(RealmModel realm, KeyUse use, String algorithm) {
-        KeyWrapper activeKey = getActiveKey(getProviders(realm), realm, use, algorithm);
+        KeyWrapper activeKey = getActiveKey(getKeys(realm), realm, use, algorithm);
         if (activeKey != null) {
             return activeKey;
         }
@@ -71,9 +72,8 @@ public class DefaultKeyManager implements KeyManager {
                 .filter(kf -> kf.createFallbackKeys(session, use, algorithm))
                 .findFirst();
         if (keyProviderFactory.isPresent()) {
-            providersMap.remove(realm.getId());
-            List<KeyProvider> providers = getProviders(realm);
-            activeKey = getActiveKey(providers, realm, use, algorithm);
+            keysMap.remove(realm.getId());
+            activeKey = getActiveKey(getKeys(realm), realm, use, algorithm);
             if (activeKey != null) {
                 logger.infov("No keys found for realm={0} and algorithm={1} for use={2}. Generating keys.",
                         realm.getName(), algorithm, use.name());
@@ -85,24 +85,13 @@ public class DefaultKeyManager implements KeyManager {
         throw new RuntimeException("Failed to find key: realm=" + realm.getName() + " algorithm=" + algorithm + " use=" + use.name());
     }
 
-    private KeyWrapper getActiveKey(List<KeyProvider> providers, RealmModel realm, KeyUse use, String algorithm) {
-        Consumer<KeyWrapper> loggerConsumer = key -> {
-            if (logger.isTraceEnabled()) {
-                logger.tracev("Active key found: realm={0} kid={1} algorithm={2} use={3}",
-                        realm.getName(), key.getKid(), algorithm, use.name());
-            }
-        };
-
-        for (KeyProvider p : providers) {
-            Optional<KeyWrapper> keyWrapper = p.getKeysStream()
-                    .filter(key -> key.getStatus().isActive() && matches(key, use, algorithm))
-                    .peek(loggerConsumer)
-                    .findFirst();
-            if (keyWrapper.isPresent()) {
-                return keyWrapper.get();
-            }
+    private KeyWrapper getActiveKey(RealmKeys keys, RealmModel realm, KeyUse use, String algorithm) {
+        KeyWrapper key = keys.getActiveKey(use, algorithm);
+        if (key != null && logger.isTraceEnabled()) {
+            logger.tracev("Active key found: realm={0} kid={1} algorithm={2} use={3}",
+                    realm.getName(), key.getKid(), algorithm, use.name());
         }
-        return null;
+        return key;
     }
 
     @Override
@@ -112,22 +101,13 @@ public class DefaultKeyManager implements KeyManager {
             return null;
         }
 
-        Consumer<KeyWrapper> loggerConsumer = key -> {
+        KeyWrapper key = getKeys(realm).getKey(kid, use, algorithm);
+        if (key != null) {
             if (logger.isTraceEnabled()) {
                 logger.tracev("Found key: realm={0} kid={1} algorithm={2} use={3}",
                         realm.getName(), key.getKid(), algorithm, use.name());
             }
-        };
-
-        for (KeyProvider p : getProviders(realm)) {
-            Optional<KeyWrapper> keyWrapper = p.getKeysStream()
-                    .filter(key -> Objects.equals(key.getKid(), kid) && key.getStatus().isEnabled() && matches(key, use, algorithm))
-                    .peek(loggerConsumer)
-                    .findFirst();
-
-            if (keyWrapper.isPresent()) {
-                return keyWrapper.get();
-            }
+            return key;
         }
 
         if (logger.isTraceEnabled()) {
@@ -139,14 +119,12 @@ public class DefaultKeyManager implements KeyManager {
 
     @Override
     public Stream<KeyWrapper> getKeysStream(RealmModel realm, KeyUse use, String algorithm) {
-        return getProviders(realm).stream()
-                .flatMap(p -> p.getKeysStream()
-                                .filter(key -> key.getStatus().isEnabled() && matches(key, use, algorithm)));
+        return getKeys(realm).getKeysStream(use, algorithm);
     }
 
     @Override
     public Stream<KeyWrapper> getKeysStream(RealmModel realm) {
-        return getProviders(realm).stream().flatMap(KeyProvider::getKeysStream);
+        return getKeys(realm).getKeysStream();
     }
 
     @Override
@@ -243,33 +221,67 @@ public class DefaultKeyManager implements KeyManager {
                 .collect(Collectors.toList());
     }
 
-    private boolean matches(KeyWrapper key, KeyUse use, String algorithm) {
-        return use.equals(key.getUse()) && key.getAlgorithmOrDefault().equals(algorithm);
+    /**
+     * Returns whether the keys of the realm are cached along with the cached realm, so that the same key instances are
+     * returned to other sessions as long as the key components are not changed.
+     *
+     * @param realm the realm
+     * @return {@code true} if the keys of the realm are cached
+     */
+    @SuppressWarnings("unchecked")
+    public boolean isCached(RealmModel realm) {
+        RealmKeys keys = getKeys(realm);
+        ConcurrentHashMap cachedWith = realm instanceof CachedRealmModel ? ((CachedRealmModel) realm).getCachedWith() : null;
+        return cachedWith != null && cachedWith.get(RealmKeys.class.getName()) == keys;
     }
 
-    private List<KeyProvider> getProviders(RealmModel realm) {
-        List<KeyProvider> providers = providersMap.get(realm.getId());
-        if (providers == null) {
-            providers = realm.getComponentsStream(realm.getId(), KeyProvider.class.getName())
-                    .sorted(new ProviderComparator())
-                    .map(c -> {
-                        try {
-                            ProviderFactory<KeyProvider> f = session.getKeycloakSessionFactory().getProviderFactory(KeyProvider.class, c.getProviderId());
-                            KeyProviderFactory factory = (KeyProviderFactory) f;
-                            KeyProvider provider = factory.create(session, c);
-                            session.enlistForClose(provider);
-                            return provider;
-                        } catch (Throwable t) {
-                            logger.errorv(t, "Failed to load provider {0}", c.getId());
-                            return null;
-                        }
-                    })
-                    .filter(Objects::nonNull)
-                    .collect(Collectors.toList());
-
-            providersMap.put(realm.getId(), providers);
+    /**
+     * Returns the keys of the realm. When all the key providers of the realm are cacheable, the keys are cached along
+     * with the cached realm as long as the key components are the same, so the providers are not created for each
+     * session. Otherwise the keys are loaded once per session.
+     */
+    @SuppressWarnings("unchecked")
+    private RealmKeys getKeys(RealmModel realm) {
+        RealmKeys keys = keysMap.get(realm.getId());
+        if (keys != null) {
+            return keys;
+        }
+
+        List<ComponentModel> components = realm.getComponentsStream(realm.getId(), KeyProvider.class.getName())
+                .sorted(new ProviderComparator())
+                .collect(Collectors.toList());
+
+        ConcurrentHashMap cachedWith = realm instanceof CachedRealmModel ? ((CachedRealmModel) realm).getCachedWith() : null;
+        if (cachedWith != null) {
+            RealmKeys cached = (RealmKeys) cachedWith.get(RealmKeys.class.getName());
+            if (cached != null && cached.isLoadedFrom(components)) {
+                keysMap.put(realm.getId(), cached);
+                return cached;
+            }
+        }
+
+        boolean cacheable = true;
+        List<KeyProvider> providers = new ArrayList<>(components.size());
+        for (ComponentModel c : components) {
+            try {
+                ProviderFactory<KeyProvider> f = session.getKeycloakSessionFactory().getProviderFactory(KeyProvider.class, c.getProviderId());
+                KeyProviderFactory factory = (KeyProviderFactory) f;
+                KeyProvider provider = factory.create(session, c);
+                session.enlistForClose(provider);
+                providers.add(provider);
+                cacheable &= factory.isCacheable();
+            } catch (Throwable t) {
+                logger.errorv(t, "Failed to load provider {0}", c.getId());
+                cacheable = false;
+            }
+        }
+
+        keys = new RealmKeys(components, providers);
+        if (cachedWith != null && cacheable) {
+            cachedWith.put(RealmKeys.class.getName(), keys);
         }
-        return providers;
+        keysMap.put(realm.getId(), keys);
+        return keys;
     }
 
     private static class ProviderComparator implements Comparator<ComponentModel> {
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.keys;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.keycloak.component.ComponentModel;
+import org.keycloak.crypto.KeyUse;
+import org.keycloak.crypto.KeyWrapper;
+
+/**
+ * Keys of all the key providers of a realm in the order of the providers, with the active keys indexed by the use
+ * and the algorithm and all the keys indexed by the kid. The index is immutable, so it can be cached along with the
+ * realm and shared by the sessions.
+ */
+class RealmKeys {
+
+    // Key components the keys were loaded from, compared by identity
+    private final List<ComponentModel> components;
+    private final List<KeyWrapper> keys;
+    private final Map<String, KeyWrapper> activeKeys = new HashMap<>();
+    private final Map<String, List<KeyWrapper>> keysByKid = new HashMap<>();
+
+    RealmKeys(List<ComponentModel> components, List<KeyProvider> providers) {
+        this.components = components;
+
+        List<KeyWrapper> keys = new ArrayList<>();
+        providers.forEach(provider -> provider.getKeysStream().forEach(keys::add));
+        this.keys = Collections.unmodifiableList(keys);
+
+        for (KeyWrapper key : keys) {
+            if (key.getStatus().isActive() && key.getUse() != null && key.getAlgorithmOrDefault() != null) {
+                activeKeys.putIfAbsent(indexKey(key.getUse(), key.getAlgorithmOrDefault()), key);
+            }
+            if (key.getKid() != null) {
+                keysByKid.computeIfAbsent(key.getKid(), kid -> new ArrayList<>(1)).add(key);
+            }
+        }
+    }
+
+    boolean isLoadedFrom(List<ComponentModel> components) {
+        if (this.components.size() != components.size()) {
+            return false;
+        }
+        for (int i = 0; i < components.size(); i++) {
+            if (this.components.get(i) != components.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    KeyWrapper getActiveKey(KeyUse use, String algorithm) {
+        return algorithm == null ? null : activeKeys.get(indexKey(use, algorithm));
+    }
+
+    KeyWrapper getKey(String kid, KeyUse use, String algorithm) {
+        for (KeyWrapper key : keysByKid.getOrDefault(kid, Collections.emptyList())) {
+            if (key.getStatus().isEnabled() && matches(key, use, algorithm)) {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    Stream<KeyWrapper> getKeysStream(KeyUse use, String algorithm) {
+        return keys.stream().filter(key -> key.getStatus().isEnabled() && matches(key, use, algorithm));
+    }
+
+    Stream<KeyWrapper> getKeysStream() {
+        return keys.stream();
+    }
+
+    static boolean matches(KeyWrapper key, KeyUse use, String algorithm) {
+        return use.equals(key.getUse()) && key.getAlgorithmOrDefault().equals(algorithm);
+    }
+
+    private static String indexKey(KeyUse use, String algorithm) {
+        return use.name() + ":" + algorithm;
+    }
+}
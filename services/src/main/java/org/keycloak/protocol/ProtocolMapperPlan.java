@@ -0,0 +1,175 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.protocol;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.keycloak.models.ClientScopeModel;
+import org.keycloak.models.ClientSessionContext;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.ProtocolMapperModel;
+import org.keycloak.models.cache.CachedClientScopeModel;
+
+/**
+ * Protocol mappers of a client with a set of client scopes, resolved to the mapper providers and sorted by their
+ * priority. The lists of the mappers implementing a given interface, like the mappers of the access token, are
+ * computed on the first use.
+ * <p>
+ * The plans are cached along with the cached client, one per set of the client scopes, and they are used as long as
+ * none of the cached client and client scopes was reloaded. When any of them is not cached or is updated in the
+ * current transaction, the plan is built for the request only.
+ */
+public class ProtocolMapperPlan {
+
+    private static final int MAX_CACHED_PLANS_PER_CLIENT = 64;
+
+    private static final String ATTRIBUTE = ProtocolMapperPlan.class.getName();
+
+    private final List<Entry<ProtocolMapperModel, ProtocolMapper>> mappers;
+    private final Map<Class<?>, List<?>> mappersByType = new ConcurrentHashMap<>();
+    // Maps cached along with the client scopes the plan was built from, compared by identity
+    private final List<Map<?, ?>> scopesCachedWith;
+
+    private ProtocolMapperPlan(List<Entry<ProtocolMapperModel, ProtocolMapper>> mappers, List<Map<?, ?>> scopesCachedWith) {
+        this.mappers = mappers;
+        this.scopesCachedWith = scopesCachedWith;
+    }
+
+    /**
+     * Returns the plan for the client and the client scopes of the given context. The plan is remembered in the
+     * context, so it is looked up just once per request.
+     */
+    public static ProtocolMapperPlan of(KeycloakSession session, ClientSessionContext ctx) {
+        ProtocolMapperPlan plan = ctx.getAttribute(ATTRIBUTE, ProtocolMapperPlan.class);
+        if (plan != null) {
+            return plan;
+        }
+
+        List<ClientScopeModel> clientScopes = ctx.getClientScopesStream()
+                .sorted(Comparator.comparing(ClientScopeModel::getId))
+                .collect(Collectors.toList());
+        Map<String, ProtocolMapperPlan> cachedPlans = getCachedPlans(ctx.getClientSession().getClient());
+        List<Map<?, ?>> scopesCachedWith = cachedPlans == null ? null : getCachedWith(clientScopes);
+
+        if (scopesCachedWith == null) {
+            plan = build(session, ctx, Collections.emptyList());
+        } else {
+            String key = clientScopes.stream().map(ClientScopeModel::getId).collect(Collectors.joining(" "));
+            plan = cachedPlans.get(key);
+            if (plan == null || !plan.isBuiltFrom(scopesCachedWith)) {
+                plan = build(session, ctx, scopesCachedWith);
+                if (cachedPlans.size() < MAX_CACHED_PLANS_PER_CLIENT || cachedPlans.containsKey(key)) {
+                    cachedPlans.put(key, plan);
+                }
+            }
+        }
+
+        ctx.setAttribute(ATTRIBUTE, plan);
+        return plan;
+    }
+
+    /**
+     * @return all the mappers sorted by their priority
+     */
+    public List<Entry<ProtocolMapperModel, ProtocolMapper>> getMappers() {
+        return mappers;
+    }
+
+    /**
+     * @return the mappers implementing the given interface, sorted by their priority
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<Entry<ProtocolMapperModel, T>> getMappers(Class<T> type) {
+        return (List<Entry<ProtocolMapperModel, T>>) mappersByType.computeIfAbsent(type, this::filter);
+    }
+
+    private List<Entry<ProtocolMapperModel, Object>> filter(Class<?> type) {
+        List<Entry<ProtocolMapperModel, Object>> filtered = new ArrayList<>();
+        for (Entry<ProtocolMapperModel, ProtocolMapper> mapper : mappers) {
+            if (type.isInstance(mapper.getValue())) {
+                filtered.add(new AbstractMap.SimpleImmutableEntry<>(mapper.getKey(), mapper.getValue()));
+            }
+        }
+        return Collections.unmodifiableList(filtered);
+    }
+
+    private boolean isBuiltFrom(List<Map<?, ?>> scopesCachedWith) {
+        if (this.scopesCachedWith.size() != scopesCachedWith.size()) {
+            return false;
+        }
+        for (int i = 0; i < scopesCachedWith.size(); i++) {
+            if (this.scopesCachedWith.get(i) != scopesCachedWith.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ProtocolMapperPlan build(KeycloakSession session, ClientSessionContext ctx, List<Map<?, ?>> scopesCachedWith) {
+        KeycloakSessionFactory sessionFactory = session.getKeycloakSessionFactory();
+        List<Entry<ProtocolMapperModel, ProtocolMapper>> mappers = ctx.getProtocolMappersStream()
+                .<Entry<ProtocolMapperModel, ProtocolMapper>>map(mapperModel -> {
+                    ProtocolMapper mapper = (ProtocolMapper) sessionFactory.getProviderFactory(ProtocolMapper.class, mapperModel.getProtocolMapper());
+                    if (mapper == null) {
+                        return null;
+                    }
+                    return new AbstractMap.SimpleImmutableEntry<>(mapperModel, mapper);
+                })
+                .filter(Objects::nonNull)
+                .sorted(Comparator.comparing(ProtocolMapperUtils::compare))
+                .collect(Collectors.toList());
+        return new ProtocolMapperPlan(Collections.unmodifiableList(mappers), scopesCachedWith);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, ProtocolMapperPlan> getCachedPlans(ClientScopeModel client) {
+        if (!(client instanceof CachedClientScopeModel)) {
+            return null;
+        }
+        ConcurrentHashMap cachedWith = ((CachedClientScopeModel) client).getCachedWith();
+        if (cachedWith == null) {
+            return null;
+        }
+        return (Map<String, ProtocolMapperPlan>) cachedWith.computeIfAbsent(ATTRIBUTE, key -> new ConcurrentHashMap<String, ProtocolMapperPlan>());
+    }
+
+    private static List<Map<?, ?>> getCachedWith(List<ClientScopeModel> clientScopes) {
+        List<Map<?, ?>> scopesCachedWith = new ArrayList<>(clientScopes.size());
+        for (ClientScopeModel clientScope : clientScopes) {
+            if (!(clientScope instanceof CachedClientScopeModel)) {
+                return null;
+            }
+            Map<?, ?> cachedWith = ((CachedClientScopeModel) clientScope).getCachedWith();
+            if (cachedWith == null) {
+                return null;
+            }
+            scopesCachedWith.add(cachedWith);
+        }
+        return scopesCachedWith;
+    }
+}
@@ -21,11 +21,13 @@ import java.security.cert.X509Certificate;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 import org.jboss.resteasy.reactive.NoCache;
 import org.keycloak.http.HttpRequest;
 import org.keycloak.OAuthErrorException;
 import org.keycloak.common.ClientConnection;
 import org.keycloak.crypto.KeyType;
+import org.keycloak.crypto.KeyWrapper;
 import org.keycloak.events.EventBuilder;
 import org.keycloak.forms.login.LoginFormsProvider;
 import org.keycloak.jose.jwk.JSONWebKeySet;
@@ -45,6 +47,7 @@ import org.keycloak.services.CorsErrorResponseException;
 import org.keycloak.services.resources.Cors;
 import org.keycloak.services.resources.RealmsResource;
 import org.keycloak.services.util.CacheControlUtil;
+import org.keycloak.services.util.CachedDocument;
 
 import java.util.Objects;
 
@@ -209,8 +212,19 @@ public class OIDCLoginProtocolService {
     public Response certs() {
         checkSsl();
 
-        JWK[] jwks = session.keys().getKeysStream(realm)
+        List<KeyWrapper> keys = session.keys().getKeysStream(realm)
                 .filter(k -> k.getStatus().isEnabled() && k.getPublicKey() != null)
+                .collect(Collectors.toList());
+
+        // The keys are the same instances as long as the keys of the realm are cached
+        CachedDocument keySet = CachedDocument.get(realm, "certs", keys, () -> toKeySet(keys));
+
+        Response.ResponseBuilder responseBuilder = keySet.toResponse(headers).cacheControl(CacheControlUtil.getDefaultCacheControl());
+        return Cors.add(request, responseBuilder).allowedOrigins("*").auth().build();
+    }
+
+    private static JSONWebKeySet toKeySet(List<KeyWrapper> keys) {
+        JWK[] jwks = keys.stream()
                 .map(k -> {
                     JWKBuilder b = JWKBuilder.create().kid(k.getKid()).algorithm(k.getAlgorithmOrDefault());
                     List<X509Certificate> certificates = Optional.ofNullable(k.getCertificateChain())
@@ -230,9 +244,7 @@ public class OIDCLoginProtocolService {
 
         JSONWebKeySet keySet = new JSONWebKeySet();
         keySet.setKeys(jwks);
-
-        Response.ResponseBuilder responseBuilder = Response.ok(keySet).cacheControl(CacheControlUtil.getDefaultCacheControl());
-        return Cors.add(request, responseBuilder).allowedOrigins("*").auth().build();
+        return keySet;
     }
 
     @Path("userinfo")
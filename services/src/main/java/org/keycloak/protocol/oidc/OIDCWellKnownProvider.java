@@ -31,6 +31,7 @@ import org.keycloak.models.CibaConfig;
 import org.keycloak.models.ClientScopeModel;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.RealmModel;
+import org.keycloak.models.cache.CachedClientScopeModel;
 import org.keycloak.protocol.oidc.endpoints.AuthorizationEndpoint;
 import org.keycloak.protocol.oidc.endpoints.TokenEndpoint;
 import org.keycloak.protocol.oidc.grants.ciba.CibaGrantType;
@@ -60,6 +61,8 @@ import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -228,6 +231,27 @@ public class OIDCWellKnownProvider implements WellKnownProvider {
         return config;
     }
 
+    @Override
+    public List<?> getConfigSources() {
+        if (!includeClientScopes) {
+            return Collections.emptyList();
+        }
+
+        // Client scopes are cached apart from the realm, so the config is computed from the cached client scopes
+        List<ClientScopeModel> clientScopes = session.getContext().getRealm().getClientScopesStream()
+                .sorted(Comparator.comparing(ClientScopeModel::getId))
+                .collect(Collectors.toList());
+        List<Object> sources = new ArrayList<>(clientScopes.size());
+        for (ClientScopeModel clientScope : clientScopes) {
+            Map<?, ?> cachedWith = clientScope instanceof CachedClientScopeModel ? ((CachedClientScopeModel) clientScope).getCachedWith() : null;
+            if (cachedWith == null) {
+                return null;
+            }
+            sources.add(cachedWith);
+        }
+        return sources;
+    }
+
     @Override
     public void close() {
     }
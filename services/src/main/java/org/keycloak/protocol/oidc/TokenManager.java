@@ -17,7 +17,6 @@
 
 package org.keycloak.protocol.oidc;
 
-import java.util.Collections;
 import java.util.HashMap;
 import org.jboss.logging.Logger;
 import org.keycloak.http.HttpRequest;
@@ -59,9 +58,7 @@ import org.keycloak.models.UserSessionProvider;
 import org.keycloak.models.light.LightweightUserAdapter;
 import org.keycloak.models.utils.KeycloakModelUtils;
 import org.keycloak.models.utils.SessionExpirationUtils;
-import org.keycloak.models.utils.RoleUtils;
-import org.keycloak.protocol.ProtocolMapper;
-import org.keycloak.protocol.ProtocolMapperUtils;
+import org.keycloak.protocol.ProtocolMapperPlan;
 import org.keycloak.protocol.oidc.mappers.TokenIntrospectionTokenMapper;
 import org.keycloak.protocol.oidc.mappers.OIDCAccessTokenMapper;
 import org.keycloak.protocol.oidc.mappers.OIDCAccessTokenResponseMapper;
@@ -90,10 +87,13 @@ import org.keycloak.services.util.AuthorizationContextUtil;
 import org.keycloak.services.util.DPoPUtil;
 import org.keycloak.services.util.DefaultClientSessionContext;
 import org.keycloak.services.util.MtlsHoKTokenUtil;
+import org.keycloak.services.util.RoleIndex;
+import org.keycloak.services.util.UserMembershipUtil;
 import org.keycloak.sessions.AuthenticationSessionModel;
 import org.keycloak.util.TokenUtil;
 
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -101,12 +101,7 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
-import java.util.function.BiConsumer;
-import java.util.function.BinaryOperator;
-import java.util.function.Function;
 import java.util.function.Predicate;
-import java.util.function.Supplier;
-import java.util.stream.Collector;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -642,13 +637,11 @@ public class TokenManager {
 
 
     public static Set<RoleModel> getAccess(UserModel user, ClientModel client, Stream<ClientScopeModel> clientScopes) {
-        Set<RoleModel> roleMappings = RoleUtils.getDeepUserRoleMappings(user);
-
         if (client.isFullScopeAllowed()) {
             if (logger.isTraceEnabled()) {
                 logger.tracef("Using full scope for client %s", client.getClientId());
             }
-            return roleMappings;
+            return UserMembershipUtil.getDeepUserRoleMappings(user);
         } else {
 
             // 1 - Client roles of this client itself
@@ -668,12 +661,15 @@ public class TokenManager {
             scopeMappings = Stream.concat(scopeMappings, clientScopesMappings);
 
             // 3 - Expand scope mappings
-            scopeMappings = RoleUtils.expandCompositeRolesStream(scopeMappings);
+            RealmModel realm = client.getRealm();
+            RoleIndex roleIndex = RoleIndex.of(realm);
+            BitSet expandedScopeMappings = roleIndex.expandCompositeRoles(scopeMappings);
 
             // Intersection of expanded user roles and expanded scopeMappings
-            roleMappings.retainAll(scopeMappings.collect(Collectors.toSet()));
+            BitSet roleMappings = UserMembershipUtil.getDeepUserRoleMappings(user, roleIndex);
+            roleMappings.and(expandedScopeMappings);
 
-            return roleMappings;
+            return roleIndex.toRoles(realm, roleMappings).collect(Collectors.toSet());
         }
     }
 
@@ -792,47 +788,35 @@ public class TokenManager {
 
     public AccessToken transformAccessToken(KeycloakSession session, AccessToken token,
                                             UserSessionModel userSession, ClientSessionContext clientSessionCtx) {
-        return ProtocolMapperUtils.getSortedProtocolMappers(session, clientSessionCtx, mapper -> mapper.getValue() instanceof OIDCAccessTokenMapper)
-                .collect(new TokenCollector<AccessToken>(token) {
-                    @Override
-                    protected AccessToken applyMapper(AccessToken token, Map.Entry<ProtocolMapperModel, ProtocolMapper> mapper) {
-                        return ((OIDCAccessTokenMapper) mapper.getValue()).transformAccessToken(token, mapper.getKey(), session, userSession, clientSessionCtx);
-                    }
-                });
+        for (Map.Entry<ProtocolMapperModel, OIDCAccessTokenMapper> mapper : ProtocolMapperPlan.of(session, clientSessionCtx).getMappers(OIDCAccessTokenMapper.class)) {
+            token = mapper.getValue().transformAccessToken(token, mapper.getKey(), session, userSession, clientSessionCtx);
+        }
+        return token;
     }
 
     public AccessTokenResponse transformAccessTokenResponse(KeycloakSession session, AccessTokenResponse accessTokenResponse,
             UserSessionModel userSession, ClientSessionContext clientSessionCtx) {
 
-        return ProtocolMapperUtils.getSortedProtocolMappers(session, clientSessionCtx, mapper -> mapper.getValue() instanceof OIDCAccessTokenResponseMapper)
-                .collect(new TokenCollector<AccessTokenResponse>(accessTokenResponse) {
-                    @Override
-                    protected AccessTokenResponse applyMapper(AccessTokenResponse token, Map.Entry<ProtocolMapperModel, ProtocolMapper> mapper) {
-                        return ((OIDCAccessTokenResponseMapper) mapper.getValue()).transformAccessTokenResponse(token, mapper.getKey(), session, userSession, clientSessionCtx);
-                    }
-                });
+        for (Map.Entry<ProtocolMapperModel, OIDCAccessTokenResponseMapper> mapper : ProtocolMapperPlan.of(session, clientSessionCtx).getMappers(OIDCAccessTokenResponseMapper.class)) {
+            accessTokenResponse = mapper.getValue().transformAccessTokenResponse(accessTokenResponse, mapper.getKey(), session, userSession, clientSessionCtx);
+        }
+        return accessTokenResponse;
     }
 
     public AccessToken transformUserInfoAccessToken(KeycloakSession session, AccessToken token,
                                                     UserSessionModel userSession, ClientSessionContext clientSessionCtx) {
-        return ProtocolMapperUtils.getSortedProtocolMappers(session, clientSessionCtx, mapper -> mapper.getValue() instanceof UserInfoTokenMapper)
-                .collect(new TokenCollector<AccessToken>(token) {
-                    @Override
-                    protected AccessToken applyMapper(AccessToken token, Map.Entry<ProtocolMapperModel, ProtocolMapper> mapper) {
-                        return ((UserInfoTokenMapper) mapper.getValue()).transformUserInfoToken(token, mapper.getKey(), session, userSession, clientSessionCtx);
-                    }
-                });
+        for (Map.Entry<ProtocolMapperModel, UserInfoTokenMapper> mapper : ProtocolMapperPlan.of(session, clientSessionCtx).getMappers(UserInfoTokenMapper.class)) {
+            token = mapper.getValue().transformUserInfoToken(token, mapper.getKey(), session, userSession, clientSessionCtx);
+        }
+        return token;
     }
 
     public AccessToken transformIntrospectionAccessToken(KeycloakSession session, AccessToken token,
                                                          UserSessionModel userSession, ClientSessionContext clientSessionCtx) {
-        return ProtocolMapperUtils.getSortedProtocolMappers(session, clientSessionCtx, mapper -> mapper.getValue() instanceof TokenIntrospectionTokenMapper)
-                .collect(new TokenCollector<AccessToken>(token) {
-                    @Override
-                    protected AccessToken applyMapper(AccessToken token, Map.Entry<ProtocolMapperModel, ProtocolMapper> mapper) {
-                        return ((TokenIntrospectionTokenMapper) mapper.getValue()).transformIntrospectionToken(token, mapper.getKey(), session, userSession, clientSessionCtx);
-                    }
-                });
+        for (Map.Entry<ProtocolMapperModel, TokenIntrospectionTokenMapper> mapper : ProtocolMapperPlan.of(session, clientSessionCtx).getMappers(TokenIntrospectionTokenMapper.class)) {
+            token = mapper.getValue().transformIntrospectionToken(token, mapper.getKey(), session, userSession, clientSessionCtx);
+        }
+        return token;
     }
 
     public Map<String, Object> generateUserInfoClaims(AccessToken userInfo, UserModel userModel) {
@@ -926,51 +910,12 @@ public class TokenManager {
         return claims;
     }
 
-    private abstract static class TokenCollector<T> implements Collector<Map.Entry<ProtocolMapperModel, ProtocolMapper>, TokenCollector<T>, T> {
-
-        private T token;
-
-        public TokenCollector(T token) {
-            this.token = token;
-        }
-
-        @Override
-        public Supplier<TokenCollector<T>> supplier() {
-            return () -> this;
-        }
-
-        @Override
-        public Function<TokenCollector<T>, T> finisher() {
-            return idTokenWrapper -> idTokenWrapper.token;
-        }
-
-        @Override
-        public Set<Collector.Characteristics> characteristics() {
-            return Collections.emptySet();
-        }
-
-        @Override
-        public BinaryOperator<TokenCollector<T>> combiner() {
-            return (tMutableWrapper, tMutableWrapper2) -> { throw new IllegalStateException("can't combine"); };
-        }
-
-        @Override
-        public BiConsumer<TokenCollector<T>, Map.Entry<ProtocolMapperModel, ProtocolMapper>> accumulator() {
-            return (idToken, mapper) -> idToken.token = applyMapper(idToken.token, mapper);
-        }
-
-        protected abstract T applyMapper(T token, Map.Entry<ProtocolMapperModel, ProtocolMapper> mapper);
-
-    }
-
     public IDToken transformIDToken(KeycloakSession session, IDToken token,
                                     UserSessionModel userSession, ClientSessionContext clientSessionCtx) {
-        return ProtocolMapperUtils.getSortedProtocolMappers(session, clientSessionCtx, mapper -> mapper.getValue() instanceof OIDCIDTokenMapper)
-                .collect(new TokenCollector<IDToken>(token) {
-                    protected IDToken applyMapper(IDToken token, Map.Entry<ProtocolMapperModel, ProtocolMapper> mapper) {
-                        return ((OIDCIDTokenMapper) mapper.getValue()).transformIDToken(token, mapper.getKey(), session, userSession, clientSessionCtx);
-                    }
-                });
+        for (Map.Entry<ProtocolMapperModel, OIDCIDTokenMapper> mapper : ProtocolMapperPlan.of(session, clientSessionCtx).getMappers(OIDCIDTokenMapper.class)) {
+            token = mapper.getValue().transformIDToken(token, mapper.getKey(), session, userSession, clientSessionCtx);
+        }
+        return token;
     }
 
     protected AccessToken initToken(RealmModel realm, ClientModel client, UserModel user, UserSessionModel session,
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.protocol.oidc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.keycloak.TokenVerifier;
+import org.keycloak.common.VerificationException;
+import org.keycloak.common.util.Base64Url;
+import org.keycloak.common.util.Time;
+import org.keycloak.crypto.JavaAlgorithm;
+import org.keycloak.crypto.KeyUse;
+import org.keycloak.crypto.KeyWrapper;
+import org.keycloak.crypto.SignatureProvider;
+import org.keycloak.crypto.SignatureVerifierContext;
+import org.keycloak.jose.jws.crypto.HashUtils;
+import org.keycloak.keys.DefaultKeyManager;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.cache.CachedRealmModel;
+import org.keycloak.representations.AccessToken;
+import org.keycloak.services.Urls;
+
+/**
+ * Access tokens of a realm whose signature and issuer were verified, keyed by the hash of the encoded token, so that
+ * endpoints validating the same token many times during its lifetime, like the token introspection and the userinfo
+ * endpoints, parse it and verify its signature just once per node. Only the signature and the issuer are covered, all
+ * the other checks like the expiration, the not-before policies and the user session must still be done by the
+ * caller. The returned tokens are shared, so they must not be modified.
+ * <p>
+ * The cache lives along with the cached realm and a token is reused until it expires, as long as it is verified
+ * against the same issuer and the key it was verified with is still the enabled key of the realm. The keys are
+ * compared by identity, so the tokens are cached only when the keys of the realm are cached too, that is when all its
+ * key providers are cacheable.
+ */
+public class VerifiedTokenCache {
+
+    private static final int MAX_TOKENS = 10000;
+
+    // Seconds between removals of the expired tokens of a full cache
+    private static final int SWEEP_INTERVAL = 10;
+
+    private final Map<String, VerifiedToken> tokens = new ConcurrentHashMap<>();
+    private final AtomicInteger nextSweep = new AtomicInteger();
+
+    /**
+     * Parses the encoded access token and verifies its signature and issuer, unless the token was verified before.
+     *
+     * @param session the session
+     * @param realm the realm of the session
+     * @param encodedToken the encoded access token
+     * @return the verified access token
+     * @throws VerificationException if the token cannot be parsed, or the signature or the issuer is invalid
+     */
+    public static AccessToken verify(KeycloakSession session, RealmModel realm, String encodedToken) throws VerificationException {
+        String issuer = Urls.realmIssuer(session.getContext().getUri().getBaseUri(), realm.getName());
+        VerifiedTokenCache cache = of(session, realm);
+        if (cache == null) {
+            return verify(session, encodedToken, issuer).getToken();
+        }
+
+        String hash = Base64Url.encode(HashUtils.hash(JavaAlgorithm.SHA256, encodedToken.getBytes(StandardCharsets.UTF_8)));
+        VerifiedToken verified = cache.tokens.get(hash);
+        if (verified != null && verified.isValid(session, realm, issuer)) {
+            return verified.token;
+        }
+
+        TokenVerifier<AccessToken> verifier = verify(session, encodedToken, issuer);
+        AccessToken token = verifier.getToken();
+        String kid = verifier.getHeader().getKeyId();
+        String algorithm = verifier.getHeader().getAlgorithm().name();
+        KeyWrapper key = kid == null ? null : session.keys().getKey(realm, kid, KeyUse.SIG, algorithm);
+        if (key != null && token.getExp() != null && token.getExp() > Time.currentTime()) {
+            cache.put(hash, new VerifiedToken(token, issuer, kid, algorithm, key));
+        }
+        return token;
+    }
+
+    private static TokenVerifier<AccessToken> verify(KeycloakSession session, String encodedToken, String issuer) throws VerificationException {
+        TokenVerifier<AccessToken> verifier = TokenVerifier.create(encodedToken, AccessToken.class)
+                .withChecks(new TokenVerifier.RealmUrlCheck(issuer));
+
+        SignatureVerifierContext verifierContext = session.getProvider(SignatureProvider.class, verifier.getHeader().getAlgorithm().name()).verifier(verifier.getHeader().getKeyId());
+        verifier.verifierContext(verifierContext);
+
+        return verifier.verify();
+    }
+
+    @SuppressWarnings("unchecked")
+    static VerifiedTokenCache of(KeycloakSession session, RealmModel realm) {
+        if (!(realm instanceof CachedRealmModel)) {
+            return null;
+        }
+        // Keys loaded for each session are never the same instances, the cached tokens could not be reused
+        if (!(session.keys() instanceof DefaultKeyManager) || !((DefaultKeyManager) session.keys()).isCached(realm)) {
+            return null;
+        }
+        ConcurrentHashMap cachedWith = ((CachedRealmModel) realm).getCachedWith();
+        if (cachedWith == null) {
+            return null;
+        }
+        return (VerifiedTokenCache) cachedWith.computeIfAbsent(VerifiedTokenCache.class.getName(), key -> new VerifiedTokenCache());
+    }
+
+    private void put(String hash, VerifiedToken verified) {
+        if (tokens.size() >= MAX_TOKENS) {
+            int currentTime = Time.currentTime();
+            int sweep = nextSweep.get();
+            if (currentTime >= sweep && nextSweep.compareAndSet(sweep, currentTime + SWEEP_INTERVAL)) {
+                tokens.values().removeIf(token -> token.isExpired(currentTime));
+            }
+            if (tokens.size() >= MAX_TOKENS) {
+                return;
+            }
+        }
+        tokens.put(hash, verified);
+    }
+
+    private static class VerifiedToken {
+
+        private final AccessToken token;
+        private final String issuer;
+        private final String kid;
+        private final String algorithm;
+        // Compared by identity, the keys of the realm are the same instances as long as they are cached
+        private final KeyWrapper key;
+
+        private VerifiedToken(AccessToken token, String issuer, String kid, String algorithm, KeyWrapper key) {
+            this.token = token;
+            this.issuer = issuer;
+            this.kid = kid;
+            this.algorithm = algorithm;
+            this.key = key;
+        }
+
+        private boolean isValid(KeycloakSession session, RealmModel realm, String issuer) {
+            return !isExpired(Time.currentTime())
+                    && this.issuer.equals(issuer)
+                    && session.keys().getKey(realm, kid, KeyUse.SIG, algorithm) == key;
+        }
+
+        private boolean isExpired(int currentTime) {
+            return token.getExp() <= currentTime;
+        }
+    }
+}
@@ -16,6 +16,12 @@
  */
 package org.keycloak.protocol.oidc.endpoints;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.jboss.logging.Logger;
 import org.jboss.resteasy.reactive.NoCache;
 import org.keycloak.http.HttpRequest;
 import org.keycloak.common.ClientConnection;
@@ -31,8 +37,10 @@ import org.keycloak.protocol.oidc.utils.AuthorizeClientUtil;
 import org.keycloak.services.ErrorResponseException;
 import org.keycloak.services.clientpolicy.ClientPolicyException;
 import org.keycloak.services.clientpolicy.context.TokenIntrospectContext;
+import org.keycloak.util.JsonSerialization;
 
 import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.MultivaluedMap;
@@ -49,6 +57,12 @@ public class TokenIntrospectionEndpoint {
     public static final String PARAM_TOKEN_TYPE_HINT = "token_type_hint";
     public static final String PARAM_TOKEN = "token";
 
+    private static final Logger logger = Logger.getLogger(TokenIntrospectionEndpoint.class);
+
+    private static final int MAX_BATCH_SIZE = 100;
+
+    private static final byte[] INACTIVE_TOKEN_RESPONSE = "{\"active\":false}".getBytes(StandardCharsets.UTF_8);
+
     private final KeycloakSession session;
 
     private final HttpRequest request;
@@ -78,45 +92,130 @@ public class TokenIntrospectionEndpoint {
 
         MultivaluedMap<String, String> formParams = request.getDecodedFormParameters();
 
-        checkParameterDuplicated(formParams);
+        checkParameterDuplicated(formParams, null);
 
-        String tokenTypeHint = formParams.getFirst(PARAM_TOKEN_TYPE_HINT);
+        String token = formParams.getFirst(PARAM_TOKEN);
 
-        if (tokenTypeHint == null) {
-            tokenTypeHint = AccessTokenIntrospectionProviderFactory.ACCESS_TOKEN_TYPE;
+        if (token == null) {
+            throw throwErrorResponseException(Errors.INVALID_REQUEST, "Token not provided.", Status.BAD_REQUEST);
         }
 
-        String token = formParams.getFirst(PARAM_TOKEN);
+        TokenIntrospectionProvider provider = getProvider(formParams);
 
-        if (token == null) {
+        checkClientPolicies(formParams);
+        token = formParams.getFirst(PARAM_TOKEN);
+
+        try {
+
+            Response response = provider.introspect(token, event);
+
+            this.event.success();
+
+            return response;
+        } catch (ErrorResponseException ere) {
+            throw ere;
+        } catch (Exception e) {
+            throw throwErrorResponseException(Errors.INVALID_REQUEST, "Failed to introspect token.", Status.BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Introspects all the tokens given by the repeated {@code token} parameter with a single client authentication.
+     * The response is a JSON array with the introspection response of each token, in the order of the tokens. A token
+     * which fails to be introspected is reported as inactive, without failing the other tokens.
+     */
+    @POST
+    @Path("batch")
+    @NoCache
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response introspectBatch() {
+        event.event(EventType.INTROSPECT_TOKEN);
+
+        checkSsl();
+        checkRealm();
+        authorizeClient();
+
+        MultivaluedMap<String, String> formParams = request.getDecodedFormParameters();
+
+        checkParameterDuplicated(formParams, PARAM_TOKEN);
+
+        List<String> tokens = formParams.get(PARAM_TOKEN);
+
+        if (tokens == null || tokens.isEmpty()) {
             throw throwErrorResponseException(Errors.INVALID_REQUEST, "Token not provided.", Status.BAD_REQUEST);
         }
 
+        if (tokens.size() > MAX_BATCH_SIZE) {
+            throw throwErrorResponseException(Errors.INVALID_REQUEST, "Too many tokens, at most " + MAX_BATCH_SIZE + " are allowed.", Status.BAD_REQUEST);
+        }
+
+        TokenIntrospectionProvider provider = getProvider(formParams);
+
+        checkClientPolicies(formParams);
+        tokens = formParams.get(PARAM_TOKEN);
+
+        ByteArrayOutputStream responses = new ByteArrayOutputStream();
+        responses.write('[');
+
+        for (int i = 0; i < tokens.size(); i++) {
+            if (i > 0) {
+                responses.write(',');
+            }
+            byte[] response = introspectBatchToken(provider, tokens.get(i));
+            responses.write(response, 0, response.length);
+        }
+
+        responses.write(']');
+
+        this.event.success();
+
+        return Response.ok(responses.toByteArray()).type(MediaType.APPLICATION_JSON_TYPE).build();
+    }
+
+    private byte[] introspectBatchToken(TokenIntrospectionProvider provider, String token) {
+        try {
+            // The provider reports the failures of the token, the batch itself is reported once for the request
+            return getEntityBytes(provider.introspect(token, event.clone()));
+        } catch (Exception e) {
+            logger.debugf(e, "Failed to introspect token of the batch in realm %s", realm.getName());
+            return INACTIVE_TOKEN_RESPONSE;
+        }
+    }
+
+    private TokenIntrospectionProvider getProvider(MultivaluedMap<String, String> formParams) {
+        String tokenTypeHint = formParams.getFirst(PARAM_TOKEN_TYPE_HINT);
+
+        if (tokenTypeHint == null) {
+            tokenTypeHint = AccessTokenIntrospectionProviderFactory.ACCESS_TOKEN_TYPE;
+        }
+
         TokenIntrospectionProvider provider = this.session.getProvider(TokenIntrospectionProvider.class, tokenTypeHint);
 
         if (provider == null) {
             throw throwErrorResponseException(Errors.INVALID_REQUEST, "Unsupported token type [" + tokenTypeHint + "].", Status.BAD_REQUEST);
         }
 
+        return provider;
+    }
+
+    private void checkClientPolicies(MultivaluedMap<String, String> formParams) {
         try {
             session.clientPolicy().triggerOnEvent(new TokenIntrospectContext(formParams));
-            token = formParams.getFirst(PARAM_TOKEN);
         } catch (ClientPolicyException cpe) {
             throw throwErrorResponseException(Errors.INVALID_REQUEST, cpe.getErrorDetail(), Status.BAD_REQUEST);
         }
+    }
 
-        try {
-
-            Response response = provider.introspect(token, event);
-
-            this.event.success();
+    private static byte[] getEntityBytes(Response response) throws IOException {
+        Object entity = response.getEntity();
 
-            return response;
-        } catch (ErrorResponseException ere) {
-            throw ere;
-        } catch (Exception e) {
-            throw throwErrorResponseException(Errors.INVALID_REQUEST, "Failed to introspect token.", Status.BAD_REQUEST);
+        if (entity instanceof byte[]) {
+            return (byte[]) entity;
+        } else if (entity instanceof String) {
+            return ((String) entity).getBytes(StandardCharsets.UTF_8);
         }
+
+        return JsonSerialization.writeValueAsBytes(entity);
     }
 
     private void authorizeClient() {
@@ -149,9 +248,9 @@ public class TokenIntrospectionEndpoint {
     }
 
 
-    private void checkParameterDuplicated(MultivaluedMap<String, String> formParams) {
+    private void checkParameterDuplicated(MultivaluedMap<String, String> formParams, String repeatableParam) {
         for (String key : formParams.keySet()) {
-            if (formParams.get(key).size() != 1) {
+            if (formParams.get(key).size() != 1 && !key.equals(repeatableParam)) {
                 throw throwErrorResponseException(Errors.INVALID_REQUEST, "duplicated parameter", Status.BAD_REQUEST);
             }
         }
@@ -19,19 +19,20 @@ package org.keycloak.protocol.oidc.mappers;
 
 import org.keycloak.models.GroupModel;
 import org.keycloak.models.ProtocolMapperModel;
+import org.keycloak.models.UserModel;
 import org.keycloak.models.UserSessionModel;
-import org.keycloak.models.utils.ModelToRepresentation;
 import org.keycloak.protocol.ProtocolMapperUtils;
 import org.keycloak.protocol.oidc.OIDCLoginProtocol;
 import org.keycloak.provider.ProviderConfigProperty;
 import org.keycloak.representations.IDToken;
+import org.keycloak.services.util.UserMembershipUtil;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Maps user group membership
@@ -95,9 +96,10 @@ public class GroupMembershipMapper extends AbstractOIDCProtocolMapper implements
      * @param userSession
      */
     protected void setClaim(IDToken token, ProtocolMapperModel mappingModel, UserSessionModel userSession) {
-        Function<GroupModel, String> toGroupRepresentation = useFullPath(mappingModel) ?
-                ModelToRepresentation::buildGroupPath : GroupModel::getName;
-        List<String> membership = userSession.getUser().getGroupsStream().map(toGroupRepresentation).collect(Collectors.toList());
+        UserModel user = userSession.getUser();
+        Stream<String> groups = useFullPath(mappingModel) ?
+                UserMembershipUtil.getGroupPathsStream(user) : user.getGroupsStream().map(GroupModel::getName);
+        List<String> membership = groups.collect(Collectors.toList());
 
         // force multivalued as the attribute is not defined for this mapper
         mappingModel.getConfig().put(ProtocolMapperUtils.MULTIVALUED, "true");
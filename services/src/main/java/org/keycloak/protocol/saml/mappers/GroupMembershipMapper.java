@@ -20,18 +20,21 @@ package org.keycloak.protocol.saml.mappers;
 import org.keycloak.dom.saml.v2.assertion.AttributeStatementType;
 import org.keycloak.dom.saml.v2.assertion.AttributeType;
 import org.keycloak.models.AuthenticatedClientSessionModel;
+import org.keycloak.models.GroupModel;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.ProtocolMapperModel;
+import org.keycloak.models.UserModel;
 import org.keycloak.models.UserSessionModel;
-import org.keycloak.models.utils.ModelToRepresentation;
 import org.keycloak.protocol.saml.SamlProtocol;
 import org.keycloak.provider.ProviderConfigProperty;
+import org.keycloak.services.util.UserMembershipUtil;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
 
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
@@ -123,13 +126,9 @@ public class GroupMembershipMapper extends AbstractSAMLProtocolMapper implements
 
         boolean fullPath = useFullPath(mappingModel);
         final AtomicReference<AttributeType> singleAttributeType = new AtomicReference<>(null);
-        userSession.getUser().getGroupsStream().forEach(group -> {
-            String groupName;
-            if (fullPath) {
-                groupName = ModelToRepresentation.buildGroupPath(group);
-            } else {
-                groupName = group.getName();
-            }
+        UserModel user = userSession.getUser();
+        Stream<String> groupNames = fullPath ? UserMembershipUtil.getGroupPathsStream(user) : user.getGroupsStream().map(GroupModel::getName);
+        groupNames.forEach(groupName -> {
             AttributeType attributeType;
             if (singleAttribute) {
                 if (singleAttributeType.get() == null) {
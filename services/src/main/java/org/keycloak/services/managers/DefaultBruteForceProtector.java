@@ -32,37 +32,57 @@ import org.keycloak.services.ServicesLogger;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import static org.keycloak.models.UserModel.DISABLED_REASON;
 
 /**
- * A single thread will log failures.  This is so that we can avoid concurrent writes as we want an accurate failure count
+ * Login events are processed by a fixed number of shards, each with its own queue and a single thread. Events of a user
+ * always go to the same shard, so that we can avoid concurrent writes as we want an accurate failure count, while events
+ * of different users are processed in parallel.
  *
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
  * @version $Revision: 1 $
  */
-public class DefaultBruteForceProtector implements Runnable, BruteForceProtector {
+public class DefaultBruteForceProtector implements BruteForceProtector {
     private static final Logger logger = Logger.getLogger(DefaultBruteForceProtector.class);
 
     protected volatile boolean run = true;
     protected int maxDeltaTimeSeconds = 60 * 60 * 12; // 12 hours
     protected KeycloakSessionFactory factory;
-    protected CountDownLatch shutdownLatch = new CountDownLatch(1);
+    protected CountDownLatch shutdownLatch;
 
     protected volatile long failures;
     protected volatile long lastFailure;
     protected volatile long totalTime;
 
-    protected LinkedBlockingQueue<LoginEvent> queue = new LinkedBlockingQueue<LoginEvent>();
     public static final int TRANSACTION_SIZE = 20;
+    public static final int DEFAULT_SHARDS = Math.min(Runtime.getRuntime().availableProcessors(), 4);
+    public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 200;
+
+    // How long the login thread waits until the event of a failed login is queued and processed
+    private static final long FAILED_LOGIN_WAIT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    protected final Shard[] shards;
+    protected final int maxBatchSize;
+
+    private final LongAdder processedEvents = new LongAdder();
+    private final AtomicLong rejectedEvents = new AtomicLong();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
 
     protected abstract class LoginEvent implements Comparable<LoginEvent> {
         protected final String realmId;
         protected final String userId;
         protected final ClientConnection clientConnection;
+        protected final long createdNanos = System.nanoTime();
 
         protected LoginEvent(String realmId, String userId, ClientConnection clientConnection) {
             this.realmId = realmId;
@@ -141,7 +161,17 @@ public class DefaultBruteForceProtector implements Runnable, BruteForceProtector
     }
 
     public DefaultBruteForceProtector(KeycloakSessionFactory factory) {
+        this(factory, DEFAULT_SHARDS, DEFAULT_QUEUE_CAPACITY, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    public DefaultBruteForceProtector(KeycloakSessionFactory factory, int shardsCount, int queueCapacity, int maxBatchSize) {
         this.factory = factory;
+        this.maxBatchSize = Math.max(maxBatchSize, TRANSACTION_SIZE);
+        this.shards = new Shard[Math.max(shardsCount, 1)];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(i, new LinkedBlockingQueue<>(Math.max(queueCapacity, 1)));
+        }
+        this.shutdownLatch = new CountDownLatch(shards.length);
     }
 
     protected void failure(KeycloakSession session, LoginEvent event) {
@@ -238,67 +268,142 @@ public class DefaultBruteForceProtector implements Runnable, BruteForceProtector
     }
 
     public void start() {
-        new Thread(this, "Brute Force Protector").start();
+        for (Shard shard : shards) {
+            new Thread(shard, shards.length == 1 ? "Brute Force Protector" : "Brute Force Protector-" + shard.index).start();
+        }
     }
 
     public void shutdown() {
         run = false;
         try {
-            queue.offer(new ShutdownEvent());
+            for (Shard shard : shards) {
+                shard.queue.offer(new ShutdownEvent());
+            }
             shutdownLatch.await(10, TimeUnit.SECONDS);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
     }
 
-    public void run() {
-        final ArrayList<LoginEvent> events = new ArrayList<LoginEvent>(TRANSACTION_SIZE + 1);
-        try {
-            while (run) {
-                try {
-                    LoginEvent take = queue.poll(2, TimeUnit.SECONDS);
-                    if (take == null) {
-                        continue;
-                    }
+    /**
+     * @return count of the events waiting in the queues of all the shards
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Shard shard : shards) {
+            depth += shard.queue.size();
+        }
+        return depth;
+    }
+
+    /**
+     * @return count of the login events, which were not processed because the queue of the shard was full. A successful
+     * login is rejected right away, a failed login only when the queue stays full for the whole time its request waits.
+     */
+    public long getRejectedEvents() {
+        return rejectedEvents.get();
+    }
+
+    /**
+     * @return count of the events, whose transaction was committed
+     */
+    public long getProcessedEvents() {
+        return processedEvents.sum();
+    }
+
+    /**
+     * @return average time in milliseconds between the event was queued and its transaction was committed
+     */
+    public long getAverageLatencyMillis() {
+        long processed = processedEvents.sum();
+        return processed == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalLatencyNanos.sum() / processed);
+    }
+
+    public long getMaxLatencyMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos.get());
+    }
+
+    protected Shard getShard(String realmId, String userId) {
+        return shards[Math.floorMod(Objects.hash(realmId, userId), shards.length)];
+    }
+
+    protected class Shard implements Runnable {
+        protected final int index;
+        protected final BlockingQueue<LoginEvent> queue;
+
+        protected Shard(int index, BlockingQueue<LoginEvent> queue) {
+            this.index = index;
+            this.queue = queue;
+        }
+
+        // Small transactions keep the latency low, while the bigger ones let the shard catch up when the queue grows
+        protected int getBatchSize() {
+            return Math.max(TRANSACTION_SIZE, Math.min(queue.size(), maxBatchSize));
+        }
+
+        public void run() {
+            final ArrayList<LoginEvent> events = new ArrayList<LoginEvent>(maxBatchSize + 1);
+            try {
+                while (run) {
                     try {
-                        events.add(take);
-                        queue.drainTo(events, TRANSACTION_SIZE);
-                        Collections.sort(events); // we sort to avoid deadlock due to ordered updates.  Maybe I'm overthinking this.
-                        try (KeycloakSession session = factory.create()) {
-                            session.getTransactionManager().begin();
-                            try {
-                                for (LoginEvent event : events) {
-                                    if (event instanceof FailedLogin) {
-                                        failure(session, event);
-                                    } else if (event instanceof SuccessfulLogin) {
-                                        success(session, event);
-                                    } else if (event instanceof ShutdownEvent) {
-                                        run = false;
+                        LoginEvent take = queue.poll(2, TimeUnit.SECONDS);
+                        if (take == null) {
+                            continue;
+                        }
+                        boolean committed = false;
+                        try {
+                            events.add(take);
+                            queue.drainTo(events, getBatchSize());
+                            Collections.sort(events); // we sort to avoid deadlock due to ordered updates. Sort is stable, so the order of the events of each user is kept.
+                            try (KeycloakSession session = factory.create()) {
+                                session.getTransactionManager().begin();
+                                try {
+                                    for (LoginEvent event : events) {
+                                        if (event instanceof FailedLogin) {
+                                            failure(session, event);
+                                        } else if (event instanceof SuccessfulLogin) {
+                                            success(session, event);
+                                        } else if (event instanceof ShutdownEvent) {
+                                            run = false;
+                                        }
                                     }
+                                } catch (Exception e) {
+                                    session.getTransactionManager().setRollbackOnly();
+                                    throw e;
                                 }
-                            } catch (Exception e) {
-                                session.getTransactionManager().setRollbackOnly();
-                                throw e;
                             }
+                            committed = true;
+                        } catch (Exception e) {
+                            ServicesLogger.LOGGER.failedProcessingType(e);
                         } finally {
+                            long now = System.nanoTime();
                             for (LoginEvent event : events) {
+                                if (event instanceof ShutdownEvent) {
+                                    continue;
+                                }
+                                // Events of a failed transaction were not processed
+                                if (committed) {
+                                    long latency = now - event.createdNanos;
+                                    totalLatencyNanos.add(latency);
+                                    maxLatencyNanos.accumulateAndGet(latency, Math::max);
+                                    processedEvents.increment();
+                                }
                                 if (event instanceof FailedLogin) {
                                     ((FailedLogin) event).latch.countDown();
                                 } else if (event instanceof SuccessfulLogin) {
                                     ((SuccessfulLogin) event).latch.countDown();
                                 }
                             }
+                            logger.tracef("Shard %d processed %d events, queue depth: %d", index, events.size(), queue.size());
                             events.clear();
                         }
-                    } catch (Exception e) {
-                        ServicesLogger.LOGGER.failedProcessingType(e);
+                    } catch (InterruptedException e) {
+                        break;
                     }
-                } catch (InterruptedException e) {
-                    break;
                 }
+            } finally {
+                shutdownLatch.countDown();
             }
-        } finally {
-            shutdownLatch.countDown();
         }
     }
 
@@ -331,14 +436,27 @@ public class DefaultBruteForceProtector implements Runnable, BruteForceProtector
 
     @Override
     public void failedLogin(RealmModel realm, UserModel user, ClientConnection clientConnection) {
+        FailedLogin event = new FailedLogin(realm.getId(), user.getId(), clientConnection);
+        BlockingQueue<LoginEvent> queue = getShard(event.realmId, event.userId).queue;
+        long start = System.currentTimeMillis();
+        boolean queued = false;
         try {
-            FailedLogin event = new FailedLogin(realm.getId(), user.getId(), clientConnection);
-            queue.offer(event);
-            // wait a minimum of seconds for type to process so that a hacker
-            // cannot flood with failed logins and overwhelm the queue and not have notBefore updated to block next requests
-            // todo failure HTTP responses should be queued via async HTTP
-            event.latch.await(5, TimeUnit.SECONDS);
+            // when the queue is full the login thread waits for a space for the event, which also slows down the
+            // attacker, but no longer than it would wait for the event to be processed
+            queued = queue.offer(event, FAILED_LOGIN_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            if (queued) {
+                // wait a minimum of seconds for type to process so that a hacker
+                // cannot flood with failed logins and overwhelm the queue and not have notBefore updated to block next requests
+                // todo failure HTTP responses should be queued via async HTTP
+                long remaining = FAILED_LOGIN_WAIT_MILLIS - (System.currentTimeMillis() - start);
+                event.latch.await(Math.max(remaining, 0), TimeUnit.MILLISECONDS);
+            }
         } catch (InterruptedException e) {
+            // the request is being cancelled, so it does not wait any longer
+            Thread.currentThread().interrupt();
+        }
+        if (!queued) {
+            rejected(event);
         }
         logger.trace("sent failure event");
     }
@@ -346,10 +464,24 @@ public class DefaultBruteForceProtector implements Runnable, BruteForceProtector
     @Override
     public void successfulLogin(final RealmModel realm, final UserModel user, final ClientConnection clientConnection) {
         SuccessfulLogin event = new SuccessfulLogin(realm.getId(), user.getId(), clientConnection);
-        queue.offer(event);
+        // the successful logins only clear the failures, so they are dropped right away when the queue is full
+        if (!getShard(event.realmId, event.userId).queue.offer(event)) {
+            rejected(event);
+        }
         logger.trace("sent success event");
     }
 
+    protected void rejected(LoginEvent event) {
+        long rejected = rejectedEvents.incrementAndGet();
+        // Don't flood the log during an attack
+        if (rejected == 1 || rejected % 1000 == 0) {
+            logger.warnf("Brute force protector is overloaded. Queue depth: %d, rejected events: %d, average latency: %d ms",
+                    getQueueDepth(), rejected, getAverageLatencyMillis());
+        }
+        logger.debugf("Dropped the %s login of user '%s' in realm '%s'", event instanceof FailedLogin ? "failed" : "successful",
+                event.userId, event.realmId);
+    }
+
     @Override
     public boolean isTemporarilyDisabled(KeycloakSession session, RealmModel realm, UserModel user) {
         UserLoginFailureModel failure = session.loginFailures().getUserLoginFailure(realm, user.getId());
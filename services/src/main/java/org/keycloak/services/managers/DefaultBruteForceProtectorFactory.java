@@ -20,6 +20,10 @@ package org.keycloak.services.managers;
 import org.keycloak.Config;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.provider.ProviderConfigProperty;
+import org.keycloak.provider.ProviderConfigurationBuilder;
+
+import java.util.List;
 
 /**
  * @author <a href="mailto:bill@burkecentral.com">Bill Burke</a>
@@ -27,6 +31,9 @@ import org.keycloak.models.KeycloakSessionFactory;
  */
 public class DefaultBruteForceProtectorFactory implements BruteForceProtectorFactory {
     DefaultBruteForceProtector protector;
+    private int shards;
+    private int queueCapacity;
+    private int maxBatchSize;
 
     @Override
     public BruteForceProtector create(KeycloakSession session) {
@@ -35,16 +42,22 @@ public class DefaultBruteForceProtectorFactory implements BruteForceProtectorFac
 
     @Override
     public void init(Config.Scope config) {
-
+        shards = config.getInt("shards", DefaultBruteForceProtector.DEFAULT_SHARDS);
+        queueCapacity = config.getInt("queue-capacity", DefaultBruteForceProtector.DEFAULT_QUEUE_CAPACITY);
+        maxBatchSize = config.getInt("max-batch-size", DefaultBruteForceProtector.DEFAULT_MAX_BATCH_SIZE);
     }
 
     @Override
     public void postInit(KeycloakSessionFactory factory) {
-        protector = new DefaultBruteForceProtector(factory);
+        protector = new DefaultBruteForceProtector(factory, shards, queueCapacity, maxBatchSize);
         protector.start();
 
     }
 
+    public DefaultBruteForceProtector getProtector() {
+        return protector;
+    }
+
     @Override
     public void close() {
         protector.shutdown();
@@ -55,4 +68,28 @@ public class DefaultBruteForceProtectorFactory implements BruteForceProtectorFac
     public String getId() {
         return "default-brute-force-detector";
     }
+
+    @Override
+    public List<ProviderConfigProperty> getConfigMetadata() {
+        return ProviderConfigurationBuilder.create()
+                .property()
+                .name("shards")
+                .type("int")
+                .helpText("Number of threads processing the login events. Events of the same user are always processed by the same thread.")
+                .defaultValue(DefaultBruteForceProtector.DEFAULT_SHARDS)
+                .add()
+                .property()
+                .name("queue-capacity")
+                .type("int")
+                .helpText("Maximum number of login events waiting for each thread. When the queue is full, failed logins wait for a free space and successful logins are dropped.")
+                .defaultValue(DefaultBruteForceProtector.DEFAULT_QUEUE_CAPACITY)
+                .add()
+                .property()
+                .name("max-batch-size")
+                .type("int")
+                .helpText("Maximum number of login events processed in one transaction when the queue grows.")
+                .defaultValue(DefaultBruteForceProtector.DEFAULT_MAX_BATCH_SIZE)
+                .add()
+                .build();
+    }
 }
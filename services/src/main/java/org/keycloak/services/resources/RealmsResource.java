@@ -25,6 +25,7 @@ import org.keycloak.common.Profile;
 import org.keycloak.common.util.KeycloakUriBuilder;
 import org.keycloak.events.EventBuilder;
 import org.keycloak.models.ClientModel;
+import org.keycloak.models.KeycloakContext;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.RealmModel;
 import org.keycloak.protocol.LoginProtocol;
@@ -35,7 +36,9 @@ import org.keycloak.services.managers.RealmManager;
 import org.keycloak.services.resource.RealmResourceProvider;
 import org.keycloak.services.resources.account.AccountLoader;
 import org.keycloak.services.util.CacheControlUtil;
+import org.keycloak.services.util.CachedDocument;
 import org.keycloak.services.util.ResolveRelative;
+import org.keycloak.urls.UrlType;
 import org.keycloak.utils.ProfileHelper;
 import org.keycloak.wellknown.WellKnownProvider;
 import org.keycloak.wellknown.WellKnownProviderFactory;
@@ -235,7 +238,12 @@ public class RealmsResource {
         WellKnownProvider wellKnown = session.getProvider(WellKnownProvider.class, wellKnownProviderFactoryFound.getId());
 
         if (wellKnown != null) {
-            ResponseBuilder responseBuilder = Response.ok(wellKnown.getConfig()).cacheControl(CacheControlUtil.noCache());
+            KeycloakContext context = session.getContext();
+            String key = wellKnownProviderFactoryFound.getId() + " " + context.getUri(UrlType.FRONTEND).getBaseUri()
+                    + " " + context.getUri(UrlType.BACKEND).getBaseUri();
+            CachedDocument config = CachedDocument.get(context.getRealm(), key, wellKnown.getConfigSources(), wellKnown::getConfig);
+
+            ResponseBuilder responseBuilder = config.toResponse(context.getRequestHeaders()).cacheControl(CacheControlUtil.noCache());
             return Cors.add(session.getContext().getHttpRequest(), responseBuilder).allowedOrigins("*").auth().build();
         }
 
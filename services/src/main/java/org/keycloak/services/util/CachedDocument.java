@@ -0,0 +1,164 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.services.util;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.keycloak.common.util.Base64Url;
+import org.keycloak.crypto.JavaAlgorithm;
+import org.keycloak.jose.jws.crypto.HashUtils;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.cache.CachedRealmModel;
+
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+/**
+ * JSON document of a realm serialized once, together with a strong entity tag computed from its content, so that
+ * read-only endpoints like the JWK set or the well-known configuration can serve it without building and serializing
+ * it for every request and can answer conditional requests with {@code 304 Not Modified}.
+ * <p>
+ * The documents are cached along with the cached realm, so they live as long as the realm revision. Each document
+ * keeps the objects it was built from besides the realm, which are compared by identity to tell whether it can be
+ * served again.
+ */
+public class CachedDocument {
+
+    private static final int MAX_CACHED_DOCUMENTS_PER_REALM = 16;
+
+    private static final String ATTRIBUTE = CachedDocument.class.getName();
+
+    private static final ObjectMapper mapper = ObjectMapperResolver.createStreamSerializer();
+
+    private final byte[] content;
+    private final EntityTag etag;
+    private final List<?> sources;
+
+    private CachedDocument(byte[] content, List<?> sources) {
+        this.content = content;
+        this.etag = new EntityTag(Base64Url.encode(HashUtils.hash(JavaAlgorithm.SHA256, content)));
+        this.sources = sources;
+    }
+
+    /**
+     * Returns the document of the realm with the given key. The document is built and cached when it is not cached
+     * yet or when it was built from other sources.
+     *
+     * @param realm the realm of the document
+     * @param key the key of the document within the realm
+     * @param sources the objects the document is built from besides the realm, or {@code null} if the document must
+     *                not be cached
+     * @param representation supplies the representation to serialize when the document is built
+     * @return the document
+     */
+    public static CachedDocument get(RealmModel realm, String key, List<?> sources, Supplier<Object> representation) {
+        Map<String, CachedDocument> documents = sources == null ? null : getCachedDocuments(realm);
+        if (documents == null) {
+            return new CachedDocument(serialize(representation.get()), sources);
+        }
+
+        CachedDocument document = documents.get(key);
+        if (document == null || !document.isBuiltFrom(sources)) {
+            document = new CachedDocument(serialize(representation.get()), sources);
+            if (documents.size() < MAX_CACHED_DOCUMENTS_PER_REALM || documents.containsKey(key)) {
+                documents.put(key, document);
+            }
+        }
+        return document;
+    }
+
+    public EntityTag getEntityTag() {
+        return etag;
+    }
+
+    /**
+     * Builds the response with the document, or the {@code 304 Not Modified} response if the {@code If-None-Match}
+     * header of the request matches the entity tag of the document.
+     *
+     * @param headers the headers of the request
+     * @return the response builder
+     */
+    public Response.ResponseBuilder toResponse(HttpHeaders headers) {
+        if (isNotModified(headers == null ? null : headers.getRequestHeader(HttpHeaders.IF_NONE_MATCH))) {
+            return Response.notModified(etag);
+        }
+        return Response.ok(content, MediaType.APPLICATION_JSON_TYPE).tag(etag);
+    }
+
+    /**
+     * @param values the values of the {@code If-None-Match} header, or {@code null} if the header is missing
+     * @return {@code true} if any of the entity tags matches the entity tag of the document
+     */
+    boolean isNotModified(List<String> values) {
+        if (values == null) {
+            return false;
+        }
+        for (String value : values) {
+            for (String tag : value.split(",")) {
+                tag = tag.trim();
+                // If-None-Match uses the weak comparison
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals("\"" + etag.getValue() + "\"")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean isBuiltFrom(List<?> sources) {
+        if (this.sources.size() != sources.size()) {
+            return false;
+        }
+        for (int i = 0; i < sources.size(); i++) {
+            if (this.sources.get(i) != sources.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, CachedDocument> getCachedDocuments(RealmModel realm) {
+        if (!(realm instanceof CachedRealmModel)) {
+            return null;
+        }
+        ConcurrentHashMap cachedWith = ((CachedRealmModel) realm).getCachedWith();
+        if (cachedWith == null) {
+            return null;
+        }
+        return (Map<String, CachedDocument>) cachedWith.computeIfAbsent(ATTRIBUTE, key -> new ConcurrentHashMap<String, CachedDocument>());
+    }
+
+    private static byte[] serialize(Object representation) {
+        try {
+            return mapper.writeValueAsBytes(representation);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to serialize the document", e);
+        }
+    }
+}
@@ -17,6 +17,7 @@
 
 package org.keycloak.services.util;
 
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -38,7 +39,6 @@ import org.keycloak.models.ProtocolMapperModel;
 import org.keycloak.models.RoleModel;
 import org.keycloak.models.UserModel;
 import org.keycloak.models.utils.KeycloakModelUtils;
-import org.keycloak.models.utils.RoleUtils;
 import org.keycloak.protocol.ProtocolMapperUtils;
 import org.keycloak.protocol.oidc.OIDCLoginProtocol;
 import org.keycloak.protocol.oidc.TokenManager;
@@ -66,7 +66,9 @@ public class DefaultClientSessionContext implements ClientSessionContext {
     private Set<ProtocolMapperModel> protocolMappers;
 
     // All roles of user expanded. It doesn't yet take into account permitted clientScopes
-    private Set<RoleModel> userRoles;
+    private BitSet userRoles;
+    // Same index is needed for all the bitsets of roles
+    private RoleIndex roleIndex;
 
     private Map<String, Object> attributes = new HashMap<>();
 
@@ -155,7 +157,7 @@ public class DefaultClientSessionContext implements ClientSessionContext {
     }
 
 
-    private Set<RoleModel> getUserRoles() {
+    private BitSet getUserRoles() {
         // Load userRoles if not yet present
         if (userRoles == null) {
             userRoles = loadUserRoles();
@@ -252,19 +254,16 @@ public class DefaultClientSessionContext implements ClientSessionContext {
             return true;
         }
 
-        Set<RoleModel> clientScopeRoles = clientScope.getScopeMappingsStream().collect(Collectors.toSet());
+        // Expand (resolve composite roles)
+        BitSet clientScopeRoles = getRoleIndex().expandCompositeRoles(clientScope.getScopeMappingsStream());
 
         // Client scope is automatically permitted if it doesn't have any role scope mappings
         if (clientScopeRoles.isEmpty()) {
             return true;
         }
 
-        // Expand (resolve composite roles)
-        clientScopeRoles = RoleUtils.expandCompositeRoles(clientScopeRoles);
-
         // Check if expanded roles of clientScope has any intersection with expanded roles of user. If not, it is not permitted
-        clientScopeRoles.retainAll(getUserRoles());
-        return !clientScopeRoles.isEmpty();
+        return clientScopeRoles.intersects(getUserRoles());
     }
 
 
@@ -294,9 +293,17 @@ public class DefaultClientSessionContext implements ClientSessionContext {
     }
 
 
-    private Set<RoleModel> loadUserRoles() {
+    private BitSet loadUserRoles() {
         UserModel user = clientSession.getUserSession().getUser();
-        return RoleUtils.getDeepUserRoleMappings(user);
+        return UserMembershipUtil.getDeepUserRoleMappings(user, getRoleIndex());
+    }
+
+
+    private RoleIndex getRoleIndex() {
+        if (roleIndex == null) {
+            roleIndex = RoleIndex.of(clientSession.getRealm());
+        }
+        return roleIndex;
     }
 
 }
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.services.util;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RoleModel;
+import org.keycloak.models.cache.CachedRealmModel;
+
+/**
+ * Dense integer indexes of the roles of a realm, so that sets of roles can be represented as bitsets. The indexes are
+ * assigned on the first use and the index is cached along with the cached realm, so it lives as long as the realm
+ * revision. The indexes of removed roles are not reused until the realm is reloaded.
+ */
+public class RoleIndex {
+
+    private final Map<String, Integer> indexes = new ConcurrentHashMap<>();
+    private final Map<Integer, String> ids = new ConcurrentHashMap<>();
+    private final AtomicInteger nextIndex = new AtomicInteger();
+
+    @SuppressWarnings("unchecked")
+    public static RoleIndex of(RealmModel realm) {
+        if (realm instanceof CachedRealmModel) {
+            return (RoleIndex) ((CachedRealmModel) realm).getCachedWith().computeIfAbsent(RoleIndex.class.getName(), key -> new RoleIndex());
+        }
+        return new RoleIndex();
+    }
+
+    public int indexOf(RoleModel role) {
+        return indexes.computeIfAbsent(role.getId(), id -> {
+            int index = nextIndex.getAndIncrement();
+            ids.put(index, id);
+            return index;
+        });
+    }
+
+    public boolean contains(BitSet roles, RoleModel role) {
+        return roles.get(indexOf(role));
+    }
+
+    /**
+     * @param roles
+     * @return bitset of the given roles
+     */
+    public BitSet toBitSet(Stream<RoleModel> roles) {
+        BitSet bits = new BitSet(nextIndex.get());
+        roles.forEach(role -> bits.set(indexOf(role)));
+        return bits;
+    }
+
+    /**
+     * @param roles
+     * @return bitset of the given roles with composite roles expanded
+     */
+    public BitSet expandCompositeRoles(Stream<RoleModel> roles) {
+        BitSet bits = new BitSet(nextIndex.get());
+        roles.forEach(role -> {
+            int index = indexOf(role);
+            // composites of an already contained role are contained too
+            if (bits.get(index)) return;
+            bits.set(index);
+
+            if (role.isComposite()) {
+                role.getDeepCompositesStream().forEach(composite -> bits.set(indexOf(composite)));
+            }
+        });
+        return bits;
+    }
+
+    /**
+     * @param realm realm of the roles
+     * @param roles
+     * @return roles of the given bitset, which still exist in the realm
+     */
+    public Stream<RoleModel> toRoles(RealmModel realm, BitSet roles) {
+        return roles.stream()
+                .mapToObj(ids::get)
+                .map(realm::getRoleById)
+                .filter(Objects::nonNull);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.services.util;
+
+import java.util.BitSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.keycloak.models.RoleModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.cache.CachedUserModel;
+import org.keycloak.models.utils.ModelToRepresentation;
+import org.keycloak.models.utils.RoleUtils;
+
+/**
+ * Role and group memberships of users needed for the tokens, taken from the user cache when the user is cached.
+ */
+public class UserMembershipUtil {
+
+    /**
+     * @param user
+     * @return all user role mappings including all groups of user. Composite roles will be expanded
+     */
+    public static Set<RoleModel> getDeepUserRoleMappings(UserModel user) {
+        if (user instanceof CachedUserModel) {
+            return ((CachedUserModel) user).getDeepRoleMappingsStream().collect(Collectors.toSet());
+        }
+        return RoleUtils.getDeepUserRoleMappings(user);
+    }
+
+    /**
+     * @param user
+     * @param roleIndex index of the roles of the realm of the user
+     * @return bitset of all user role mappings including all groups of user. Composite roles will be expanded
+     */
+    public static BitSet getDeepUserRoleMappings(UserModel user, RoleIndex roleIndex) {
+        if (user instanceof CachedUserModel) {
+            return roleIndex.toBitSet(((CachedUserModel) user).getDeepRoleMappingsStream());
+        }
+        return roleIndex.expandCompositeRoles(RoleUtils.getUserRoleMappings(user).stream());
+    }
+
+    /**
+     * @param user
+     * @return full paths of all the groups of the user
+     */
+    public static Stream<String> getGroupPathsStream(UserModel user) {
+        if (user instanceof CachedUserModel) {
+            return ((CachedUserModel) user).getGroupPathsStream();
+        }
+        return user.getGroupsStream().map(ModelToRepresentation::buildGroupPath);
+    }
+}
@@ -17,6 +17,8 @@
 
 package org.keycloak.wellknown;
 
+import java.util.List;
+
 import org.keycloak.provider.Provider;
 
 /**
@@ -26,4 +28,16 @@ public interface WellKnownProvider extends Provider {
 
     Object getConfig();
 
+    /**
+     * Returns the objects the config is computed from besides the realm, the frontend and backend URIs of the request
+     * and the server configuration. They are compared by identity to tell whether the config serialized for an earlier
+     * request can be served again. Providers which compute the config from anything else should return {@code null},
+     * so that the config is computed for every request.
+     *
+     * @return the objects the config is computed from, or {@code null} if the config must not be cached
+     */
+    default List<?> getConfigSources() {
+        return null;
+    }
+
 }
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.keys;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.component.ComponentModel;
+import org.keycloak.crypto.Algorithm;
+import org.keycloak.crypto.KeyStatus;
+import org.keycloak.crypto.KeyType;
+import org.keycloak.crypto.KeyUse;
+import org.keycloak.crypto.KeyWrapper;
+
+public class RealmKeysTest {
+
+    @Test
+    public void testActiveKeyOfFirstProvider() {
+        KeyWrapper passive = key("passive", KeyUse.SIG, Algorithm.RS256, KeyStatus.PASSIVE);
+        KeyWrapper first = key("first", KeyUse.SIG, Algorithm.RS256, KeyStatus.ACTIVE);
+        KeyWrapper second = key("second", KeyUse.SIG, Algorithm.RS256, KeyStatus.ACTIVE);
+        KeyWrapper encryption = key("enc", KeyUse.ENC, Algorithm.RS256, KeyStatus.ACTIVE);
+
+        RealmKeys keys = new RealmKeys(Collections.emptyList(), Arrays.asList(provider(passive, first), provider(second, encryption)));
+
+        Assert.assertSame(first, keys.getActiveKey(KeyUse.SIG, Algorithm.RS256));
+        Assert.assertSame(encryption, keys.getActiveKey(KeyUse.ENC, Algorithm.RS256));
+        Assert.assertNull(keys.getActiveKey(KeyUse.SIG, Algorithm.ES256));
+        Assert.assertNull(keys.getActiveKey(KeyUse.SIG, null));
+    }
+
+    @Test
+    public void testKeyByKid() {
+        KeyWrapper passive = key("kid", KeyUse.SIG, Algorithm.RS256, KeyStatus.PASSIVE);
+        KeyWrapper disabled = key("disabled", KeyUse.SIG, Algorithm.RS256, KeyStatus.DISABLED);
+
+        RealmKeys keys = new RealmKeys(Collections.emptyList(), Collections.singletonList(provider(passive, disabled)));
+
+        Assert.assertSame(passive, keys.getKey("kid", KeyUse.SIG, Algorithm.RS256));
+        Assert.assertNull(keys.getKey("kid", KeyUse.SIG, Algorithm.RS512));
+        Assert.assertNull(keys.getKey("kid", KeyUse.ENC, Algorithm.RS256));
+        Assert.assertNull(keys.getKey("disabled", KeyUse.SIG, Algorithm.RS256));
+        Assert.assertNull(keys.getKey("unknown", KeyUse.SIG, Algorithm.RS256));
+    }
+
+    @Test
+    public void testKeysInProviderOrder() {
+        KeyWrapper first = key("first", KeyUse.SIG, Algorithm.RS256, KeyStatus.ACTIVE);
+        KeyWrapper disabled = key("disabled", KeyUse.SIG, Algorithm.RS256, KeyStatus.DISABLED);
+        KeyWrapper second = key("second", KeyUse.SIG, Algorithm.RS256, KeyStatus.PASSIVE);
+
+        RealmKeys keys = new RealmKeys(Collections.emptyList(), Arrays.asList(provider(first, disabled), provider(second)));
+
+        Assert.assertEquals(Arrays.asList(first, disabled, second), keys.getKeysStream().collect(Collectors.toList()));
+        Assert.assertEquals(Arrays.asList(first, second), keys.getKeysStream(KeyUse.SIG, Algorithm.RS256).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testLoadedFromSameComponents() {
+        ComponentModel component = new ComponentModel();
+        List<ComponentModel> components = Collections.singletonList(component);
+        RealmKeys keys = new RealmKeys(components, Collections.emptyList());
+
+        Assert.assertTrue(keys.isLoadedFrom(Collections.singletonList(component)));
+        Assert.assertFalse(keys.isLoadedFrom(Collections.singletonList(new ComponentModel(component))));
+        Assert.assertFalse(keys.isLoadedFrom(Collections.emptyList()));
+    }
+
+    private static KeyProvider provider(KeyWrapper... keys) {
+        return () -> Stream.of(keys);
+    }
+
+    private static KeyWrapper key(String kid, KeyUse use, String algorithm, KeyStatus status) {
+        KeyWrapper key = new KeyWrapper();
+        key.setKid(kid);
+        key.setUse(use);
+        key.setType(KeyType.RSA);
+        key.setAlgorithm(algorithm);
+        key.setStatus(status);
+        return key;
+    }
+}
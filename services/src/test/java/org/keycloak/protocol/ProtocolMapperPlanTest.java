@@ -0,0 +1,251 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.protocol;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.models.AuthenticatedClientSessionModel;
+import org.keycloak.models.ClientModel;
+import org.keycloak.models.ClientScopeModel;
+import org.keycloak.models.ClientSessionContext;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.ProtocolMapperModel;
+import org.keycloak.models.cache.CachedClientScopeModel;
+import org.keycloak.protocol.oidc.mappers.OIDCAccessTokenMapper;
+
+public class ProtocolMapperPlanTest {
+
+    private final Map<String, ProtocolMapper> mapperProviders = new HashMap<>();
+    private final KeycloakSession session;
+
+    public ProtocolMapperPlanTest() {
+        mapperProviders.put("access-token-mapper", mapperProvider("access-token-mapper", 10, OIDCAccessTokenMapper.class));
+        mapperProviders.put("other-mapper", mapperProvider("other-mapper", 20));
+        mapperProviders.put("first-mapper", mapperProvider("first-mapper", 0, OIDCAccessTokenMapper.class));
+        KeycloakSessionFactory sessionFactory = proxy(KeycloakSessionFactory.class, (proxy, method, args) ->
+                method.getName().equals("getProviderFactory") && args.length == 2 ? mapperProviders.get((String) args[1]) : null);
+        session = proxy(KeycloakSession.class, (proxy, method, args) ->
+                method.getName().equals("getKeycloakSessionFactory") ? sessionFactory : null);
+    }
+
+    @Test
+    public void testPlanReusedForUnchangedClientAndScopes() {
+        Cached scope1 = new Cached("scope1", mapper("a", "access-token-mapper"));
+        Cached scope2 = new Cached("scope2", mapper("b", "other-mapper"));
+        Cached client = new Cached("client", mapper("c", "first-mapper"));
+
+        ProtocolMapperPlan plan = plan(client, scope1, scope2);
+        Assert.assertEquals(Arrays.asList("c", "a", "b"), names(plan.getMappers()));
+        Assert.assertEquals(Arrays.asList("c", "a"), names(plan.getMappers(OIDCAccessTokenMapper.class)));
+
+        // The order of the client scopes does not matter
+        Assert.assertSame(plan, plan(client, scope2, scope1));
+
+        // Another set of the client scopes has its own plan
+        ProtocolMapperPlan otherPlan = plan(client, scope1);
+        Assert.assertNotSame(plan, otherPlan);
+        Assert.assertEquals(Arrays.asList("c", "a"), names(otherPlan.getMappers()));
+        Assert.assertSame(otherPlan, plan(client, scope1));
+        Assert.assertSame(plan, plan(client, scope1, scope2));
+
+        // Within a request, the plan is looked up once
+        ClientSessionContext ctx = ctx(client, scope1, scope2);
+        Assert.assertSame(ProtocolMapperPlan.of(session, ctx), ProtocolMapperPlan.of(session, ctx));
+    }
+
+    @Test
+    public void testPlanRebuiltAfterMapperChanged() {
+        Cached scope = new Cached("scope", mapper("a", "access-token-mapper"));
+        Cached client = new Cached("client");
+        ProtocolMapperPlan plan = plan(client, scope);
+
+        // Added, the client scope is updated in the transaction and then reloaded to the cache
+        scope.mappers.add(mapper("b", "other-mapper"));
+        scope.update();
+        ProtocolMapperPlan updatedPlan = plan(client, scope);
+        Assert.assertNotSame(plan, updatedPlan);
+        Assert.assertNotSame("The plan is not cached for an updated client scope", updatedPlan, plan(client, scope));
+        Assert.assertEquals(Arrays.asList("a", "b"), names(updatedPlan.getMappers()));
+        scope.reload();
+        plan = assertRebuilt(plan, client, scope);
+        Assert.assertEquals(Arrays.asList("a", "b"), names(plan.getMappers()));
+
+        // Updated
+        scope.mappers.set(1, mapper("b", "first-mapper"));
+        scope.reload();
+        plan = assertRebuilt(plan, client, scope);
+        Assert.assertEquals(Arrays.asList("b", "a"), names(plan.getMappers()));
+
+        // Removed
+        scope.mappers.remove(0);
+        scope.reload();
+        plan = assertRebuilt(plan, client, scope);
+        Assert.assertEquals(Arrays.asList("b"), names(plan.getMappers()));
+
+        // A mapper of the client itself
+        client.mappers.add(mapper("c", "other-mapper"));
+        client.reload();
+        plan = assertRebuilt(plan, client, scope);
+        Assert.assertEquals(Arrays.asList("b", "c"), names(plan.getMappers()));
+    }
+
+    @Test
+    public void testPlanRebuiltAfterClientScopeAttachedOrDetached() {
+        Cached scope1 = new Cached("scope1", mapper("a", "access-token-mapper"));
+        Cached scope2 = new Cached("scope2", mapper("b", "other-mapper"));
+        Cached client = new Cached("client");
+        ProtocolMapperPlan plan = plan(client, scope1);
+
+        // Attached, the client is updated and so reloaded to the cache
+        client.reload();
+        ProtocolMapperPlan attachedPlan = assertRebuilt(plan, client, scope1, scope2);
+        Assert.assertEquals(Arrays.asList("a", "b"), names(attachedPlan.getMappers()));
+
+        // Detached
+        client.reload();
+        ProtocolMapperPlan detachedPlan = assertRebuilt(plan, client, scope1);
+        Assert.assertNotSame(attachedPlan, detachedPlan);
+        Assert.assertEquals(Arrays.asList("a"), names(detachedPlan.getMappers()));
+    }
+
+    private ProtocolMapperPlan assertRebuilt(ProtocolMapperPlan plan, Cached client, Cached... scopes) {
+        ProtocolMapperPlan rebuilt = plan(client, scopes);
+        Assert.assertNotSame(plan, rebuilt);
+        Assert.assertSame("The rebuilt plan is cached", rebuilt, plan(client, scopes));
+        return rebuilt;
+    }
+
+    private ProtocolMapperPlan plan(Cached client, Cached... scopes) {
+        return ProtocolMapperPlan.of(session, ctx(client, scopes));
+    }
+
+    private static List<String> names(List<? extends Map.Entry<ProtocolMapperModel, ?>> mappers) {
+        return mappers.stream().map(mapper -> mapper.getKey().getName()).collect(Collectors.toList());
+    }
+
+    private static ProtocolMapperModel mapper(String name, String protocolMapper) {
+        ProtocolMapperModel mapper = new ProtocolMapperModel();
+        mapper.setId(name);
+        mapper.setName(name);
+        mapper.setProtocolMapper(protocolMapper);
+        return mapper;
+    }
+
+    private static ProtocolMapper mapperProvider(String id, int priority, Class<?>... types) {
+        Class<?>[] interfaces = Stream.concat(Stream.of(ProtocolMapper.class), Stream.of(types)).toArray(Class<?>[]::new);
+        return (ProtocolMapper) Proxy.newProxyInstance(ProtocolMapperPlanTest.class.getClassLoader(), interfaces, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getId":
+                case "toString":
+                    return id;
+                case "getPriority":
+                    return priority;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return null;
+            }
+        });
+    }
+
+    private static ClientSessionContext ctx(Cached client, Cached... scopes) {
+        ClientModel clientModel = client.model();
+        List<ClientScopeModel> scopeModels = Stream.of(scopes).map(Cached::model).collect(Collectors.toList());
+        AuthenticatedClientSessionModel clientSession = proxy(AuthenticatedClientSessionModel.class, (proxy, method, args) ->
+                method.getName().equals("getClient") ? clientModel : null);
+        Map<String, Object> attributes = new HashMap<>();
+        return proxy(ClientSessionContext.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getClientSession":
+                    return clientSession;
+                case "getClientScopesStream":
+                    return scopeModels.stream();
+                case "getProtocolMappersStream":
+                    return Stream.concat(Stream.of(clientModel), scopeModels.stream())
+                            .flatMap(ClientScopeModel::getProtocolMappersStream);
+                case "getAttribute":
+                    return ((Class<?>) args[1]).cast(attributes.get((String) args[0]));
+                case "setAttribute":
+                    attributes.put((String) args[0], args[1]);
+                    return null;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    /**
+     * A client or a client scope in the cache. The map cached along with it is replaced when it is reloaded to the
+     * cache after an update, and there is none while it is updated in the current transaction.
+     */
+    private static class Cached {
+
+        private final String id;
+        private final List<ProtocolMapperModel> mappers;
+        private ConcurrentHashMap<Object, Object> cachedWith = new ConcurrentHashMap<>();
+
+        Cached(String id, ProtocolMapperModel... mappers) {
+            this.id = id;
+            this.mappers = new ArrayList<>(Arrays.asList(mappers));
+        }
+
+        void update() {
+            cachedWith = null;
+        }
+
+        void reload() {
+            cachedWith = new ConcurrentHashMap<>();
+        }
+
+        ClientModel model() {
+            return (ClientModel) Proxy.newProxyInstance(ProtocolMapperPlanTest.class.getClassLoader(),
+                    new Class[] { ClientModel.class, CachedClientScopeModel.class }, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getId":
+                    case "toString":
+                        return id;
+                    case "getProtocolMappersStream":
+                        return new ArrayList<>(mappers).stream();
+                    case "getCachedWith":
+                        return cachedWith;
+                    default:
+                        return null;
+                }
+            });
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(ProtocolMapperPlanTest.class.getClassLoader(), new Class[] { type }, handler);
+    }
+}
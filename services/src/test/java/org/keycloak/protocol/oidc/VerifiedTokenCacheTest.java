@@ -0,0 +1,116 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.protocol.oidc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.component.ComponentModel;
+import org.keycloak.keys.DefaultKeyManager;
+import org.keycloak.keys.KeyProvider;
+import org.keycloak.keys.KeyProviderFactory;
+import org.keycloak.models.KeyManager;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.cache.CachedRealmModel;
+
+public class VerifiedTokenCacheTest {
+
+    @Test
+    public void testCachedWithCachedKeys() {
+        ConcurrentHashMap<Object, Object> cachedWith = new ConcurrentHashMap<>();
+        RealmModel realm = realm(cachedWith);
+
+        VerifiedTokenCache cache = VerifiedTokenCache.of(session(true), realm);
+        Assert.assertNotNull(cache);
+        Assert.assertSame("The cache is shared by the sessions", cache, VerifiedTokenCache.of(session(true), realm));
+    }
+
+    @Test
+    public void testNotCachedWithKeysLoadedForEachSession() {
+        ConcurrentHashMap<Object, Object> cachedWith = new ConcurrentHashMap<>();
+        RealmModel realm = realm(cachedWith);
+
+        Assert.assertNull(VerifiedTokenCache.of(session(false), realm));
+        Assert.assertTrue(cachedWith.isEmpty());
+    }
+
+    @Test
+    public void testNotCachedWithRealmNotCached() {
+        Assert.assertNull(VerifiedTokenCache.of(session(true), realm(null)));
+    }
+
+    private static KeycloakSession session(boolean cacheable) {
+        KeyProviderFactory<?> factory = proxy(KeyProviderFactory.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "isCacheable":
+                    return cacheable;
+                case "create":
+                    return (KeyProvider) Stream::empty;
+                default:
+                    return null;
+            }
+        });
+        KeycloakSessionFactory sessionFactory = proxy(KeycloakSessionFactory.class, (proxy, method, args) ->
+                method.getName().equals("getProviderFactory") ? factory : null);
+        KeyManager[] keys = new KeyManager[1];
+        KeycloakSession session = proxy(KeycloakSession.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getKeycloakSessionFactory":
+                    return sessionFactory;
+                case "keys":
+                    return keys[0];
+                default:
+                    return null;
+            }
+        });
+        keys[0] = new DefaultKeyManager(session);
+        return session;
+    }
+
+    private static RealmModel realm(ConcurrentHashMap<Object, Object> cachedWith) {
+        ComponentModel component = new ComponentModel();
+        component.setId("key-provider");
+        component.setProviderId("key-provider");
+        return (RealmModel) Proxy.newProxyInstance(VerifiedTokenCacheTest.class.getClassLoader(),
+                new Class[] { RealmModel.class, CachedRealmModel.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getId":
+                case "getName":
+                case "toString":
+                    return "realm";
+                case "getComponentsStream":
+                    return Stream.of(component);
+                case "getCachedWith":
+                    return cachedWith;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(VerifiedTokenCacheTest.class.getClassLoader(), new Class[] { type }, handler);
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.services.managers;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.common.ClientConnection;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.KeycloakTransactionManager;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+
+public class DefaultBruteForceProtectorTest {
+
+    private RecordingProtector protector;
+
+    @After
+    public void after() {
+        if (protector != null) {
+            protector.shutdown();
+        }
+    }
+
+    @Test
+    public void testEventsOfUserProcessedInOrderByOneShard() throws Exception {
+        protector = new RecordingProtector(4, 1000);
+        protector.start();
+
+        int users = 20;
+        int eventsPerUser = 50;
+        for (int i = 0; i < eventsPerUser; i++) {
+            for (int user = 0; user < users; user++) {
+                protector.successfulLogin(realm("realm1"), user("user" + user), connection(String.valueOf(i)));
+            }
+        }
+        // Failed login waits until processed, the queues are FIFO, so all the events of the user are processed after it
+        for (int user = 0; user < users; user++) {
+            protector.failedLogin(realm("realm1"), user("user" + user), connection(String.valueOf(eventsPerUser)));
+        }
+
+        for (int user = 0; user < users; user++) {
+            List<String[]> events = protector.events.get("user" + user);
+            Assert.assertEquals(eventsPerUser + 1, events.size());
+            String thread = events.get(0)[0];
+            for (int i = 0; i < events.size(); i++) {
+                Assert.assertEquals("Events of a user must be processed by one shard", thread, events.get(i)[0]);
+                Assert.assertEquals("Events of a user must be processed in order", String.valueOf(i), events.get(i)[1]);
+            }
+        }
+        Assert.assertEquals(users * (eventsPerUser + 1), protector.getProcessedEvents());
+        Assert.assertEquals(0, protector.getRejectedEvents());
+    }
+
+    @Test
+    public void testFailedLoginNotDroppedWhenQueueIsFull() throws Exception {
+        protector = new RecordingProtector(1, 1);
+
+        // The shard is not started yet, so the queue stays full and successful logins over the capacity are dropped
+        protector.successfulLogin(realm("realm1"), user("user1"), connection("0"));
+        protector.successfulLogin(realm("realm1"), user("user1"), connection("1"));
+        Assert.assertEquals(1, protector.getRejectedEvents());
+        Assert.assertEquals(1, protector.getQueueDepth());
+
+        Thread failedLogin = new Thread(() -> protector.failedLogin(realm("realm1"), user("user2"), connection("2")));
+        failedLogin.start();
+        failedLogin.join(500);
+        Assert.assertTrue("Failed login must wait for a space in the queue", failedLogin.isAlive());
+
+        protector.start();
+        failedLogin.join(TimeUnit.SECONDS.toMillis(10));
+        Assert.assertFalse(failedLogin.isAlive());
+
+        Assert.assertEquals(1, protector.events.get("user2").size());
+        Assert.assertEquals(1, protector.getRejectedEvents());
+    }
+
+    @Test
+    public void testFailedLoginReturnsWhenShardIsBlocked() throws Exception {
+        protector = new RecordingProtector(1, 1);
+        protector.start();
+        try {
+            // The shard takes the event of the blocked user and waits, e.g. for a slow database
+            Thread blocked = new Thread(() -> protector.failedLogin(realm("realm1"), user("blocked"), connection("0")));
+            blocked.start();
+            Assert.assertTrue(protector.blocked.await(10, TimeUnit.SECONDS));
+            protector.successfulLogin(realm("realm1"), user("user1"), connection("1"));
+            Assert.assertEquals(1, protector.getQueueDepth());
+
+            // The queue stays full, so the failed login is dropped once the wait is over
+            long start = System.currentTimeMillis();
+            protector.failedLogin(realm("realm1"), user("user2"), connection("2"));
+            long elapsed = System.currentTimeMillis() - start;
+            Assert.assertTrue("Failed login must wait at most 5 seconds, waited " + elapsed + " ms", elapsed < TimeUnit.SECONDS.toMillis(7));
+            Assert.assertEquals(1, protector.getRejectedEvents());
+
+            // An interrupted request does not wait at all
+            Thread.currentThread().interrupt();
+            start = System.currentTimeMillis();
+            protector.failedLogin(realm("realm1"), user("user3"), connection("3"));
+            Assert.assertTrue(Thread.interrupted());
+            Assert.assertTrue(System.currentTimeMillis() - start < TimeUnit.SECONDS.toMillis(1));
+            Assert.assertEquals(2, protector.getRejectedEvents());
+
+            blocked.join(TimeUnit.SECONDS.toMillis(10));
+            Assert.assertFalse(blocked.isAlive());
+        } finally {
+            protector.unblock.countDown();
+        }
+    }
+
+    @Test
+    public void testEventsOfFailedTransactionNotCounted() {
+        protector = new RecordingProtector(1, 100);
+        protector.start();
+
+        protector.failedLogin(realm("realm1"), user("broken"), connection("0"));
+        Assert.assertEquals(0, protector.getProcessedEvents());
+
+        protector.failedLogin(realm("realm1"), user("user1"), connection("0"));
+        Assert.assertEquals(1, protector.getProcessedEvents());
+    }
+
+    private static class RecordingProtector extends DefaultBruteForceProtector {
+
+        // Thread and remote address of the events of each user in the order of processing
+        private final Map<String, List<String[]>> events = new ConcurrentHashMap<>();
+        // Reached and released by the processing of the events of the "blocked" user
+        private final CountDownLatch blocked = new CountDownLatch(1);
+        private final CountDownLatch unblock = new CountDownLatch(1);
+
+        RecordingProtector(int shards, int queueCapacity) {
+            super(sessionFactory(), shards, queueCapacity, DEFAULT_MAX_BATCH_SIZE);
+        }
+
+        @Override
+        protected void failure(KeycloakSession session, LoginEvent event) {
+            if (event.userId.equals("broken")) {
+                throw new IllegalStateException("Failed to process the event");
+            }
+            if (event.userId.equals("blocked")) {
+                blocked.countDown();
+                try {
+                    unblock.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            record(event);
+        }
+
+        @Override
+        protected void success(KeycloakSession session, LoginEvent event) {
+            record(event);
+        }
+
+        private void record(LoginEvent event) {
+            events.computeIfAbsent(event.userId, userId -> new ArrayList<>())
+                    .add(new String[] { Thread.currentThread().getName(), event.clientConnection.getRemoteAddr() });
+        }
+    }
+
+    private static KeycloakSessionFactory sessionFactory() {
+        KeycloakTransactionManager transactionManager = proxy(KeycloakTransactionManager.class, (proxy, method, args) -> null);
+        KeycloakSession session = proxy(KeycloakSession.class, (proxy, method, args) ->
+                method.getName().equals("getTransactionManager") ? transactionManager : null);
+        return proxy(KeycloakSessionFactory.class, (proxy, method, args) -> method.getName().equals("create") ? session : null);
+    }
+
+    private static RealmModel realm(String id) {
+        return proxy(RealmModel.class, (proxy, method, args) -> method.getName().equals("getId") ? id : null);
+    }
+
+    private static UserModel user(String id) {
+        return proxy(UserModel.class, (proxy, method, args) -> method.getName().equals("getId") ? id : null);
+    }
+
+    private static ClientConnection connection(String remoteAddr) {
+        return proxy(ClientConnection.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getRemoteAddr":
+                    return remoteAddr;
+                case "getRemotePort":
+                case "getLocalPort":
+                    return 0;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, java.lang.reflect.InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(DefaultBruteForceProtectorTest.class.getClassLoader(), new Class[] { type }, handler);
+    }
+}
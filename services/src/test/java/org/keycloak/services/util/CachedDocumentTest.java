@@ -0,0 +1,56 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.services.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CachedDocumentTest {
+
+    @Test
+    public void testEntityTagOfContent() {
+        CachedDocument document = document("value");
+
+        Assert.assertFalse(document.getEntityTag().isWeak());
+        Assert.assertEquals(document.getEntityTag(), document("value").getEntityTag());
+        Assert.assertNotEquals(document.getEntityTag(), document("other").getEntityTag());
+    }
+
+    @Test
+    public void testNotModified() {
+        CachedDocument document = document("value");
+        String etag = "\"" + document.getEntityTag().getValue() + "\"";
+
+        Assert.assertTrue(document.isNotModified(Collections.singletonList(etag)));
+        Assert.assertTrue(document.isNotModified(Collections.singletonList("W/" + etag)));
+        Assert.assertTrue(document.isNotModified(Collections.singletonList("\"other\", " + etag)));
+        Assert.assertTrue(document.isNotModified(Arrays.asList("\"other\"", etag)));
+        Assert.assertTrue(document.isNotModified(Collections.singletonList("*")));
+
+        Assert.assertFalse(document.isNotModified(null));
+        Assert.assertFalse(document.isNotModified(Collections.singletonList("\"other\"")));
+        Assert.assertFalse(document.isNotModified(Collections.singletonList(document.getEntityTag().getValue())));
+    }
+
+    private static CachedDocument document(String value) {
+        return CachedDocument.get(null, "key", Collections.emptyList(), () -> Collections.singletonMap("key", value));
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2023 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.keycloak.services.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.keycloak.models.ClientModel;
+import org.keycloak.models.ClientScopeModel;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.RoleModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.utils.RoleUtils;
+import org.keycloak.protocol.oidc.TokenManager;
+
+public class RoleIndexTest {
+
+    private final Map<String, RoleModel> roles = new HashMap<>();
+    private final RealmModel realm = proxy(RealmModel.class, (proxy, method, args) ->
+            method.getName().equals("getRoleById") ? roles.get((String) args[0]) : null);
+
+    @Test
+    public void testExpandCompositeRoles() {
+        RoleModel c = role("c");
+        RoleModel b = role("b", c);
+        RoleModel a = role("a", b);
+        RoleModel d = role("d");
+
+        RoleIndex index = new RoleIndex();
+        BitSet expanded = index.expandCompositeRoles(Stream.of(a));
+        Assert.assertEquals(ids("a", "b", "c"), toIds(index, expanded));
+        Assert.assertTrue(index.contains(expanded, c));
+        Assert.assertFalse(index.contains(expanded, d));
+
+        // composites of a role already contained are not expanded again, but they are contained
+        Assert.assertEquals(ids("a", "b", "c", "d"), toIds(index, index.expandCompositeRoles(Stream.of(b, d, a))));
+
+        // not expanded
+        Assert.assertEquals(ids("a", "d"), toIds(index, index.toBitSet(Stream.of(a, d))));
+    }
+
+    @Test
+    public void testRemovedRolesNotReturned() {
+        RoleModel a = role("a");
+        RoleModel b = role("b");
+
+        RoleIndex index = new RoleIndex();
+        BitSet bits = index.toBitSet(Stream.of(a, b));
+        roles.remove("b");
+        Assert.assertEquals(ids("a"), toIds(index, bits));
+    }
+
+    @Test
+    public void testAccessWithFullScopeAllowed() {
+        RoleModel clientRole = role("client-role");
+        RoleModel userRole = role("user-role", clientRole);
+        RoleModel other = role("other");
+        RoleModel scoped = role("scoped");
+
+        UserModel user = user(userRole, other);
+        ClientModel client = client(true, Arrays.asList(clientRole));
+
+        Set<RoleModel> access = TokenManager.getAccess(user, client, Stream.of(clientScope(scoped)));
+        Assert.assertEquals(ids("client-role", "user-role", "other"), access.stream().map(RoleModel::getId).collect(Collectors.toSet()));
+    }
+
+    @Test
+    public void testAccessLimitedToClientRolesAndScopeMappings() {
+        RoleModel clientRole1 = role("client-role-1");
+        RoleModel clientRole2 = role("client-role-2");
+        RoleModel otherClientRole = role("other-client-role");
+        RoleModel userRole = role("user-role", clientRole1, otherClientRole);
+        RoleModel realmRole = role("realm-role");
+        RoleModel unrelated = role("unrelated");
+        RoleModel scopedComposite = role("scoped-composite", realmRole);
+
+        UserModel user = user(userRole, realmRole, unrelated);
+        ClientModel client = client(false, Arrays.asList(clientRole1, clientRole2));
+
+        // the client roles of the client itself and the expanded scope mappings intersected with the expanded user roles
+        Set<RoleModel> access = TokenManager.getAccess(user, client, Stream.of(clientScope(scopedComposite)));
+        Assert.assertEquals(ids("client-role-1", "realm-role"), access.stream().map(RoleModel::getId).collect(Collectors.toSet()));
+
+        // the same roles as computed without the index
+        Set<RoleModel> expected = RoleUtils.getDeepUserRoleMappings(user);
+        Set<RoleModel> scope = RoleUtils.expandCompositeRoles(new HashSet<>(Arrays.asList(clientRole1, clientRole2, scopedComposite)));
+        expected.retainAll(scope);
+        Assert.assertEquals(expected, access);
+
+        Assert.assertTrue(TokenManager.getAccess(user(unrelated), client, Stream.of(clientScope(scopedComposite))).isEmpty());
+    }
+
+    private static Set<String> ids(String... ids) {
+        return new HashSet<>(Arrays.asList(ids));
+    }
+
+    private Set<String> toIds(RoleIndex index, BitSet bits) {
+        return index.toRoles(realm, bits).map(RoleModel::getId).collect(Collectors.toSet());
+    }
+
+    private RoleModel role(String id, RoleModel... composites) {
+        List<RoleModel> compositeList = Arrays.asList(composites);
+        RoleModel role = proxy(RoleModel.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getId":
+                case "getName":
+                case "toString":
+                    return id;
+                case "isComposite":
+                    return !compositeList.isEmpty();
+                case "getCompositesStream":
+                    return compositeList.stream();
+                case "getDeepCompositesStream":
+                    return RoleUtils.collectDeepComposites((RoleModel) proxy).stream();
+                case "equals":
+                    return args[0] instanceof RoleModel && id.equals(((RoleModel) args[0]).getId());
+                case "hashCode":
+                    return id.hashCode();
+                default:
+                    return null;
+            }
+        });
+        roles.put(id, role);
+        return role;
+    }
+
+    private static UserModel user(RoleModel... roleMappings) {
+        return proxy(UserModel.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getRoleMappingsStream":
+                    return Stream.of(roleMappings);
+                case "getGroupsStream":
+                    return Stream.empty();
+                default:
+                    return null;
+            }
+        });
+    }
+
+    private ClientModel client(boolean fullScopeAllowed, List<RoleModel> clientRoles) {
+        return proxy(ClientModel.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "isFullScopeAllowed":
+                    return fullScopeAllowed;
+                case "getRolesStream":
+                    return clientRoles.stream();
+                case "getRealm":
+                    return realm;
+                case "getClientId":
+                    return "client";
+                default:
+                    return null;
+            }
+        });
+    }
+
+    private static ClientScopeModel clientScope(RoleModel... scopeMappings) {
+        return proxy(ClientScopeModel.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getScopeMappingsStream":
+                    return Stream.of(scopeMappings);
+                case "getName":
+                    return "scope";
+                default:
+                    return null;
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(RoleIndexTest.class.getClassLoader(), new Class[] { type }, handler);
+    }
+}
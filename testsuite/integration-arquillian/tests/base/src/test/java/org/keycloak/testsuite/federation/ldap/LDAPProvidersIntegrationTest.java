@@ -25,6 +25,7 @@ import org.junit.runners.MethodSorters;
 import org.keycloak.OAuth2Constants;
 import org.keycloak.admin.client.resource.RealmResource;
 import org.keycloak.admin.client.resource.UserResource;
+import org.keycloak.common.util.Retry;
 import org.keycloak.component.ComponentModel;
 import org.keycloak.credential.CredentialModel;
 import org.keycloak.events.EventType;
@@ -1383,6 +1384,48 @@ public class LDAPProvidersIntegrationTest extends AbstractLDAPTest {
         setTimeOffset(0);
     }
 
+    @Test
+    public void testCacheUserStaleWhileRevalidate() {
+        String userId = testingClient.server().fetch(session -> {
+            LDAPTestContext ctx = LDAPTestContext.init(session);
+            ctx.getLdapModel().setCachePolicy(UserStorageProviderModel.CachePolicy.MAX_LIFESPAN);
+            ctx.getLdapModel().setMaxLifespan(600000); // Lifetime is 10 minutes
+            ctx.getLdapModel().setMaxStaleness(300000); // Expired user can be used for 5 more minutes
+            ctx.getRealm().updateComponent(ctx.getLdapModel());
+
+            return session.users().getUserByUsername(ctx.getRealm(), "johnkeycloak").getId();
+        }, String.class);
+
+        long cacheTimestamp = testingClient.server().fetch(session -> {
+            RealmModel appRealm = session.realms().getRealmByName(TEST_REALM_NAME);
+            UserModel testedUser = session.users().getUserById(appRealm, userId);
+            Assert.assertTrue(testedUser instanceof CachedUserModel);
+            return ((CachedUserModel) testedUser).getCacheTimestamp();
+        }, Long.class);
+
+        setTimeOffset(60 * 11); // 11 minutes in future, expired user is returned while it is reloaded
+        testingClient.server().run(session -> {
+            RealmModel appRealm = session.realms().getRealmByName(TEST_REALM_NAME);
+            UserModel testedUser = session.users().getUserById(appRealm, userId);
+            Assert.assertTrue(testedUser instanceof CachedUserModel);
+        });
+
+        Retry.execute(() -> testingClient.server().run(session -> {
+            RealmModel appRealm = session.realms().getRealmByName(TEST_REALM_NAME);
+            UserModel testedUser = session.users().getUserById(appRealm, userId);
+            Assert.assertTrue(testedUser instanceof CachedUserModel);
+            Assert.assertTrue(((CachedUserModel) testedUser).getCacheTimestamp() > cacheTimestamp);
+        }), 20, 500);
+
+        setTimeOffset(0);
+
+        testingClient.server().run(session -> {
+            LDAPTestContext ctx = LDAPTestContext.init(session);
+            ctx.getLdapModel().getConfig().remove(UserStorageProviderModel.MAX_STALENESS);
+            ctx.getRealm().updateComponent(ctx.getLdapModel());
+        });
+    }
+
     @Test
     public void testEmailVerifiedFromImport(){
 
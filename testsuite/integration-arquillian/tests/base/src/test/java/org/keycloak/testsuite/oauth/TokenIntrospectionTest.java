@@ -33,10 +33,14 @@ import org.junit.Test;
 import org.keycloak.OAuth2Constants;
 import org.keycloak.OAuthErrorException;
 import org.keycloak.admin.client.resource.ClientScopesResource;
+import org.keycloak.common.util.Base64Url;
 import org.keycloak.crypto.Algorithm;
 import org.keycloak.events.Errors;
+import org.keycloak.events.EventType;
 import org.keycloak.jose.jws.JWSInput;
+import org.keycloak.jose.jws.JWSInputException;
 import org.keycloak.protocol.oidc.OIDCLoginProtocol;
+import org.keycloak.representations.AccessToken;
 import org.keycloak.representations.idm.ClientRepresentation;
 import org.keycloak.representations.idm.ClientScopeRepresentation;
 import org.keycloak.representations.idm.CredentialRepresentation;
@@ -65,11 +69,14 @@ import org.keycloak.util.TokenUtil;
 import jakarta.ws.rs.core.UriBuilder;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
+import static org.hamcrest.Matchers.emptyOrNullString;
+import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
@@ -411,6 +418,62 @@ public class TokenIntrospectionTest extends AbstractTestRealmKeycloakTest {
         assertNull(rep.getSubject());
     }
 
+    @Test
+    public void testIntrospectAccessTokenRepeatedlyUntilSessionInvalid() throws Exception {
+        oauth.doLogin("test-user@localhost", "password");
+        String code = oauth.getCurrentQuery().get(OAuth2Constants.CODE);
+        AccessTokenResponse accessTokenResponse = oauth.doAccessTokenRequest(code, "password");
+
+        for (int i = 0; i < 3; i++) {
+            String tokenResponse = oauth.introspectAccessTokenWithClientCredential("confidential-cli", "secret1", accessTokenResponse.getAccessToken());
+            TokenMetadataRepresentation rep = JsonSerialization.readValue(tokenResponse, TokenMetadataRepresentation.class);
+
+            assertTrue(rep.isActive());
+            assertEquals("test-user@localhost", rep.getUserName());
+            assertEquals("test-app", rep.getClientId());
+        }
+
+        // The verified token is reused, but the user session is still checked
+        oauth.doLogout(accessTokenResponse.getRefreshToken(), "password");
+
+        String tokenResponse = oauth.introspectAccessTokenWithClientCredential("confidential-cli", "secret1", accessTokenResponse.getAccessToken());
+        TokenMetadataRepresentation rep = JsonSerialization.readValue(tokenResponse, TokenMetadataRepresentation.class);
+
+        assertFalse(rep.isActive());
+        assertNull(rep.getUserName());
+    }
+
+    @Test
+    public void testIntrospectAccessTokenOfOtherRealmSignedWithSharedKey() throws Exception {
+        oauth.doLogin("test-user@localhost", "password");
+        String code = oauth.getCurrentQuery().get(OAuth2Constants.CODE);
+        AccessTokenResponse accessTokenResponse = oauth.doAccessTokenRequest(code, "password");
+
+        // The same token, but issued by another realm which shares the signing key with the test realm
+        String accessToken = accessTokenResponse.getAccessToken();
+        String otherRealmToken = testingClient.server("test").fetch(session -> {
+            try {
+                AccessToken token = new JWSInput(accessToken).readJsonContent(AccessToken.class);
+                token.issuer(token.getIssuer().replace("/realms/test", "/realms/other"));
+                return session.tokens().encode(token);
+            } catch (JWSInputException e) {
+                throw new RuntimeException(e);
+            }
+        }, String.class);
+
+        // Rejected every time, so not cached as verified
+        for (int i = 0; i < 2; i++) {
+            String tokenResponse = oauth.introspectAccessTokenWithClientCredential("confidential-cli", "secret1", otherRealmToken);
+            TokenMetadataRepresentation rep = JsonSerialization.readValue(tokenResponse, TokenMetadataRepresentation.class);
+
+            assertFalse(rep.isActive());
+            assertNull(rep.getUserName());
+        }
+
+        String tokenResponse = oauth.introspectAccessTokenWithClientCredential("confidential-cli", "secret1", accessToken);
+        assertTrue(JsonSerialization.readValue(tokenResponse, TokenMetadataRepresentation.class).isActive());
+    }
+
     // KEYCLOAK-4829
     @Test
     public void testIntrospectAccessTokenOfflineAccess() throws Exception {
@@ -544,6 +607,63 @@ public class TokenIntrospectionTest extends AbstractTestRealmKeycloakTest {
         return tokenResponse;
     }
 
+    @Test
+    public void testIntrospectBatch() throws Exception {
+        oauth.doLogin("test-user@localhost", "password");
+        String code = oauth.getCurrentQuery().get(OAuth2Constants.CODE);
+        AccessTokenResponse accessTokenResponse = oauth.doAccessTokenRequest(code, "password");
+
+        String tokenResponse = introspectBatch("confidential-cli", "secret1", accessTokenResponse.getAccessToken(), "foo", accessTokenResponse.getAccessToken());
+        TokenMetadataRepresentation[] reps = JsonSerialization.readValue(tokenResponse, TokenMetadataRepresentation[].class);
+
+        assertEquals(3, reps.length);
+        assertTrue(reps[0].isActive());
+        assertEquals("test-user@localhost", reps[0].getUserName());
+        assertEquals("test-app", reps[0].getClientId());
+        assertFalse(reps[1].isActive());
+        assertNull(reps[1].getUserName());
+        assertTrue(reps[2].isActive());
+
+        tokenResponse = introspectBatch("confidential-cli", "bad_credential", accessTokenResponse.getAccessToken());
+        OAuth2ErrorRepresentation errorRep = JsonSerialization.readValue(tokenResponse, OAuth2ErrorRepresentation.class);
+        assertEquals("Authentication failed.", errorRep.getErrorDescription());
+        assertEquals(OAuthErrorException.INVALID_REQUEST, errorRep.getError());
+    }
+
+    @Test
+    public void testIntrospectBatchTokenFailure() throws Exception {
+        oauth.doLogin("test-user@localhost", "password");
+        String code = oauth.getCurrentQuery().get(OAuth2Constants.CODE);
+        AccessTokenResponse accessTokenResponse = oauth.doAccessTokenRequest(code, "password");
+        events.clear();
+
+        // No signature provider is available for the algorithm, so the introspection of the token fails
+        String unsupportedToken = Base64Url.encode("{\"alg\":\"none\"}".getBytes(StandardCharsets.UTF_8)) + "."
+                + Base64Url.encode("{}".getBytes(StandardCharsets.UTF_8)) + ".signature";
+
+        String tokenResponse = introspectBatch("confidential-cli", "secret1", unsupportedToken, accessTokenResponse.getAccessToken());
+        TokenMetadataRepresentation[] reps = JsonSerialization.readValue(tokenResponse, TokenMetadataRepresentation[].class);
+
+        assertEquals(2, reps.length);
+        assertFalse(reps[0].isActive());
+        assertTrue(reps[1].isActive());
+        assertEquals("test-user@localhost", reps[1].getUserName());
+
+        // The failed token is reported on its own, the batch by a single event
+        events.expect(EventType.INTROSPECT_TOKEN_ERROR)
+                .client("confidential-cli")
+                .user(is(emptyOrNullString()))
+                .session(is(emptyOrNullString()))
+                .error(Errors.TOKEN_INTROSPECTION_FAILED)
+                .assertEvent();
+        events.expect(EventType.INTROSPECT_TOKEN)
+                .client("confidential-cli")
+                .user(is(emptyOrNullString()))
+                .session(is(emptyOrNullString()))
+                .assertEvent();
+        events.assertEmpty();
+    }
+
     // KEYCLOAK-17259
     @Test
     public void testIntrospectionRequestParamsMoreThanOnce() throws Exception {
@@ -654,6 +774,38 @@ public class TokenIntrospectionTest extends AbstractTestRealmKeycloakTest {
         }
     }
 
+    private String introspectBatch(String clientId, String clientSecret, String... tokensToIntrospect) {
+        HttpPost post = new HttpPost(oauth.getTokenIntrospectionUrl() + "/batch");
+
+        String authorization = BasicAuthHelper.createHeader(clientId, clientSecret);
+        post.setHeader("Authorization", authorization);
+
+        List<NameValuePair> parameters = new LinkedList<>();
+
+        for (String tokenToIntrospect : tokensToIntrospect) {
+            parameters.add(new BasicNameValuePair("token", tokenToIntrospect));
+        }
+        parameters.add(new BasicNameValuePair("token_type_hint", "access_token"));
+
+        UrlEncodedFormEntity formEntity;
+
+        try {
+            formEntity = new UrlEncodedFormEntity(parameters, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+
+        post.setEntity(formEntity);
+
+        try (CloseableHttpResponse response = HttpClientBuilder.create().build().execute(post)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            response.getEntity().writeTo(out);
+            return new String(out.toByteArray());
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to introspect tokens", e);
+        }
+    }
+
     private JsonNode introspectRevokedToken() throws Exception {
         oauth.doLogin("test-user@localhost", "password");
         String code = oauth.getCurrentQuery().get(OAuth2Constants.CODE);
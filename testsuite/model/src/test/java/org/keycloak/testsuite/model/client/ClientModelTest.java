@@ -18,6 +18,7 @@ package org.keycloak.testsuite.model.client;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
@@ -31,11 +32,15 @@ import org.keycloak.models.RealmModel;
 import org.keycloak.models.RealmProvider;
 import org.keycloak.models.RoleModel;
 import org.keycloak.models.RoleProvider;
+import org.keycloak.models.cache.CacheRealmProvider;
+import org.keycloak.models.cache.infinispan.RoleAdapter;
 
 import org.keycloak.testsuite.model.KeycloakModelTest;
 import org.keycloak.testsuite.model.RequireProvider;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  *
@@ -213,4 +218,51 @@ public class ClientModelTest extends KeycloakModelTest {
             return null;
         });
     }
+
+    @Test
+    @RequireProvider(CacheRealmProvider.class)
+    public void testRealmCacheHitRatioUnderClientChurn() {
+        final int iterations = 50;
+        withRealm(realmId, (session, realm) -> {
+            for (int i = 0; i < 10; i++) {
+                session.roles().addRealmRole(realm, "role-" + i);
+            }
+            return null;
+        });
+
+        AtomicInteger reads = new AtomicInteger();
+        AtomicInteger hits = new AtomicInteger();
+        for (int i = 0; i < iterations; i++) {
+            final int iteration = i;
+            withRealm(realmId, (session, realm) -> {
+                ClientModel client = session.clients().addClient(realm, "churn-client-" + iteration);
+                session.roles().addClientRole(client, "churn-client-role");
+                if (iteration > 0) {
+                    ClientModel previous = session.clients().getClientByClientId(realm, "churn-client-" + (iteration - 1));
+                    session.clients().removeClient(realm, previous.getId());
+                }
+                if (iteration % 10 == 0) {
+                    // adding a role updates the cached list of the realm roles instead of invalidating it
+                    session.roles().addRealmRole(realm, "churn-role-" + iteration);
+                }
+                return null;
+            });
+
+            withRealm(realmId, (session, realm) -> {
+                Set<String> names = new HashSet<>();
+                session.roles().getRealmRolesStream(realm).forEach(role -> {
+                    reads.incrementAndGet();
+                    if (role instanceof RoleAdapter) hits.incrementAndGet();
+                    names.add(role.getName());
+                });
+                for (int j = 0; j <= iteration; j += 10) {
+                    assertThat(names.contains("churn-role-" + j), is(true));
+                }
+                return null;
+            });
+        }
+
+        // only the very first read of the realm roles should go to the database
+        assertThat(hits.get() * 100 / reads.get(), greaterThanOrEqualTo(95));
+    }
 }
@@ -102,6 +102,9 @@ public class Infinispan extends KeycloakModelParameters {
                 .spi(UserSessionSpi.NAME)
                 .provider(InfinispanUserSessionProviderFactory.PROVIDER_ID)
                 .config("sessionPreloadStalledTimeoutInSeconds", "10")
+                .spi("userCache")
+                .provider("default")
+                .config(InfinispanUserCacheProviderFactory.NEGATIVE_LOOKUP_LIFESPAN, "60")
         ;
     }
 
@@ -10,11 +10,14 @@ import org.keycloak.models.RealmModel;
 import org.keycloak.models.RealmProvider;
 import org.keycloak.models.RoleModel;
 import org.keycloak.models.RoleProvider;
+import org.keycloak.models.utils.RoleUtils;
 import org.keycloak.testsuite.model.KeycloakModelTest;
 import org.keycloak.testsuite.model.RequireProvider;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
@@ -26,8 +29,10 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.nullValue;
 
 @RequireProvider(RealmProvider.class)
@@ -289,6 +294,80 @@ public class RoleModelTest extends KeycloakModelTest {
         });
     }
 
+    @Test
+    public void testDeepCompositesUpdateOnNestedRoleChange() {
+        String grandRoleId = withRealm(realmId, (session, realm) -> {
+            RoleModel grandRole = session.roles().addRealmRole(realm, "grand-role");
+            grandRole.addCompositeRole(session.roles().getRoleById(realm, mainRoleId));
+            return grandRole.getId();
+        });
+
+        // read twice so that the second read may use a cached closure
+        for (int i = 0; i < 2; i++) {
+            Set<String> deep = withRealm(realmId, (session, realm) -> session.roles().getRoleById(realm, grandRoleId)
+                    .getDeepCompositesStream().map(RoleModel::getId).collect(Collectors.toSet()));
+            assertThat(deep, hasSize(rolesSubset.size() + 1));
+            assertThat(deep, hasItem(mainRoleId));
+        }
+
+        // a change deep in the composite graph changes the closure of all the roles above it
+        String nestedRoleId = withRealm(realmId, (session, realm) -> {
+            RoleModel nestedRole = session.roles().addRealmRole(realm, "nested-role");
+            session.roles().getRoleById(realm, rolesSubset.get(0)).addCompositeRole(nestedRole);
+            return nestedRole.getId();
+        });
+
+        withRealm(realmId, (session, realm) -> {
+            RoleModel grandRole = session.roles().getRoleById(realm, grandRoleId);
+            assertThat(grandRole.getDeepCompositesStream().map(RoleModel::getId).collect(Collectors.toSet()), hasItem(nestedRoleId));
+            assertThat(RoleUtils.expandCompositeRoles(Collections.singleton(grandRole)), hasSize(rolesSubset.size() + 3));
+            assertThat(grandRole.hasRole(session.roles().getRoleById(realm, nestedRoleId)), is(true));
+            return null;
+        });
+
+        withRealm(realmId, (session, realm) -> session.roles().removeRole(session.roles().getRoleById(realm, nestedRoleId)));
+
+        withRealm(realmId, (session, realm) -> {
+            RoleModel grandRole = session.roles().getRoleById(realm, grandRoleId);
+            assertThat(grandRole.getDeepCompositesStream().map(RoleModel::getId).collect(Collectors.toSet()), not(hasItem(nestedRoleId)));
+            assertThat(RoleUtils.expandCompositeRoles(Collections.singleton(grandRole)), hasSize(rolesSubset.size() + 2));
+            return null;
+        });
+    }
+
+    @Test
+    public void testDeepCompositesUpdateInSameTransaction() {
+        String grandRoleId = withRealm(realmId, (session, realm) -> {
+            RoleModel grandRole = session.roles().addRealmRole(realm, "grand-role");
+            grandRole.addCompositeRole(session.roles().getRoleById(realm, mainRoleId));
+            return grandRole.getId();
+        });
+
+        // cache the closure of the grand role
+        for (int i = 0; i < 2; i++) {
+            withRealm(realmId, (session, realm) -> session.roles().getRoleById(realm, grandRoleId).getDeepCompositesStream().count());
+        }
+
+        // the cached closure of the grand role is invalidated at the commit, it must not be used after the change
+        String nestedRoleId = withRealm(realmId, (session, realm) -> {
+            RoleModel nestedRole = session.roles().addRealmRole(realm, "nested-role");
+            session.roles().getRoleById(realm, rolesSubset.get(0)).addCompositeRole(nestedRole);
+
+            RoleModel grandRole = session.roles().getRoleById(realm, grandRoleId);
+            assertThat(grandRole.getDeepCompositesStream().map(RoleModel::getId).collect(Collectors.toSet()), hasItem(nestedRole.getId()));
+            assertThat(grandRole.hasRole(nestedRole), is(true));
+            return nestedRole.getId();
+        });
+
+        for (int i = 0; i < 2; i++) {
+            withRealm(realmId, (session, realm) -> {
+                RoleModel grandRole = session.roles().getRoleById(realm, grandRoleId);
+                assertThat(grandRole.getDeepCompositesStream().map(RoleModel::getId).collect(Collectors.toSet()), hasItem(nestedRoleId));
+                return null;
+            });
+        }
+    }
+
     @Test
     public void getRolePathTraversal() {
         // Only perform this test if realm role ID = role.name and client role ID = client.id + ":" + role.name
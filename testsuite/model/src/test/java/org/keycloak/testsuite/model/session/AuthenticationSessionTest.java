@@ -20,10 +20,13 @@ package org.keycloak.testsuite.model.session;
 import org.hamcrest.Matchers;
 import org.junit.Assert;
 import org.junit.Test;
+import org.keycloak.connections.infinispan.InfinispanConnectionProvider;
 import org.keycloak.models.ClientModel;
 import org.keycloak.models.Constants;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.RealmModel;
+import org.keycloak.models.sessions.infinispan.InfinispanAuthenticationSessionProviderFactory;
+import org.keycloak.models.sessions.infinispan.util.SessionAffinityStats;
 import org.keycloak.sessions.AuthenticationSessionModel;
 import org.keycloak.sessions.AuthenticationSessionProvider;
 import org.keycloak.sessions.RootAuthenticationSessionModel;
@@ -195,4 +198,37 @@ public class AuthenticationSessionTest extends KeycloakModelTest {
             return null;
         });
     }
+
+    @Test
+    @RequireProvider(value = AuthenticationSessionProvider.class, only = InfinispanAuthenticationSessionProviderFactory.PROVIDER_ID)
+    public void testAffinityStats() {
+        SessionAffinityStats stats = inComittedTransaction(session -> {
+            return ((InfinispanAuthenticationSessionProviderFactory) session.getKeycloakSessionFactory().getProviderFactory(AuthenticationSessionProvider.class)).getAffinityStats();
+        });
+        boolean clustered = inComittedTransaction(session -> {
+            return session.getProvider(InfinispanConnectionProvider.class).getCache(InfinispanConnectionProvider.AUTHENTICATION_SESSIONS_CACHE_NAME)
+                    .getCacheConfiguration().clustering().cacheMode().isClustered();
+        });
+        long accesses = stats.getLocalAccesses() + stats.getRemoteAccesses();
+
+        String rootAuthSessionId = withRealm(realmId, (session, realm) -> session.authenticationSessions().createRootAuthenticationSession(realm).getId());
+
+        int lookups = 5;
+        for (int i = 0; i < lookups; i++) {
+            withRealm(realmId, (session, realm) -> {
+                Assert.assertNotNull(session.authenticationSessions().getRootAuthenticationSession(realm, rootAuthSessionId));
+                return null;
+            });
+        }
+
+        // A missing session is not counted
+        withRealm(realmId, (session, realm) -> session.authenticationSessions().getRootAuthenticationSession(realm, "missing"));
+
+        if (clustered) {
+            Assert.assertEquals(accesses + lookups, stats.getLocalAccesses() + stats.getRemoteAccesses());
+        } else {
+            // Every lookup is served locally, the ownership is not checked
+            Assert.assertEquals(accesses, stats.getLocalAccesses() + stats.getRemoteAccesses());
+        }
+    }
 }
@@ -32,6 +32,9 @@ import org.keycloak.models.UserProvider;
 import org.keycloak.models.UserSessionModel;
 import org.keycloak.models.UserSessionProvider;
 import org.keycloak.models.session.UserSessionPersisterProvider;
+import org.keycloak.models.sessions.infinispan.initializer.OfflinePersistentLoaderContext;
+import org.keycloak.models.sessions.infinispan.initializer.OfflinePersistentUserSessionLoader;
+import org.keycloak.models.sessions.infinispan.initializer.OfflinePersistentWorkerContext;
 import org.keycloak.models.utils.ResetTimeOffsetEvent;
 import org.keycloak.protocol.oidc.OIDCLoginProtocol;
 import org.keycloak.protocol.oidc.OIDCLoginProtocolFactory;
@@ -466,6 +469,55 @@ public class UserSessionPersisterProviderTest extends KeycloakModelTest {
 
     }
 
+    @Test
+    public void testLoadSessionsInSegments() {
+        final int sessionsCount = 200;
+        Set<String> persistedIds = inComittedTransaction(session -> {
+            RealmModel realm = session.realms().getRealm(realmId);
+            UserModel user = session.users().getUserByUsername(realm, "user1");
+
+            Set<String> ids = new HashSet<>();
+            for (int i = 0; i < sessionsCount; i++) {
+                UserSessionModel userSession = session.sessions().createUserSession(null, realm, user, "user1", "127.0.0.1", "form", true, null, null, UserSessionModel.SessionPersistenceState.PERSISTENT);
+                createClientSession(session, realmId, realm.getClientByClientId("test-app"), userSession, "http://redirect", "state");
+                persistUserSession(session, userSession, true);
+                ids.add(userSession.getId());
+            }
+            return ids;
+        });
+
+        // The segments of the preload must cover all the sessions exactly once, for any count of segments
+        for (int sessionsPerSegment : new int[] { 7, 64, sessionsCount, 1000 }) {
+            OfflinePersistentLoaderContext loaderCtx = new OfflinePersistentLoaderContext(sessionsCount, sessionsPerSegment);
+            OfflinePersistentUserSessionLoader loader = new OfflinePersistentUserSessionLoader(sessionsPerSegment);
+            List<String> loadedIds = new ArrayList<>();
+
+            for (int segment = 0; segment < loaderCtx.getSegmentsCount(); segment++) {
+                OfflinePersistentWorkerContext workerCtx = loader.computeWorkerContext(loaderCtx, segment, segment, null);
+
+                // Each segment is loaded in its own transaction like by the preload workers, with pages smaller than the segment
+                loadedIds.addAll(inComittedTransaction(session -> {
+                    UserSessionPersisterProvider persister = session.getProvider(UserSessionPersisterProvider.class);
+                    List<String> segmentIds = new ArrayList<>();
+                    String lastSessionId = workerCtx.getLastSessionId();
+                    List<UserSessionModel> page;
+                    do {
+                        page = persister.loadUserSessionsStream(3, true, lastSessionId, workerCtx.getToSessionId())
+                                .collect(Collectors.toList());
+                        page.forEach(userSession -> segmentIds.add(userSession.getId()));
+                        if (!page.isEmpty()) {
+                            lastSessionId = page.get(page.size() - 1).getId();
+                        }
+                    } while (page.size() == 3);
+                    return segmentIds;
+                }));
+            }
+
+            assertEquals("Sessions loaded more than once with " + loaderCtx, loadedIds.size(), new HashSet<>(loadedIds).size());
+            assertEquals("Sessions not loaded with " + loaderCtx, persistedIds, new HashSet<>(loadedIds));
+        }
+    }
+
     @Test
     public void testExpiredSessions() {
         int started = Time.currentTime();
@@ -28,7 +28,10 @@ import org.keycloak.models.RealmProvider;
 import org.keycloak.models.UserModel;
 import org.keycloak.models.UserProvider;
 import org.keycloak.models.UserSessionModel;
+import org.keycloak.models.UserSessionSpi;
 import org.keycloak.models.UserSessionProvider;
+import org.keycloak.models.sessions.infinispan.InfinispanUserSessionProviderFactory;
+import org.keycloak.models.sessions.infinispan.changes.SessionCommitMetrics;
 import org.keycloak.models.sessions.infinispan.changes.sessions.PersisterLastSessionRefreshStoreFactory;
 import org.keycloak.models.utils.KeycloakModelUtils;
 import org.keycloak.models.utils.ResetTimeOffsetEvent;
@@ -37,8 +40,11 @@ import org.keycloak.testsuite.model.RequireProvider;
 import org.keycloak.testsuite.model.infinispan.InfinispanTestUtil;
 import org.keycloak.timer.TimerProvider;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
@@ -228,6 +234,61 @@ public class UserSessionProviderModelTest extends KeycloakModelTest {
         });
     }
 
+    @Test
+    @RequireProvider(value = UserSessionProvider.class, only = InfinispanUserSessionProviderFactory.PROVIDER_ID)
+    public void testAsyncCommit() {
+        CONFIG.spi(UserSessionSpi.NAME)
+                .provider(InfinispanUserSessionProviderFactory.PROVIDER_ID)
+                .config("asyncCommit", "true");
+        try {
+            SessionCommitMetrics metrics = inComittedTransaction(session -> {
+                return ((InfinispanUserSessionProviderFactory) session.getKeycloakSessionFactory().getProviderFactory(UserSessionProvider.class)).getCommitMetrics();
+            });
+            long commits = metrics.getCommits();
+
+            UserSessionModel[] origSessions = inComittedTransaction(session -> { return createSessions(session, realmId); });
+            Assert.assertTrue(metrics.getCommits() > commits);
+
+            // The commit returns once all the operations finished, so the sessions are in the cache and in the index
+            inComittedTransaction(session -> {
+                RealmModel realm = session.realms().getRealm(realmId);
+                UserModel user1 = session.users().getUserByUsername(realm, "user1");
+
+                Set<String> ids = session.sessions().getUserSessionsStream(realm, user1).map(UserSessionModel::getId).collect(Collectors.toSet());
+                Assert.assertEquals(new HashSet<>(Arrays.asList(origSessions[0].getId(), origSessions[1].getId())), ids);
+
+                Map<String, Long> stats = session.sessions().getActiveClientSessionStats(realm, false);
+                Assert.assertEquals(Long.valueOf(3), stats.get(realm.getClientByClientId("test-app").getId()));
+                Assert.assertEquals(Long.valueOf(1), stats.get(realm.getClientByClientId("third-party").getId()));
+
+                session.sessions().getUserSession(realm, origSessions[2].getId()).setNote("note", "value");
+                session.sessions().removeUserSession(realm, session.sessions().getUserSession(realm, origSessions[0].getId()));
+            });
+
+            inComittedTransaction(session -> {
+                RealmModel realm = session.realms().getRealm(realmId);
+                UserModel user1 = session.users().getUserByUsername(realm, "user1");
+                UserModel user2 = session.users().getUserByUsername(realm, "user2");
+
+                Set<String> ids = session.sessions().getUserSessionsStream(realm, user1).map(UserSessionModel::getId).collect(Collectors.toSet());
+                Assert.assertEquals(Collections.singleton(origSessions[1].getId()), ids);
+                Assert.assertNull(session.sessions().getUserSession(realm, origSessions[0].getId()));
+                Assert.assertEquals("value", session.sessions().getUserSession(realm, origSessions[2].getId()).getNote("note"));
+                Assert.assertEquals(1, session.sessions().getUserSessionsStream(realm, user2).count());
+
+                Map<String, Long> stats = session.sessions().getActiveClientSessionStats(realm, false);
+                Assert.assertEquals(Long.valueOf(2), stats.get(realm.getClientByClientId("test-app").getId()));
+                Assert.assertNull(stats.get(realm.getClientByClientId("third-party").getId()));
+            });
+
+            Assert.assertTrue(metrics.getOperations() > 0);
+        } finally {
+            CONFIG.spi(UserSessionSpi.NAME)
+                    .provider(InfinispanUserSessionProviderFactory.PROVIDER_ID)
+                    .config("asyncCommit", null);
+        }
+    }
+
     @Test
     public void testCreateUserSessionsParallel() throws InterruptedException {
         Set<String> userSessionIds = Collections.newSetFromMap(new ConcurrentHashMap<>());
@@ -24,8 +24,12 @@ import org.keycloak.models.GroupModel;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.models.RealmModel;
 import org.keycloak.models.RealmProvider;
+import org.keycloak.models.RoleModel;
 import org.keycloak.models.UserModel;
 import org.keycloak.models.UserProvider;
+import org.keycloak.models.cache.CacheRealmProvider;
+import org.keycloak.models.cache.CachedUserModel;
+import org.keycloak.models.cache.UserCache;
 import org.keycloak.storage.UserStorageProvider;
 import org.keycloak.storage.UserStorageProviderFactory;
 import org.keycloak.storage.UserStorageProviderModel;
@@ -167,6 +171,44 @@ public class UserModelTest extends KeycloakModelTest {
         });
     }
 
+    @Test
+    @RequireProvider(UserCache.class)
+    public void testLookupByChangedUsernameAndEmail() {
+        String userId = withRealm(realmId, (session, realm) -> session.users().addUser(realm, "user-lookup").getId());
+
+        // Lookups which found no user are cached when the negative lookups are enabled
+        withRealm(realmId, (session, realm) -> {
+            assertNull(session.users().getUserByUsername(realm, "user-renamed"));
+            assertNull(session.users().getUserByEmail(realm, "user-renamed@keycloak.org"));
+            return null;
+        });
+
+        withRealm(realmId, (session, realm) -> {
+            assertNull(session.users().getUserByUsername(realm, "user-renamed"));
+            UserModel user = session.users().getUserById(realm, userId);
+            user.setUsername("user-renamed");
+            user.setEmail("user-renamed@keycloak.org");
+
+            assertThat(session.users().getUserByUsername(realm, "user-renamed").getId(), is(userId));
+            assertThat(session.users().getUserByEmail(realm, "user-renamed@keycloak.org").getId(), is(userId));
+
+            // The email of a user added in this transaction is set after the user was added
+            assertNull(session.users().getUserByEmail(realm, "user-added@keycloak.org"));
+            UserModel added = session.users().addUser(realm, "user-added");
+            added.setEmail("user-added@keycloak.org");
+            assertThat(session.users().getUserByEmail(realm, "user-added@keycloak.org").getId(), is(added.getId()));
+            return null;
+        });
+
+        withRealm(realmId, (session, realm) -> {
+            assertThat(session.users().getUserByUsername(realm, "user-renamed").getId(), is(userId));
+            assertThat(session.users().getUserByEmail(realm, "user-renamed@keycloak.org").getId(), is(userId));
+            assertNull(session.users().getUserByUsername(realm, "user-lookup"));
+            assertThat(session.users().getUserByEmail(realm, "user-added@keycloak.org").getUsername(), is("user-added"));
+            return null;
+        });
+    }
+
     @Test
     @RequireProvider(UserStorageProvider.class)
     public void testAddDirtyRemoveFederationUser() {
@@ -277,6 +319,68 @@ public class UserModelTest extends KeycloakModelTest {
         });
     }
 
+    @Test
+    @RequireProvider(UserCache.class)
+    @RequireProvider(CacheRealmProvider.class)
+    public void testCachedMembershipsFollowRoleAndGroupChanges() {
+        String userId = withRealm(realmId, (session, realm) -> {
+            GroupModel parent = session.groups().createGroup(realm, "memberships-parent");
+            GroupModel child = session.groups().createGroup(realm, "memberships-child", parent);
+            session.roles().addRealmRole(realm, "memberships-role");
+            session.roles().addRealmRole(realm, "memberships-nested-role");
+            UserModel user = session.users().addUser(realm, "memberships-user");
+            user.joinGroup(child);
+            return user.getId();
+        });
+
+        // twice, so that the second read uses the cached memberships
+        for (int i = 0; i < 2; i++) {
+            withRealm(realmId, (session, realm) -> {
+                UserModel user = session.users().getUserById(realm, userId);
+                assumeThat(user, Matchers.instanceOf(CachedUserModel.class));
+                CachedUserModel cachedUser = (CachedUserModel) user;
+                assertThat(cachedUser.getGroupPathsStream().collect(Collectors.toList()), Matchers.contains("/memberships-parent/memberships-child"));
+                assertThat(cachedUser.getDeepRoleMappingsStream().map(RoleModel::getName).collect(Collectors.toSet()), Matchers.not(hasItem("memberships-role")));
+                return null;
+            });
+        }
+
+        // role mapping of the parent group
+        withRealm(realmId, (session, realm) -> {
+            GroupModel parent = session.groups().getGroupByName(realm, null, "memberships-parent");
+            parent.grantRole(session.roles().getRealmRole(realm, "memberships-role"));
+            return null;
+        });
+        withRealm(realmId, (session, realm) -> {
+            CachedUserModel user = (CachedUserModel) session.users().getUserById(realm, userId);
+            assertThat(user.getDeepRoleMappingsStream().map(RoleModel::getName).collect(Collectors.toSet()), hasItem("memberships-role"));
+            assertTrue(user.hasRole(session.roles().getRealmRole(realm, "memberships-role")));
+            return null;
+        });
+
+        // composite of the role
+        withRealm(realmId, (session, realm) -> {
+            session.roles().getRealmRole(realm, "memberships-role").addCompositeRole(session.roles().getRealmRole(realm, "memberships-nested-role"));
+            return null;
+        });
+        withRealm(realmId, (session, realm) -> {
+            CachedUserModel user = (CachedUserModel) session.users().getUserById(realm, userId);
+            assertThat(user.getDeepRoleMappingsStream().map(RoleModel::getName).collect(Collectors.toSet()), hasItem("memberships-nested-role"));
+            return null;
+        });
+
+        // name of the parent group
+        withRealm(realmId, (session, realm) -> {
+            session.groups().getGroupByName(realm, null, "memberships-parent").setName("memberships-renamed");
+            return null;
+        });
+        withRealm(realmId, (session, realm) -> {
+            CachedUserModel user = (CachedUserModel) session.users().getUserById(realm, userId);
+            assertThat(user.getGroupPathsStream().collect(Collectors.toList()), Matchers.contains("/memberships-renamed/memberships-child"));
+            return null;
+        });
+    }
+
     private void registerUserFederationWithRealm() {
         getParameters(UserStorageProviderModel.class).forEach(fs -> inComittedTransaction(session -> {
             assumeThat("Cannot handle more than 1 user federation provider", userFederationId, Matchers.nullValue());